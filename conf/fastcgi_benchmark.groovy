@@ -0,0 +1,7 @@
+def describe() {
+	"Run the same tests with CLI and with CLI-FastCGI (compare the Tests/Second each one reports)"
+}
+
+def scenarios() {
+	[Scenario.CLI_SCENARIO, new CliFastCGIScenario()]
+}
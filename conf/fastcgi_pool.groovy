@@ -0,0 +1,7 @@
+def describe() {
+	"Run PHP on Command Line using a pool of php-cgi FastCGI processes"
+}
+
+def scenarios() {
+	new CliFastCGIScenario()
+}
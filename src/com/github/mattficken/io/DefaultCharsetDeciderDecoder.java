@@ -31,7 +31,6 @@ public class DefaultCharsetDeciderDecoder implements CharsetDeciderDecoder {
 			recog.match(bytes, len, cr);
 			//if ( cr.confidence > max_conf )
 				cs = (CharsetICU) cr.cs; // XXX
-				System.out.println(cs+" "+recog);
 		}		
 		this.cs = cs;
 		if (this.cs==null) {
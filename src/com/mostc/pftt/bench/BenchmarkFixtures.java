@@ -0,0 +1,411 @@
+package com.mostc.pftt.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.github.mattficken.io.StringUtil;
+
+import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.host.LocalHost;
+import com.mostc.pftt.main.Config;
+import com.mostc.pftt.model.core.EBuildBranch;
+import com.mostc.pftt.model.core.EBuildType;
+import com.mostc.pftt.model.core.ECPUArch;
+import com.mostc.pftt.model.core.ECompiler;
+import com.mostc.pftt.model.core.EOSType;
+import com.mostc.pftt.model.core.EPhptTestStatus;
+import com.mostc.pftt.model.core.PhpBuild;
+import com.mostc.pftt.model.core.PhpBuildInfo;
+import com.mostc.pftt.model.core.PhptSourceTestPack;
+import com.mostc.pftt.model.core.PhptTestCase;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.ConsoleManagerUtil;
+import com.mostc.pftt.results.LocalConsoleManager;
+import com.mostc.pftt.results.PhpResultPackWriter;
+import com.mostc.pftt.results.PhptTestResult;
+import com.mostc.pftt.scenario.EScenarioSetPermutationLayer;
+import com.mostc.pftt.scenario.FileSystemScenario;
+import com.mostc.pftt.scenario.LocalFileSystemScenario;
+import com.mostc.pftt.scenario.ScenarioSet;
+import com.mostc.pftt.scenario.ScenarioSetSetup;
+
+/** Data the microbenchmarks run on.
+ *
+ * Everything is generated (same every time, no network or PHP build needed) so results of different runs can be
+ * compared: a test-pack of PHPTs that look like PHP's own tests (var_dump output, warnings, etc...), the output
+ * each PHPT expects, text in several charsets and a result-pack with a result for each of those PHPTs (written by
+ * PhpResultPackWriter, like a real test run would).
+ *
+ * Optionally, a real test-pack (to load real PHPTs too) and a real result-pack (to benchmark loading it instead of
+ * the generated one) can be given.
+ *
+ * @see PfttBench
+ * @author Matt Ficken
+ *
+ */
+
+public class BenchmarkFixtures {
+	public static final int SYNTHETIC_PHPT_COUNT = 200;
+	/** max PHPTs to load from a real test-pack */
+	public static final int MAX_REAL_PHPT_COUNT = 2000;
+	/** status of each result in the generated result-pack (mostly PASS, like a real result-pack) */
+	protected static final EPhptTestStatus[] SYNTHETIC_RESULT_STATUSES = new EPhptTestStatus[]{
+			EPhptTestStatus.PASS, EPhptTestStatus.PASS, EPhptTestStatus.PASS, EPhptTestStatus.PASS,
+			EPhptTestStatus.PASS, EPhptTestStatus.PASS, EPhptTestStatus.PASS, EPhptTestStatus.FAIL,
+			EPhptTestStatus.SKIP, EPhptTestStatus.XFAIL
+		};
+	protected final LocalHost host;
+	protected final LocalFileSystemScenario fs;
+	protected final String temp_dir;
+	protected final PhptSourceTestPack synthetic_test_pack;
+	protected final String[] synthetic_test_names;
+	/** EXPECTF section of each synthetic PHPT and output that matches it */
+	protected final String[] expectf, expectf_output;
+	/** EXPECTREGEX section of each synthetic PHPT and output that matches it */
+	protected final String[] expectregex, expectregex_output;
+	/** test names to look up in tries (@see PhptTestCase#SLOW_TESTS) */
+	protected final String[] lookup_names;
+	/** lines of text in UTF-8, ISO-8859-1, Shift_JIS, etc... */
+	protected final byte[][] charset_lines;
+	/** all of charset_lines, separated by \n */
+	protected final byte[] charset_text;
+	@Nullable
+	protected PhptSourceTestPack real_test_pack;
+	@Nullable
+	protected String[] real_test_names;
+	@Nullable
+	protected File result_pack_dir;
+	protected boolean result_pack_generated;
+	
+	protected BenchmarkFixtures(LocalHost host, LocalFileSystemScenario fs, String temp_dir) throws IOException {
+		this.host = host;
+		this.fs = fs;
+		this.temp_dir = temp_dir;
+		
+		synthetic_test_pack = new PhptSourceTestPack(temp_dir);
+		synthetic_test_names = new String[SYNTHETIC_PHPT_COUNT];
+		expectf = new String[SYNTHETIC_PHPT_COUNT];
+		expectf_output = new String[SYNTHETIC_PHPT_COUNT];
+		expectregex = new String[SYNTHETIC_PHPT_COUNT];
+		expectregex_output = new String[SYNTHETIC_PHPT_COUNT];
+		for ( int i=0 ; i < SYNTHETIC_PHPT_COUNT ; i++ ) {
+			expectf[i] = createExpectF(i);
+			expectf_output[i] = createOutput(i);
+			expectregex[i] = createExpectRegex(i);
+			expectregex_output[i] = expectf_output[i];
+			
+			// spread over a few directories like a real test-pack
+			synthetic_test_names[i] = "ext/synthetic"+(i % 8)+"/tests/test_"+i+".phpt";
+			final String file = fs.joinIntoOnePath(temp_dir, synthetic_test_names[i]);
+			fs.createDirs(FileSystemScenario.dirname(file));
+			fs.saveTextFile(file, createPhpt(i, i % 3 == 2 ? "EXPECTREGEX" : "EXPECTF", i % 3 == 2 ? expectregex[i] : expectf[i]));
+		}
+		
+		lookup_names = createLookupNames();
+		charset_lines = createCharsetLines();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+		for ( int i=0 ; out.size() < 64 * 1024 ; i++ ) {
+			byte[] line = charset_lines[i % charset_lines.length];
+			out.write(line, 0, line.length);
+			out.write('\n');
+		}
+		charset_text = out.toByteArray();
+	} // end protected BenchmarkFixtures
+	
+	/** generates fixtures in a new temporary directory
+	 *
+	 * uses the temp dir of the job work dir, or java.io.tmpdir if PFTT_JOB_WORK isn't set
+	 *
+	 * @param host
+	 * @return
+	 * @throws IOException
+	 */
+	public static BenchmarkFixtures create(LocalHost host) throws IOException {
+		LocalFileSystemScenario fs = LocalFileSystemScenario.getInstance(host);
+		String base_dir = StringUtil.isEmpty(host.getJobWorkDir()) ? new File(System.getProperty("java.io.tmpdir")).getAbsolutePath() + File.separator : host.getTempDir();
+		String temp_dir = fs.fixPath(fs.mktempname(base_dir, BenchmarkFixtures.class));
+		fs.createDirs(temp_dir);
+		return new BenchmarkFixtures(host, fs, temp_dir);
+	}
+	
+	/** loads PHPTs from this test-pack too (in addition to synthetic PHPTs)
+	 *
+	 * @param test_pack_dir
+	 * @return FALSE if no PHPTs found
+	 */
+	public boolean setRealTestPack(String test_pack_dir) {
+		ArrayList<String> names = new ArrayList<String>(MAX_REAL_PHPT_COUNT);
+		File dir = new File(test_pack_dir);
+		findPhpts(dir, dir.getAbsolutePath().length()+1, names);
+		if (names.isEmpty())
+			return false;
+		real_test_pack = new PhptSourceTestPack(dir.getAbsolutePath());
+		real_test_names = names.toArray(new String[names.size()]);
+		return true;
+	}
+	
+	protected static void findPhpts(File dir, int root_len, List<String> names) {
+		File[] files = dir.listFiles();
+		if (files==null)
+			return;
+		for ( File file : files ) {
+			if (names.size() >= MAX_REAL_PHPT_COUNT)
+				return;
+			if (file.isDirectory())
+				findPhpts(file, root_len, names);
+			else if (file.getName().endsWith(".phpt"))
+				names.add(file.getAbsolutePath().substring(root_len).replace('\\', '/'));
+		}
+	}
+	
+	public void setResultPack(File result_pack_dir) {
+		this.result_pack_dir = result_pack_dir;
+	}
+	
+	public LocalHost getHost() {
+		return host;
+	}
+	
+	public PhptSourceTestPack getSyntheticTestPack() {
+		return synthetic_test_pack;
+	}
+	
+	public String[] getSyntheticTestNames() {
+		return synthetic_test_names;
+	}
+	
+	@Nullable
+	public PhptSourceTestPack getRealTestPack() {
+		return real_test_pack;
+	}
+	
+	@Nullable
+	public String[] getRealTestNames() {
+		return real_test_names;
+	}
+	
+	/** returns the result-pack given to #setResultPack, or else generates a result-pack (the first time) with a
+	 * result for each synthetic PHPT
+	 * 
+	 * @return NULL if result-pack couldn't be generated
+	 */
+	@Nullable
+	public synchronized File getResultPack() {
+		if (result_pack_dir==null && !result_pack_generated) {
+			result_pack_generated = true;
+			try {
+				result_pack_dir = createSyntheticResultPack();
+			} catch ( Exception ex ) {
+				ConsoleManagerUtil.printStackTrace(BenchmarkFixtures.class, ex);
+			}
+		}
+		return result_pack_dir;
+	}
+	
+	protected File createSyntheticResultPack() throws Exception {
+		LocalConsoleManager cm = new LocalConsoleManager();
+		PhpResultPackWriter writer = new PhpResultPackWriter(
+				host,
+				cm,
+				new File(fs.joinIntoOnePath(temp_dir, "result-pack")),
+				new SyntheticPhpBuild(fs.joinIntoOnePath(temp_dir, "php")),
+				Config.loadConfigFromFiles(cm, new File[0])
+			);
+		ScenarioSetSetup scenario_set_setup = ScenarioSetSetup.describeScenarioSet(ScenarioSet.getDefaultScenarioSets().get(0), EScenarioSetPermutationLayer.FUNCTIONAL_TEST_CORE);
+		try {
+			PhptTestCase test_case;
+			EPhptTestStatus status;
+			for ( int i=0 ; i < SYNTHETIC_PHPT_COUNT ; i++ ) {
+				test_case = PhptTestCase.load(host, synthetic_test_pack, synthetic_test_names[i], null);
+				status = SYNTHETIC_RESULT_STATUSES[i % SYNTHETIC_RESULT_STATUSES.length];
+				writer.addResult(host, scenario_set_setup, synthetic_test_pack, new PhptTestResult(host, status, test_case, status==EPhptTestStatus.FAIL ? expectf_output[i]+"\nunexpected output" : expectf_output[i]));
+			}
+			// writes tally and status lists, so the index of the result-pack gets written when it's closed
+			writer.notifyPhptFinished(host, scenario_set_setup, synthetic_test_pack);
+		} finally {
+			// wait until all results are written
+			writer.close(true);
+		}
+		return writer.getResultPackPath();
+	} // end protected File createSyntheticResultPack
+	
+	/** PhpBuild with fixed build info, so no PHP build is needed to write a result-pack */
+	protected static class SyntheticPhpBuild extends PhpBuild {
+		
+		protected SyntheticPhpBuild(String build_path) {
+			super(build_path);
+		}
+		
+		@Override
+		public PhpBuildInfo getBuildInfo(ConsoleManager cm, AHost host) {
+			return new PhpBuildInfo(EBuildBranch.PHP_7_4, "r0000000", EBuildType.NTS, ECompiler.VC15, ECPUArch.X64, EOSType.WIN32);
+		}
+		
+	} // end protected static class SyntheticPhpBuild
+	
+	public String[] getExpectF() {
+		return expectf;
+	}
+	
+	public String[] getExpectFOutput() {
+		return expectf_output;
+	}
+	
+	public String[] getExpectRegex() {
+		return expectregex;
+	}
+	
+	public String[] getExpectRegexOutput() {
+		return expectregex_output;
+	}
+	
+	public String[] getLookupNames() {
+		return lookup_names;
+	}
+	
+	public byte[][] getCharsetLines() {
+		return charset_lines;
+	}
+	
+	public byte[] getCharsetText() {
+		return charset_text;
+	}
+	
+	public void close() {
+		host.mDelete(temp_dir);
+	}
+	
+	/* ------------------------------- */
+	
+	protected static String createPhpt(int i, String expect_section, String expect) {
+		StringBuilder sb = new StringBuilder(1024);
+		sb.append("--TEST--\n");
+		sb.append("Synthetic test ").append(i).append(" (var_dump and warnings)\n");
+		if (i % 2 == 0) {
+			sb.append("--SKIPIF--\n");
+			sb.append("<?php if (!extension_loaded('standard')) die('skip standard extension not loaded'); ?>\n");
+		}
+		sb.append("--INI--\n");
+		sb.append("precision=14\n");
+		sb.append("error_reporting=E_ALL\n");
+		sb.append("--FILE--\n");
+		sb.append("<?php\n");
+		for ( int j=0 ; j < blockCount(i) ; j++ ) {
+			sb.append("$a = array(").append(i+j).append(", 'name' => 'value_").append(i).append("_").append(j).append("');\n");
+			sb.append("var_dump($a);\n");
+			sb.append("var_dump(").append(i).append(".").append(j+1).append(");\n");
+			sb.append("var_dump(fopen('missing_").append(i).append("_").append(j).append(".txt', 'r'));\n");
+		}
+		sb.append("echo \"Done\\n\";\n");
+		sb.append("?>\n");
+		sb.append("--").append(expect_section).append("--\n");
+		sb.append(expect).append("\n");
+		return sb.toString();
+	}
+	
+	protected static int blockCount(int i) {
+		return 1 + (i % 5);
+	}
+	
+	protected static String createExpectF(int i) {
+		StringBuilder sb = new StringBuilder(512);
+		for ( int j=0 ; j < blockCount(i) ; j++ ) {
+			sb.append("array(%d) {\n");
+			sb.append("  [0]=>\n");
+			sb.append("  int(%d)\n");
+			sb.append("  [\"name\"]=>\n");
+			sb.append("  string(%d) \"%s\"\n");
+			sb.append("}\n");
+			sb.append("float(%f)\n");
+			sb.append("\n");
+			sb.append("Warning: fopen(%s): failed to open stream: No such file or directory in %s on line %d\n");
+			sb.append("bool(false)\n");
+		}
+		sb.append("Done");
+		return sb.toString();
+	}
+	
+	protected static String createExpectRegex(int i) {
+		StringBuilder sb = new StringBuilder(512);
+		for ( int j=0 ; j < blockCount(i) ; j++ ) {
+			sb.append("array\\(\\d+\\) \\{\n");
+			sb.append("  \\[0\\]=>\n");
+			sb.append("  int\\(\\d+\\)\n");
+			sb.append("  \\[\"name\"\\]=>\n");
+			sb.append("  string\\(\\d+\\) \"[^\"]+\"\n");
+			sb.append("\\}\n");
+			sb.append("float\\([0-9.]+\\)\n");
+			sb.append("\n");
+			sb.append("Warning: fopen\\(.+\\): failed to open stream: No such file or directory in .+ on line \\d+\n");
+			sb.append("bool\\(false\\)\n");
+		}
+		sb.append("Done");
+		return sb.toString();
+	}
+	
+	protected static String createOutput(int i) {
+		StringBuilder sb = new StringBuilder(512);
+		for ( int j=0 ; j < blockCount(i) ; j++ ) {
+			final String value = "value_"+i+"_"+j;
+			sb.append("array(2) {\n");
+			sb.append("  [0]=>\n");
+			sb.append("  int(").append(i+j).append(")\n");
+			sb.append("  [\"name\"]=>\n");
+			sb.append("  string(").append(value.length()).append(") \"").append(value).append("\"\n");
+			sb.append("}\n");
+			sb.append("float(").append(i).append(".").append(j+1).append(")\n");
+			sb.append("\n");
+			sb.append("Warning: fopen(missing_").append(i).append("_").append(j).append(".txt): failed to open stream: No such file or directory in /php-src/ext/synthetic").append(i % 8).append("/tests/test_").append(i).append(".php on line ").append(4 + j * 4).append("\n");
+			sb.append("bool(false)\n");
+		}
+		sb.append("Done");
+		return sb.toString();
+	}
+	
+	/** names of tests that are and aren't in PhptTestCase#SLOW_TESTS, #SLOW_EXTS and #NON_THREAD_SAFE_EXTENSIONS */
+	protected static String[] createLookupNames() {
+		final String[] prefixes = new String[]{
+				"Zend/tests/bug",
+				"tests/lang/operators/",
+				"ext/standard/tests/file/mkdir_",
+				"ext/standard/tests/file/fgetcsv_",
+				"ext/standard/tests/strings/str_",
+				"ext/standard/tests/streams/stream_get_",
+				"ext/mysqli/tests/mysqli_",
+				"ext/phar/tests/phar_",
+				"ext/session/tests/session_",
+				"ext/date/tests/date_",
+				"ext/spl/tests/spl_autoload_",
+				"ext/mbstring/tests/mb_"
+			};
+		String[] names = new String[prefixes.length * 16 + 2];
+		int n = 0;
+		for ( int i=0 ; i < 16 ; i++ ) {
+			for ( String prefix : prefixes )
+				names[n++] = prefix + (i * 37) + ".phpt";
+		}
+		// exact matches for SLOW_TESTS
+		names[n++] = "ext/date/tests/date_diff.phpt";
+		names[n++] = "ext/oci8/tests/bug42496_1.phpt";
+		return names;
+	}
+	
+	protected static byte[][] createCharsetLines() throws IOException {
+		return new byte[][] {
+				"string(11) \"hello world\"".getBytes("US-ASCII"),
+				"I\u00f1t\u00ebrn\u00e2ti\u00f4n\u00e0liz\u00e6ti\u00f8n: \u2603 \u2192 \u65e5\u672c\u8a9e\u30c6\u30ad\u30b9\u30c8".getBytes("UTF-8"),
+				"caf\u00e9, r\u00e9sum\u00e9, na\u00efve, fa\u00e7ade, Gr\u00f6\u00dfe".getBytes("ISO-8859-1"),
+				"\u65e5\u672c\u8a9e\u306e\u30c6\u30b9\u30c8\u3067\u3059\u3002\u6587\u5b57\u30b3\u30fc\u30c9".getBytes("Shift_JIS"),
+				"Warning: fopen(missing.txt): failed to open stream: No such file or directory in /php-src/test.php on line 3".getBytes("US-ASCII"),
+				"\u041f\u0440\u0438\u0432\u0435\u0442, \u043c\u0438\u0440! \u041f\u0440\u043e\u0432\u0435\u0440\u043a\u0430 \u043a\u043e\u0434\u0438\u0440\u043e\u0432\u043a\u0438".getBytes("ISO-8859-5"),
+				"\u4e2d\u6587\u6d4b\u8bd5\uff0c\u5b57\u7b26\u96c6\u68c0\u6d4b".getBytes("GB2312"),
+				"\ud55c\uad6d\uc5b4 \ubb38\uc790 \uc778\ucf54\ub529 \ud14c\uc2a4\ud2b8".getBytes("EUC-KR")
+			};
+	}
+
+} // end public class BenchmarkFixtures
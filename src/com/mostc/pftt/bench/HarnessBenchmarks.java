@@ -0,0 +1,787 @@
+package com.mostc.pftt.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.kex.BuiltinDHFactories;
+import org.apache.sshd.common.kex.KeyExchange;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.ServerBuilder;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.PasswordAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+
+import org.kxml2.io.KXmlSerializer;
+
+import com.github.mattficken.io.ByLineReader;
+import com.github.mattficken.io.DefaultCharsetDeciderDecoder;
+import com.github.mattficken.io.MultiCharsetByLineReader;
+import com.mostc.pftt.host.Host;
+import com.mostc.pftt.host.HostGroup;
+import com.mostc.pftt.host.LocalHost;
+import com.mostc.pftt.host.PSCFrameReader;
+import com.mostc.pftt.host.PSCFrameWriter;
+import com.mostc.pftt.host.PosixLocalHost;
+import com.mostc.pftt.host.SSHConnectionPool;
+import com.mostc.pftt.host.WindowsLocalHost;
+import com.mostc.pftt.model.core.EPhptSection;
+import com.mostc.pftt.model.core.EPhptTestStatus;
+import com.mostc.pftt.model.core.PhptExpectFMatcher;
+import com.mostc.pftt.model.core.PhptSourceTestPack;
+import com.mostc.pftt.model.core.PhptTestCase;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.LocalConsoleManager;
+import com.mostc.pftt.results.PhpResultPackReader;
+import com.mostc.pftt.results.PhptTestResult;
+import com.mostc.pftt.runner.AbstractPhptTestCaseRunner;
+import com.mostc.pftt.util.IClosable;
+import com.mostc.pftt.util.TimerUtil;
+import com.mostc.pftt.util.apache.regexp.RE;
+import com.mostc.pftt.util.apache.regexp.RECompiler;
+import com.sshtools.j2ssh.SftpClient;
+import com.sshtools.j2ssh.SshClient;
+import com.sshtools.j2ssh.authentication.AuthenticationProtocolState;
+import com.sshtools.j2ssh.authentication.PasswordAuthenticationClient;
+import com.sshtools.j2ssh.transport.HostKeyVerification;
+import com.sshtools.j2ssh.transport.publickey.SshPublicKey;
+
+/** Microbenchmarks of the code PFTT runs for every test (or every line of output).
+ *
+ * Names are ClassName.methodName of the code measured so results can be tracked from run to run even if the
+ * benchmark code changes.
+ *
+ * @see PfttBench
+ * @author Matt Ficken
+ *
+ */
+
+public final class HarnessBenchmarks {
+
+	/** returns all the benchmarks, in the order they should be run */
+	public static List<Microbenchmark> createAll() {
+		ArrayList<Microbenchmark> list = new ArrayList<Microbenchmark>(16);
+		list.add(new PhptLoad("PhptTestCase.load", false));
+		list.add(new PhptLoad("PhptTestCase.load[test-pack]", true));
+		list.add(new GetExpectedCompiled());
+		list.add(new CompileExpectF());
+		list.add(new MatchRegex());
+		list.add(new MatchExpectF());
+		list.add(new EqualsNoWS());
+		list.add(new DecideCharset());
+		list.add(new ReadLines());
+		list.add(new SerialResult());
+		list.add(new SendResult("PSCAgentServer.sendResult[xml]", false, false));
+		list.add(new SendResult("PSCFrameWriter.writeResult", true, false));
+		list.add(new SendResult("PSCFrameWriter.writeResult[deflate]", true, true));
+		list.add(new SlowTestLookup());
+		list.add(new NonThreadSafeLookup());
+		list.add(new OpenResultPack());
+		list.add(new TimerCreateClose("TimerUtil.waitSeconds", false, 1));
+		list.add(new TimerCreateClose("TimerUtil.waitSeconds[8 threads]", false, 8));
+		list.add(new TimerCreateClose("TimerUtil.waitSeconds[thread-per-timer]", true, 1));
+		list.add(new TimerCreateClose("TimerUtil.waitSeconds[thread-per-timer,8 threads]", true, 8));
+		list.add(new HostGroupExec(1));
+		list.add(new HostGroupExec(4));
+		list.add(new SftpTransfer(1));
+		list.add(new SftpTransfer(4));
+		return list;
+	}
+	
+	/** reads and parses the sections of PHPTs */
+	protected static class PhptLoad extends Microbenchmark {
+		protected final boolean real;
+		protected LocalHost host;
+		protected PhptSourceTestPack test_pack;
+		protected String[] names;
+		protected int i;
+		
+		protected PhptLoad(String name, boolean real) {
+			super(name);
+			this.real = real;
+		}
+		
+		@Override
+		public String getSkipReason(BenchmarkFixtures fx) {
+			return real && fx.getRealTestPack()==null ? "no test-pack given (-test_pack)" : null;
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			host = fx.getHost();
+			test_pack = real ? fx.getRealTestPack() : fx.getSyntheticTestPack();
+			names = real ? fx.getRealTestNames() : fx.getSyntheticTestNames();
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			return PhptTestCase.load(host, test_pack, names[i++ % names.length], null);
+		}
+	
+	} // end protected static class PhptLoad
+	
+	/** prepares EXPECTF section for a new PhptTestCase and gets its compiled program (from PhptExpectedCache after the first time) */
+	protected static class GetExpectedCompiled extends Microbenchmark {
+		protected LocalHost host;
+		protected PhptSourceTestPack test_pack;
+		protected String[] names, expectf;
+		protected int i;
+		
+		protected GetExpectedCompiled() {
+			super("PhptTestCase.getExpectedCompiled");
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			host = fx.getHost();
+			test_pack = fx.getSyntheticTestPack();
+			names = fx.getSyntheticTestNames();
+			expectf = fx.getExpectF();
+		}
+		
+		@Override
+		public Object run() {
+			final int n = i++ % expectf.length;
+			PhptTestCase test_case = new PhptTestCase(test_pack, names[n]);
+			test_case.put(EPhptSection.EXPECTF, expectf[n]);
+			return test_case.getExpectedCompiled(host, null, null);
+		}
+	
+	} // end protected static class GetExpectedCompiled
+	
+	/** compiles EXPECTF section to a regular expression (what PhptExpectedCache does for each miss) */
+	protected static class CompileExpectF extends Microbenchmark {
+		protected String[] expectf;
+		protected int i;
+		
+		protected CompileExpectF() {
+			super("RECompiler.compile");
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			expectf = fx.getExpectF();
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			return new RECompiler().compile(PhptTestCase.prepareExpectF(expectf[i++ % expectf.length].trim()));
+		}
+	
+	} // end protected static class CompileExpectF
+	
+	/** matches test output against compiled EXPECTREGEX */
+	protected static class MatchRegex extends Microbenchmark {
+		protected RE[] regex;
+		protected String[] output;
+		protected int i;
+		
+		protected MatchRegex() {
+			super("RE.match");
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) throws Exception {
+			String[] expectregex = fx.getExpectRegex();
+			regex = new RE[expectregex.length];
+			for ( int j=0 ; j < regex.length ; j++ )
+				regex[j] = new RE(new RECompiler().compile(expectregex[j]));
+			output = fx.getExpectRegexOutput();
+		}
+		
+		@Override
+		public Object run() {
+			final int n = i++ % regex.length;
+			return regex[n].match(output[n]);
+		}
+	
+	} // end protected static class MatchRegex
+	
+	/** matches test output against compiled EXPECTF */
+	protected static class MatchExpectF extends Microbenchmark {
+		protected PhptExpectFMatcher[] matchers;
+		protected String[] output;
+		protected int i;
+		
+		protected MatchExpectF() {
+			super("PhptExpectFMatcher.match");
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			String[] expectf = fx.getExpectF();
+			matchers = new PhptExpectFMatcher[expectf.length];
+			for ( int j=0 ; j < matchers.length ; j++ )
+				matchers[j] = PhptExpectFMatcher.compile(expectf[j]);
+			output = fx.getExpectFOutput();
+		}
+		
+		@Override
+		public Object run() {
+			final int n = i++ % matchers.length;
+			return matchers[n].match(output[n]);
+		}
+	
+	} // end protected static class MatchExpectF
+	
+	/** compares expected and actual output, ignoring whitespace */
+	protected static class EqualsNoWS extends Microbenchmark {
+		protected String[] a, b;
+		protected int i;
+		
+		protected EqualsNoWS() {
+			super("AbstractPhptTestCaseRunner.equalsNoWS");
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			String[] output = fx.getExpectFOutput();
+			a = new String[output.length];
+			b = new String[output.length];
+			for ( int j=0 ; j < output.length ; j++ ) {
+				a[j] = output[j];
+				switch (j % 3) {
+				case 0:
+					// same except for line endings (ex: test run on Windows)
+					b[j] = output[j].replace("\n", "\r\n");
+					break;
+				case 1:
+					// same except for indentation and trailing whitespace
+					b[j] = output[j].replace("  ", "\t") + "\n\n";
+					break;
+				default:
+					// different (the usual case for a failing test)
+					b[j] = output[(j + 1) % output.length];
+				}
+			}
+		}
+		
+		@Override
+		public Object run() {
+			final int n = i++ % a.length;
+			return AbstractPhptTestCaseRunner.equalsNoWS(a[n], b[n]);
+		}
+	
+	} // end protected static class EqualsNoWS
+	
+	/** guesses the charset of a line of output */
+	protected static class DecideCharset extends Microbenchmark {
+		protected byte[][] lines;
+		protected int i;
+		
+		protected DecideCharset() {
+			super("DefaultCharsetDeciderDecoder.decideCharset");
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			lines = fx.getCharsetLines();
+		}
+		
+		@Override
+		public Object run() {
+			final byte[] line = lines[i++ % lines.length];
+			DefaultCharsetDeciderDecoder cdd = PhptTestCase.newCharsetDeciderDecoder();
+			cdd.decideCharset(line, 0, line.length);
+			return cdd.getCommonCharset();
+		}
+	
+	} // end protected static class DecideCharset
+	
+	/** reads lines of text in several charsets, detecting the charset of each line (how PHPTs and output are read) */
+	protected static class ReadLines extends Microbenchmark {
+		protected byte[] text;
+		
+		protected ReadLines() {
+			super("MultiCharsetByLineReader.readLine");
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			text = fx.getCharsetText();
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			ByLineReader reader = new MultiCharsetByLineReader(new ByteArrayInputStream(text), PhptTestCase.newCharsetDeciderDecoder());
+			String line, last = null;
+			while (reader.hasMoreLines()) {
+				line = reader.readLine();
+				if (line==null)
+					break;
+				last = line;
+			}
+			return last;
+		}
+	
+	} // end protected static class ReadLines
+	
+	/** writes a failed PHPT's result (with its output) as XML (how it's stored in the result-pack) */
+	protected static class SerialResult extends Microbenchmark {
+		protected PhptTestResult[] results;
+		protected ByteArrayOutputStream out;
+		protected int i;
+		
+		protected SerialResult() {
+			super("PhptTestResult.serial");
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) throws Exception {
+			results = createFailResults(fx);
+			out = new ByteArrayOutputStream(16 * 1024);
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			out.reset();
+			KXmlSerializer serial = new KXmlSerializer();
+			serial.setOutput(out, "UTF-8");
+			results[i++ % results.length].serial(serial, true, null);
+			serial.flush();
+			return out.size();
+		}
+	
+	} // end protected static class SerialResult
+	
+	protected static PhptTestResult[] createFailResults(BenchmarkFixtures fx) throws Exception {
+		String[] names = fx.getSyntheticTestNames();
+		String[] output = fx.getExpectFOutput();
+		PhptTestResult[] results = new PhptTestResult[names.length];
+		for ( int j=0 ; j < names.length ; j++ ) {
+			PhptTestCase test_case = PhptTestCase.load(fx.getHost(), fx.getSyntheticTestPack(), names[j], null);
+			results[j] = new PhptTestResult(fx.getHost(), EPhptTestStatus.FAIL, test_case, output[(j + 1) % output.length]);
+		}
+		return results;
+	}
+	
+	/** sends failed PHPT results from agent to controller over a local pipe, as 1 XML stream or as binary frames.
+	 *
+	 * a thread on the other end of the pipe reads and decodes the frames (or drains the XML), like the controller.
+	 */
+	protected static class SendResult extends Microbenchmark {
+		protected final boolean binary, compress;
+		protected PhptTestResult[] results;
+		protected Pipe pipe;
+		protected OutputStream out;
+		protected KXmlSerializer serial;
+		protected PSCFrameWriter writer;
+		protected Thread read_thread;
+		protected int i;
+		
+		protected SendResult(String name, boolean binary, boolean compress) {
+			super(name);
+			this.binary = binary;
+			this.compress = compress;
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) throws Exception {
+			results = createFailResults(fx);
+			for ( PhptTestResult result : results ) {
+				// PSCAgentServer doesn't send the test case either
+				result.test_case = null;
+			}
+			pipe = Pipe.open();
+			final InputStream in = Channels.newInputStream(pipe.source());
+			read_thread = new Thread() {
+					@Override
+					public void run() {
+						try {
+							if (binary) {
+								PSCFrameReader reader = new PSCFrameReader(in);
+								PSCFrameReader.Frame frame;
+								while ( ( frame = reader.next() ) != null && !frame.isEnd() ) {}
+								reader.close();
+							} else {
+								byte[] buf = new byte[64 * 1024];
+								while ( in.read(buf) != -1 ) {}
+							}
+						} catch ( Exception ex ) {
+							ex.printStackTrace();
+						}
+					}
+				};
+			read_thread.setDaemon(true);
+			read_thread.start();
+			if (binary) {
+				out = Channels.newOutputStream(pipe.sink());
+				writer = new PSCFrameWriter(out, compress);
+			} else {
+				// same as System.out, which PSCAgentServer writes to
+				out = new BufferedOutputStream(Channels.newOutputStream(pipe.sink()), 8192);
+				serial = new KXmlSerializer();
+				serial.setOutput(out, "utf-8");
+			}
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			final PhptTestResult result = results[i++ % results.length];
+			if (binary) {
+				writer.writeResult(result);
+			} else {
+				synchronized(out) {
+					result.serial(serial);
+					serial.endDocument();
+					out.write('\n');
+				}
+			}
+			return result;
+		}
+		
+		@Override
+		public void teardown() throws Exception {
+			if (binary)
+				writer.close();
+			out.close();
+			read_thread.join();
+			pipe.source().close();
+		}
+	
+	} // end protected static class SendResult
+	
+	/** checks if a test is slow (@see PhptTestCase#SLOW_TESTS and #SLOW_EXTS) */
+	protected static class SlowTestLookup extends Microbenchmark {
+		protected PhptTestCase[] test_cases;
+		protected int i;
+		
+		protected SlowTestLookup() {
+			super("PhptTestCase.isSlowTest");
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			test_cases = createTestCases(fx);
+		}
+		
+		@Override
+		public Object run() {
+			return test_cases[i++ % test_cases.length].isSlowTest();
+		}
+	
+	} // end protected static class SlowTestLookup
+	
+	/** finds the group of non-thread-safe tests a test belongs to (@see LocalPhptTestPackRunner#handleNTS) */
+	protected static class NonThreadSafeLookup extends Microbenchmark {
+		protected PhptTestCase[] test_cases;
+		protected int i;
+		
+		protected NonThreadSafeLookup() {
+			super("PhptTestCase.NON_THREAD_SAFE_EXTENSIONS");
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			test_cases = createTestCases(fx);
+		}
+		
+		@Override
+		public Object run() {
+			final PhptTestCase test_case = test_cases[i++ % test_cases.length];
+			for ( String[] ext_names : PhptTestCase.NON_THREAD_SAFE_EXTENSIONS ) {
+				if (test_case.nameStartsWithAny(ext_names))
+					return ext_names;
+			}
+			return null;
+		}
+	
+	} // end protected static class NonThreadSafeLookup
+	
+	protected static PhptTestCase[] createTestCases(BenchmarkFixtures fx) {
+		String[] names = fx.getLookupNames();
+		PhptTestCase[] test_cases = new PhptTestCase[names.length];
+		for ( int j=0 ; j < names.length ; j++ )
+			test_cases[j] = new PhptTestCase(fx.getSyntheticTestPack(), names[j]);
+		return test_cases;
+	}
+	
+	/** opens a result-pack (to compare or report on it) */
+	protected static class OpenResultPack extends Microbenchmark {
+		protected LocalConsoleManager cm;
+		protected LocalHost host;
+		protected BenchmarkFixtures fx;
+		
+		protected OpenResultPack() {
+			super("PhpResultPackReader.open");
+		}
+		
+		@Override
+		public String getSkipReason(BenchmarkFixtures fx) {
+			return fx.getResultPack()==null ? "could not generate result-pack (use -result_pack)" : null;
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			this.fx = fx;
+			cm = new LocalConsoleManager();
+			host = fx.getHost();
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			PhpResultPackReader reader = PhpResultPackReader.open(cm, host, fx.getResultPack());
+			reader.close();
+			return reader;
+		}
+	
+	} // end protected static class OpenResultPack
+	
+	/** creates a timeout for a test and closes it before it expires (because the test finished in time), like test
+	 * runners do, on 1 or more threads at the same time.
+	 *
+	 * compares TimerUtil (TimingWheel) to how TimerUtil#waitSeconds used to work: start a thread that sleeps until the
+	 * timer expires, interrupt it to close.
+	 *
+	 * each operation creates and closes TIMERS_PER_OP timers, so thread_count=1 and thread_count=8 can be compared.
+	 */
+	protected static class TimerCreateClose extends Microbenchmark {
+		protected static final int TIMERS_PER_OP = 64;
+		/** long enough that no timer expires during the benchmark */
+		protected static final int TIMEOUT_SECONDS = 60;
+		protected static final Runnable NOOP = new Runnable() {
+				@Override
+				public void run() {
+				}
+			};
+		protected final boolean thread_per_timer;
+		protected final int thread_count;
+		protected ExecutorService exec;
+		
+		protected TimerCreateClose(String name, boolean thread_per_timer, int thread_count) {
+			super(name);
+			this.thread_per_timer = thread_per_timer;
+			this.thread_count = thread_count;
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			if (thread_count > 1)
+				exec = Executors.newFixedThreadPool(thread_count);
+		}
+		
+		protected IClosable create(final Runnable r) {
+			if (!thread_per_timer)
+				return TimerUtil.waitSeconds(TIMEOUT_SECONDS, r);
+			final AtomicBoolean closed = new AtomicBoolean(false);
+			final Thread t = new Thread() {
+					@Override
+					public void run() {
+						try {
+							Thread.sleep(TIMEOUT_SECONDS*1000);
+						} catch ( InterruptedException ex ) {
+						}
+						if (!closed.get())
+							r.run();
+					}
+				};
+			t.setDaemon(true);
+			t.start();
+			return new IClosable() {
+					@Override
+					public void close(ConsoleManager cm) {
+						closed.set(true);
+						t.interrupt();
+					}
+				};
+		}
+		
+		protected void createClose(int count) {
+			for ( int j=0 ; j < count ; j++ )
+				create(NOOP).close(null);
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			if (exec==null) {
+				createClose(TIMERS_PER_OP);
+				return this;
+			}
+			ArrayList<Future<?>> futures = new ArrayList<Future<?>>(thread_count);
+			for ( int j=0 ; j < thread_count ; j++ ) {
+				final int count = TIMERS_PER_OP * (j + 1) / thread_count - TIMERS_PER_OP * j / thread_count;
+				futures.add(exec.submit(new Runnable() {
+						@Override
+						public void run() {
+							createClose(count);
+						}
+					}));
+			}
+			for ( Future<?> future : futures )
+				future.get();
+			return futures;
+		}
+		
+		@Override
+		public void teardown() {
+			if (exec!=null)
+				exec.shutdown();
+		}
+	
+	} // end protected static class TimerCreateClose
+	
+	/** runs a command on a group of LocalHosts. with the hosts run in parallel (@see HostGroup#fanOut), more hosts
+	 * should take about as long as 1 */
+	protected static class HostGroupExec extends Microbenchmark {
+		protected final int host_count;
+		protected HostGroup group;
+		protected String cmd;
+		
+		protected HostGroupExec(int host_count) {
+			super("HostGroup.exec["+host_count+" hosts]");
+			this.host_count = host_count;
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) {
+			group = new HostGroup(host_count);
+			for ( int j=0 ; j < host_count ; j++ )
+				group.add(LocalHost.isLocalhostWindows() ? new WindowsLocalHost() : new PosixLocalHost());
+			cmd = LocalHost.isLocalhostWindows() ? "cmd /C exit 0" : "true";
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			return group.exec(cmd, Host.ONE_MINUTE);
+		}
+	
+	} // end protected static class HostGroupExec
+	
+	/** uploads and downloads files through an SSHConnectionPool to an Apache MINA SSHD server on loopback (like
+	 * SSHServer, which runs on Windows hosts), on 1 or more SFTP channels at the same time (@see SSHHost#upload).
+	 *
+	 * each operation transfers the same files, so streams=1 and streams=4 can be compared.
+	 */
+	protected static class SftpTransfer extends Microbenchmark {
+		protected static final int FILE_COUNT = 8;
+		protected static final int FILE_SIZE = 256*1024;
+		protected final int streams;
+		protected SshServer sshd;
+		protected SSHConnectionPool pool;
+		protected ExecutorService exec;
+		protected File dir;
+		protected byte[] data;
+		
+		protected SftpTransfer(int streams) {
+			super("SSHConnectionPool.borrowSftp["+streams+" streams]");
+			this.streams = streams;
+		}
+		
+		@Override
+		public void setup(BenchmarkFixtures fx) throws Exception {
+			dir = File.createTempFile("pftt_bench_sftp", "");
+			dir.delete();
+			dir.mkdirs();
+			
+			sshd = SshServer.setUpDefaultServer();
+			ArrayList<NamedFactory<Command>> f = new ArrayList<NamedFactory<Command>>(1);
+			f.add(new SftpSubsystemFactory());
+			sshd.setSubsystemFactories(f);
+			// j2ssh only supports diffie-hellman-group1-sha1 and RSA/DSA host keys
+			List<NamedFactory<KeyExchange>> kex = new ArrayList<NamedFactory<KeyExchange>>(ServerBuilder.setUpDefaultKeyExchanges(false));
+			kex.add(ServerBuilder.DH2KEX.transform(BuiltinDHFactories.dhg1));
+			sshd.setKeyExchangeFactories(kex);
+			SimpleGeneratorHostKeyProvider key = new SimpleGeneratorHostKeyProvider(new File(dir, "hostkey.ser"));
+			key.setAlgorithm("RSA");
+			key.setKeySize(2048);
+			sshd.setKeyPairProvider(key);
+			sshd.setPasswordAuthenticator(new PasswordAuthenticator() {
+					@Override
+					public boolean authenticate(String username, String password, ServerSession session) {
+						return true;
+					}
+				});
+			sshd.setHost("127.0.0.1");
+			sshd.setPort(0);
+			sshd.start();
+			final int port = sshd.getPort();
+			
+			pool = new SSHConnectionPool() {
+					@Override
+					protected SshClient connect() throws IOException, IllegalStateException {
+						SshClient ssh = new SshClient();
+						ssh.connect("127.0.0.1", port, new HostKeyVerification() {
+								@Override
+								public boolean verifyHost(String host, SshPublicKey pk) {
+									return true;
+								}
+							});
+						PasswordAuthenticationClient pwd = new PasswordAuthenticationClient();
+						pwd.setUsername("pftt");
+						pwd.setPassword("pftt");
+						if (ssh.authenticate(pwd)!=AuthenticationProtocolState.COMPLETE)
+							throw new IllegalStateException("login failed");
+						return ssh;
+					}
+				};
+			exec = Executors.newFixedThreadPool(streams);
+			data = new byte[FILE_SIZE];
+			new Random(1).nextBytes(data);
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(streams);
+			for ( int j=0 ; j < streams ; j++ ) {
+				final int stream = j;
+				futures.add(exec.submit(new Callable<Boolean>() {
+						@Override
+						public Boolean call() throws Exception {
+							boolean ok = true;
+							SftpClient sftp = pool.borrowSftp();
+							try {
+								for ( int k=stream ; k < FILE_COUNT ; k += streams ) {
+									String path = new File(dir, "file"+k).getAbsolutePath();
+									sftp.put(new ByteArrayInputStream(data), path);
+									ByteArrayOutputStream local = new ByteArrayOutputStream(FILE_SIZE);
+									sftp.get(path, local);
+									ok &= Arrays.equals(data, local.toByteArray());
+								}
+							} finally {
+								pool.returnSftp(sftp);
+							}
+							return ok;
+						}
+					}));
+			}
+			boolean ok = true;
+			for ( Future<Boolean> future : futures )
+				ok &= future.get();
+			if (!ok)
+				throw new IOException("downloaded file doesn't match uploaded file");
+			return futures;
+		}
+		
+		@Override
+		public void teardown() throws Exception {
+			exec.shutdown();
+			pool.close();
+			sshd.stop(true);
+			for ( File file : dir.listFiles() )
+				file.delete();
+			dir.delete();
+		}
+	
+	} // end protected static class SftpTransfer
+	
+	private HarnessBenchmarks() {}
+
+} // end public final class HarnessBenchmarks
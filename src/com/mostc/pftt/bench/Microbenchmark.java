@@ -0,0 +1,67 @@
+package com.mostc.pftt.bench;
+
+import javax.annotation.Nullable;
+
+/** 1 operation of the harness to measure (ex: loading a PHPT, matching its output).
+ *
+ * MicrobenchmarkRunner calls #run over and over on 1 thread and counts how many times it ran per second.
+ * Anything that shouldn't be measured (reading fixture files, etc...) goes in #setup.
+ *
+ * @see HarnessBenchmarks
+ * @see MicrobenchmarkRunner
+ * @author Matt Ficken
+ *
+ */
+
+public abstract class Microbenchmark {
+	protected final String name;
+	
+	/**
+	 *
+	 * @param name - ClassName.methodName of the code being measured, used to compare results between runs
+	 */
+	public Microbenchmark(String name) {
+		this.name = name;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/** returns why this benchmark can't be run with the given fixtures (ex: optional fixture not provided), or null to run it
+	 *
+	 * @param fx
+	 * @return
+	 */
+	@Nullable
+	public String getSkipReason(BenchmarkFixtures fx) {
+		return null;
+	}
+	
+	/** prepares for #run. not measured.
+	 *
+	 * @param fx
+	 * @throws Exception
+	 */
+	public void setup(BenchmarkFixtures fx) throws Exception {
+	}
+	
+	/** runs the operation once.
+	 *
+	 * should cycle through the fixture data so the JIT doesn't see the same input every time.
+	 *
+	 * @return result of operation. MicrobenchmarkRunner keeps it so the JIT can't skip the operation as dead code
+	 * @throws Exception
+	 */
+	public abstract Object run() throws Exception;
+	
+	/** cleans up after #run. not measured. */
+	public void teardown() throws Exception {
+	}
+	
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+} // end public abstract class Microbenchmark
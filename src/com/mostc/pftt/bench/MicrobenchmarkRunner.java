@@ -0,0 +1,226 @@
+package com.mostc.pftt.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/** Runs Microbenchmarks and measures their throughput (operations per second).
+ *
+ * Each benchmark is run for some warmup iterations (so the JIT compiles it), then for some measured iterations.
+ * Each iteration runs the benchmark for a fixed time on 1 thread.
+ *
+ * Results are written as JSON in the same layout as JMH's `-rf json` (benchmark, mode, primaryMetric.score,
+ * scoreError, rawData, ...) so existing tools for tracking JMH results can read them.
+ *
+ * @see PfttBench
+ * @author Matt Ficken
+ *
+ */
+
+public class MicrobenchmarkRunner {
+	public static final int DEFAULT_WARMUP_ITERATIONS = 5;
+	public static final int DEFAULT_ITERATIONS = 10;
+	public static final int DEFAULT_ITERATION_MILLIS = 1000;
+	/** t-distribution critical values for a 99.9% confidence interval, indexed by degrees of freedom (same confidence JMH uses) */
+	protected static final double[] T_999 = new double[] {
+			Double.NaN, 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+			4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+			3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646
+		};
+	protected final int warmup_iterations, iterations, iteration_millis;
+	/** result of each operation is stored here so the JIT can't remove the operation as dead code */
+	public Object blackhole;
+	
+	public MicrobenchmarkRunner() {
+		this(DEFAULT_WARMUP_ITERATIONS, DEFAULT_ITERATIONS, DEFAULT_ITERATION_MILLIS);
+	}
+	
+	public MicrobenchmarkRunner(int warmup_iterations, int iterations, int iteration_millis) {
+		this.warmup_iterations = Math.max(0, warmup_iterations);
+		this.iterations = Math.max(1, iterations);
+		this.iteration_millis = Math.max(1, iteration_millis);
+	}
+	
+	/** result of 1 benchmark */
+	public class Result {
+		public final String name;
+		/** operations per second of each measured iteration */
+		public final double[] ops_per_sec;
+		/** reason benchmark wasn't run, or null if it was */
+		@Nullable
+		public final String skip_reason;
+		
+		protected Result(String name, double[] ops_per_sec, @Nullable String skip_reason) {
+			this.name = name;
+			this.ops_per_sec = ops_per_sec;
+			this.skip_reason = skip_reason;
+		}
+		
+		public boolean isSkipped() {
+			return skip_reason != null;
+		}
+		
+		/** mean operations per second */
+		public double getScore() {
+			double sum = 0;
+			for ( double d : ops_per_sec )
+				sum += d;
+			return sum / ops_per_sec.length;
+		}
+		
+		/** half-width of the 99.9% confidence interval of #getScore */
+		public double getScoreError() {
+			final int n = ops_per_sec.length;
+			if (n < 2)
+				return Double.NaN;
+			final double mean = getScore();
+			double sq = 0;
+			for ( double d : ops_per_sec )
+				sq += (d - mean) * (d - mean);
+			final double stddev = Math.sqrt(sq / (n - 1));
+			return tCritical(n - 1) * stddev / Math.sqrt(n);
+		}
+		
+		public JSONObject toJSON() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("benchmark", name);
+			json.put("mode", "thrpt");
+			json.put("threads", 1);
+			json.put("forks", 0);
+			json.put("warmupIterations", warmup_iterations);
+			json.put("warmupTime", iteration_millis+" ms");
+			json.put("measurementIterations", iterations);
+			json.put("measurementTime", iteration_millis+" ms");
+			
+			JSONObject metric = new JSONObject();
+			final double score = getScore();
+			final double error = getScoreError();
+			metric.put("score", score);
+			if (!Double.isNaN(error)) {
+				metric.put("scoreError", error);
+				JSONArray confidence = new JSONArray();
+				confidence.put(score - error);
+				confidence.put(score + error);
+				metric.put("scoreConfidence", confidence);
+			}
+			metric.put("scoreUnit", "ops/s");
+			JSONArray raw = new JSONArray();
+			for ( double d : ops_per_sec )
+				raw.put(d);
+			// JMH has 1 array of iterations per fork
+			JSONArray raw_data = new JSONArray();
+			raw_data.put(raw);
+			metric.put("rawData", raw_data);
+			json.put("primaryMetric", metric);
+			return json;
+		}
+		
+		@Override
+		public String toString() {
+			if (isSkipped())
+				return String.format("%-50s skipped: %s", name, skip_reason);
+			final double error = getScoreError();
+			return String.format("%-50s %16.1f +- %12.1f ops/s", name, getScore(), Double.isNaN(error) ? 0.0d : error);
+		}
+	
+	} // end public class Result
+	
+	protected static double tCritical(int df) {
+		if (df < T_999.length)
+			return T_999[df];
+		// round down to the next listed degrees of freedom, so the interval is never too narrow
+		else if (df < 40)
+			return 3.646;
+		else if (df < 60)
+			return 3.551;
+		else if (df < 120)
+			return 3.460;
+		else
+			return 3.373;
+	}
+	
+	/** runs benchmark (setup, warmup, measure, teardown)
+	 *
+	 * @param b
+	 * @param fx
+	 * @return
+	 * @throws Exception
+	 */
+	public Result run(Microbenchmark b, BenchmarkFixtures fx) throws Exception {
+		String skip_reason = b.getSkipReason(fx);
+		if (skip_reason!=null)
+			return new Result(b.getName(), new double[0], skip_reason);
+		
+		b.setup(fx);
+		try {
+			// how many operations to run between checking the time (so reading the clock isn't what's measured)
+			long batch = 1;
+			for ( int i=0 ; i < warmup_iterations ; i++ )
+				batch = nextBatch(runIteration(b, batch));
+			
+			double[] ops_per_sec = new double[iterations];
+			for ( int i=0 ; i < iterations ; i++ ) {
+				ops_per_sec[i] = runIteration(b, batch);
+				batch = nextBatch(ops_per_sec[i]);
+			}
+			return new Result(b.getName(), ops_per_sec, null);
+		} finally {
+			b.teardown();
+		}
+	}
+	
+	/** check clock about every 100 microseconds */
+	protected static long nextBatch(double ops_per_sec) {
+		return Math.max(1L, (long) (ops_per_sec / 10000.0d));
+	}
+	
+	/** runs operation for iteration_millis
+	 *
+	 * @param b
+	 * @param batch
+	 * @return operations per second
+	 * @throws Exception
+	 */
+	protected double runIteration(Microbenchmark b, long batch) throws Exception {
+		final long start = System.nanoTime();
+		final long end = start + iteration_millis * 1000000L;
+		long ops = 0, now;
+		do {
+			for ( long j=0 ; j < batch ; j++ )
+				blackhole = b.run();
+			ops += batch;
+		} while ( ( now = System.nanoTime() ) < end );
+		return (ops * 1000000000.0d) / (now - start);
+	}
+	
+	/** writes results as a JSON array (skipped benchmarks aren't included)
+	 *
+	 * @param results
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void writeJSON(List<Result> results, File file) throws IOException {
+		JSONArray json = new JSONArray();
+		FileWriter fw = new FileWriter(file);
+		try {
+			for ( Result r : results ) {
+				if (!r.isSkipped())
+					json.put(r.toJSON());
+			}
+			fw.write(json.toString(4));
+			fw.write('\n');
+		} catch ( JSONException ex ) {
+			throw new IOException(ex.getMessage());
+		} finally {
+			fw.close();
+		}
+	}
+
+} // end public class MicrobenchmarkRunner
@@ -0,0 +1,111 @@
+package com.mostc.pftt.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.mattficken.io.StringUtil;
+import com.mostc.pftt.host.LocalHost;
+
+/** Runs the microbenchmarks of PFTT's own hot code paths so changes to PFTT can be checked for speedups/slowdowns.
+ *
+ * Runs offline on generated data (@see BenchmarkFixtures), so it doesn't need a PHP build. Results are printed and
+ * written as JSON (@see MicrobenchmarkRunner#writeJSON) to compare with results of other runs.
+ *
+ * Usage: pftt_bench [options] [benchmark name fragment ...]
+ *
+ * @see HarnessBenchmarks
+ * @author Matt Ficken
+ *
+ */
+
+public final class PfttBench {
+
+	protected static void help() {
+		System.out.println("Usage: pftt_bench [options] [benchmark name fragment ...]");
+		System.out.println();
+		System.out.println(" -o <file>           - write results as JSON to file (default: pftt_bench.json)");
+		System.out.println(" -wi <N>             - warmup iterations (default: "+MicrobenchmarkRunner.DEFAULT_WARMUP_ITERATIONS+")");
+		System.out.println(" -i <N>              - measured iterations (default: "+MicrobenchmarkRunner.DEFAULT_ITERATIONS+")");
+		System.out.println(" -t <millis>         - time of each iteration (default: "+MicrobenchmarkRunner.DEFAULT_ITERATION_MILLIS+")");
+		System.out.println(" -test_pack <dir>    - also load PHPTs from this PHPT test-pack");
+		System.out.println(" -result_pack <dir>  - benchmark opening this result-pack instead of a generated one");
+		System.out.println(" -list               - list benchmarks and exit");
+		System.out.println();
+		System.out.println("Benchmarks:");
+		for ( Microbenchmark b : HarnessBenchmarks.createAll() )
+			System.out.println(" "+b.getName());
+	}
+	
+	public static void main(String[] args) throws Exception {
+		File json_file = new File("pftt_bench.json");
+		int warmup_iterations = MicrobenchmarkRunner.DEFAULT_WARMUP_ITERATIONS;
+		int iterations = MicrobenchmarkRunner.DEFAULT_ITERATIONS;
+		int iteration_millis = MicrobenchmarkRunner.DEFAULT_ITERATION_MILLIS;
+		String test_pack = null, result_pack = null;
+		ArrayList<String> name_fragments = new ArrayList<String>(2);
+		for ( int i=0 ; i < args.length ; i++ ) {
+			if (args[i].equals("-o") && i+1 < args.length) {
+				json_file = new File(args[++i]);
+			} else if (args[i].equals("-wi") && i+1 < args.length) {
+				warmup_iterations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-i") && i+1 < args.length) {
+				iterations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-t") && i+1 < args.length) {
+				iteration_millis = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-test_pack") && i+1 < args.length) {
+				test_pack = args[++i];
+			} else if (args[i].equals("-result_pack") && i+1 < args.length) {
+				result_pack = args[++i];
+			} else if (args[i].equals("-list") || args[i].equals("-help") || args[i].equals("help")) {
+				help();
+				return;
+			} else if (args[i].startsWith("-")) {
+				System.err.println("User Error: unknown option "+args[i]);
+				help();
+				System.exit(-255);
+				return;
+			} else {
+				// lowercase: StringUtil#containsAnyIC only lowercases the name, not the fragments
+				name_fragments.add(args[i].toLowerCase());
+			}
+		}
+		
+		List<Microbenchmark> benchmarks = new ArrayList<Microbenchmark>();
+		for ( Microbenchmark b : HarnessBenchmarks.createAll() ) {
+			if (name_fragments.isEmpty() || StringUtil.containsAnyIC(b.getName(), name_fragments.toArray(new String[name_fragments.size()])))
+				benchmarks.add(b);
+		}
+		if (benchmarks.isEmpty()) {
+			System.err.println("User Error: no benchmarks match "+name_fragments);
+			System.exit(-255);
+			return;
+		}
+		
+		BenchmarkFixtures fx = BenchmarkFixtures.create(LocalHost.getInstance());
+		try {
+			if (test_pack!=null && !fx.setRealTestPack(test_pack))
+				System.err.println("PFTT: no PHPTs found in test-pack: "+test_pack);
+			if (result_pack!=null)
+				fx.setResultPack(new File(result_pack));
+			
+			MicrobenchmarkRunner runner = new MicrobenchmarkRunner(warmup_iterations, iterations, iteration_millis);
+			ArrayList<MicrobenchmarkRunner.Result> results = new ArrayList<MicrobenchmarkRunner.Result>(benchmarks.size());
+			for ( Microbenchmark b : benchmarks ) {
+				MicrobenchmarkRunner.Result r = runner.run(b, fx);
+				System.out.println(r);
+				results.add(r);
+			}
+			
+			MicrobenchmarkRunner.writeJSON(results, json_file);
+			System.out.println("PFTT: wrote results to: "+json_file.getAbsolutePath());
+		} finally {
+			fx.close();
+		}
+		// exit even though TimerUtil threads (non-daemon) are still running
+		System.exit(0);
+	} // end public static void main
+	
+	private PfttBench() {}
+
+} // end public final class PfttBench
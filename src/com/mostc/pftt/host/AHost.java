@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -270,6 +271,69 @@ public abstract class AHost extends Host implements IProgramRunner {
 		uploadCompressWith7Zip(cm, FileSystemScenario.toContext(clazz), src_host, src, dst);
 	}
 	
+	/** copies local source directory to destination on this host, sending only files that changed since the last
+	 * time (@see DeltaSync). If nothing was sent to the destination before, sends all of it like #uploadCompressWith7Zip.
+	 * 
+	 * @param cm
+	 * @param ctx_str
+	 * @param src_host - must be local
+	 * @param src
+	 * @param dst
+	 * @return
+	 * @throws IllegalStateException
+	 * @throws IOException
+	 * @throws Exception
+	 */
+	public DeltaSync.Result uploadSync(ConsoleManager cm, String ctx_str, AHost src_host, String src, String dst) throws IllegalStateException, IOException, Exception {
+		return new DeltaSync().sync(cm, ctx_str, src_host, src, this, dst);
+	}
+	
+	public DeltaSync.Result uploadSync(ConsoleManager cm, Class<?> clazz, String src, AHost src_host, String dst) throws IllegalStateException, IOException, Exception {
+		return uploadSync(cm, FileSystemScenario.toContext(clazz), src_host, src, dst);
+	}
+	
+	/** size and last-modified time of a file (@see #mListFiles) */
+	public static class FileStat {
+		public final long size, mtime;
+		
+		public FileStat(long size, long mtime) {
+			this.size = size;
+			this.mtime = mtime;
+		}
+		
+	} // end public static class FileStat
+	
+	/** lists every file in directory and its subdirectories, with its size and last-modified time.
+	 * 
+	 * this asks for each file separately. hosts that can list a whole directory with the size and time of each
+	 * file at once override this.
+	 * 
+	 * @param dir
+	 * @return relative path (/ separated) of each file. empty if dir doesn't exist
+	 */
+	public Map<String,FileStat> mListFiles(String dir) {
+		HashMap<String,FileStat> files = new HashMap<String,FileStat>();
+		mListFiles(dir, null, files);
+		return files;
+	}
+	
+	protected void mListFiles(String dir, String rel_dir, Map<String,FileStat> files) {
+		String[] names = mList(dir);
+		if (names==null)
+			return;
+		String path, rel_path;
+		for ( String name : names ) {
+			if (name.equals(".")||name.equals(".."))
+				continue;
+			path = joinIntoOnePath(dir, name);
+			rel_path = rel_dir == null ? name : rel_dir + "/" + name;
+			if (mIsDirectory(path))
+				mListFiles(path, rel_path, files);
+			else
+				files.put(rel_path, new FileStat(mSize(path), mMTime(path)));
+		}
+	}
+	
 	@Override
 	public String getTempDir() {
 		// store everything in one `temp` dir
@@ -1,9 +1,12 @@
 package com.mostc.pftt.host;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.List;
@@ -14,6 +17,7 @@ import org.kxml2.io.KXmlSerializer;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
+import com.github.mattficken.io.StringUtil;
 import com.mostc.pftt.main.Config;
 import com.mostc.pftt.model.ActiveTestPack;
 import com.mostc.pftt.model.SourceTestPack;
@@ -33,8 +37,12 @@ public abstract class AbstractRemoteTestPackRunner<A extends ActiveTestPack, S e
 	protected final AHost remote_host;
 	protected OutputStream stdin;
 	protected InputStream stdout;
+	/** agent process started by #startAgent, or null if #setAgentStreams was used */
+	protected AHost.ExecHandle agent_handle;
 	protected final KXmlParser parser;
 	protected final KXmlSerializer serial;
+	/** ask agent to compress binary frames (@see PSCProtocol) */
+	protected boolean compress_frames = true;
 	
 	public AbstractRemoteTestPackRunner(PhpResultPackWriter tmgr, ScenarioSet scenario_set, PhpBuild build, LocalHost host, AHost remote_host) {
 		super(scenario_set, build, host, host);
@@ -52,6 +60,7 @@ public abstract class AbstractRemoteTestPackRunner<A extends ActiveTestPack, S e
 			byte[] msg_bytes = msg_str.getBytes();
 			synchronized(stdin) {
 				stdin.write(msg_bytes);
+				stdin.flush();
 			}
 			return true;
 		} catch ( Throwable t ) {
@@ -60,18 +69,54 @@ public abstract class AbstractRemoteTestPackRunner<A extends ActiveTestPack, S e
 		return false;
 	}
 	
-	protected void commonRunStart() throws Exception {
-		/* TODO AHost.ExecHandle eh = remote_host.execThread(remote_host.isWindows()?remote_host.getPfttDir()+"/bin/pftt_agent.cmd":remote_host.getPfttDir()+"/bin/pftt_agent");
-		
-		stdin = eh.getSTDIN();
-		stdout = eh.getSTDOUT();
+	/** use already started agent (ex: a local process) instead of starting it on remote_host.
+	 * 
+	 * @param stdin - agent reads messages from this
+	 * @param stdout - agent writes results and messages to this (not its stderr too, or the stream will be corrupted)
+	 * @throws IOException
+	 */
+	public void setAgentStreams(OutputStream stdin, InputStream stdout) throws IOException {
+		this.stdin = stdin;
+		this.stdout = stdout;
+		serial.setOutput(stdin, "utf-8");
+	}
+	
+	/** starts agent on remote_host
+	 * 
+	 * @throws Exception
+	 */
+	protected void startAgent() throws Exception {
+		agent_handle = remote_host.execThread(remote_host.isWindows()?remote_host.getPfttDir()+"/bin/_pftt_agent.cmd":remote_host.getPfttDir()+"/bin/_pftt_agent");
 		
-		parser.setInput(stdout, "utf-8");*/
+		setAgentStreams(agent_handle.getSTDIN(), agent_handle.getSTDOUT());
+	}
+	
+	/** stops agent if it was started by #startAgent */
+	protected void closeAgent() {
+		if (agent_handle!=null) {
+			agent_handle.close(tmgr.getConsoleManager(), true);
+			agent_handle = null;
+		}
+	}
+	
+	protected void commonRunStart() throws Exception {
+		if (stdin==null)
+			startAgent();
 		
+		// ask agent for binary framing first. agent replies to it before sending anything else
+		sendHello();
 		sendPhpBuild(build);
 		sendScenarioSet(scenario_set);
 	} // end protected void commonRunStart
 	
+	public void setCompressFrames(boolean compress_frames) {
+		this.compress_frames = compress_frames;
+	}
+	
+	protected boolean sendHello() {
+		return sendMessage(PSCProtocol.createHello(PSCProtocol.PROTOCOL_BINARY, compress_frames));
+	}
+	
 	protected boolean sendStart() {
 		return sendMessage("<start/>");
 	}
@@ -81,7 +126,7 @@ public abstract class AbstractRemoteTestPackRunner<A extends ActiveTestPack, S e
 	}
 	
 	protected boolean sendPhpBuild(PhpBuild build) {
-		return sendMessage("<build path=\"\" />");
+		return sendMessage("<build path=\""+(remote_build==null?build:remote_build).getBuildPath()+"\" />");
 	}
 	
 	protected void sendScenarioSet(ScenarioSet scenario_set) {
@@ -89,6 +134,7 @@ public abstract class AbstractRemoteTestPackRunner<A extends ActiveTestPack, S e
 			synchronized(stdin) {
 				for ( Scenario s : scenario_set )
 					s.serialize(serial);
+				serial.flush();
 			}
 		} catch ( Throwable t ) {
 			t.printStackTrace(System.err);
@@ -103,37 +149,81 @@ public abstract class AbstractRemoteTestPackRunner<A extends ActiveTestPack, S e
 	protected void commonRun() throws IllegalCharsetNameException, UnsupportedCharsetException, XmlPullParserException, IOException {
 		sendStart();
 		
-		
-		PhptTestResult result;
+		// if agent supports binary framing, its reply to hello is the first line it sends
+		ByteArrayOutputStream line_bytes = new ByteArrayOutputStream(PSCProtocol.MAX_HELLO_LENGTH);
+		String line = PSCProtocol.readHelloLine(stdout, line_bytes);
+		if (line==null)
+			return;
+		if (PSCProtocol.isBinaryHello(line)) {
+			commonRunBinary();
+		} else {
+			// older agent: line is the start of its XML stream
+			parser.setInput(new SequenceInputStream(new ByteArrayInputStream(line_bytes.toByteArray()), stdout), "utf-8");
+			while (handleMessage(parser)) {}
+		}
+	} // end protected void commonRun
+	
+	protected void commonRunBinary() throws IllegalCharsetNameException, UnsupportedCharsetException, XmlPullParserException, IOException {
+		PSCFrameReader reader = new PSCFrameReader(stdout);
+		KXmlParser doc_parser = new KXmlParser();
+		try {
+			PSCFrameReader.Frame frame;
+			frame_loop:
+			while ( ( frame = reader.next() ) != null && !frame.isEnd() ) {
+				for ( byte[] doc : frame.docs ) {
+					doc_parser.setInput(new ByteArrayInputStream(doc), "utf-8");
+					if (!handleMessage(doc_parser))
+						break frame_loop;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	} // end protected void commonRunBinary
+	
+	/** handles the next message (or result) from agent
+	 *
+	 * @param parser
+	 * @return FALSE if there are no more messages
+	 * @throws IllegalCharsetNameException
+	 * @throws UnsupportedCharsetException
+	 * @throws XmlPullParserException
+	 * @throws IOException
+	 */
+	protected boolean handleMessage(XmlPullParser parser) throws IllegalCharsetNameException, UnsupportedCharsetException, XmlPullParserException, IOException {
 		String tag_name = "", type = "", ctx = "";
-		main_loop:
 		while(true) {
 			parser.next();
 			switch(parser.getEventType()) {
 			case XmlPullParser.START_TAG:
 				tag_name = parser.getName();
 				
-				if (tag_name.equals("phptTestResult")) {
-					result = PhptTestResult.parse(parser);
+				if (tag_name.equals("phptResult")) {
+					handleResult(parseResult(parser));
 					
-					// TODO tmgr.addResult(remote_host, scenario_set, result);
-				} else if (tag_name.equals("println")) {
+					return true;
+				} else if (tag_name.equals("println") || tag_name.equals("globalException")) {
 					type = parser.getAttributeValue(null, "type");
 					ctx = parser.getAttributeValue(null, "ctx");
+				} else if (tag_name.equals("restartingAndRetrying")) {
+					tmgr.getConsoleManager().restartingAndRetryingTest(parser.getAttributeValue(null, "testCase"));
+				} else if (tag_name.equals("requestWork")) {
+					handleRequestWork(StringUtil.parseInt(parser.getAttributeValue(null, "count")));
+				} else if (tag_name.equals("groupFinished")) {
+					handleGroupFinished(StringUtil.parseInt(parser.getAttributeValue(null, "id")));
 				}
 				
 				break;
 			case XmlPullParser.END_TAG:
-				break main_loop;
+				// end of message
+				return !tag_name.equals("runFinished") && !tag_name.equals("stop");
 			case XmlPullParser.END_DOCUMENT:
-				break main_loop;
+				return false;
 			case XmlPullParser.TEXT:
 				if (tag_name.equals("globalException")) {
 					tmgr.addGlobalException(remote_host, parser.getText());
 				} else if (tag_name.equals("println")) {
 					tmgr.getConsoleManager().println(EPrintType.valueOf(type), ctx, parser.getText());
-				} else if (tag_name.equals("restartingAndRetrying")) {
-					tmgr.getConsoleManager().restartingAndRetryingTest(parser.getText());
 				} else if (tag_name.equals("stop")) {
 					tmgr.close();
 					
@@ -145,7 +235,29 @@ public abstract class AbstractRemoteTestPackRunner<A extends ActiveTestPack, S e
 			default:
 			} // end switch
 		} // end while
-	} // end protected void commonRun
+	} // end protected boolean handleMessage
+	
+	protected PhptTestResult parseResult(XmlPullParser parser) throws IllegalCharsetNameException, UnsupportedCharsetException, XmlPullParserException, IOException {
+		return PhptTestResult.parse(parser);
+	}
+	
+	protected void handleResult(PhptTestResult result) {
+		// TODO tmgr.addResult(remote_host, scenario_set, result);
+	}
+	
+	/** agent asks for more groups of tests to run (@see DistributedPhptTestPackRunner)
+	 * 
+	 * @param count
+	 */
+	protected void handleRequestWork(int count) {
+	}
+	
+	/** agent finished running a group of tests and sent all its results
+	 * 
+	 * @param group_id
+	 */
+	protected void handleGroupFinished(int group_id) {
+	}
 	
 	protected void notifyStop(AHost remote_host, String reason) {
 		// TODO
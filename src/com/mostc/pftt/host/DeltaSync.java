@@ -0,0 +1,289 @@
+package com.mostc.pftt.host;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.github.mattficken.io.ByLineReader;
+import com.github.mattficken.io.StringUtil;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.ConsoleManagerUtil;
+import com.mostc.pftt.results.EPrintType;
+
+/** Copies a local directory tree to a host, sending only the files that changed since the last time (like rsync).
+ *
+ * Originally a test-pack or build was always sent whole (compressed with 7zip, copied, and decompressed) even if only
+ * a few files changed since the last time (ex: nightly builds).
+ *
+ * The manifest (@see SyncManifest) of the source is cached on the local host (so unchanged files don't have to be
+ * hashed again). The manifest of what was copied is saved in the destination directory (MANIFEST_FILE_NAME). Next
+ * time, the 2 manifests are compared and only the differences are sent:
+ * -files that are new or changed are copied. if many files changed and the destination is remote, they're sent as
+ *  1 7zip archive (like #uploadCompressWith7Zip). otherwise, each file is uploaded.
+ * -if the destination is local, only the changed blocks of large files are copied.
+ * -files that were deleted from the source are deleted from the destination.
+ *
+ * If the destination doesn't have a manifest, the whole tree is sent.
+ *
+ * The manifest isn't trusted blindly: an earlier test run (or crash) may have changed or deleted files in the
+ * destination. The manifest saved in the destination has the size and last-modified time each file had on the
+ * destination right after it was copied. Before each sync, the destination is listed (@see AHost#mListFiles, 1
+ * request per directory on a remote host) and any file whose size or time is different is copied again.
+ *
+ * @see AHost#uploadSync
+ * @author Matt Ficken
+ *
+ */
+
+public class DeltaSync {
+	public static final String MANIFEST_FILE_NAME = ".pftt_sync_manifest";
+	/** if more files than this changed, they're sent to a remote host as 1 7zip archive */
+	public static final int MAX_SINGLE_UPLOADS = 32;
+	
+	/** what #sync did */
+	public static class Result {
+		public int files, files_unchanged, files_copied, files_patched, blocks_copied, files_deleted;
+		public long bytes_copied;
+		/** TRUE if destination had no manifest, so whole tree was sent */
+		public boolean full;
+		
+		@Override
+		public String toString() {
+			return "files="+files+" unchanged="+files_unchanged+" copied="+files_copied+" patched="+files_patched+" blocks_copied="+blocks_copied+" deleted="+files_deleted+" bytes_copied="+bytes_copied+(full?" (full)":"");
+		}
+	
+	} // end public static class Result
+	
+	/** makes dst on dst_host the same as src on src_host
+	 *
+	 * @param cm
+	 * @param ctx_str
+	 * @param src_host - must be local
+	 * @param src - directory
+	 * @param dst_host - local or remote
+	 * @param dst - directory
+	 * @return
+	 * @throws IllegalStateException
+	 * @throws IOException
+	 * @throws Exception
+	 */
+	public Result sync(ConsoleManager cm, String ctx_str, AHost src_host, String src, AHost dst_host, String dst) throws IllegalStateException, IOException, Exception {
+		if (src_host.isRemote())
+			throw new IllegalArgumentException("source of sync must be local: "+src_host);
+		if (StringUtil.isEmpty(dst))
+			// would sync into the root of the destination (ex: `/`)
+			throw new IllegalArgumentException("destination of sync required");
+		final File src_dir = new File(src);
+		Result r = new Result();
+		
+		// hash source, reusing hashes of unchanged files from cache
+		final File cache_file = new File(src_host.getPfttCacheDir(), "sync/"+Integer.toHexString(src_dir.getAbsolutePath().hashCode())+"_"+src_dir.getName()+".manifest");
+		SyncManifest src_m = SyncManifest.scan(src_dir, SyncManifest.read(cache_file), MANIFEST_FILE_NAME);
+		try {
+			src_m.write(cache_file);
+		} catch ( IOException ex ) {
+			ConsoleManagerUtil.printStackTrace(EPrintType.WARNING, DeltaSync.class, cm, "sync", ex, "can't cache manifest of source", cache_file);
+		}
+		r.files = src_m.size();
+		
+		final String dst_manifest_file = dst_host.joinIntoOnePath(dst, MANIFEST_FILE_NAME);
+		SyncManifest dst_m = readManifest(cm, dst_host, dst_manifest_file);
+		
+		if (dst_m==null) {
+			if (cm!=null)
+				cm.println(EPrintType.IN_PROGRESS, ctx_str, "sync: no manifest on destination, sending all "+src_m.size()+" files src="+src+" dst_host="+dst_host+" dst="+dst);
+			r.full = true;
+			if (dst_host.isRemote()) {
+				dst_host.uploadCompressWith7Zip(cm, ctx_str, src_host, src, dst);
+				r.files_copied = src_m.size();
+				r.bytes_copied = src_m.getTotalSize();
+			} else {
+				for ( SyncManifest.Entry e : src_m.getEntries() ) {
+					r.bytes_copied += copyLocal(new File(src_dir, e.path), new File(dst, e.path));
+					r.files_copied++;
+				}
+			}
+		} else {
+			verify(dst_host, dst, dst_m);
+			
+			// delete files that were deleted from source
+			for ( SyncManifest.Entry e : dst_m.getEntries() ) {
+				if (src_m.get(e.path)==null) {
+					dst_host.mDelete(dst_host.joinIntoOnePath(dst, e.path));
+					r.files_deleted++;
+				}
+			}
+			
+			ArrayList<SyncManifest.Entry> uploads = new ArrayList<SyncManifest.Entry>();
+			for ( SyncManifest.Entry e : src_m.getEntries() ) {
+				SyncManifest.Entry d = dst_m.get(e.path);
+				if (e.sameContent(d)) {
+					r.files_unchanged++;
+				} else if (dst_host.isRemote()) {
+					uploads.add(e);
+				} else if (d!=null && e.hasBlockHashes() && d.hasBlockHashes()) {
+					patchLocal(new File(src_dir, e.path), e, new File(dst, e.path), d, r);
+					r.files_patched++;
+				} else {
+					r.bytes_copied += copyLocal(new File(src_dir, e.path), new File(dst, e.path));
+					r.files_copied++;
+				}
+			}
+			
+			if (uploads.size() > MAX_SINGLE_UPLOADS) {
+				uploadArchive(cm, ctx_str, src_host, src_dir, uploads, dst_host, dst);
+			} else {
+				for ( SyncManifest.Entry e : uploads )
+					dst_host.upload(new File(src_dir, e.path).getAbsolutePath(), dst_host.joinIntoOnePath(dst, e.path));
+			}
+			r.files_copied += uploads.size();
+			for ( SyncManifest.Entry e : uploads )
+				r.bytes_copied += e.size;
+		}
+		
+		// save what was copied. only save after copying succeeded: if it failed, the old manifest is still right
+		// about the files that weren't copied and the files that were will just be copied again
+		dst_host.mSaveTextFile(dst_manifest_file, toDestinationManifest(dst_host, dst, src_m).toString());
+		
+		if (cm!=null)
+			cm.println(EPrintType.CLUE, ctx_str, "sync: src="+src+" dst_host="+dst_host+" dst="+dst+" "+r);
+		return r;
+	} // end public Result sync
+	
+	@Nullable
+	protected static SyncManifest readManifest(ConsoleManager cm, AHost host, String file) {
+		if (!host.mExists(file))
+			return null;
+		try {
+			ByLineReader reader = host.mReadFile(file);
+			try {
+				return SyncManifest.read(reader);
+			} finally {
+				reader.close();
+			}
+		} catch ( Exception ex ) {
+			// send whole tree again
+			ConsoleManagerUtil.printStackTrace(EPrintType.WARNING, DeltaSync.class, cm, "readManifest", ex, "can't read manifest on destination", host, file);
+			return null;
+		}
+	}
+	
+	/** removes files from manifest that were changed or deleted on the destination since they were copied, so
+	 * they're copied again
+	 */
+	protected static void verify(AHost dst_host, String dst, SyncManifest dst_m) {
+		final Map<String,AHost.FileStat> files = dst_host.mListFiles(dst);
+		ArrayList<String> changed = new ArrayList<String>();
+		AHost.FileStat stat;
+		for ( SyncManifest.Entry e : dst_m.getEntries() ) {
+			stat = files.get(e.path);
+			if (stat==null || stat.size != e.size || stat.mtime != e.mtime)
+				changed.add(e.path);
+		}
+		for ( String path : changed )
+			dst_m.entries.remove(path);
+	}
+	
+	/** returns manifest of what is now on the destination: same as source, but with the time each file was
+	 * last modified on the destination (@see #verify). files that aren't on the destination (or have the
+	 * wrong size) are left out, so they're copied next time.
+	 */
+	protected static SyncManifest toDestinationManifest(AHost dst_host, String dst, SyncManifest src_m) {
+		final Map<String,AHost.FileStat> files = dst_host.mListFiles(dst);
+		SyncManifest dst_m = new SyncManifest();
+		AHost.FileStat stat;
+		for ( SyncManifest.Entry e : src_m.getEntries() ) {
+			stat = files.get(e.path);
+			if (stat!=null && stat.size == e.size)
+				dst_m.put(new SyncManifest.Entry(e.path, e.size, stat.mtime, e.hash, e.block_hashes));
+		}
+		return dst_m;
+	}
+	
+	/** copies the changed files into a local staging directory and sends it as 1 7zip archive, which is decompressed
+	 * over the destination.
+	 */
+	protected static void uploadArchive(ConsoleManager cm, String ctx_str, AHost src_host, File src_dir, ArrayList<SyncManifest.Entry> uploads, AHost dst_host, String dst) throws IllegalStateException, IOException, Exception {
+		final String stage_dir = src_host.mCreateTempName(ctx_str);
+		try {
+			for ( SyncManifest.Entry e : uploads )
+				copyLocal(new File(src_dir, e.path), new File(stage_dir, e.path));
+			
+			dst_host.uploadCompressWith7Zip(cm, ctx_str, src_host, stage_dir, dst);
+		} finally {
+			src_host.mDelete(stage_dir);
+		}
+	}
+	
+	/** copies only the blocks that changed
+	 *
+	 * @param src_file
+	 * @param src_e - manifest entry of src_file
+	 * @param dst_file
+	 * @param dst_e - manifest entry of what's in dst_file
+	 * @param r
+	 * @throws IOException
+	 */
+	protected static void patchLocal(File src_file, SyncManifest.Entry src_e, File dst_file, SyncManifest.Entry dst_e, Result r) throws IOException {
+		byte[] buf = new byte[SyncManifest.BLOCK_SIZE];
+		InputStream in = new FileInputStream(src_file);
+		try {
+			RandomAccessFile out = new RandomAccessFile(dst_file, "rw");
+			try {
+				int len;
+				for ( int i=0 ; ( len = SyncManifest.readBlock(in, buf) ) > 0 ; i++ ) {
+					if (i < src_e.block_hashes.length && i < dst_e.block_hashes.length && src_e.block_hashes[i].equals(dst_e.block_hashes[i]) && ((long)i+1) * buf.length <= dst_e.size)
+						// same block (a last, partial, block of dst is always copied since it will be longer now)
+						continue;
+					out.seek((long)i * buf.length);
+					out.write(buf, 0, len);
+					r.blocks_copied++;
+					r.bytes_copied += len;
+				}
+				out.setLength(src_e.size);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	} // end protected static void patchLocal
+	
+	/** copies file
+	 *
+	 * @param src
+	 * @param dst
+	 * @return bytes copied
+	 * @throws IOException
+	 */
+	protected static long copyLocal(File src, File dst) throws IOException {
+		dst.getParentFile().mkdirs();
+		byte[] buf = new byte[SyncManifest.BLOCK_SIZE];
+		long size = 0;
+		InputStream in = new FileInputStream(src);
+		try {
+			OutputStream out = new FileOutputStream(dst);
+			try {
+				int len;
+				while ( ( len = in.read(buf) ) != -1 ) {
+					out.write(buf, 0, len);
+					size += len;
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		return size;
+	}
+
+} // end public class DeltaSync
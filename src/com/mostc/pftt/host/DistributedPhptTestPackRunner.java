@@ -0,0 +1,376 @@
+package com.mostc.pftt.host;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.mattficken.io.StringUtil;
+import com.mostc.pftt.main.Config;
+import com.mostc.pftt.main.PfttAgentMain;
+import com.mostc.pftt.model.core.PhpBuild;
+import com.mostc.pftt.model.core.PhptActiveTestPack;
+import com.mostc.pftt.model.core.PhptSourceTestPack;
+import com.mostc.pftt.model.core.PhptTestCase;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.ConsoleManagerUtil;
+import com.mostc.pftt.results.EPrintType;
+import com.mostc.pftt.results.LocalConsoleManager;
+import com.mostc.pftt.results.PhpResultPackWriter;
+import com.mostc.pftt.results.PhptTestResult;
+import com.mostc.pftt.runner.AbstractTestPackRunner;
+import com.mostc.pftt.scenario.EScenarioSetPermutationLayer;
+import com.mostc.pftt.scenario.FileSystemScenario;
+import com.mostc.pftt.scenario.ScenarioSet;
+import com.mostc.pftt.scenario.ScenarioSetSetup;
+
+/** Runs 1 test-pack on several PSC agents (on several hosts, or several processes on 1 host) at the same time.
+ *
+ * Originally, each host ran its own copy of the whole test-pack (or a fixed part of it), so a run was only finished
+ * once the slowest host finished.
+ *
+ * This coordinator groups the tests (@see PSCWorkQueue) and sends a group to an agent each time the agent asks for
+ * more. An agent that has run all of its own groups steals pending groups from the busiest agent, so all agents
+ * finish at about the same time. All tests of a non-thread-safe extension are sent to 1 agent as 1 group.
+ *
+ * Results from all agents are stored in 1 PhpResultPackWriter, as results of the local host (so the result-pack is the
+ * same as if the test-pack had been run on only 1 host). Agents should be equivalent hosts (same OS, etc...).
+ *
+ * Protocol (added to the PSC protocol @see PSCAgentServer):
+ * coordinator sends <startWork/> after the build, scenarios and test-pack.
+ * agent sends <requestWork count="N"/> when it needs more groups.
+ * coordinator sends <workGroup id="N"><test_name>...</test_name>...</workGroup> for each group, or <noMoreWork/>
+ *  once every group is finished (an idle agent waits while other agents are still running groups, in case they
+ *  fail and their tests have to be run again).
+ * agent sends <groupFinished id="N"/> after sending the results of each group. tests of the group it sent no result
+ *  for are queued again once (@see PSCWorkQueue#finished).
+ *
+ * To try it on 1 host, start several agents as local processes (@see #addLocalAgents).
+ *
+ * @see RemotePhptTestPackRunner - 1 agent
+ * @author Matt Ficken
+ *
+ */
+
+public class DistributedPhptTestPackRunner extends AbstractTestPackRunner<PhptSourceTestPack, PhptTestCase> {
+	protected final PhpResultPackWriter tmgr;
+	protected final ConsoleManager cm;
+	protected final LocalHost host;
+	protected final AtomicReference<ETestPackRunnerState> state;
+	protected final ArrayList<AgentRunner> agents;
+	/** test-pack installed on each host that has agents (several local agents share 1 copy) */
+	protected final IdentityHashMap<AHost,PhptActiveTestPack> installed_test_packs;
+	protected int max_group_size = PSCWorkQueue.DEFAULT_MAX_GROUP_SIZE;
+	protected PSCWorkQueue queue;
+	
+	public DistributedPhptTestPackRunner(PhpResultPackWriter tmgr, ScenarioSet scenario_set, PhpBuild build, LocalHost host) {
+		super(scenario_set, build, host, host);
+		this.tmgr = tmgr;
+		this.cm = tmgr.getConsoleManager();
+		this.host = host;
+		
+		state = new AtomicReference<ETestPackRunnerState>(ETestPackRunnerState.NOT_RUNNING);
+		agents = new ArrayList<AgentRunner>(8);
+		installed_test_packs = new IdentityHashMap<AHost,PhptActiveTestPack>();
+	}
+	
+	/** max number of thread-safe tests sent to an agent at a time. smaller groups balance better, but the agent has
+	 * to setup more times.
+	 *
+	 * @param max_group_size
+	 */
+	public void setMaxGroupSize(int max_group_size) {
+		this.max_group_size = max_group_size;
+	}
+	
+	/** adds an agent that will be started on agent_host (@see AbstractRemoteTestPackRunner#startAgent)
+	 *
+	 * @param agent_host
+	 */
+	public void addAgent(AHost agent_host) {
+		agents.add(new AgentRunner(agent_host, null));
+	}
+	
+	/** adds agents that will be started as processes on this host (with this process's java and classpath).
+	 *
+	 * @param count
+	 */
+	public void addLocalAgents(int count) {
+		final String java = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+		final String class_path = System.getProperty("java.class.path");
+		for ( int i=0 ; i < count ; i++ )
+			agents.add(new AgentRunner(host, new String[]{java, "-cp", class_path, PfttAgentMain.class.getName()}));
+	}
+	
+	@Override
+	public void runAllTests(Config config, PhptSourceTestPack test_pack) throws FileNotFoundException, IOException, Exception {
+		ArrayList<PhptTestCase> test_cases = new ArrayList<PhptTestCase>(12600);
+		test_pack.read(config, test_cases, cm, tmgr, build, sapi_scenario);
+		
+		runTestList(test_pack, test_cases);
+	}
+	
+	@Override
+	public void runTestList(final PhptSourceTestPack test_pack, List<PhptTestCase> test_cases) throws Exception {
+		if (agents.isEmpty())
+			throw new IllegalStateException("no agents added");
+		state.set(ETestPackRunnerState.RUNNING);
+		
+		queue = new PSCWorkQueue(max_group_size);
+		queue.addAll(test_cases, cm.isThreadSafety());
+		for ( AgentRunner agent : agents ) {
+			agent.work = queue.addAgent(agent.getName());
+			agent.setSourceTestPack(test_pack);
+		}
+		queue.seed();
+		cm.println(EPrintType.IN_PROGRESS, getClass(), "Running "+queue.getTestCount()+" tests in "+queue.getGroupCount()+" groups on "+agents.size()+" agents");
+		
+		ArrayList<Thread> threads = new ArrayList<Thread>(agents.size());
+		for ( final AgentRunner agent : agents ) {
+			Thread t = new Thread() {
+					@Override
+					public void run() {
+						agent.runWork(test_pack);
+					}
+				};
+			t.setName("PSCAgent-"+agent.getName());
+			t.setDaemon(true);
+			t.start();
+			threads.add(t);
+		}
+		for ( Thread t : threads )
+			t.join();
+		
+		final int unfinished = queue.getUnfinishedTestCount();
+		if (unfinished > 0)
+			cm.println(EPrintType.CANT_CONTINUE, getClass(), "All agents stopped. "+unfinished+" tests weren't run");
+		final List<String> unrun = queue.getUnrunTestNames();
+		if (!unrun.isEmpty()) {
+			cm.println(EPrintType.CANT_CONTINUE, getClass(), unrun.size()+" tests weren't run: agents sent no results for them (twice)");
+			for ( String test_name : unrun )
+				cm.println(EPrintType.CLUE, getClass(), "Not run: "+test_name);
+		}
+		cm.println(EPrintType.CLUE, getClass(), "Finished: "+queue);
+		state.set(ETestPackRunnerState.NOT_RUNNING);
+	} // end public void runTestList
+	
+	protected PhptActiveTestPack install(PhptSourceTestPack test_pack, AHost agent_host) throws IllegalStateException, IOException, Exception {
+		synchronized(agent_host) {
+			PhptActiveTestPack active_test_pack;
+			synchronized(installed_test_packs) {
+				active_test_pack = installed_test_packs.get(agent_host);
+			}
+			if (active_test_pack==null) {
+				// agents on agent_host run tests from where they're stored, so both paths are the same.
+				// same directory each run, so only changed files are sent again (@see PhptSourceTestPack#install)
+				final String test_pack_dir = agent_host.getJobWorkDir()+"/Remote/"+FileSystemScenario.basename(test_pack.getSourceDirectory())+"/";
+				active_test_pack = test_pack.install(cm, agent_host, test_pack_dir, test_pack_dir, sapi_scenario);
+				synchronized(installed_test_packs) {
+					installed_test_packs.put(agent_host, active_test_pack);
+				}
+			}
+			return active_test_pack;
+		}
+	}
+	
+	/** sends groups to agents that are waiting for work (groups may have been queued again because an agent was lost)
+	 * or tells them there's no more work.
+	 *
+	 * must hold lock on queue
+	 */
+	protected void dispatchAll() {
+		for ( AgentRunner agent : agents )
+			agent.dispatch();
+	}
+	
+	/** 1 agent (process on a host) */
+	protected class AgentRunner extends RemotePhptTestPackRunner {
+		/** command to start local agent process or null to start agent on remote_host with #startAgent */
+		protected final String[] local_cmd;
+		protected PSCWorkQueue.Agent work;
+		protected Process process;
+		/** groups agent asked for that haven't been sent */
+		protected int waiting;
+		protected boolean no_more_work;
+		
+		protected AgentRunner(AHost agent_host, String[] local_cmd) {
+			super(DistributedPhptTestPackRunner.this.tmgr, DistributedPhptTestPackRunner.this.scenario_set, DistributedPhptTestPackRunner.this.build, DistributedPhptTestPackRunner.this.host, agent_host);
+			this.local_cmd = local_cmd;
+			
+			// merge results of all agents
+			setResultHost(host);
+		}
+		
+		protected String getName() {
+			return remote_host.getName()+"-"+agents.indexOf(this);
+		}
+		
+		protected void runWork(PhptSourceTestPack test_pack) {
+			try {
+				PhptActiveTestPack active_test_pack = install(test_pack, remote_host);
+				
+				if (local_cmd!=null)
+					startLocalAgent();
+				commonRunStart();
+				sendTestPack(active_test_pack);
+				sendMessage("<startWork/>");
+				commonRun();
+			} catch ( Exception ex ) {
+				ConsoleManagerUtil.printStackTrace(EPrintType.OPERATION_FAILED_CONTINUING, DistributedPhptTestPackRunner.class, cm, "runWork", ex, "agent failed", getName());
+			} finally {
+				synchronized(queue) {
+					final int requeued = queue.removeAgent(work);
+					if (requeued > 0)
+						cm.println(EPrintType.CLUE, DistributedPhptTestPackRunner.class, "Agent "+getName()+" stopped. Running its "+requeued+" remaining tests on other agents");
+					dispatchAll();
+				}
+				stopAgent();
+			}
+		} // end protected void runWork
+		
+		protected void startLocalAgent() throws IOException {
+			process = new ProcessBuilder(local_cmd).start();
+			// agent's stderr must not be mixed into its stdout
+			final InputStream stderr = process.getErrorStream();
+			Thread t = new Thread() {
+					@Override
+					public void run() {
+						try {
+							byte[] buf = new byte[1024];
+							int len;
+							while ( ( len = stderr.read(buf) ) != -1 )
+								System.err.write(buf, 0, len);
+						} catch ( IOException ex ) {
+						}
+					}
+				};
+			t.setName("PSCAgentStderr-"+getName());
+			t.setDaemon(true);
+			t.start();
+			
+			setAgentStreams(process.getOutputStream(), process.getInputStream());
+		}
+		
+		protected void stopAgent() {
+			if (stdin!=null && no_more_work) {
+				// agent finished: it exits when told to stop (otherwise it failed, kill it)
+				sendMessage("<stop/>");
+			}
+			closeAgent();
+			if (process!=null) {
+				process.destroy();
+				process = null;
+			}
+		}
+		
+		@Override
+		protected void handleResult(PhptTestResult result) {
+			if (result.test_case!=null)
+				queue.resultReceived(work, result.test_case.getName());
+			super.handleResult(result);
+		}
+		
+		@Override
+		protected void handleRequestWork(int count) {
+			synchronized(queue) {
+				waiting += count;
+				dispatch();
+			}
+		}
+		
+		@Override
+		protected void handleGroupFinished(int group_id) {
+			synchronized(queue) {
+				final int requeued = queue.finished(work, group_id);
+				if (requeued > 0)
+					cm.println(EPrintType.CLUE, DistributedPhptTestPackRunner.class, "Agent "+getName()+" sent no results for "+requeued+" tests of group "+group_id+". Running them again");
+				// if that was the last group, tell waiting agents there's no more work
+				dispatchAll();
+			}
+		}
+		
+		/** must hold lock on queue */
+		protected void dispatch() {
+			if (work.lost)
+				// agent stopped
+				return;
+			while (waiting > 0 && !no_more_work) {
+				PSCWorkQueue.WorkGroup group = queue.take(work);
+				if (group==null) {
+					if (queue.isFinished()) {
+						no_more_work = true;
+						sendMessage("<noMoreWork/>");
+					}
+					// otherwise wait: groups of another agent will be queued again if it fails
+					return;
+				}
+				waiting--;
+				sendWorkGroup(group);
+			}
+		}
+		
+		protected boolean sendWorkGroup(PSCWorkQueue.WorkGroup group) {
+			StringBuilder sb = new StringBuilder(64 + 64 * group.size());
+			sb.append("<workGroup id=\"");
+			sb.append(group.id);
+			sb.append("\">");
+			for ( String test_name : group.test_names ) {
+				sb.append("<test_name>");
+				sb.append(test_name);
+				sb.append("</test_name>");
+			}
+			sb.append("</workGroup>");
+			return sendMessage(sb.toString());
+		}
+	
+	} // end protected class AgentRunner
+	
+	@Override
+	public void setState(ETestPackRunnerState new_state) throws IllegalStateException {
+		state.set(new_state);
+	}
+	
+	@Override
+	public ETestPackRunnerState getState() {
+		return state.get();
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("usage: <build> <test-pack> [agent count]");
+			System.exit(-200);
+			return;
+		}
+		LocalHost host = LocalHost.getInstance();
+		
+		LocalConsoleManager cm = new LocalConsoleManager(null, null, false, false, false, false, true, false, true, false, false, false, 1, 1, true, 1, 1, 1, null, null, null, null, false, 0, 0, false, false, 0, 0, 0, false, 0, false, false, null, null, false, false, 0, 0, false);
+		Config config = Config.loadConfigFromFiles(cm, "default");
+		
+		PhpBuild build = new PhpBuild(args[0]);
+		build.open(cm, host);
+		
+		PhptSourceTestPack test_pack = new PhptSourceTestPack(args[1]);
+		
+		ScenarioSet scenario_set = ScenarioSet.getDefaultScenarioSets().get(0);
+		
+		test_pack.open(cm, config, FileSystemScenario.getFS(scenario_set, host), host);
+		
+		PhpResultPackWriter tmgr = new PhpResultPackWriter(host, cm, new File(host.getJobWorkDir()), build, test_pack, config);
+		
+		DistributedPhptTestPackRunner runner = new DistributedPhptTestPackRunner(tmgr, scenario_set, build, host);
+		// try it with several agents as local processes
+		runner.addLocalAgents(args.length > 2 ? StringUtil.parseInt(args[2]) : 2);
+		runner.runAllTests(config, test_pack);
+		
+		// same scenario set setup agents' results are stored under (@see RemotePhptTestPackRunner#handleResult)
+		tmgr.notifyPhptFinished(host, ScenarioSetSetup.describeScenarioSet(scenario_set, EScenarioSetPermutationLayer.FUNCTIONAL_TEST_CORE), test_pack);
+		// wait for all results to be written before exiting
+		tmgr.close(true);
+		System.exit(0);
+	} // end public static void main
+
+} // end public class DistributedPhptTestPackRunner
@@ -10,19 +10,55 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
 
 import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.EPrintType;
 import com.mostc.pftt.runner.AbstractTestPackRunner.TestPackRunnerThread;
 import com.mostc.pftt.scenario.FileSystemScenario.IFileChooser;
 
 /** Allows a group of Hosts to be used as a single host (in most cases).
+ * 
+ * Operations that change hosts (exec, cmd, copy, delete, unzip, etc...) are run on all the hosts at the same time
+ * (@see #fanOut), so preparing several hosts takes about as long as preparing 1. Queries (isWindows, exists, etc...)
+ * are fast so they're still run on 1 host after another.
  * 
  * @author Matt Ficken
  *
  */
 
 public class HostGroup extends Host implements List<Host> {
+	/** max hosts that run an operation at the same time (shared by all HostGroups) */
+	public static final int MAX_PARALLEL_HOSTS = 16;
+	/** how long to wait for 1 host to finish an operation that doesn't have a timeout of its own (copy, unzip, etc...) */
+	public static final int DEFAULT_HOST_TIMEOUT_SEC = Host.ONE_HOUR;
+	protected static final ThreadPoolExecutor POOL;
+	/** TRUE on POOL's threads. a HostGroup in a HostGroup runs its operation on the POOL thread it's already on,
+	 * so it doesn't wait for POOL threads that are waiting for it */
+	protected static final ThreadLocal<Boolean> IN_POOL = new ThreadLocal<Boolean>();
+	static {
+		final AtomicInteger thread_num = new AtomicInteger();
+		POOL = new ThreadPoolExecutor(MAX_PARALLEL_HOSTS, MAX_PARALLEL_HOSTS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "HostGroup"+thread_num.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		POOL.allowCoreThreadTimeOut(true);
+	}
 	protected final List<Host> list;
+	protected int host_timeout_sec = DEFAULT_HOST_TIMEOUT_SEC;
 	
 	public HostGroup() {
 		list = new LinkedList<Host>();
@@ -52,58 +88,464 @@ public class HostGroup extends Host implements List<Host> {
 		void collect(Host h, long v);
 	}
 	
+	/** operation to run on each Host in the group (@see #fanOut) */
+	public interface HostOperation {
+		boolean run(Host h) throws Exception;
+	}
+	
+	/** sets how long to wait for 1 host to finish an operation that doesn't have a timeout of its own.
+	 * 
+	 * operations with their own timeout (exec, cmd, etc...) wait that long plus a minute. if they have no
+	 * timeout (Host#NO_TIMEOUT), they're waited for until they finish.
+	 * 
+	 * @param host_timeout_sec
+	 */
+	public void setHostTimeoutSeconds(int host_timeout_sec) {
+		this.host_timeout_sec = host_timeout_sec;
+	}
+	
+	public int getHostTimeoutSeconds() {
+		return host_timeout_sec;
+	}
+	
+	protected static int execTimeoutSeconds(int timeout_sec) {
+		if (timeout_sec <= NO_TIMEOUT)
+			// process may run as long as it needs. don't cancel it here either
+			return NO_TIMEOUT;
+		// host enforces timeout itself (and kills the process), give it time to do that and return
+		return timeout_sec + Host.ONE_MINUTE;
+	}
+	
+	/** result of running 1 operation on each Host in the group.
+	 * 
+	 * if some hosts failed, tells which ones and why (returned FALSE, threw an exception or timed out).
+	 *
+	 */
+	public static class FanOutResult {
+		protected final Host[] hosts;
+		protected final boolean[] done, succeeded, timed_out;
+		protected final Throwable[] exceptions;
+		
+		protected FanOutResult(Host[] hosts) {
+			this.hosts = hosts;
+			done = new boolean[hosts.length];
+			succeeded = new boolean[hosts.length];
+			timed_out = new boolean[hosts.length];
+			exceptions = new Throwable[hosts.length];
+		}
+		
+		protected synchronized void set(int i, boolean ok, @Nullable Throwable ex) {
+			if (done[i])
+				return; // already timed out
+			done[i] = true;
+			succeeded[i] = ok;
+			exceptions[i] = ex;
+		}
+		
+		protected synchronized void setTimedOut(int i) {
+			if (done[i])
+				return;
+			done[i] = true;
+			timed_out[i] = true;
+		}
+		
+		public synchronized boolean isAllSucceeded() {
+			for ( boolean ok : succeeded ) {
+				if (!ok)
+					return false;
+			}
+			return true;
+		}
+		
+		public synchronized boolean isNoneSucceeded() {
+			for ( boolean ok : succeeded ) {
+				if (ok)
+					return false;
+			}
+			return true;
+		}
+		
+		public synchronized HostGroup getSucceeded() {
+			HostGroup g = new HostGroup(hosts.length);
+			for ( int i=0 ; i < hosts.length ; i++ ) {
+				if (succeeded[i])
+					g.add(hosts[i]);
+			}
+			return g;
+		}
+		
+		/** hosts that returned FALSE, threw an exception or timed out */
+		public synchronized HostGroup getFailed() {
+			HostGroup g = new HostGroup(hosts.length);
+			for ( int i=0 ; i < hosts.length ; i++ ) {
+				if (!succeeded[i])
+					g.add(hosts[i]);
+			}
+			return g;
+		}
+		
+		public synchronized HostGroup getTimedOut() {
+			HostGroup g = new HostGroup(hosts.length);
+			for ( int i=0 ; i < hosts.length ; i++ ) {
+				if (timed_out[i])
+					g.add(hosts[i]);
+			}
+			return g;
+		}
+		
+		/** exception thrown by host, or NULL if it didn't throw one */
+		@Nullable
+		public synchronized Throwable getException(Host h) {
+			for ( int i=0 ; i < hosts.length ; i++ ) {
+				if (hosts[i]==h)
+					return exceptions[i];
+			}
+			return null;
+		}
+		
+		/** passes result of each host to collector, in the order of the hosts in the group (on the calling thread) */
+		public void collect(BooleanCollector c) {
+			for ( int i=0 ; i < hosts.length ; i++ ) {
+				boolean ok;
+				synchronized(this) {
+					ok = succeeded[i];
+				}
+				c.collect(hosts[i], ok);
+			}
+		}
+		
+		/** returns TRUE if operation succeeded on all hosts.
+		 * 
+		 * if it failed on all hosts because of an exception, throws it (as if there was only 1 host).
+		 * if it failed on only some hosts, reports which ones to cm.
+		 * 
+		 * @param cm
+		 * @param op_name
+		 * @return
+		 * @throws Exception
+		 */
+		public boolean checkAll(@Nullable ConsoleManager cm, String op_name) throws Exception {
+			Throwable ex = getAllFailedException();
+			if (ex instanceof Exception)
+				throw (Exception) ex;
+			else if (ex instanceof Error)
+				throw (Error) ex;
+			return check(cm, op_name);
+		}
+		
+		/** @see #checkAll */
+		public boolean checkAllIO(@Nullable ConsoleManager cm, String op_name) throws IOException {
+			Throwable ex = getAllFailedException();
+			if (ex instanceof IOException)
+				throw (IOException) ex;
+			else if (ex instanceof RuntimeException)
+				throw (RuntimeException) ex;
+			else if (ex instanceof Error)
+				throw (Error) ex;
+			else if (ex!=null)
+				throw new IOException(ex);
+			return check(cm, op_name);
+		}
+		
+		/** returns TRUE if operation succeeded on all hosts. otherwise reports which hosts it failed on to cm.
+		 * 
+		 * @param cm
+		 * @param op_name
+		 * @return
+		 */
+		public boolean check(@Nullable ConsoleManager cm, String op_name) {
+			if (isAllSucceeded())
+				return true;
+			if (cm!=null)
+				cm.println(EPrintType.OPERATION_FAILED_CONTINUING, HostGroup.class, op_name+": "+this);
+			return false;
+		}
+		
+		@Nullable
+		protected synchronized Throwable getAllFailedException() {
+			if (hosts.length==0 || !isNoneSucceeded())
+				return null;
+			for ( Throwable ex : exceptions ) {
+				if (ex!=null)
+					return ex;
+			}
+			return null;
+		}
+		
+		@Override
+		public synchronized String toString() {
+			StringBuilder sb = new StringBuilder(128);
+			int failed = 0;
+			for ( int i=0 ; i < hosts.length ; i++ ) {
+				if (succeeded[i])
+					continue;
+				sb.append(failed==0 ? " " : ", ");
+				sb.append(hosts[i]);
+				if (timed_out[i])
+					sb.append(" (timed out)");
+				else if (exceptions[i]!=null)
+					sb.append(" (").append(exceptions[i]).append(")");
+				else if (!done[i])
+					sb.append(" (interrupted)");
+				failed++;
+			}
+			return failed+" of "+hosts.length+" hosts failed"+(failed==0?"":":"+sb);
+		}
+		
+	} // end public static class FanOutResult
+	
+	protected static class HostTask implements Runnable {
+		protected final FanOutResult r;
+		protected final int i;
+		protected final HostOperation op;
+		/** when task started running (0 until then). timeout starts from here, not from when the task was queued */
+		protected volatile long start_millis;
+		protected Future<?> future;
+		
+		protected HostTask(FanOutResult r, int i, HostOperation op) {
+			this.r = r;
+			this.i = i;
+			this.op = op;
+		}
+		
+		@Override
+		public void run() {
+			start_millis = System.currentTimeMillis();
+			// may already be set if this is a HostGroup in a HostGroup
+			final boolean in_pool = IN_POOL.get()!=null;
+			IN_POOL.set(Boolean.TRUE);
+			try {
+				r.set(i, op.run(r.hosts[i]), null);
+			} catch ( Throwable t ) {
+				r.set(i, false, t);
+			} finally {
+				if (!in_pool)
+					IN_POOL.remove();
+			}
+		}
+		
+	} // end protected static class HostTask
+	
+	/** runs operation on all hosts in group at the same time (up to MAX_PARALLEL_HOSTS at a time) and waits for
+	 * them to finish, or time out.
+	 * 
+	 * @see #getHostTimeoutSeconds
+	 * @param op
+	 * @return
+	 */
+	public FanOutResult fanOut(HostOperation op) {
+		return fanOut(op, host_timeout_sec);
+	}
+	
+	/** runs operation on all hosts in group at the same time (up to MAX_PARALLEL_HOSTS at a time) and waits for
+	 * them to finish.
+	 * 
+	 * a host that takes longer than timeout_sec is interrupted and counted as failed. the other hosts' results are
+	 * still returned. interrupting only stops the waiting thread: a process the operation started keeps running
+	 * (exec, cmd, etc... rely on the host's own timeout to kill it @see #execTimeoutSeconds).
+	 * 
+	 * @param op
+	 * @param timeout_sec - max time for each host (from when that host starts, not when fanOut was called) or
+	 *                      Host#NO_TIMEOUT to wait until every host finishes
+	 * @return
+	 */
+	public FanOutResult fanOut(HostOperation op, int timeout_sec) {
+		final Host[] hosts = toArray(new Host[size()]);
+		final FanOutResult r = new FanOutResult(hosts);
+		if (hosts.length < 2 || IN_POOL.get()!=null) {
+			// nothing to run in parallel, or already on a POOL thread: run here
+			for ( int i=0 ; i < hosts.length ; i++ )
+				new HostTask(r, i, op).run();
+			return r;
+		}
+		
+		final HostTask[] tasks = new HostTask[hosts.length];
+		for ( int i=0 ; i < hosts.length ; i++ ) {
+			tasks[i] = new HostTask(r, i, op);
+			tasks[i].future = POOL.submit(tasks[i]);
+		}
+		final long timeout_millis = Math.max(1, timeout_sec) * 1000L;
+		try {
+			for ( HostTask task : tasks ) {
+				if (timeout_sec <= NO_TIMEOUT) {
+					try {
+						task.future.get();
+					} catch ( ExecutionException ex ) {
+						// n/a: HostTask catches everything
+					}
+					continue;
+				}
+				while (true) {
+					final long start_millis = task.start_millis;
+					// if task is still queued, its timeout hasn't started yet
+					final long wait_millis = start_millis == 0 ? timeout_millis : start_millis + timeout_millis - System.currentTimeMillis();
+					try {
+						if (wait_millis > 0) {
+							task.future.get(wait_millis, TimeUnit.MILLISECONDS);
+							break;
+						}
+					} catch ( TimeoutException ex ) {
+					} catch ( ExecutionException ex ) {
+						break; // n/a: HostTask catches everything
+					}
+					if (task.start_millis != 0 && System.currentTimeMillis() >= task.start_millis + timeout_millis) {
+						// if #cancel fails, the task just finished and its result was already set
+						if (task.future.cancel(true))
+							r.setTimedOut(task.i);
+						break;
+					}
+				}
+			}
+		} catch ( InterruptedException ex ) {
+			// stop waiting: hosts that haven't finished are counted as failed
+			for ( HostTask task : tasks )
+				task.future.cancel(true);
+			Thread.currentThread().interrupt();
+		}
+		return r;
+	} // end public FanOutResult fanOut
+	
+	protected static HostOperation execOp(final ConsoleManager cm, final String ctx_str, final String cmd, final int timeout_sec, final Map<String, String> env, final byte[] stdin_post, final Charset charset, final String current_dir) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return h.exec(cm, ctx_str, cmd, timeout_sec, env, stdin_post, charset, current_dir);
+				}
+			};
+	}
+	
+	@SuppressWarnings("rawtypes")
+	protected static HostOperation execOp(final ConsoleManager cm, final String ctx_str, final String commandline, final int timeout, final Map<String, String> env, final byte[] stdin, final Charset charset, final String chdir, final TestPackRunnerThread thread, final int thread_slow_sec) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return h.exec(cm, ctx_str, commandline, timeout, env, stdin, charset, chdir, thread, thread_slow_sec);
+				}
+			};
+	}
+	
+	@SuppressWarnings("rawtypes")
+	protected static HostOperation execElevatedOp(final ConsoleManager cm, final String ctx_str, final String cmd, final int timeout_sec, final Map<String, String> env, final byte[] stdin_data, final Charset charset, final String chdir, final TestPackRunnerThread test_thread, final int slow_timeout_sec) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return h.execElevated(cm, ctx_str, cmd, timeout_sec, env, stdin_data, charset, chdir, test_thread, slow_timeout_sec);
+				}
+			};
+	}
+	
+	protected static HostOperation cmdOp(final String cmd, final int timeout_sec, final Map<String, String> env, final byte[] stdin_data, final Charset charset, final String current_dir) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return h.cmd(cmd, timeout_sec, env, stdin_data, charset, current_dir);
+				}
+			};
+	}
+	
+	protected static HostOperation cmdElevatedOp(final String cmd, final int timeout_sec, final Map<String, String> env, final byte[] stdin_data, final Charset charset, final String current_dir) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return h.cmdElevated(cmd, timeout_sec, env, stdin_data, charset, current_dir);
+				}
+			};
+	}
+	
+	protected static HostOperation saveTextFileOp(final String path, final String string, @Nullable final CharsetEncoder ce) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return ce == null ? h.mSaveTextFile(path, string) : h.mSaveTextFile(path, string, ce);
+				}
+			};
+	}
+	
+	protected static HostOperation deleteOp(final String file, final boolean elevated) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return elevated ? h.mDeleteElevated(file) : h.mDelete(file);
+				}
+			};
+	}
+	
+	protected static HostOperation copyOp(final String src, final String dst, final boolean elevated) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return elevated ? h.mCopyElevated(src, dst) : h.mCopy(src, dst);
+				}
+			};
+	}
+	
+	protected static HostOperation moveOp(final String src, final String dst, final boolean elevated) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return elevated ? h.mMoveElevated(src, dst) : h.mMove(src, dst);
+				}
+			};
+	}
+	
+	protected static HostOperation createDirsOp(final String path) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return h.mCreateDirs(path);
+				}
+			};
+	}
+	
+	protected static HostOperation uploadOp(final String local_file, final String remote_file) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return h.upload(local_file, remote_file);
+				}
+			};
+	}
+	
+	protected static HostOperation unzipOp(final ConsoleManager cm, final String zip_file, final String app_dir) {
+		return new HostOperation() {
+				@Override
+				public boolean run(Host h) throws Exception {
+					return h.unzip(cm, zip_file, app_dir);
+				}
+			};
+	}
+	
 	@Override
 	public boolean exec(ConsoleManager cm, String ctx_str, String cmd, int timeout_sec, Map<String, String> env, byte[] stdin_post, Charset charset, String current_dir) throws IllegalStateException, Exception {
-		for (Host h : this)
-			if (!h.exec(cm, ctx_str, cmd, timeout_sec, env, stdin_post, charset, current_dir))
-				return false;
-		return !isEmpty();
+		return fanOut(execOp(cm, ctx_str, cmd, timeout_sec, env, stdin_post, charset, current_dir), execTimeoutSeconds(timeout_sec)).checkAll(cm, "exec") && !isEmpty();
 	}
 	public void exec(String cmd, int timeout_sec, BooleanCollector c) {
 		exec(null, null, cmd, timeout_sec, c);
 	}
 	public void exec(ConsoleManager cm, String ctx_str, String cmd, int timeout_sec, BooleanCollector c) {
-		exec(cm, ctx_str, cmd, timeout_sec, c);
+		exec(cm, ctx_str, cmd, timeout_sec, null, null, null, null, c);
 	}
 	public void exec(ConsoleManager cm, String ctx_str, String cmd, int timeout_sec, Map<String, String> env, byte[] stdin_post, Charset charset, String current_dir, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.exec(cm, ctx_str, cmd, timeout_sec, env, stdin_post, charset, current_dir));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(execOp(cm, ctx_str, cmd, timeout_sec, env, stdin_post, charset, current_dir), execTimeoutSeconds(timeout_sec)).collect(c);
 	}
 	
 	@Override
 	public boolean exec(ConsoleManager cm, String ctx_str, String commandline, int timeout, Map<String, String> env, byte[] stdin, Charset charset, String chdir, TestPackRunnerThread thread, int thread_slow_sec) throws Exception {
-		for (Host h : this)
-			if (!h.exec(cm, ctx_str, commandline, timeout, env, stdin, charset, chdir, thread, thread_slow_sec))
-				return false;
-		return !isEmpty();
+		return fanOut(execOp(cm, ctx_str, commandline, timeout, env, stdin, charset, chdir, thread, thread_slow_sec), execTimeoutSeconds(timeout)).checkAll(cm, "exec") && !isEmpty();
 	}
 	
 	@Override
 	public boolean execElevated(ConsoleManager cm, String ctx_str, String cmd, int timeout_sec, Map<String, String> env, byte[] stdin_data, Charset charset, String chdir, TestPackRunnerThread test_thread, int slow_timeout_sec) throws Exception {
-		for (Host h : this)
-			if (!h.execElevated(cm, ctx_str, cmd, timeout_sec, env, stdin_data, charset, chdir, test_thread, slow_timeout_sec))
-				return false;
-		return !isEmpty();
+		return fanOut(execElevatedOp(cm, ctx_str, cmd, timeout_sec, env, stdin_data, charset, chdir, test_thread, slow_timeout_sec), execTimeoutSeconds(timeout_sec)).checkAll(cm, "execElevated") && !isEmpty();
 	}
 	public void execElevated(String cmd, int timeout_sec, BooleanCollector c) {
 		execElevated(null, null, cmd, timeout_sec, c);
 	}
 	public void execElevated(ConsoleManager cm, String ctx_str, String cmd, int timeout_sec, BooleanCollector c) {
-		execElevated(cm, ctx_str, cmd, timeout_sec, c);
+		execElevated(cm, ctx_str, cmd, timeout_sec, null, null, null, null, null, Host.FOUR_HOURS, c);
 	}
 	public void execElevated(ConsoleManager cm, String ctx_str, String cmd, int timeout_sec, Map<String, String> env, byte[] stdin_data, Charset charset, String chdir, TestPackRunnerThread test_thread, int slow_timeout_sec, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.execElevated(cm, ctx_str, cmd, timeout_sec, env, stdin_data, charset, chdir, test_thread, slow_timeout_sec));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(execElevatedOp(cm, ctx_str, cmd, timeout_sec, env, stdin_data, charset, chdir, test_thread, slow_timeout_sec), execTimeoutSeconds(timeout_sec)).collect(c);
 	}
 	
 	@Override
@@ -136,177 +578,79 @@ public class HostGroup extends Host implements List<Host> {
 	}
 	@Override
 	public boolean cmd(String cmd, int timeout_sec, Map<String, String> env, byte[] stdin_data, Charset charset, String current_dir) throws IllegalStateException, Exception {
-		for (Host h : this)
-			if (!h.cmd(cmd, timeout_sec, env, stdin_data, charset, current_dir))
-				return false;
-		return !isEmpty();
+		return fanOut(cmdOp(cmd, timeout_sec, env, stdin_data, charset, current_dir), execTimeoutSeconds(timeout_sec)).checkAll(null, "cmd") && !isEmpty();
 	}
 	public void cmd(String cmd, int timeout_sec, BooleanCollector c) {
-		cmd(cmd, timeout_sec, c);
+		cmd(cmd, timeout_sec, null, null, null, null, c);
 	}
 	public void cmd(String cmd, int timeout_sec, Map<String, String> env, byte[] stdin_data, Charset charset, String current_dir, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.cmd(cmd, timeout_sec, env, stdin_data, charset, current_dir));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(cmdOp(cmd, timeout_sec, env, stdin_data, charset, current_dir), execTimeoutSeconds(timeout_sec)).collect(c);
 	}
 	@Override
 	public boolean cmdElevated(String cmd, int timeout_sec, Map<String, String> env, byte[] stdin_data, Charset charset, String current_dir) throws IllegalStateException, Exception {
-		for (Host h : this)
-			if (!h.cmdElevated(cmd, timeout_sec, env, stdin_data, charset, current_dir))
-				return false;
-		return !isEmpty();
+		return fanOut(cmdElevatedOp(cmd, timeout_sec, env, stdin_data, charset, current_dir), execTimeoutSeconds(timeout_sec)).checkAll(null, "cmdElevated") && !isEmpty();
 	}
 	public void cmdElevated(String cmd, int timeout_sec, BooleanCollector c) {
-		cmdElevated(cmd, timeout_sec, c);
+		cmdElevated(cmd, timeout_sec, null, null, null, null, c);
 	}
 	public void cmdElevated(String cmd, int timeout_sec, Map<String, String> env, byte[] stdin_data, Charset charset, String current_dir, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.cmdElevated(cmd, timeout_sec, env, stdin_data, charset, current_dir));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(cmdElevatedOp(cmd, timeout_sec, env, stdin_data, charset, current_dir), execTimeoutSeconds(timeout_sec)).collect(c);
 	}
 	@Override
 	public boolean mSaveTextFile(String path, String string) throws IllegalStateException, IOException {
-		for (Host h : this) {
-			if (!h.mSaveTextFile(path, string))
-				return false;
-		}
-		return true;
+		return fanOut(saveTextFileOp(path, string, null), host_timeout_sec).checkAllIO(null, "saveTextFile");
 	}
 	public void saveTextFile(String path, String string, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.mSaveTextFile(path, string));
-			} catch ( Throwable t ) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(saveTextFileOp(path, string, null), host_timeout_sec).collect(c);
 	}
 	@Override
 	public boolean mSaveTextFile(String filename, String text, CharsetEncoder ce) throws IllegalStateException, IOException {
-		for (Host h : this) {
-			if (!h.mSaveTextFile(filename, text, ce))
-				return false;
-		}
-		return true;
+		return fanOut(saveTextFileOp(filename, text, ce), host_timeout_sec).checkAllIO(null, "saveTextFile");
 	}
 	public void saveTextFile(String filename, String text, CharsetEncoder ce, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.mSaveTextFile(filename, text, ce));
-			} catch ( Throwable t ) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(saveTextFileOp(filename, text, ce), host_timeout_sec).collect(c);
 	}
 	@Override
 	public boolean mDelete(String file) throws IllegalStateException, IOException {
-		for (Host h : this) {
-			if (!h.mDelete(file))
-				return false;
-		}
-		return true;
+		return fanOut(deleteOp(file, false), host_timeout_sec).checkAllIO(null, "delete");
 	}
 	public void delete(String file, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.mDelete(file));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(deleteOp(file, false), host_timeout_sec).collect(c);
 	}
 	@Override
 	public boolean mDeleteElevated(String file) throws IllegalStateException, IOException {
-		for (Host h : this) {
-			if (!h.mDeleteElevated(file))
-				return false;
-		}
-		return true;
+		return fanOut(deleteOp(file, true), host_timeout_sec).checkAllIO(null, "deleteElevated");
 	}
 	public void deleteElevated(String file, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.mDeleteElevated(file));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(deleteOp(file, true), host_timeout_sec).collect(c);
 	}
 	@Override
 	public boolean mCopy(String src, String dst) throws IllegalStateException, Exception {
-		for (Host h : this) {
-			if (!h.mCopy(src, dst))
-				return false;
-		}
-		return true;
+		return fanOut(copyOp(src, dst, false), host_timeout_sec).checkAll(null, "copy");
 	}
 	public void copy(String src, String dst, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.mCopy(src, dst));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(copyOp(src, dst, false), host_timeout_sec).collect(c);
 	}
 	@Override
 	public boolean mCopyElevated(String src, String dst) throws IllegalStateException, Exception {
-		for (Host h : this) {
-			if (!h.mCopyElevated(src, dst))
-				return false;
-		}
-		return true;
+		return fanOut(copyOp(src, dst, true), host_timeout_sec).checkAll(null, "copyElevated");
 	}
 	public void copyElevated(String src, String dst, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.mCopyElevated(src, dst));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(copyOp(src, dst, true), host_timeout_sec).collect(c);
 	}
 	@Override
 	public boolean mMove(String src, String dst) throws IllegalStateException, Exception {
-		for (Host h : this) {
-			if (!h.mMove(src, dst))
-				return false;
-		}
-		return true;
+		return fanOut(moveOp(src, dst, false), host_timeout_sec).checkAll(null, "move");
 	}
 	public void move(String src, String dst, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.mMove(src, dst));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(moveOp(src, dst, false), host_timeout_sec).collect(c);
 	}
 	@Override
 	public boolean mMoveElevated(String src, String dst) throws IllegalStateException, Exception {
-		for (Host h : this) {
-			if (!h.mMoveElevated(src, dst))
-				return false;
-		}
-		return true;
+		return fanOut(moveOp(src, dst, true), host_timeout_sec).checkAll(null, "moveElevated");
 	}
 	public void moveElevated(String src, String dst, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.mMoveElevated(src, dst));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(moveOp(src, dst, true), host_timeout_sec).collect(c);
 	}
 	@Override
 	public String mDirSeparator() {
@@ -448,20 +792,10 @@ public class HostGroup extends Host implements List<Host> {
 	}
 	@Override
 	public boolean mCreateDirs(String path) throws IllegalStateException, IOException {
-		for (Host h : this) {
-			if (!h.mCreateDirs(path))
-				return false;
-		}
-		return true;
+		return fanOut(createDirsOp(path), host_timeout_sec).checkAllIO(null, "mkdirs");
 	}
 	public void mkdirs(String path, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.mCreateDirs(path));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(createDirsOp(path), host_timeout_sec).collect(c);
 	}
 	@Override
 	public String mPathsSeparator() {
@@ -531,20 +865,10 @@ public class HostGroup extends Host implements List<Host> {
 	}
 	@Override
 	public boolean upload(String local_file, String remote_file) throws IllegalStateException, IOException, Exception {
-		for (Host h : this) {
-			if (!h.upload(local_file, remote_file))
-				return false;
-		}
-		return true;
+		return fanOut(uploadOp(local_file, remote_file), host_timeout_sec).checkAll(null, "upload");
 	}
 	public void upload(String local_file, String remote_file, BooleanCollector c) {
-		for (Host h : this) {
-			try {
-				c.collect(h, h.upload(local_file, remote_file));
-			} catch (Throwable t) {
-				c.collect(h, false);
-			}
-		}
+		fanOut(uploadOp(local_file, remote_file), host_timeout_sec).collect(c);
 	}
 	@Override
 	public String getSystemRoot() {
@@ -664,10 +988,7 @@ public class HostGroup extends Host implements List<Host> {
 	}
 	@Override
 	public boolean unzip(ConsoleManager cm, String zip_file, String app_dir) {
-		for (Host h : this)
-			if (!h.unzip(cm, zip_file, app_dir))
-				return false;
-		return !isEmpty();
+		return fanOut(unzipOp(cm, zip_file, app_dir), host_timeout_sec).check(cm, "unzip") && !isEmpty();
 	}
 	@Override
 	public boolean isVistaOrBefore() {
@@ -364,6 +364,11 @@ public abstract class LocalHost extends AHost {
 		protected String image_name;
 		protected Charset charset;
 		protected final AtomicBoolean wait = new AtomicBoolean(true), timedout = new AtomicBoolean(false);
+		/** notified when #wait is set to false (by #close) or output has been copied (@see WindowsLocalHost#exec_copy_lines) */
+		protected final Object run_lock = new Object();
+		/** thread blocked in Process#waitFor in #waitForExit, if any. only accessed while synchronized on #run_lock */
+		protected Thread exit_waiter;
+		protected boolean exit_waiter_interrupted;
 		
 		public LocalExecHandle(Process process, OutputStream stdin, InputStream stdout, InputStream stderr, String[] cmd_array) {
 			this.process = new AtomicReference<Process>(process);
@@ -445,6 +450,14 @@ public abstract class LocalHost extends AHost {
 						// by now process should be dead/should have stopped writing
 						// so #exec_copy_lines should stop (which will stop blocking whatever called #exec_impl or #exec or #execOut)
 						wait.set(false);
+						synchronized(run_lock) {
+							run_lock.notifyAll();
+							// stop #waitForExit from waiting on a process that can't be terminated
+							if (exit_waiter!=null) {
+								exit_waiter_interrupted = true;
+								exit_waiter.interrupt();
+							}
+						}
 						
 						synchronized(close_thread_set) {
 							if (close_thread_set.get(calling_thread)==tlock)
@@ -454,9 +467,8 @@ public abstract class LocalHost extends AHost {
 							tlock.notifyAll();
 						}
 						
-						// encourage JVM to free up the Windows process handle (may have problems if too many are left open too long)
+						releaseHandles(p);
 						process.set(null);
-						System.gc();
 					} // end public void run
 				});
 		} // end public void close
@@ -472,11 +484,7 @@ public abstract class LocalHost extends AHost {
 			// read process' output (block until #close or exit)
 			exec_copy_lines(output_sb, max_chars, stdout, charset);
 			// ignores STDERR
-			for(;;) {
-				if (!doIsRunning(p))
-					break;
-				Thread.sleep(50);
-			}
+			waitForExit(p);
 			// wait for process exit (shouldn't get here until exit or #close though)
 			/*for (int time = 50;wait.get();) {
 				try {
@@ -523,15 +531,75 @@ public abstract class LocalHost extends AHost {
 				ensureClosedAfterRun(p);
 			}
 			
-			// encourage JVM to free up the Windows process handle (may have problems if too many are left open too long)
+			releaseHandles(p);
 			process.set(null);
-			System.gc();
 		} // end protected void run
 		
+		/** blocks until process exits (without polling) or until #close gives up on terminating it
+		 * 
+		 * @param p
+		 * @throws InterruptedException
+		 */
+		protected void waitForExit(Process p) throws InterruptedException {
+			synchronized(run_lock) {
+				if (!wait.get())
+					// #close already finished
+					return;
+				exit_waiter = Thread.currentThread();
+			}
+			try {
+				p.waitFor();
+			} catch ( InterruptedException ex ) {
+				synchronized(run_lock) {
+					if (!exit_waiter_interrupted)
+						throw ex;
+				}
+			} finally {
+				synchronized(run_lock) {
+					exit_waiter = null;
+					if (exit_waiter_interrupted) {
+						// clear interrupt from #close (if Process#waitFor returned before it was delivered)
+						Thread.interrupted();
+						exit_waiter_interrupted = false;
+					}
+				}
+			}
+		}
+		
+		/** releases the process' pipe handles right away instead of leaving them for the garbage collector.
+		 * 
+		 * Windows may have problems if too many handles are left open too long. Don't call System#gc to
+		 * free them though, with thousands of processes/minute that causes lots of (full) GCs.
+		 * 
+		 * @param p
+		 */
+		protected void releaseHandles(Process p) {
+			try {
+				p.getOutputStream().close();
+			} catch ( Throwable t ) {}
+			try {
+				p.getInputStream().close();
+			} catch ( Throwable t ) {}
+			try {
+				p.getErrorStream().close();
+			} catch ( Throwable t ) {}
+		}
+		
 		protected abstract void ensureClosedAfterRun(Process p);
 				
 		protected abstract void exec_copy_lines(final StringBuilder sb, final int max_chars, final InputStream in, final Charset charset) throws IOException;
 		
+		/** copies process' output to sb, line by line.
+		 * 
+		 * Each line is decoded and appended as soon as it is read, so if the process times out or is killed, the
+		 * output it wrote until then is still in sb.
+		 * 
+		 * @param sb
+		 * @param max_chars - stop after this many (decoded) characters, or <1 for no limit
+		 * @param in
+		 * @param charset
+		 * @throws IOException
+		 */
 		protected void do_exec_copy_lines(StringBuilder sb, int max_chars, InputStream in, Charset charset) throws IOException {
 			DefaultCharsetDeciderDecoder d = charset == null ? null : PhptTestCase.newCharsetDeciderDecoder();
 			ByLineReader reader = charset == null ? new NoCharsetByLineReader(new java.io.BufferedInputStream(in)) : new MultiCharsetByLineReader(in, d);
@@ -926,6 +994,21 @@ public abstract class LocalHost extends AHost {
 	public long mMTime(String file) {
 		return new File(file).lastModified();
 	}
+	
+	@Override
+	protected void mListFiles(String dir, String rel_dir, Map<String,FileStat> files) {
+		File[] list = new File(dir).listFiles();
+		if (list==null)
+			return;
+		String rel_path;
+		for ( File f : list ) {
+			rel_path = rel_dir == null ? f.getName() : rel_dir + "/" + f.getName();
+			if (f.isDirectory())
+				mListFiles(f.getPath(), rel_path, files);
+			else
+				files.put(rel_path, new FileStat(f.length(), f.lastModified()));
+		}
+	}
 
 	@Override
 	public boolean mDeleteChosenFiles(String dir, IFileChooser chr) {
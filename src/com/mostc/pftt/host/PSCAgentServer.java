@@ -6,8 +6,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.kxml2.io.KXmlParser;
 import org.kxml2.io.KXmlSerializer;
@@ -48,9 +50,18 @@ public abstract class PSCAgentServer implements ConsoleManager, ITestResultRecei
 	protected final FileSystemScenario fs;
 	protected InputStream parser_in;
 	protected OutputStream serial_out;
+	/** set once controller asks for binary framing (@see PSCProtocol) */
+	protected volatile PSCFrameWriter frame_writer;
 	protected boolean no_result_file_for_pass_xskip_skip, randomize_order, thread_safety;
 	protected int run_test_times_all = 1, run_test_pack = 1, run_test_times_list_times = 1, run_group_times_list_times = 1, run_group_times = 1;
 	protected final LinkedList<String> run_test_times_list, run_group_times_list, skip_list;
+	/** groups of tests sent by coordinator (@see DistributedPhptTestPackRunner), not run yet */
+	protected final LinkedBlockingQueue<WorkAssignment> work_groups;
+	/** group being received from coordinator */
+	protected WorkAssignment work_group;
+	/** groups to ask for, so 1 group can be running while the next 1 is sent (agent doesn't wait for the coordinator
+	 * between groups). groups sent to an agent can't be stolen by other agents, so this is kept small */
+	public static final int WORK_PREFETCH = 2;
 	
 	public PSCAgentServer() {
 		host = LocalHost.getInstance();
@@ -59,6 +70,7 @@ public abstract class PSCAgentServer implements ConsoleManager, ITestResultRecei
 		run_test_times_list = new LinkedList<String>();
 		run_group_times_list = new LinkedList<String>();
 		skip_list = new LinkedList<String>();
+		work_groups = new LinkedBlockingQueue<WorkAssignment>();
 		
 		parser = new KXmlParser();
 		serial = new KXmlSerializer();
@@ -83,6 +95,9 @@ public abstract class PSCAgentServer implements ConsoleManager, ITestResultRecei
 			};
 		t.setDaemon(true);
 		t.start();
+		// keep agent running until coordinator stops it (@see #stop) or closes the stream
+		// (setup, tests, etc... are run by daemon threads)
+		t.join();
 	}
 	
 	protected void handleIncomingMessages() throws XmlPullParserException, IOException {
@@ -140,17 +155,40 @@ public abstract class PSCAgentServer implements ConsoleManager, ITestResultRecei
 					t.start();
 				} else if (tag_name.equals("stop")) {
 					stop();
+				} else if (tag_name.equals(PSCProtocol.HELLO_TAG)) {
+					startProtocol(parser.getAttributeValue(null, "protocol"), parser.getAttributeValue(null, "compress"));
+				} else if (tag_name.equals("startWork")) {
+					Thread t = new Thread() {
+							public void run() {
+								runWork();
+							}
+						};
+					t.setDaemon(true);
+					t.start();
+				} else if (tag_name.equals("workGroup")) {
+					work_group = new WorkAssignment(StringUtil.parseInt(parser.getAttributeValue(null, "id")));
+				} else if (tag_name.equals("noMoreWork")) {
+					work_groups.add(WorkAssignment.NO_MORE_WORK);
 				}
 				
 				break;
 			case XmlPullParser.END_TAG:
-				break main_loop;
+				if (parser.getName().equals("workGroup") && work_group!=null) {
+					work_groups.add(work_group);
+					work_group = null;
+				}
+				// end of message (or of element in message): keep reading messages until stream ends
+				tag_name = "";
+				break;
 			case XmlPullParser.END_DOCUMENT:
 				break main_loop;
 			case XmlPullParser.TEXT:
 				
 				if (tag_name.equals("test_name")) {
-					addTestName(parser.getText());
+					if (work_group!=null)
+						work_group.test_names.add(parser.getText());
+					else
+						addTestName(parser.getText());
 				} else if (tag_name.equals("run_test_times_list")) {
 					run_test_times_list.add(parser.getText());
 				} else if (tag_name.equals("run_group_times_list")) {
@@ -165,13 +203,99 @@ public abstract class PSCAgentServer implements ConsoleManager, ITestResultRecei
 		} // end while
 	} // end protected void handleIncomingMessages
 
+	/** switches to binary framing if controller asked for it. otherwise keeps sending XML.
+	 *
+	 * controller is waiting for reply to hello, so reply must be sent before anything else
+	 *
+	 * @param protocol
+	 * @param compress
+	 */
+	protected void startProtocol(String protocol, String compress) {
+		if (!PSCProtocol.PROTOCOL_BINARY.equals(protocol) || frame_writer!=null)
+			return;
+		final boolean deflate = PSCProtocol.COMPRESS_DEFLATE.equals(compress);
+		try {
+			synchronized(serial_out) {
+				serial_out.write(PSCProtocol.createHello(PSCProtocol.PROTOCOL_BINARY, deflate).getBytes());
+				serial_out.write('\n');
+				serial_out.flush();
+				frame_writer = new PSCFrameWriter(serial_out, deflate);
+			}
+		} catch ( Exception ex ) {
+			ex.printStackTrace(System.err); // CRITICAL: send over System.err not System.out!!!
+		}
+	}
+	
+	/** 1 group of tests the coordinator sent this agent to run */
+	protected static class WorkAssignment {
+		/** coordinator has no more groups for this agent */
+		protected static final WorkAssignment NO_MORE_WORK = new WorkAssignment(-1);
+		protected final int id;
+		protected final ArrayList<String> test_names;
+		
+		protected WorkAssignment(int id) {
+			this.id = id;
+			test_names = new ArrayList<String>(64);
+		}
+	}
+	
+	/** asks coordinator for groups of tests and runs them, until coordinator has no more.
+	 * 
+	 * scenario set, build and test-pack are setup once (@see #startWork) for all groups.
+	 * after each group, tells the coordinator it finished (after sending its results) and asks for another group.
+	 * 
+	 * @see DistributedPhptTestPackRunner
+	 */
+	protected void runWork() {
+		boolean started = false;
+		try {
+			started = startWork();
+		} catch ( Exception ex ) {
+			ex.printStackTrace(System.err); // important: System.err
+			
+			addGlobalException(EPrintType.CANT_CONTINUE, getClass(), "runWork", ex, "setting up to run groups of tests");
+		}
+		if (!started) {
+			// don't ask for work: coordinator gives this agent's groups to other agents once it has finished
+			finishWork();
+			notifyRunFinished("unable to setup");
+			return;
+		}
+		sendMessage("<requestWork count=\""+WORK_PREFETCH+"\" />");
+		flush();
+		try {
+			WorkAssignment group;
+			while ( ( group = work_groups.take() ) != WorkAssignment.NO_MORE_WORK ) {
+				try {
+					runWorkGroup(group.test_names);
+				} catch ( Exception ex ) {
+					ex.printStackTrace(System.err); // important: System.err
+					
+					addGlobalException(EPrintType.OPERATION_FAILED_CONTINUING, getClass(), "runWork", ex, "running group of tests", group.id);
+				}
+				// send all results of group before telling coordinator the group finished
+				flush();
+				sendMessage("<groupFinished id=\""+group.id+"\" />");
+				sendMessage("<requestWork count=\"1\" />");
+				flush();
+			}
+		} catch ( InterruptedException ex ) {
+		} finally {
+			finishWork();
+		}
+		notifyRunFinished("");
+	} // end protected void runWork
+	
 	protected void notifyRunFinished(String reason) {
+		// send all results before telling controller the run finished
+		flush();
 		sendMessage("<runFinished>"+reason+"</runFinished>");
 		
 		flush();
 	}
 	
 	protected void notifySetupFinished(String reason) {
+		flush();
 		sendMessage("<setupFinished>"+reason+"</setupFinished>");
 		
 		flush();
@@ -179,7 +303,10 @@ public abstract class PSCAgentServer implements ConsoleManager, ITestResultRecei
 	
 	protected void flush() {
 		try {
-			serial.flush();
+			if (frame_writer!=null)
+				frame_writer.flush();
+			else
+				serial.flush();
 		} catch ( Exception ex ) {}
 	}
 	
@@ -241,10 +368,16 @@ public abstract class PSCAgentServer implements ConsoleManager, ITestResultRecei
 		
 		result.test_case = null;
 		
+		if (frame_writer!=null) {
+			// encoded by this thread's channel, not while holding serial_out
+			frame_writer.writeResult(result, test_name);
+			return;
+		}
+		
 		synchronized(serial_out) {
 			// don't do #startDocument -> all it does is print the <?xml header
 			//serial.startDocument("utf-8", Boolean.FALSE);
-			result.serial(serial);// TODO , test_name);
+			result.serial(serial, test_name);
 			// important: call #endDocument or all results will be buffered until last result sent
 			serial.endDocument();
 			serial_out.write('\n');
@@ -266,18 +399,29 @@ public abstract class PSCAgentServer implements ConsoleManager, ITestResultRecei
 		if (type==EPrintType.TIP)
 			return; // ignore
 		
-		sendMessage("<println type=\""+type+"\" ctx=\""+ctx_str+"\">"+string+"</println>");
+		sendMessage("<println type=\""+type+"\" ctx=\""+escapeXml(ctx_str)+"\">"+escapeXml(string)+"</println>");
 	}
 	
 	@Override
 	public void addGlobalException(EPrintType type, String ctx_str, Throwable ex, String msg, Object a, Object b, Object c) {
 		String err_str = ConsoleManagerUtil.toString(ex)+"\nmsg="+msg+"\na="+a+" b="+b+" c="+c;
 		
-		sendMessage("<globalException type=\""+type+"\" ctx=\""+ctx_str+"\">"+err_str+"</globalException>");
+		sendMessage("<globalException type=\""+type+"\" ctx=\""+escapeXml(ctx_str)+"\">"+escapeXml(err_str)+"</globalException>");
+	}
+	
+	/** escapes text for an element or attribute of a message (ex: stack traces contain <init>) */
+	protected static String escapeXml(String text) {
+		if (text==null)
+			return "";
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
 	}
 	
 	protected boolean sendMessage(String msg_str) {
 		try {
+			if (frame_writer!=null) {
+				frame_writer.writeMessage(msg_str);
+				return true;
+			}
 			byte[] msg_bytes = msg_str.getBytes();
 			synchronized(serial_out) {
 				serial_out.write(msg_bytes);
@@ -297,6 +441,20 @@ public abstract class PSCAgentServer implements ConsoleManager, ITestResultRecei
 	protected abstract void stop();
 	protected abstract void startSetup();
 	protected abstract void startRun();
+	/** sets up scenario set, build and test-pack once, before the first group is run (@see #runWork)
+	 * 
+	 * @return FALSE if no tests can be run
+	 * @throws Exception
+	 */
+	protected abstract boolean startWork() throws Exception;
+	/** runs the named tests (1 group sent by coordinator @see #runWork)
+	 * 
+	 * @param test_names
+	 * @throws Exception
+	 */
+	protected abstract void runWorkGroup(List<String> test_names) throws Exception;
+	/** closes what #startWork setup, after the last group */
+	protected abstract void finishWork();
 	
 	@Override
 	public boolean isNoResultFileForPassSkipXSkip() {
@@ -585,4 +743,34 @@ public abstract class PSCAgentServer implements ConsoleManager, ITestResultRecei
 		return null;
 	}
 	
+	@Override
+	public List<String> getRunTimeHistoryList() {
+		return null;
+	}
+	
+	@Override
+	public boolean isNoSkipIfCache() {
+		return false;
+	}
+	
+	@Override
+	public boolean isBinaryResultPack() {
+		return false;
+	}
+	
+	@Override
+	public int getWebServerStandbyCount() {
+		return 0;
+	}
+	
+	@Override
+	public int getPhpUnitWorkerTestCount() {
+		return 0;
+	}
+	
+	@Override
+	public boolean isPhpUnitWorkerKeepDirty() {
+		return false;
+	}
+	
 } // end public abstract class PSCAgentServer
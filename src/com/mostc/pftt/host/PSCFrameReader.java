@@ -0,0 +1,127 @@
+package com.mostc.pftt.host;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nullable;
+
+/** Reads the controller's side of the binary PSC stream (@see PSCProtocol).
+ *
+ * @see PSCFrameWriter - agent side
+ * @author Matt Ficken
+ *
+ */
+
+public class PSCFrameReader extends PSCProtocol {
+	protected final DataInputStream in;
+	protected final Inflater inflater;
+	
+	public PSCFrameReader(InputStream in) {
+		this.in = new DataInputStream(in);
+		inflater = new Inflater();
+	}
+	
+	/** 1 frame read from the stream */
+	public static class Frame {
+		public final byte type;
+		public final short channel;
+		/** for FRAME_MESSAGE, 1 XML message. for FRAME_RESULTS, 1 XML document per result. */
+		public final byte[][] docs;
+		
+		protected Frame(byte type, short channel, byte[][] docs) {
+			this.type = type;
+			this.channel = channel;
+			this.docs = docs;
+		}
+		
+		public boolean isMessage() {
+			return type == FRAME_MESSAGE;
+		}
+		
+		public boolean isResults() {
+			return type == FRAME_RESULTS;
+		}
+		
+		public boolean isEnd() {
+			return type == FRAME_END;
+		}
+	
+	} // end public static class Frame
+	
+	/** reads the next frame. blocks until a whole frame is available.
+	 *
+	 * @return frame or NULL if the stream ended without a FRAME_END (ex: agent crashed)
+	 * @throws IOException - if stream is corrupt
+	 */
+	@Nullable
+	public Frame next() throws IOException {
+		int length;
+		try {
+			length = in.readInt();
+		} catch ( EOFException ex ) {
+			return null;
+		}
+		if (length < FRAME_HEADER_LENGTH || length > MAX_FRAME_LENGTH)
+			throw new IOException("corrupt PSC stream: frame length="+length);
+		final byte type = in.readByte();
+		final byte flags = in.readByte();
+		final short channel = in.readShort();
+		byte[] body = new byte[length - FRAME_HEADER_LENGTH];
+		in.readFully(body);
+		
+		if ((flags & FLAG_DEFLATE) != 0)
+			body = inflate(body);
+		
+		switch(type) {
+		case FRAME_MESSAGE:
+			return new Frame(type, channel, new byte[][]{body});
+		case FRAME_RESULTS:
+			DataInputStream body_in = new DataInputStream(new ByteArrayInputStream(body));
+			final int count = body_in.readInt();
+			if (count < 0 || count > body.length)
+				throw new IOException("corrupt PSC stream: result count="+count);
+			byte[][] docs = new byte[count][];
+			for ( int i=0 ; i < count ; i++ ) {
+				docs[i] = new byte[body_in.readInt()];
+				body_in.readFully(docs[i]);
+			}
+			return new Frame(type, channel, docs);
+		case FRAME_END:
+			return new Frame(type, channel, new byte[0][]);
+		default:
+			throw new IOException("corrupt PSC stream: frame type="+type);
+		}
+	} // end public Frame next
+	
+	protected byte[] inflate(byte[] body) throws IOException {
+		DataInputStream body_in = new DataInputStream(new ByteArrayInputStream(body));
+		final int length = body_in.readInt();
+		if (length < 0 || length > MAX_FRAME_LENGTH)
+			throw new IOException("corrupt PSC stream: uncompressed length="+length);
+		byte[] out = new byte[length];
+		inflater.reset();
+		inflater.setInput(body, 4, body.length - 4);
+		try {
+			int off = 0;
+			while ( off < length ) {
+				int n = inflater.inflate(out, off, length - off);
+				if (n==0 && (inflater.finished() || inflater.needsInput()))
+					throw new IOException("corrupt PSC stream: compressed frame ended early");
+				off += n;
+			}
+		} catch ( DataFormatException ex ) {
+			throw new IOException("corrupt PSC stream: "+ex.getMessage());
+		}
+		return out;
+	} // end protected byte[] inflate
+	
+	public void close() {
+		inflater.end();
+	}
+
+} // end public class PSCFrameReader
@@ -0,0 +1,230 @@
+package com.mostc.pftt.host;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+
+import org.kxml2.io.KXmlSerializer;
+
+import com.mostc.pftt.results.PhptTestResult;
+
+/** Writes the agent's side of the binary PSC stream (@see PSCProtocol).
+ *
+ * Each thread that sends results gets its own channel. A channel encodes its thread's results into its own batch
+ * (no lock shared with other threads) and writes the batch as 1 frame when it's full or old enough. The shared lock
+ * is only held to write a finished frame to the stream.
+ *
+ * @see PSCFrameReader - controller side
+ * @author Matt Ficken
+ *
+ */
+
+public class PSCFrameWriter extends PSCProtocol {
+	/** max results in 1 frame */
+	public static final int MAX_BATCH_RESULTS = 64;
+	/** max (uncompressed) bytes of results in 1 frame */
+	public static final int MAX_BATCH_BYTES = 256*1024;
+	/** results that wait in a batch longer than this are sent anyway, so the controller can show progress */
+	public static final int MAX_BATCH_MILLIS = 500;
+	protected final OutputStream out;
+	protected final boolean compress;
+	protected final ArrayList<Channel> channels;
+	protected final ThreadLocal<Channel> thread_channel;
+	protected final Thread flush_thread;
+	protected volatile boolean closed;
+	
+	public PSCFrameWriter(OutputStream out, boolean compress) {
+		this.out = out;
+		this.compress = compress;
+		channels = new ArrayList<Channel>(16);
+		thread_channel = new ThreadLocal<Channel>() {
+				@Override
+				protected Channel initialValue() {
+					synchronized(channels) {
+						Channel c = new Channel(channels.size());
+						channels.add(c);
+						return c;
+					}
+				}
+			};
+		
+		flush_thread = new Thread() {
+				@Override
+				public void run() {
+					while (!closed) {
+						try {
+							Thread.sleep(MAX_BATCH_MILLIS);
+							
+							flushOld(System.currentTimeMillis() - MAX_BATCH_MILLIS);
+						} catch ( InterruptedException ex ) {
+							break;
+						} catch ( Exception ex ) {
+							ex.printStackTrace(System.err); // important: System.err
+						}
+					}
+				}
+			};
+		flush_thread.setName("PSCFlush");
+		flush_thread.setDaemon(true);
+		flush_thread.start();
+	}
+	
+	/** 1 thread's batch of results */
+	protected class Channel {
+		protected final short id;
+		protected final ByteArrayOutputStream doc_bytes, batch_bytes, frame_bytes;
+		protected final DataOutputStream batch;
+		protected final KXmlSerializer serial;
+		protected final Deflater deflater;
+		protected final byte[] deflate_buf;
+		protected int batch_count;
+		protected long batch_start_millis;
+		
+		protected Channel(int id) {
+			this.id = (short) id;
+			doc_bytes = new ByteArrayOutputStream(4096);
+			batch_bytes = new ByteArrayOutputStream(MAX_BATCH_BYTES + 64*1024);
+			frame_bytes = new ByteArrayOutputStream(8192);
+			batch = new DataOutputStream(batch_bytes);
+			serial = new KXmlSerializer();
+			try {
+				// set output once: #setOutput(OutputStream, String) creates a new Writer and buffer every time
+				serial.setOutput(new OutputStreamWriter(doc_bytes, "UTF-8"));
+			} catch ( IOException ex ) {
+				// n/a: UTF-8 always supported
+			}
+			deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+			deflate_buf = compress ? new byte[8192] : null;
+		}
+		
+		protected synchronized void addResult(PhptTestResult result, String test_case_name) throws IOException {
+			doc_bytes.reset();
+			result.serial(serial, test_case_name);
+			// important: call #endDocument or the result may stay buffered in the serializer's Writer
+			serial.endDocument();
+			
+			if (batch_count==0)
+				batch_start_millis = System.currentTimeMillis();
+			batch.writeInt(doc_bytes.size());
+			doc_bytes.writeTo(batch);
+			batch_count++;
+			
+			if (batch_count >= MAX_BATCH_RESULTS || batch_bytes.size() >= MAX_BATCH_BYTES)
+				flushBatch();
+		}
+		
+		protected synchronized void flushBatch() throws IOException {
+			if (batch_count==0)
+				return;
+			// body: count of results, then the results
+			ByteArrayOutputStream body = new ByteArrayOutputStream(4 + batch_bytes.size());
+			new DataOutputStream(body).writeInt(batch_count);
+			batch_bytes.writeTo(body);
+			batch_bytes.reset();
+			batch_count = 0;
+			
+			writeFrame(FRAME_RESULTS, body.toByteArray());
+		}
+		
+		protected synchronized void writeFrame(byte type, byte[] body) throws IOException {
+			frame_bytes.reset();
+			DataOutputStream frame = new DataOutputStream(frame_bytes);
+			byte flags = 0;
+			if (compress && body.length > 128) {
+				flags = FLAG_DEFLATE;
+				frame.writeInt(body.length);
+				deflater.reset();
+				deflater.setInput(body);
+				deflater.finish();
+				while (!deflater.finished()) {
+					int n = deflater.deflate(deflate_buf);
+					frame.write(deflate_buf, 0, n);
+				}
+			} else {
+				frame.write(body);
+			}
+			
+			synchronized(out) {
+				DataOutputStream dout = new DataOutputStream(out);
+				dout.writeInt(FRAME_HEADER_LENGTH + frame_bytes.size());
+				dout.writeByte(type);
+				dout.writeByte(flags);
+				dout.writeShort(id);
+				frame_bytes.writeTo(out);
+				out.flush();
+			}
+		}
+	
+	} // end protected class Channel
+	
+	/** encodes result and adds it to the calling thread's batch
+	 *
+	 * @param result
+	 * @throws IOException
+	 */
+	public void writeResult(PhptTestResult result) throws IOException {
+		writeResult(result, result.test_case==null?null:result.test_case.getName());
+	}
+	
+	/** encodes result with name of its test case (but not the test case) and adds it to the calling thread's batch
+	 *
+	 * @param result
+	 * @param test_case_name
+	 * @throws IOException
+	 */
+	public void writeResult(PhptTestResult result, String test_case_name) throws IOException {
+		thread_channel.get().addResult(result, test_case_name);
+	}
+	
+	/** sends message right away. the calling thread's batch is sent first so its results and messages stay in order.
+	 *
+	 * @param msg_str - XML message
+	 * @throws IOException
+	 */
+	public void writeMessage(String msg_str) throws IOException {
+		Channel c = thread_channel.get();
+		synchronized(c) {
+			c.flushBatch();
+			c.writeFrame(FRAME_MESSAGE, msg_str.getBytes("UTF-8"));
+		}
+	}
+	
+	/** sends the batches of all threads
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		flushOld(Long.MAX_VALUE);
+	}
+	
+	protected void flushOld(long started_before_millis) throws IOException {
+		Channel[] cs;
+		synchronized(channels) {
+			cs = channels.toArray(new Channel[channels.size()]);
+		}
+		for ( Channel c : cs ) {
+			synchronized(c) {
+				if (c.batch_count > 0 && c.batch_start_millis <= started_before_millis)
+					c.flushBatch();
+			}
+		}
+	}
+	
+	/** sends all batches and the end frame. the stream isn't closed.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		flush_thread.interrupt();
+		flush();
+		thread_channel.get().writeFrame(FRAME_END, new byte[0]);
+	}
+
+} // end public class PSCFrameWriter
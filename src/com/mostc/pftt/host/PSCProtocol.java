@@ -0,0 +1,96 @@
+package com.mostc.pftt.host;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nullable;
+
+/** Binary framing for the stream PSCAgentServer sends back to the controller (AbstractRemoteTestPackRunner).
+ *
+ * Originally the whole stream was 1 XML document and every result was serialized while holding 1 lock, so all test
+ * threads on the agent waited on each other to encode XML. With binary framing, each test thread has its own
+ * channel: it encodes its results on its own and sends them in batches (1 frame per batch), optionally compressed.
+ * Frames from different channels are interleaved on the stream.
+ *
+ * Frame: int length (of everything after it), byte type, byte flags, short channel, body
+ *
+ * If FLAG_DEFLATE is set, body is the int length of the uncompressed body followed by the deflated body.
+ *
+ * Body of FRAME_MESSAGE is 1 XML message (println, globalException, runFinished, etc...). Body of FRAME_RESULTS is
+ * an int count followed by that many length-prefixed XML documents (1 per result, same as PhptTestResult#serial).
+ *
+ * The controller asks for binary framing by sending a hello message (@see #createHello). An agent that supports it
+ * replies with a hello line then sends only frames. An older agent doesn't reply so the controller keeps using XML.
+ *
+ * Only the agent to controller direction is framed. The controller only sends a few small commands, which are still XML.
+ *
+ * @see PSCFrameWriter
+ * @see PSCFrameReader
+ * @author Matt Ficken
+ *
+ */
+
+public abstract class PSCProtocol {
+	public static final String HELLO_TAG = "hello";
+	public static final String PROTOCOL_XML = "xml";
+	public static final String PROTOCOL_BINARY = "binary/1";
+	public static final String COMPRESS_DEFLATE = "deflate";
+	public static final byte FRAME_MESSAGE = 1;
+	public static final byte FRAME_RESULTS = 2;
+	/** last frame on stream, sent when agent closes it */
+	public static final byte FRAME_END = 3;
+	public static final byte FLAG_DEFLATE = 1;
+	protected static final int FRAME_HEADER_LENGTH = 4;
+	/** frames larger than this are treated as a corrupt stream */
+	protected static final int MAX_FRAME_LENGTH = 64*1024*1024;
+	/** longest hello line the controller reads before deciding the agent is using XML */
+	protected static final int MAX_HELLO_LENGTH = 256;
+	
+	/** creates hello message. controller sends this to agent to ask for binary framing. agent replies with it to accept.
+	 *
+	 * @param protocol - PROTOCOL_BINARY or PROTOCOL_XML
+	 * @param compress - TRUE to compress frames with Deflater
+	 * @return
+	 */
+	public static String createHello(String protocol, boolean compress) {
+		return "<"+HELLO_TAG+" protocol=\""+protocol+"\" compress=\""+(compress?COMPRESS_DEFLATE:"none")+"\" />";
+	}
+	
+	/** checks if line is a hello accepting binary framing
+	 *
+	 * @param line
+	 * @return
+	 */
+	public static boolean isBinaryHello(@Nullable String line) {
+		return line != null && line.trim().startsWith("<"+HELLO_TAG+" ") && line.contains("protocol=\""+PROTOCOL_BINARY+"\"");
+	}
+	
+	/** checks if hello line accepted compressing frames
+	 *
+	 * @param line
+	 * @return
+	 */
+	public static boolean isCompressHello(@Nullable String line) {
+		return line != null && line.contains("compress=\""+COMPRESS_DEFLATE+"\"");
+	}
+	
+	/** reads the first line of stream, 1 byte at a time so nothing after the line is read.
+	 *
+	 * @param in
+	 * @param line_bytes - bytes read are copied here, so they can be given to an XML parser if the line isn't a hello
+	 * @return line or NULL if stream ended before any bytes
+	 * @throws IOException
+	 */
+	@Nullable
+	public static String readHelloLine(InputStream in, ByteArrayOutputStream line_bytes) throws IOException {
+		int b;
+		while ( ( b = in.read() ) != -1 ) {
+			line_bytes.write(b);
+			if (b=='\n' || line_bytes.size() >= MAX_HELLO_LENGTH)
+				break;
+		}
+		return line_bytes.size() == 0 ? null : new String(line_bytes.toByteArray(), "UTF-8");
+	}
+
+} // end public abstract class PSCProtocol
@@ -0,0 +1,400 @@
+package com.mostc.pftt.host;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import com.mostc.pftt.model.core.PhptTestCase;
+
+/** Groups of tests of 1 test-pack run, distributed between several PSC agents (@see DistributedPhptTestPackRunner).
+ *
+ * Thread-safe tests are grouped by directory (up to max_group_size tests per group). Before the run, the groups are
+ * dealt between the agents: each agent gets its own deque of groups, a contiguous range of directories of about equal
+ * size (so an agent tends to keep running related tests). Groups are only sent to an agent when it asks for more work:
+ * it takes the group at the head of its own deque. Once its own deque is empty, it steals the group at the tail of
+ * the deque of the agent with the most tests pending.
+ *
+ * All tests of a non-thread-safe(NTS) extension (@see PhptTestCase#NON_THREAD_SAFE_EXTENSIONS) are 1 group that is
+ * never split, so they're only run by 1 agent at a time (the same as LocalPhptTestPackRunner does between threads).
+ * An NTS group can be stolen, but only as a whole.
+ *
+ * If an agent is lost (crashed, disconnected, etc...), its pending groups and the tests of its running groups that it
+ * didn't send results for are queued again for the other agents.
+ *
+ * If an agent finishes a group without sending results for some of its tests, those tests are queued again once. If
+ * they're still missing results the second time, they're reported as not run (@see #getUnrunTestNames).
+ *
+ * @see com.mostc.pftt.runner.WorkStealingScheduler - same idea between the threads of 1 host
+ * @author Matt Ficken
+ *
+ */
+
+public class PSCWorkQueue {
+	public static final int DEFAULT_MAX_GROUP_SIZE = 64;
+	protected final int max_group_size;
+	/** thread-safe tests by directory (sorted, so the groups of an agent are near each other) */
+	protected final TreeMap<String,ArrayList<String>> thread_safe_tests;
+	/** tests of each NTS extension (@see PhptTestCase#NON_THREAD_SAFE_EXTENSIONS) */
+	protected final IdentityHashMap<String[],ArrayList<String>> non_thread_safe_tests;
+	protected final ArrayList<Agent> agents;
+	/** groups that aren't in any agent's deque (left by agents that were lost) */
+	protected final LinkedList<WorkGroup> orphans;
+	/** tests whose results were missing twice (@see #finished) */
+	protected final ArrayList<String> unrun_test_names;
+	protected int next_group_id, group_count, test_count, local_take_count, orphan_take_count, steal_count, stolen_test_count, requeued_test_count;
+	
+	public PSCWorkQueue() {
+		this(DEFAULT_MAX_GROUP_SIZE);
+	}
+	
+	public PSCWorkQueue(int max_group_size) {
+		this.max_group_size = Math.max(1, max_group_size);
+		thread_safe_tests = new TreeMap<String,ArrayList<String>>();
+		non_thread_safe_tests = new IdentityHashMap<String[],ArrayList<String>>();
+		agents = new ArrayList<Agent>(8);
+		orphans = new LinkedList<WorkGroup>();
+		unrun_test_names = new ArrayList<String>();
+	}
+	
+	/** group of tests sent to an agent in 1 message */
+	public static class WorkGroup {
+		public final int id;
+		/** NTS extension these tests are of, or null if they're thread-safe */
+		@Nullable
+		public final String[] nts_ext_names;
+		public final List<String> test_names;
+		/** tests whose results were missing when an agent finished them before (they aren't queued again) */
+		public final boolean retry;
+		/** tests that agent hasn't sent results for yet (while group is running) */
+		protected HashSet<String> remaining;
+		
+		protected WorkGroup(int id, @Nullable String[] nts_ext_names, List<String> test_names) {
+			this(id, nts_ext_names, test_names, false);
+		}
+		
+		protected WorkGroup(int id, @Nullable String[] nts_ext_names, List<String> test_names, boolean retry) {
+			this.id = id;
+			this.nts_ext_names = nts_ext_names;
+			this.test_names = test_names;
+			this.retry = retry;
+		}
+		
+		public boolean isNonThreadSafe() {
+			return nts_ext_names != null;
+		}
+		
+		public int size() {
+			return test_names.size();
+		}
+		
+		@Override
+		public String toString() {
+			return "[id="+id+" tests="+test_names.size()+(nts_ext_names==null?"":" nts="+nts_ext_names[0])+(retry?" retry":"")+"]";
+		}
+	
+	} // end public static class WorkGroup
+	
+	/** 1 agent's deque of groups and groups it is running */
+	public static class Agent {
+		protected final String name;
+		protected final LinkedList<WorkGroup> pending;
+		protected final LinkedHashMap<Integer,WorkGroup> running;
+		/** tests in #pending */
+		protected int pending_test_count;
+		protected int finished_group_count;
+		protected boolean lost;
+		
+		protected Agent(String name) {
+			this.name = name;
+			pending = new LinkedList<WorkGroup>();
+			running = new LinkedHashMap<Integer,WorkGroup>();
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	
+	} // end public static class Agent
+	
+	/** adds test to run. must be called before #seed
+	 *
+	 * @param test_case
+	 * @param thread_safety - if FALSE, NTS extensions are run like any other tests (@see ConsoleManager#isThreadSafety)
+	 */
+	public synchronized void add(PhptTestCase test_case, boolean thread_safety) {
+		final String name = test_case.getName();
+		if (thread_safety) {
+			for ( String[] ext_names : PhptTestCase.NON_THREAD_SAFE_EXTENSIONS ) {
+				if (test_case.nameStartsWithAny(ext_names)) {
+					ArrayList<String> names = non_thread_safe_tests.get(ext_names);
+					if (names==null) {
+						names = new ArrayList<String>();
+						non_thread_safe_tests.put(ext_names, names);
+					}
+					names.add(name);
+					test_count++;
+					return;
+				}
+			}
+		}
+		final int i = name.lastIndexOf('/');
+		final String dir = i==-1 ? "" : name.substring(0, i);
+		ArrayList<String> names = thread_safe_tests.get(dir);
+		if (names==null) {
+			names = new ArrayList<String>();
+			thread_safe_tests.put(dir, names);
+		}
+		names.add(name);
+		test_count++;
+	} // end public synchronized void add
+	
+	public void addAll(List<PhptTestCase> test_cases, boolean thread_safety) {
+		for ( PhptTestCase test_case : test_cases )
+			add(test_case, thread_safety);
+	}
+	
+	public synchronized Agent addAgent(String name) {
+		Agent agent = new Agent(name);
+		agents.add(agent);
+		return agent;
+	}
+	
+	/** groups tests and deals groups between agents. call after all tests and agents were added.
+	 *
+	 */
+	public synchronized void seed() {
+		if (agents.isEmpty())
+			throw new IllegalStateException("no agents added");
+		ArrayList<WorkGroup> groups = new ArrayList<WorkGroup>(test_count / max_group_size + thread_safe_tests.size() + non_thread_safe_tests.size());
+		for ( ArrayList<String> names : thread_safe_tests.values() ) {
+			Collections.sort(names);
+			// split big directories so they can be spread between agents
+			final int chunks = (names.size() + max_group_size - 1) / max_group_size;
+			for ( int i=0 ; i < chunks ; i++ ) {
+				final int start = i * names.size() / chunks;
+				final int end = (i+1) * names.size() / chunks;
+				groups.add(new WorkGroup(next_group_id++, null, new ArrayList<String>(names.subList(start, end))));
+			}
+		}
+		for ( Map.Entry<String[],ArrayList<String>> e : non_thread_safe_tests.entrySet() ) {
+			// never split NTS extension
+			Collections.sort(e.getValue());
+			groups.add(new WorkGroup(next_group_id++, e.getKey(), e.getValue()));
+		}
+		thread_safe_tests.clear();
+		non_thread_safe_tests.clear();
+		// put NTS groups between the thread-safe groups of the same directories
+		Collections.sort(groups, new Comparator<WorkGroup>() {
+				@Override
+				public int compare(WorkGroup a, WorkGroup b) {
+					return a.test_names.get(0).compareTo(b.test_names.get(0));
+				}
+			});
+		group_count += groups.size();
+		
+		// deal contiguous ranges of about equal number of tests
+		int a = 0, dealt = 0;
+		for ( WorkGroup group : groups ) {
+			Agent agent = agents.get(a);
+			agent.pending.addLast(group);
+			agent.pending_test_count += group.size();
+			dealt += group.size();
+			if (a + 1 < agents.size() && dealt >= (long) test_count * (a + 1) / agents.size())
+				a++;
+		}
+	} // end public synchronized void seed
+	
+	/** takes next group for agent to run: from its own deque, then groups of lost agents, then steals from the agent
+	 * with the most tests pending.
+	 *
+	 * @param agent
+	 * @return group or null if there are no groups left to run (some may still be running on other agents)
+	 */
+	@Nullable
+	public synchronized WorkGroup take(Agent agent) {
+		if (agent.lost)
+			return null;
+		WorkGroup group = agent.pending.pollFirst();
+		if (group!=null) {
+			agent.pending_test_count -= group.size();
+			local_take_count++;
+		} else if ( ( group = orphans.pollFirst() ) != null ) {
+			orphan_take_count++;
+		} else {
+			Agent victim = null;
+			for ( Agent other : agents ) {
+				if (other!=agent && other.pending_test_count > 0 && (victim==null || other.pending_test_count > victim.pending_test_count))
+					victim = other;
+			}
+			if (victim==null)
+				return null;
+			// steal from tail: victim will take from its head, so it keeps the groups near the ones it's running
+			group = victim.pending.pollLast();
+			victim.pending_test_count -= group.size();
+			steal_count++;
+			stolen_test_count += group.size();
+		}
+		group.remaining = new HashSet<String>(group.test_names);
+		agent.running.put(group.id, group);
+		return group;
+	} // end public synchronized WorkGroup take
+	
+	/** notes that agent sent the result of a test
+	 *
+	 * @param agent
+	 * @param test_name
+	 */
+	public synchronized void resultReceived(Agent agent, String test_name) {
+		for ( WorkGroup group : agent.running.values() ) {
+			if (group.remaining.remove(test_name))
+				return;
+		}
+	}
+	
+	/** agent finished running group (and sent all the results it will send for it).
+	 *
+	 * tests it didn't send results for are queued again (for any agent), unless they already were. then they're
+	 * reported as not run.
+	 *
+	 * @param agent
+	 * @param group_id
+	 * @return number of tests queued again
+	 */
+	public synchronized int finished(Agent agent, int group_id) {
+		WorkGroup group = agent.running.remove(group_id);
+		if (group==null)
+			return 0;
+		agent.finished_group_count++;
+		if (group.remaining.isEmpty())
+			return 0;
+		ArrayList<String> names = remainingInOrder(group);
+		if (group.retry) {
+			unrun_test_names.addAll(names);
+			return 0;
+		}
+		orphans.addFirst(new WorkGroup(next_group_id++, group.nts_ext_names, names, true));
+		requeued_test_count += names.size();
+		return names.size();
+	} // end public synchronized int finished
+	
+	protected static ArrayList<String> remainingInOrder(WorkGroup group) {
+		ArrayList<String> names = new ArrayList<String>(group.remaining.size());
+		// keep order of tests
+		for ( String name : group.test_names ) {
+			if (group.remaining.contains(name))
+				names.add(name);
+		}
+		return names;
+	}
+	
+	/** agent stopped. its pending groups, and the tests of its running groups that it didn't send results for, are
+	 * queued for other agents.
+	 *
+	 * @param agent
+	 * @return number of tests queued again
+	 */
+	public synchronized int removeAgent(Agent agent) {
+		if (agent.lost)
+			return 0;
+		agent.lost = true;
+		int count = 0;
+		for ( WorkGroup group : agent.running.values() ) {
+			if (group.remaining.isEmpty())
+				continue;
+			ArrayList<String> names = remainingInOrder(group);
+			// run them first: they were started before any pending groups
+			orphans.addFirst(new WorkGroup(next_group_id++, group.nts_ext_names, names, group.retry));
+			count += names.size();
+		}
+		agent.running.clear();
+		for ( WorkGroup group : agent.pending )
+			count += group.size();
+		orphans.addAll(agent.pending);
+		agent.pending.clear();
+		agent.pending_test_count = 0;
+		requeued_test_count += count;
+		return count;
+	} // end public synchronized int removeAgent
+	
+	/** checks if all groups were run
+	 *
+	 * @return
+	 */
+	public synchronized boolean isFinished() {
+		if (!orphans.isEmpty())
+			return false;
+		for ( Agent agent : agents ) {
+			if (!agent.pending.isEmpty() || !agent.running.isEmpty())
+				return false;
+		}
+		return true;
+	}
+	
+	/** number of tests not run yet (pending or running)
+	 *
+	 * @return
+	 */
+	public synchronized int getUnfinishedTestCount() {
+		int count = 0;
+		for ( WorkGroup group : orphans )
+			count += group.size();
+		for ( Agent agent : agents ) {
+			count += agent.pending_test_count;
+			for ( WorkGroup group : agent.running.values() )
+				count += group.remaining.size();
+		}
+		return count;
+	}
+	
+	/** tests that agents finished twice without sending results for (@see #finished)
+	 *
+	 * @return
+	 */
+	public synchronized List<String> getUnrunTestNames() {
+		return new ArrayList<String>(unrun_test_names);
+	}
+	
+	public synchronized int getTestCount() {
+		return test_count;
+	}
+	
+	public synchronized int getGroupCount() {
+		return group_count;
+	}
+	
+	public synchronized int getStealCount() {
+		return steal_count;
+	}
+	
+	public synchronized int getStolenTestCount() {
+		return stolen_test_count;
+	}
+	
+	public synchronized int getRequeuedTestCount() {
+		return requeued_test_count;
+	}
+	
+	public synchronized int getFinishedGroupCount(Agent agent) {
+		return agent.finished_group_count;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "tests="+test_count+" groups="+group_count+" agents="+agents.size()+" local_takes="+local_take_count+" orphan_takes="+orphan_take_count+" steals="+steal_count+" stolen_tests="+stolen_test_count+" requeued_tests="+requeued_test_count+" unrun_tests="+unrun_test_names.size();
+	}
+
+} // end public class PSCWorkQueue
@@ -6,6 +6,12 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import com.github.mattficken.io.StringUtil;
 import com.mostc.pftt.main.Config;
@@ -13,10 +19,14 @@ import com.mostc.pftt.model.core.PhpBuild;
 import com.mostc.pftt.model.core.PhptActiveTestPack;
 import com.mostc.pftt.model.core.PhptSourceTestPack;
 import com.mostc.pftt.model.core.PhptTestCase;
+import com.mostc.pftt.results.EPrintType;
 import com.mostc.pftt.results.LocalConsoleManager;
 import com.mostc.pftt.results.PhpResultPackWriter;
+import com.mostc.pftt.results.PhptTestResult;
+import com.mostc.pftt.scenario.EScenarioSetPermutationLayer;
 import com.mostc.pftt.scenario.FileSystemScenario;
 import com.mostc.pftt.scenario.ScenarioSet;
+import com.mostc.pftt.scenario.ScenarioSetSetup;
 
 /**
  * 
@@ -25,9 +35,56 @@ import com.mostc.pftt.scenario.ScenarioSet;
  */
 
 public class RemotePhptTestPackRunner extends AbstractRemoteTestPackRunner<PhptActiveTestPack, PhptSourceTestPack, PhptTestCase> {
+	protected PhptSourceTestPack src_test_pack;
+	/** Scenario Set is setup by agent, not here. only its name is needed to store results */
+	protected final ScenarioSetSetup scenario_set_setup;
+	/** results are stored as results of this host */
+	protected AHost result_host;
 	
 	public RemotePhptTestPackRunner(PhpResultPackWriter tmgr, ScenarioSet scenario_set, PhpBuild build, LocalHost host, AHost remote_host) {
 		super(tmgr, scenario_set, build, host, remote_host);
+		
+		scenario_set_setup = ScenarioSetSetup.describeScenarioSet(scenario_set, EScenarioSetPermutationLayer.FUNCTIONAL_TEST_CORE);
+		result_host = remote_host;
+	}
+	
+	/** stores results as results of this host instead of remote_host (ex: to merge results of several agents)
+	 * 
+	 * @param result_host
+	 */
+	public void setResultHost(AHost result_host) {
+		this.result_host = result_host;
+	}
+	
+	public void setSourceTestPack(PhptSourceTestPack src_test_pack) {
+		this.src_test_pack = src_test_pack;
+	}
+	
+	@Override
+	public void runAllTests(Config config, PhptSourceTestPack test_pack) throws FileNotFoundException, IOException, Exception {
+		this.src_test_pack = test_pack;
+		super.runAllTests(config, test_pack);
+	}
+	
+	@Override
+	public void runTestList(PhptSourceTestPack test_pack, List<PhptTestCase> test_cases) throws Exception {
+		this.src_test_pack = test_pack;
+		super.runTestList(test_pack, test_cases);
+	}
+	
+	@Override
+	protected PhptTestResult parseResult(XmlPullParser parser) throws IllegalCharsetNameException, UnsupportedCharsetException, XmlPullParserException, IOException {
+		// agent sends only name of test case: find it in test-pack
+		return PhptTestResult.parse(parser, src_test_pack);
+	}
+	
+	@Override
+	protected void handleResult(PhptTestResult result) {
+		if (result.test_case==null) {
+			tmgr.getConsoleManager().println(EPrintType.CLUE, getClass(), "Ignoring result for unknown test case from: "+remote_host);
+			return;
+		}
+		tmgr.addResult(result_host, scenario_set_setup, src_test_pack, result);
 	}
 
 	@Override
@@ -55,7 +112,7 @@ public class RemotePhptTestPackRunner extends AbstractRemoteTestPackRunner<PhptA
 	public static void main(String[] args) throws Exception {
 		LocalHost host = LocalHost.getInstance();
 		
-		LocalConsoleManager cm = new LocalConsoleManager(null, null, false, false, false, false, true, false, true, false, false, false, 1, 1, true, 1, 1, 1, null, null, null, null, false, 0, 0, false, false, 0, 0, 0, false, 0, false, false, null);
+		LocalConsoleManager cm = new LocalConsoleManager(null, null, false, false, false, false, true, false, true, false, false, false, 1, 1, true, 1, 1, 1, null, null, null, null, false, 0, 0, false, false, 0, 0, 0, false, 0, false, false, null, null, false, false, 0, 0, false);
 		Config config = Config.loadConfigFromFiles(cm, "default");
 		
 		PhpBuild build = new PhpBuild("C:\\php-sdk\\php-5.5-ts-windows-vc11-x64-re3aeb6c");
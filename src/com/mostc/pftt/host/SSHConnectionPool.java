@@ -0,0 +1,386 @@
+package com.mostc.pftt.host;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+import com.sshtools.j2ssh.SftpClient;
+import com.sshtools.j2ssh.SshClient;
+import com.sshtools.j2ssh.connection.Channel;
+import com.sshtools.j2ssh.connection.ChannelEventListener;
+import com.sshtools.j2ssh.session.SessionChannelClient;
+
+/** Pool of SSH connections to 1 host and of SFTP channels on those connections.
+ *
+ * Originally SSHHost had 1 connection and 1 SFTP channel shared by all threads. All session channels (exec) were
+ * multiplexed on that 1 connection (so they all waited on its 1 transport thread and 1 TCP window) and all SFTP
+ * operations used the same channel (SftpClient isn't thread-safe, and a big transfer made every other thread wait).
+ *
+ * With this pool:
+ * -new session channels go to the connection with the fewest channels in use. another connection is opened (up to
+ *  max_connections) once all connections have channels_per_connection channels in use.
+ * -each SFTP operation borrows its own SFTP channel and returns it when done, so the channel (and its SFTP subsystem
+ *  on the server) is reused by the next operation instead of opened again. several transfers can run at the same
+ *  time, each on its own channel.
+ * -a keep-alive sends a global request on connections that have been idle for KEEP_ALIVE_MILLIS (so firewalls and
+ *  NAT don't drop them), and drops connections and SFTP channels that were closed.
+ *
+ * Session channels can't be reused: SSH allows only 1 command per session channel, so a new one is opened for each
+ * command (which is cheap compared to opening and authenticating a connection).
+ *
+ * @see SSHHost
+ * @author Matt Ficken
+ *
+ */
+
+public abstract class SSHConnectionPool {
+	public static final int DEFAULT_MAX_CONNECTIONS = 4;
+	public static final int DEFAULT_CHANNELS_PER_CONNECTION = 8;
+	/** idle SFTP channels kept open per connection (more than this are closed when returned) */
+	public static final int DEFAULT_MAX_IDLE_SFTP = 4;
+	public static final int KEEP_ALIVE_MILLIS = 60*1000;
+	/** OpenSSH replies to this request (with failure if it doesn't know it) and other servers ignore it */
+	protected static final String KEEP_ALIVE_REQUEST = "keepalive@openssh.com";
+	private static final Timer keep_alive_timer = new Timer("SSHKeepAlive", true);
+	protected final int max_connections, channels_per_connection, max_idle_sftp;
+	protected final ArrayList<Connection> connections;
+	/** connection each borrowed SFTP channel came from */
+	protected final IdentityHashMap<SftpClient,Connection> borrowed_sftp;
+	/** connections being opened (not in #connections yet) */
+	protected int opening;
+	protected boolean closed;
+	protected TimerTask keep_alive_task;
+	
+	public SSHConnectionPool() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_CHANNELS_PER_CONNECTION, DEFAULT_MAX_IDLE_SFTP);
+	}
+	
+	public SSHConnectionPool(int max_connections, int channels_per_connection, int max_idle_sftp) {
+		this.max_connections = Math.max(1, max_connections);
+		this.channels_per_connection = Math.max(1, channels_per_connection);
+		this.max_idle_sftp = Math.max(0, max_idle_sftp);
+		connections = new ArrayList<Connection>(this.max_connections);
+		borrowed_sftp = new IdentityHashMap<SftpClient,Connection>();
+	}
+	
+	/** opens and authenticates a new connection to the host
+	 *
+	 * @return
+	 * @throws IOException
+	 * @throws IllegalStateException - if login failed
+	 */
+	protected abstract SshClient connect() throws IOException, IllegalStateException;
+	
+	/** 1 connection and its idle SFTP channels */
+	protected static class Connection {
+		protected final SshClient ssh;
+		protected final LinkedList<SftpClient> idle_sftp;
+		/** session and SFTP channels borrowed from this connection */
+		protected int in_use;
+		protected long last_used_millis;
+		
+		protected Connection(SshClient ssh) {
+			this.ssh = ssh;
+			idle_sftp = new LinkedList<SftpClient>();
+			last_used_millis = System.currentTimeMillis();
+		}
+		
+		protected boolean isConnected() {
+			return ssh.isConnected();
+		}
+		
+		protected void close() {
+			for ( SftpClient sftp : idle_sftp ) {
+				try {
+					sftp.quit();
+				} catch ( IOException ex ) {
+				}
+			}
+			idle_sftp.clear();
+			ssh.disconnect();
+		}
+	
+	} // end protected static class Connection
+	
+	/** opens the first connection, if no connection is open
+	 *
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 */
+	public void ensureOpen() throws IOException, IllegalStateException {
+		Connection c = acquire();
+		release(c);
+	}
+	
+	/** checks if any connection is open
+	 *
+	 * @return
+	 */
+	public synchronized boolean isOpen() {
+		for ( Connection c : connections ) {
+			if (c.isConnected())
+				return true;
+		}
+		return false;
+	}
+	
+	/** any open connection (for reading connection info like host key or EOL)
+	 *
+	 * @return
+	 */
+	@Nullable
+	public synchronized SshClient getAnyConnection() {
+		for ( Connection c : connections ) {
+			if (c.isConnected())
+				return c.ssh;
+		}
+		return null;
+	}
+	
+	public synchronized int getConnectionCount() {
+		return connections.size();
+	}
+	
+	/** picks the connection with the fewest channels in use, opening another one if they're all busy.
+	 *
+	 * must call #release when done with the channel opened on it.
+	 *
+	 * @return
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 */
+	protected Connection acquire() throws IOException, IllegalStateException {
+		synchronized(this) {
+			if (closed)
+				throw new IllegalStateException("SSH connection pool was closed");
+			Connection best = null;
+			for ( int i=connections.size()-1 ; i >= 0 ; i-- ) {
+				Connection c = connections.get(i);
+				if (!c.isConnected()) {
+					// server closed it, or network dropped it
+					connections.remove(i);
+					c.close();
+				} else if (best==null || c.in_use < best.in_use) {
+					best = c;
+				}
+			}
+			if (best!=null && (best.in_use < channels_per_connection || connections.size() + opening >= max_connections)) {
+				best.in_use++;
+				best.last_used_millis = System.currentTimeMillis();
+				return best;
+			}
+			// open another connection. don't hold lock while connecting, other threads can keep using the open ones
+			opening++;
+		}
+		SshClient ssh = null;
+		try {
+			ssh = connect();
+		} finally {
+			synchronized(this) {
+				opening--;
+				if (ssh!=null && closed) {
+					ssh.disconnect();
+					ssh = null;
+				}
+			}
+		}
+		if (ssh==null)
+			throw new IllegalStateException("SSH connection pool was closed");
+		Connection c = new Connection(ssh);
+		synchronized(this) {
+			c.in_use++;
+			connections.add(c);
+			startKeepAlive();
+		}
+		return c;
+	} // end protected Connection acquire
+	
+	protected synchronized void release(Connection c) {
+		c.in_use--;
+		c.last_used_millis = System.currentTimeMillis();
+	}
+	
+	/** opens a session channel (to execute 1 command) on the least busy connection.
+	 *
+	 * the channel counts as in use until it is closed.
+	 *
+	 * @return
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 */
+	public SessionChannelClient openSessionChannel() throws IOException, IllegalStateException {
+		final Connection c = acquire();
+		final AtomicBoolean released = new AtomicBoolean(false);
+		boolean ok = false;
+		try {
+			SessionChannelClient session = c.ssh.openSessionChannel(new ChannelEventAdapter() {
+					@Override
+					public void onChannelClose(Channel channel) {
+						if (released.compareAndSet(false, true))
+							release(c);
+					}
+				});
+			ok = true;
+			return session;
+		} finally {
+			if (!ok && released.compareAndSet(false, true))
+				release(c);
+		}
+	}
+	
+	/** borrows an SFTP channel. only the calling thread may use it until it is returned (@see #returnSftp).
+	 *
+	 * @return
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 */
+	public SftpClient borrowSftp() throws IOException, IllegalStateException {
+		Connection c = acquire();
+		try {
+			synchronized(this) {
+				while (!c.idle_sftp.isEmpty()) {
+					SftpClient sftp = c.idle_sftp.removeFirst();
+					if (!sftp.isClosed()) {
+						borrowed_sftp.put(sftp, c);
+						return sftp;
+					}
+				}
+			}
+			SftpClient sftp = c.ssh.openSftpClient();
+			synchronized(this) {
+				borrowed_sftp.put(sftp, c);
+			}
+			return sftp;
+		} catch ( IOException ex ) {
+			release(c);
+			throw ex;
+		} catch ( RuntimeException ex ) {
+			release(c);
+			throw ex;
+		}
+	} // end public SftpClient borrowSftp
+	
+	/** returns SFTP channel to the pool so another operation can reuse it.
+	 *
+	 * an SFTP error (ex: file not found) leaves the channel usable. if the channel or its connection was closed, it is
+	 * dropped.
+	 *
+	 * @param sftp
+	 */
+	public void returnSftp(SftpClient sftp) {
+		Connection c;
+		boolean keep;
+		synchronized(this) {
+			c = borrowed_sftp.remove(sftp);
+			if (c!=null) {
+				c.in_use--;
+				c.last_used_millis = System.currentTimeMillis();
+			}
+			keep = c!=null && !closed && c.isConnected() && !sftp.isClosed() && c.idle_sftp.size() < max_idle_sftp;
+			if (keep)
+				c.idle_sftp.addFirst(sftp);
+		}
+		if (!keep) {
+			try {
+				sftp.quit();
+			} catch ( IOException ex ) {
+			}
+		}
+	} // end public void returnSftp
+	
+	protected synchronized void startKeepAlive() {
+		if (keep_alive_task!=null)
+			return;
+		keep_alive_task = new TimerTask() {
+				@Override
+				public void run() {
+					keepAlive();
+				}
+			};
+		keep_alive_timer.schedule(keep_alive_task, KEEP_ALIVE_MILLIS, KEEP_ALIVE_MILLIS);
+	}
+	
+	/** sends keep-alive on idle connections and drops connections and idle SFTP channels that were closed */
+	protected void keepAlive() {
+		final long idle_since = System.currentTimeMillis() - KEEP_ALIVE_MILLIS;
+		ArrayList<Connection> idle = new ArrayList<Connection>(max_connections);
+		synchronized(this) {
+			for ( int i=connections.size()-1 ; i >= 0 ; i-- ) {
+				Connection c = connections.get(i);
+				if (!c.isConnected()) {
+					connections.remove(i);
+					c.close();
+					continue;
+				}
+				for ( int j=c.idle_sftp.size()-1 ; j >= 0 ; j-- ) {
+					if (c.idle_sftp.get(j).isClosed())
+						c.idle_sftp.remove(j);
+				}
+				if (c.last_used_millis <= idle_since)
+					idle.add(c);
+			}
+		}
+		// don't hold lock while sending, other threads can keep using the pool
+		for ( Connection c : idle ) {
+			try {
+				c.ssh.sendGlobalRequest(KEEP_ALIVE_REQUEST, false, null);
+			} catch ( Exception ex ) {
+				// connection is broken, #acquire will drop it
+				c.ssh.disconnect();
+			}
+		}
+	} // end protected void keepAlive
+	
+	/** closes all connections. any further use of this pool will throw IllegalStateException.
+	 *
+	 */
+	public void close() {
+		closeConnections();
+		synchronized(this) {
+			closed = true;
+		}
+	}
+	
+	/** closes all connections. pool can be used again (new connections will be opened).
+	 *
+	 */
+	public void closeConnections() {
+		Connection[] cs;
+		synchronized(this) {
+			cs = connections.toArray(new Connection[connections.size()]);
+			connections.clear();
+			borrowed_sftp.clear();
+			if (keep_alive_task!=null) {
+				keep_alive_task.cancel();
+				keep_alive_task = null;
+			}
+		}
+		for ( Connection c : cs )
+			c.close();
+	}
+	
+	protected static class ChannelEventAdapter implements ChannelEventListener {
+		@Override
+		public void onChannelOpen(Channel channel) {
+		}
+		@Override
+		public void onChannelEOF(Channel channel) {
+		}
+		@Override
+		public void onChannelClose(Channel channel) {
+		}
+		@Override
+		public void onDataReceived(Channel channel, byte[] data) {
+		}
+		@Override
+		public void onDataSent(Channel channel, byte[] data) {
+		}
+	}
+
+} // end public abstract class SSHConnectionPool
@@ -17,10 +17,17 @@ import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nullable;
@@ -90,6 +97,13 @@ import com.sshtools.j2ssh.util.InvalidStateException;
  * 
  * NOTE: added 1 line to SftpClient#resolveRemotePath to support checking for [letter]:\ on Windows
  * 
+ * 
+ * CONNECTIONS
+ * 
+ * Keeps a pool of connections to the host, and of SFTP channels on them (@see SSHConnectionPool). Each file operation
+ * borrows its own SFTP channel, so threads don't wait on each other, and uploading a directory uploads several files
+ * at once (@see #UPLOAD_STREAMS).
+ * 
  * @author Matt Ficken
  * 
  */
@@ -107,13 +121,24 @@ public class SSHHost extends RemoteHost {
 	protected String os_name_long;
 	@Nullable
 	protected Boolean is_windows;
-	@Nullable
-	protected SshClient ssh;
-	@Nullable
-	protected SftpClient sftp;
+	/** max files uploaded at the same time (each on its own SFTP channel) when uploading a directory */
+	public static final int UPLOAD_STREAMS = 4;
+	private static final ThreadPoolExecutor upload_pool;
+	protected final SSHConnectionPool pool;
 	protected final CommonCommandManager ccm;
 	
 	static {
+		upload_pool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+				int i;
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r);
+					t.setName("SSHUpload"+(++i));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		
 		if (DEV>0)
 			BasicConfigurator.configure(new ConsoleAppender());
 		else
@@ -160,6 +185,12 @@ public class SSHHost extends RemoteHost {
 		this.verif = verif;
 		
 		ccm = new CommonCommandManager();
+		pool = new SSHConnectionPool() {
+				@Override
+				protected SshClient connect() throws IOException, IllegalStateException {
+					return openSshClient();
+				}
+			};
 	}
 	
 	protected String normalizePath(String path) {
@@ -185,13 +216,31 @@ public class SSHHost extends RemoteHost {
 			return;
 		else if (isClosed()) 
 			throw new IllegalStateException("SSH connection administratively/explicitly closed");
-		do_close(); // ensure any existing ssh, sftp or scp client gets closed (for gc)
+		do_close(); // ensure any existing connections and sftp clients get closed (for gc)
+		
+		pool.ensureOpen();
 		
+		if (hostname==null) {
+			// only have ip address, get hostname
+			hostname = isWindows() ? getEnvValue("COMPUTERNAME") : getEnvValue("HOSTNAME");
+		}
+	} // end protected void ensureSshOpen
+	
+	/** opens and authenticates 1 connection for the pool
+	 * 
+	 * @see #pool
+	 * @return
+	 * @throws IllegalStateException
+	 * @throws IOException
+	 */
+	protected SshClient openSshClient() throws IllegalStateException, IOException {
+		if (login_fail)
+			throw new IllegalStateException("Was previously unable to login (didn't try again)");
 		if (hostname!=null) {
 			// address isn't IP address (its hostname), resolve it now @see SSHHost#<init>
 			address = InetAddress.getByName(hostname).getHostAddress();
 		}
-		ssh = new SshClient();
+		SshClient ssh = new SshClient();
 		
 		ssh.connect(address, port, verif);
 		
@@ -202,21 +251,26 @@ public class SSHHost extends RemoteHost {
 
 		int result = ssh.authenticate(pwd);
 		if (result!=AuthenticationProtocolState.COMPLETE) {
+			ssh.disconnect();
 			login_fail = true; // IllegalStateException below may get caught/ignored
 			throw new IllegalStateException("authentication failed. attempted login as user: "+username+" using password: "+password+" on host: "+hostname+":"+port+" ("+address+":"+port+")");
 		}
-		
-		if (hostname==null) {
-			// only have ip address, get hostname
-			hostname = isWindows() ? getEnvValue("COMPUTERNAME") : getEnvValue("HOSTNAME");
-		}
-	} // end protected void ensureSshOpen
+		return ssh;
+	} // end protected SshClient openSshClient
 	
-	protected void ensureSftpOpen() throws UnknownHostException, IOException {
-		if (!login_fail && sftp != null && !sftp.isClosed())
-			return;
+	/** borrows an SFTP channel for this thread to use. must call #returnSftp when done with it.
+	 * 
+	 * @return
+	 * @throws IllegalStateException
+	 * @throws IOException
+	 */
+	protected SftpClient borrowSftp() throws IllegalStateException, IOException {
 		ensureSshOpen();
-		sftp = ssh.openSftpClient();
+		return pool.borrowSftp();
+	}
+	
+	protected void returnSftp(SftpClient sftp) {
+		pool.returnSftp(sftp);
 	}
 	
 	@Override
@@ -227,21 +281,11 @@ public class SSHHost extends RemoteHost {
 	@Override
 	public void close() {
 		closed = true;
-		do_close();
+		pool.close();
 	}
 	
 	protected void do_close() {
-		if (sftp!=null) {
-			try {
-				sftp.quit();
-			} catch (IOException e) {
-			}
-			sftp = null;
-		}
-		if (ssh!=null) {
-			ssh.disconnect();
-			ssh = null;
-		}
+		pool.closeConnections();
 	}
 	
 	@Override
@@ -271,9 +315,13 @@ public class SSHHost extends RemoteHost {
 	@Override
 	public boolean mExists(String path) {
 		try {
-			ensureSftpOpen();
-			FileAttributes fa = sftp.stat(normalizePath(path));
-			return fa.isFile() || fa.isDirectory();
+			SftpClient sftp = borrowSftp();
+			try {
+				FileAttributes fa = sftp.stat(normalizePath(path));
+				return fa.isFile() || fa.isDirectory();
+			} finally {
+				returnSftp(sftp);
+			}
 		} catch ( IOException ex ) {
 		} catch ( Exception ex ) {
 			// throws Exception if it doesn't exist
@@ -314,9 +362,8 @@ public class SSHHost extends RemoteHost {
 
 	@Override
 	public String mGetContents(String file) throws IOException {
-		ensureSftpOpen();
 		ByteArrayIOStream local = new ByteArrayIOStream(1024);
-		sftp.get(normalizePath(file), local);
+		get(normalizePath(file), local);
 		NoCharsetByLineReader reader = new NoCharsetByLineReader(local.getInputStream());
 		String str = IOUtil.toString(reader, IOUtil.HALF_MEGABYTE);
 		reader.close();
@@ -325,9 +372,8 @@ public class SSHHost extends RemoteHost {
 
 	@Override
 	public String mGetContentsDetectCharset(String file, CharsetDeciderDecoder cdd) throws IOException {
-		ensureSftpOpen();
 		ByteArrayIOStream local = new ByteArrayIOStream(1024);
-		sftp.get(normalizePath(file), local);
+		get(normalizePath(file), local);
 		MultiCharsetByLineReader reader = new MultiCharsetByLineReader(local.getInputStream(), cdd);
 		String str = IOUtil.toString(reader, IOUtil.HALF_MEGABYTE);
 		reader.close();
@@ -336,17 +382,15 @@ public class SSHHost extends RemoteHost {
 
 	@Override
 	public ByLineReader mReadFile(String file) throws FileNotFoundException, IOException {
-		ensureSftpOpen();
 		ByteArrayIOStream local = new ByteArrayIOStream(1024);
-		sftp.get(normalizePath(file), local);
+		get(normalizePath(file), local);
 		return new NoCharsetByLineReader(local.getInputStream());
 	}
 
 	@Override
 	public ByLineReader mReadFileDetectCharset(String file, CharsetDeciderDecoder cdd) throws FileNotFoundException, IOException {
-		ensureSftpOpen();
 		ByteArrayIOStream local = new ByteArrayIOStream(1024);
-		sftp.get(normalizePath(file), local);
+		get(normalizePath(file), local);
 		return new MultiCharsetByLineReader(local.getInputStream(), cdd);
 	}
 	
@@ -355,10 +399,29 @@ public class SSHHost extends RemoteHost {
 		return mSaveTextFile(filename, text, null);
 	}
 	
+	protected void get(String remote_path, OutputStream local) throws IllegalStateException, IOException {
+		SftpClient sftp = borrowSftp();
+		try {
+			sftp.get(remote_path, local);
+		} finally {
+			returnSftp(sftp);
+		}
+	}
+	
+	protected void put(InputStream local, String remote_path) throws IllegalStateException, IOException {
+		SftpClient sftp = borrowSftp();
+		try {
+			sftp.put(local, remote_path);
+		} finally {
+			returnSftp(sftp);
+		}
+	}
+	
 	private String _path;
 	public SessionChannelClient createSessionChannelClient(String cmd, Map<String, String> env, String chdir, byte[] stdin_post, OutputStream out) throws IOException, IllegalStateException {
 		ensureSshOpen();
-		SessionChannelClient session = ssh.openSessionChannel();
+		// spread over the pool's connections
+		SessionChannelClient session = pool.openSessionChannel();
 		
 		// prepare to execute
 		if (StringUtil.isNotEmpty(chdir)) {
@@ -609,13 +672,23 @@ public class SSHHost extends RemoteHost {
 
 	@Override
 	public boolean mCreateDirs(String path) throws IllegalStateException, IOException {
-		ensureSftpOpen();
 		path = normalizePath(path);
 		// dont check #isSafePath here!
-		if (isWindows()) {
+		final boolean windows = isWindows();
+		SftpClient sftp = borrowSftp();
+		try {
+			mCreateDirs(sftp, path, windows);
+		} finally {
+			returnSftp(sftp);
+		}
+		return true;
+	}
+	
+	protected void mCreateDirs(SftpClient sftp, String path, boolean windows) throws IOException {
+		if (windows) {
 			try {
 				sftp.stat(path);
-				return true; // already exists
+				return; // already exists
 			} catch ( Exception ex ) {
 			}
 			StringBuilder ppath_sb = new StringBuilder(path.length());
@@ -636,43 +709,117 @@ public class SSHHost extends RemoteHost {
 				}
 			}
 		} else {
-			sftp.mkdirs(normalizePath(path));
+			sftp.mkdirs(path);
 		}
-		return true;
-	} // end public boolean mkdirs
+	} // end protected void mCreateDirs
 
 	@Override
 	public boolean download(String src, String dst) throws IllegalStateException, IOException, Exception {
-		ensureSftpOpen();
 		new File(dst).getParentFile().mkdirs();
-		sftp.get(normalizePath(src), new BufferedOutputStream(new FileOutputStream(dst)));
+		BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(dst));
+		try {
+			get(normalizePath(src), out);
+		} finally {
+			out.close();
+		}
 		return true;
 	}
 	
-	protected void do_upload(String base, File[] files, String dst) throws IOException {
+	protected void listUpload(String base, File[] files, String dst, List<String[]> uploads, LinkedHashSet<String> dirs) {
 		for (File file : files) {
 			if (file.isDirectory()) {
-				do_upload(base, file.listFiles(), dst);
+				listUpload(base, file.listFiles(), dst, uploads, dirs);
 			} else {
 				String remote_file_path = joinIntoOnePath(dst, pathFrom(base, file.getAbsolutePath()));
 				
-				sftp.put(file.getAbsolutePath(), remote_file_path);
+				dirs.add(FileSystemScenario.dirname(remote_file_path));
+				uploads.add(new String[]{file.getAbsolutePath(), remote_file_path});
 			}
 		}
 	}
+	
+	/** uploads files on up to UPLOAD_STREAMS SFTP channels at the same time. each channel uploads files from the
+	 * queue until its empty.
+	 * 
+	 * @param uploads - local and remote path of each file
+	 * @throws IOException
+	 */
+	protected void do_upload(List<String[]> uploads) throws IOException {
+		final ConcurrentLinkedQueue<String[]> queue = new ConcurrentLinkedQueue<String[]>(uploads);
+		final IOException[] error = new IOException[1];
+		final int streams = Math.min(UPLOAD_STREAMS, uploads.size());
+		final Thread[] threads = new Thread[Math.max(0, streams-1)];
+		Runnable stream = new Runnable() {
+				@Override
+				public void run() {
+					try {
+						SftpClient sftp = borrowSftp();
+						try {
+							String[] upload;
+							while ( ( upload = queue.poll() ) != null ) {
+								synchronized(error) {
+									if (error[0]!=null)
+										return;
+								}
+								sftp.put(upload[0], upload[1]);
+							}
+						} finally {
+							returnSftp(sftp);
+						}
+					} catch ( IOException ex ) {
+						synchronized(error) {
+							if (error[0]==null)
+								error[0] = ex;
+						}
+					}
+				}
+			};
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>(threads.length);
+		for ( int i=0 ; i < threads.length ; i++ )
+			futures.add(upload_pool.submit(stream));
+		// this thread is 1 of the streams
+		stream.run();
+		for ( Future<?> f : futures ) {
+			try {
+				f.get();
+			} catch ( Exception ex ) {
+				ConsoleManagerUtil.printStackTrace(SSHHost.class, ex);
+			}
+		}
+		if (error[0]!=null)
+			throw error[0];
+	} // end protected void do_upload
 
 	@Override
 	public boolean upload(String src, String dst) throws IllegalStateException, IOException {
-		ensureSftpOpen();
 		dst = normalizePath(dst);
 		
 		File fsrc = new File(src);
 		mCreateDirs(FileSystemScenario.dirname(dst));
 		if (fsrc.isDirectory()) {
-			do_upload(src, fsrc.listFiles(), dst);
+			ArrayList<String[]> uploads = new ArrayList<String[]>(128);
+			LinkedHashSet<String> dirs = new LinkedHashSet<String>();
+			listUpload(src, fsrc.listFiles(), dst, uploads, dirs);
+			
+			// create directories first, so the files can be uploaded in any order
+			final boolean windows = isWindows();
+			SftpClient sftp = borrowSftp();
+			try {
+				for ( String dir : dirs )
+					mCreateDirs(sftp, dir, windows);
+			} finally {
+				returnSftp(sftp);
+			}
+			
+			do_upload(uploads);
 		} else {
 			// uploading single file
-			sftp.put(fsrc.getAbsolutePath(), dst);
+			SftpClient sftp = borrowSftp();
+			try {
+				sftp.put(fsrc.getAbsolutePath(), dst);
+			} finally {
+				returnSftp(sftp);
+			}
 		}
 		return true;
 	}
@@ -723,14 +870,13 @@ public class SSHHost extends RemoteHost {
 
 	@Override
 	public boolean isOpen() {
-		return ssh!=null && ssh.isConnected();
+		return pool.isOpen();
 	}
 
 	@Override
 	public boolean mIsDirectory(String path) {
 		try {
-			ensureSftpOpen();
-			FileAttributes fa = sftp.stat(normalizePath(path));
+			FileAttributes fa = stat(normalizePath(path));
 			return fa.isDirectory();
 		} catch ( Exception ex ) {
 			ConsoleManagerUtil.printStackTrace(SSHHost.class, ex);
@@ -738,6 +884,15 @@ public class SSHHost extends RemoteHost {
 		return false;
 	}
 
+	protected FileAttributes stat(String path) throws IllegalStateException, IOException {
+		SftpClient sftp = borrowSftp();
+		try {
+			return sftp.stat(path);
+		} finally {
+			returnSftp(sftp);
+		}
+	}
+
 	@Override
 	public boolean mDirContainsExact(String path, String name) {
 		for ( String a : mList(path) ) {
@@ -760,8 +915,13 @@ public class SSHHost extends RemoteHost {
 	@Override
 	public String[] mList(String path) {
 		try {
-			ensureSftpOpen();
-			List list = sftp.ls(normalizePath(path));
+			List list;
+			SftpClient sftp = borrowSftp();
+			try {
+				list = sftp.ls(normalizePath(path));
+			} finally {
+				returnSftp(sftp);
+			}
 			ArrayList<String> names = new ArrayList<String>(list.size());
 			for (Object f : list) {
 				names.add(((SftpFile)f).getFilename());
@@ -773,11 +933,42 @@ public class SSHHost extends RemoteHost {
 		return StringUtil.EMPTY_ARRAY;
 	}
 
+	/** gets size and time of all the files in each directory with 1 request, instead of 2 requests for each file */
+	@SuppressWarnings({ "rawtypes"})
+	@Override
+	protected void mListFiles(String dir, String rel_dir, Map<String,FileStat> files) {
+		List list;
+		try {
+			SftpClient sftp = borrowSftp();
+			try {
+				list = sftp.ls(normalizePath(dir));
+			} finally {
+				returnSftp(sftp);
+			}
+		} catch ( Exception ex ) {
+			// dir doesn't exist (or can't be read): no files
+			return;
+		}
+		SftpFile f;
+		String rel_path;
+		for ( Object o : list ) {
+			f = (SftpFile) o;
+			if (f.getFilename().equals(".")||f.getFilename().equals(".."))
+				continue;
+			rel_path = rel_dir == null ? f.getFilename() : rel_dir + "/" + f.getFilename();
+			if (f.isDirectory()) {
+				mListFiles(joinIntoOnePath(dir, f.getFilename()), rel_path, files);
+			} else {
+				FileAttributes fa = f.getAttributes();
+				files.put(rel_path, new FileStat(fa.getSize().longValue(), fa.getModifiedTime().longValue()));
+			}
+		}
+	}
+
 	@Override
 	public long mSize(String file) {
 		try {
-			ensureSftpOpen();
-			FileAttributes fa = sftp.stat(normalizePath(file));
+			FileAttributes fa = stat(normalizePath(file));
 			return fa.getSize().longValue();
 		} catch ( Exception ex ) {
 			ConsoleManagerUtil.printStackTrace(SSHHost.class, ex);
@@ -788,8 +979,7 @@ public class SSHHost extends RemoteHost {
 	@Override
 	public long mMTime(String file) {
 		try {
-			ensureSftpOpen();
-			FileAttributes fa = sftp.stat(normalizePath(file));
+			FileAttributes fa = stat(normalizePath(file));
 			return fa.getModifiedTime().longValue();
 		} catch ( Exception ex ) {
 			ConsoleManagerUtil.printStackTrace(SSHHost.class, ex);
@@ -809,14 +999,13 @@ public class SSHHost extends RemoteHost {
 		filename = normalizePath(filename);
 		if (text==null)
 			text = "";
-		ensureSftpOpen();
 		if (ce==null) {
 			byte[] text_bytes = text.getBytes();
-			sftp.put(new ByteArrayInputStream(text_bytes), filename);
+			put(new ByteArrayInputStream(text_bytes), filename);
 		} else {
 			ByteBuffer bbuf = ByteBuffer.allocate(50+text.length()*2);
 			ce.encode(CharBuffer.wrap(text.toCharArray()), bbuf, true);
-			sftp.put(new ByteBufferInputStream(bbuf), filename);
+			put(new ByteBufferInputStream(bbuf), filename);
 		}
 		return true;
 	}
@@ -830,8 +1019,7 @@ public class SSHHost extends RemoteHost {
 		if (stdin_post==null) {
 			return false;
 		}
-		ensureSftpOpen();
-		sftp.put(new ByteArrayInputStream(stdin_post), filename);
+		put(new ByteArrayInputStream(stdin_post), filename);
 		return true;
 	}
 	
@@ -869,8 +1057,12 @@ public class SSHHost extends RemoteHost {
 	@Override
 	protected boolean deleteSingleFile(String path) {
 		try {
-			ensureSftpOpen();
-			sftp.rm(path);
+			SftpClient sftp = borrowSftp();
+			try {
+				sftp.rm(path);
+			} finally {
+				returnSftp(sftp);
+			}
 			return true;
 		} catch ( Exception ex ) {
 			ConsoleManagerUtil.printStackTrace(SSHHost.class, ex);
@@ -0,0 +1,314 @@
+package com.mostc.pftt.host;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import com.github.mattficken.io.ByLineReader;
+import com.github.mattficken.io.NoCharsetByLineReader;
+
+/** Hash of each file in a directory tree (and of each block of large files).
+ *
+ * DeltaSync compares the manifest of the source to the manifest of what it copied to the destination last time, to
+ * find which files (or blocks) changed.
+ *
+ * Manifest is text: a header line, then 1 line per file:
+ * path(URL encoded, / separated) TAB size TAB mtime TAB MD5 [TAB MD5 of each block, comma separated]
+ *
+ * mtime is when the file was last modified on the host the manifest describes (for the manifest DeltaSync saves in
+ * the destination, that's the destination's time, not the source's).
+ *
+ * @see DeltaSync
+ * @author Matt Ficken
+ *
+ */
+
+public class SyncManifest {
+	public static final String HEADER = "pftt-sync-manifest 2";
+	public static final int BLOCK_SIZE = 64*1024;
+	/** files at least this large also get a hash of each block, so only changed blocks need to be copied */
+	public static final long BLOCK_HASH_MIN_SIZE = 1024*1024;
+	protected final TreeMap<String,Entry> entries;
+	
+	public SyncManifest() {
+		entries = new TreeMap<String,Entry>();
+	}
+	
+	/** 1 file */
+	public static class Entry {
+		/** relative to root of tree, / separated */
+		public final String path;
+		public final long size, mtime;
+		/** MD5 of whole file */
+		public final String hash;
+		/** MD5 of each BLOCK_SIZE block, or null if file is smaller than BLOCK_HASH_MIN_SIZE */
+		@Nullable
+		public final String[] block_hashes;
+		
+		public Entry(String path, long size, long mtime, String hash, @Nullable String[] block_hashes) {
+			this.path = path;
+			this.size = size;
+			this.mtime = mtime;
+			this.hash = hash;
+			this.block_hashes = block_hashes;
+		}
+		
+		public boolean hasBlockHashes() {
+			return block_hashes != null;
+		}
+		
+		/** checks if file has the same contents as this file
+		 *
+		 * @param o
+		 * @return
+		 */
+		public boolean sameContent(@Nullable Entry o) {
+			return o != null && o.size == size && o.hash.equals(hash);
+		}
+	
+	} // end public static class Entry
+	
+	@Nullable
+	public Entry get(String path) {
+		return entries.get(path);
+	}
+	
+	public void put(Entry e) {
+		entries.put(e.path, e);
+	}
+	
+	public Collection<Entry> getEntries() {
+		return entries.values();
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	public long getTotalSize() {
+		long size = 0;
+		for ( Entry e : entries.values() )
+			size += e.size;
+		return size;
+	}
+	
+	/** hashes each file in directory.
+	 *
+	 * a file with the same size and mtime as in cached isn't read again (its hash from cached is reused).
+	 *
+	 * @param root
+	 * @param cached - manifest of root from last time, or null to hash every file
+	 * @param exclude_name - name of file in root to leave out (ex: the manifest itself) or null
+	 * @return
+	 * @throws IOException
+	 */
+	public static SyncManifest scan(File root, @Nullable SyncManifest cached, @Nullable String exclude_name) throws IOException {
+		SyncManifest m = new SyncManifest();
+		Hasher hasher = new Hasher();
+		File[] files = root.listFiles();
+		if (files==null)
+			throw new IOException("not a directory: "+root);
+		for ( File f : files ) {
+			if (exclude_name!=null && f.getName().equals(exclude_name))
+				continue;
+			scan(f, f.getName(), cached, m, hasher);
+		}
+		return m;
+	}
+	
+	protected static void scan(File file, String path, @Nullable SyncManifest cached, SyncManifest m, Hasher hasher) throws IOException {
+		if (file.isDirectory()) {
+			File[] files = file.listFiles();
+			if (files==null)
+				return;
+			for ( File f : files )
+				scan(f, path+"/"+f.getName(), cached, m, hasher);
+		} else {
+			final long size = file.length();
+			final long mtime = file.lastModified();
+			Entry e = cached == null ? null : cached.get(path);
+			if (e == null || e.size != size || e.mtime != mtime)
+				e = hasher.hash(file, path, size, mtime);
+			m.put(e);
+		}
+	}
+	
+	/** computes MD5 of files and their blocks */
+	protected static class Hasher {
+		protected final MessageDigest file_md, block_md;
+		protected final byte[] buf;
+		
+		protected Hasher() {
+			try {
+				file_md = MessageDigest.getInstance("MD5");
+				block_md = MessageDigest.getInstance("MD5");
+			} catch ( NoSuchAlgorithmException ex ) {
+				// n/a: every JVM has MD5
+				throw new IllegalStateException(ex);
+			}
+			buf = new byte[BLOCK_SIZE];
+		}
+		
+		protected Entry hash(File file, String path, long size, long mtime) throws IOException {
+			final boolean blocks = size >= BLOCK_HASH_MIN_SIZE;
+			String[] block_hashes = blocks ? new String[(int)((size + BLOCK_SIZE - 1) / BLOCK_SIZE)] : null;
+			file_md.reset();
+			InputStream in = new FileInputStream(file);
+			try {
+				int i = 0, len;
+				while ( ( len = readBlock(in, buf) ) > 0 ) {
+					file_md.update(buf, 0, len);
+					if (blocks && i < block_hashes.length) {
+						block_md.reset();
+						block_md.update(buf, 0, len);
+						block_hashes[i] = toHex(block_md.digest());
+					}
+					i++;
+				}
+				if (blocks && i != block_hashes.length)
+					// file changed while reading it: don't cache it (next scan will hash it again)
+					return new Entry(path, size, -1, toHex(file_md.digest()), null);
+			} finally {
+				in.close();
+			}
+			return new Entry(path, size, mtime, toHex(file_md.digest()), block_hashes);
+		}
+	
+	} // end protected static class Hasher
+	
+	/** reads until buf is full or end of stream
+	 *
+	 * @param in
+	 * @param buf
+	 * @return number of bytes read, 0 at end of stream
+	 * @throws IOException
+	 */
+	public static int readBlock(InputStream in, byte[] buf) throws IOException {
+		int off = 0, len;
+		while ( off < buf.length && ( len = in.read(buf, off, buf.length - off) ) != -1 )
+			off += len;
+		return off;
+	}
+	
+	public static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for ( byte b : bytes ) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+	
+	public void write(Writer w) throws IOException {
+		w.write(HEADER);
+		w.write('\n');
+		for ( Entry e : entries.values() ) {
+			w.write(URLEncoder.encode(e.path, "UTF-8"));
+			w.write('\t');
+			w.write(Long.toString(e.size));
+			w.write('\t');
+			w.write(Long.toString(e.mtime));
+			w.write('\t');
+			w.write(e.hash);
+			if (e.block_hashes!=null) {
+				w.write('\t');
+				for ( int i=0 ; i < e.block_hashes.length ; i++ ) {
+					if (i > 0)
+						w.write(',');
+					w.write(e.block_hashes[i]);
+				}
+			}
+			w.write('\n');
+		}
+	}
+	
+	@Override
+	public String toString() {
+		StringWriter sw = new StringWriter(64 + 64 * entries.size());
+		try {
+			write(sw);
+		} catch ( IOException ex ) {
+			// n/a: StringWriter
+		}
+		return sw.toString();
+	}
+	
+	public void write(File file) throws IOException {
+		file.getParentFile().mkdirs();
+		Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			write(w);
+		} finally {
+			w.close();
+		}
+	}
+	
+	/** reads manifest
+	 *
+	 * @param reader
+	 * @return manifest or null if reader isn't a manifest (or is a different version)
+	 * @throws IOException - if manifest is corrupt
+	 */
+	@Nullable
+	public static SyncManifest read(ByLineReader reader) throws IOException {
+		String line = reader.hasMoreLines() ? reader.readLine() : null;
+		if (line==null || !line.trim().equals(HEADER))
+			return null;
+		SyncManifest m = new SyncManifest();
+		while (reader.hasMoreLines()) {
+			line = reader.readLine();
+			if (line==null)
+				break;
+			line = line.trim();
+			if (line.length()==0)
+				continue;
+			String[] parts = line.split("\t");
+			if (parts.length < 4)
+				throw new IOException("corrupt sync manifest line: "+line);
+			try {
+				String[] block_hashes = parts.length > 4 ? parts[4].split(",") : null;
+				m.put(new Entry(URLDecoder.decode(parts[0], "UTF-8"), Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3], block_hashes));
+			} catch ( NumberFormatException ex ) {
+				throw new IOException("corrupt sync manifest line: "+line);
+			}
+		}
+		return m;
+	} // end public static SyncManifest read
+	
+	/** reads manifest file
+	 *
+	 * @param file
+	 * @return manifest or null if file doesn't exist or isn't a manifest
+	 */
+	@Nullable
+	public static SyncManifest read(File file) {
+		if (!file.isFile())
+			return null;
+		try {
+			NoCharsetByLineReader reader = new NoCharsetByLineReader(new FileInputStream(file));
+			try {
+				return read(reader);
+			} finally {
+				reader.close();
+			}
+		} catch ( IOException ex ) {
+			// corrupt: treat as if there's no cached manifest
+			return null;
+		}
+	}
+
+} // end public class SyncManifest
@@ -145,20 +145,24 @@ public class WindowsLocalHost extends LocalHost {
 			}
 		}
 		
+		/** max time to wait for copy thread to finish after process exits or is killed */
+		protected static final long COPY_THREAD_JOIN_MILLIS = 2000;
+		
 		protected void exec_copy_lines(final StringBuilder sb, final int max_chars, final InputStream in, final Charset charset) throws IOException {
 			final AtomicBoolean copy_thread_lock = new AtomicBoolean(true);
 			Thread copy_thread = TimerUtil.runThread("ExecCopyLines", new Runnable() {
 					public void run() {
 						try {
 							do_exec_copy_lines(sb, max_chars, in, charset);
-							copy_thread_lock.set(false);
-							/*synchronized(run) {
-								run.notifyAll();
-							}*/
 						} catch (RuntimeException ex) {
 							// ignore ... see below copy_thread.stop(new RuntimeException()...
 						} catch (Throwable e) {
 							ConsoleManagerUtil.printStackTrace(WindowsLocalHost.class, e);
+						} finally {
+							synchronized(run_lock) {
+								copy_thread_lock.set(false);
+								run_lock.notifyAll();
+							}
 						}
 					}
 				});
@@ -166,16 +170,14 @@ public class WindowsLocalHost extends LocalHost {
 			/* TODO do_exec_copy_lines would normally throw an IO exception on failed operation. As the run flag is removed,
 			 		it might be still to check whether no additional thread handling is required. Possibly no separate thread
 			 		is required at all with newer Java. */
-			while (wait.get()) {
-				//synchronized(run) {
+			// wait until output is copied (stopped normally) or #close is called (notified on #run_lock either way)
+			synchronized(run_lock) {
+				while (wait.get() && copy_thread_lock.get()) {
 					try {
-						//run.wait(30000);
-						Thread.sleep(300);
-					} catch ( InterruptedException ex ) {}
-				//}
-				if (!copy_thread_lock.get()) {
-					// stopped normally
-					break;
+						run_lock.wait();
+					} catch ( InterruptedException ex ) {
+						break;
+					}
 				}
 			}
 			Process p = process.get();
@@ -191,6 +193,11 @@ public class WindowsLocalHost extends LocalHost {
 					}
 				}
 			}
+			// process is dead (or its pipe is closed): let copy thread finish appending the output it already read
+			// so a timed out or killed process' partial output is returned too
+			try {
+				copy_thread.join(COPY_THREAD_JOIN_MILLIS);
+			} catch ( InterruptedException ex ) {}
 		} // end protected void exec_copy_lines
 
 		/** On Windows, processes/process tress often won't get terminated correctly just by calling
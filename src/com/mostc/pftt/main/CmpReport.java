@@ -12,7 +12,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
@@ -45,12 +54,15 @@ import com.mostc.pftt.model.core.EPhptTestStatus;
 import com.mostc.pftt.model.core.PhpBuildInfo;
 import com.mostc.pftt.results.AbstractPhpUnitRW;
 import com.mostc.pftt.results.AbstractPhptRW;
+import com.mostc.pftt.results.AbstractReportGen;
 import com.mostc.pftt.results.AbstractTestResultRW;
 import com.mostc.pftt.results.ConsoleManager;
 import com.mostc.pftt.results.ConsoleManagerUtil;
+import com.mostc.pftt.results.EPrintType;
 import com.mostc.pftt.results.LocalConsoleManager;
 import com.mostc.pftt.results.PhpResultPack;
 import com.mostc.pftt.results.PhpResultPackReader;
+import com.mostc.pftt.results.ResultComparator;
 import com.mostc.pftt.results.TextBuilder;
 import com.mostc.pftt.util.EMailUtil;
 import com.mostc.pftt.util.EMailUtil.ESMTPAuthMethod;
@@ -75,6 +87,15 @@ public class CmpReport {
 		
 		return file_name + ".html";
 	}
+	static String generateFileName(PhpResultPack base, PhpResultPack test) {
+		String file_name = "PERF_CMP_"
+				+base.getBuildInfo().getBuildBranch()+"-"+base.getBuildInfo().getVersionRevision()+"-"+base.getBuildInfo().getBuildType()+"-"+base.getBuildInfo().getCPUArch()+"-"+base.getBuildInfo().getCompiler()+
+				"_v_"
+				+test.getBuildInfo().getBuildBranch()+"-"+test.getBuildInfo().getVersionRevision()+"-"+test.getBuildInfo().getBuildType()+"-"+test.getBuildInfo().getCPUArch()+"-"+test.getBuildInfo().getCompiler();
+		file_name = StringUtil.max(file_name, 100);
+		
+		return file_name + ".html";
+	}
 	static class PublishReport implements IRecvr {
 
 		@Override
@@ -140,6 +161,11 @@ public class CmpReport {
 				String html_str) throws IOException, SMTPException, Exception {
 			sendReport(generateFileName(base, test), html_str, test.getBuildInfo(), 0);
 		}
+		
+		@Override
+		public void recv(PhpResultPack base, PhpResultPack test, PerformanceReportGen perf_report, String html_str) throws IOException, SMTPException, Exception {
+			sendReport(generateFileName(base, test), html_str, test.getBuildInfo(), 0);
+		}
 
 		@Override
 		public void start(PhpResultPack test_pack) throws Exception {
@@ -172,6 +198,15 @@ public class CmpReport {
 			fw.close();
 			Desktop.getDesktop().browse(html_file.toURI());
 		}
+		
+		@Override
+		public void recv(PhpResultPack base, PhpResultPack test, PerformanceReportGen perf_report, String html_str) throws IOException {
+			File html_file = new File("c:\\php-sdk\\"+generateFileName(base, test));
+			FileWriter fw = new FileWriter(html_file);
+			fw.write(html_str);
+			fw.close();
+			Desktop.getDesktop().browse(html_file.toURI());
+		}
 
 		@Override
 		public void start(PhpResultPack test_pack) throws Exception {}
@@ -319,6 +354,16 @@ public class CmpReport {
 					null
 				);
 		}
+		
+		@Override
+		public void recv(PhpResultPack base, PhpResultPack test, PerformanceReportGen perf_report, String html_str) throws IOException, SMTPException, Exception {
+			sendMail(
+					false,
+					"Performance Report "+createSubject(test.getBuildInfo()),
+					html_str,
+					null
+				);
+		}
 
 		@Override
 		public void start(PhpResultPack test_pack) throws Exception {
@@ -475,10 +520,20 @@ public class CmpReport {
 			retryStore(folder, folder+"/"+file, new ByteArrayInputStream(html_str.getBytes()));
 		}
 		
+		@Override
+		public void recv(PhpResultPack base, PhpResultPack test, PerformanceReportGen perf_report, String html_str) throws IOException {
+			final String folder = generateFolder(test);
+			
+			final String file = generateFileName(base, test);
+			
+			retryStore(folder, folder+"/"+file, new ByteArrayInputStream(html_str.getBytes()));
+		}
+		
 	}
 	interface IRecvr {
 		void recv(AbstractPhptRW base, AbstractPhptRW test, PHPTMultiHostTwoBuildSingleScenarioSetReportGen phpt_report, String html_str) throws IOException, SMTPException, Exception;
 		void recv(AbstractPhpUnitRW base, AbstractPhpUnitRW test, PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen php_unit_report, String html_str) throws IOException, SMTPException, Exception;
+		void recv(PhpResultPack base, PhpResultPack test, PerformanceReportGen perf_report, String html_str) throws IOException, SMTPException, Exception;
 		void start(PhpResultPack test_pack) throws Exception;
 		void stop(PhpResultPack test_pack) throws Exception;
 	}
@@ -542,10 +597,12 @@ public class CmpReport {
 		
 		// TODO temp 
 		//
-		report("Core", cm, recvr, base_pack, test_pack);
+		// compare each status list once for both reports
+		ResultComparator comparator = new ResultComparator();
+		report("Core", cm, recvr, base_pack, test_pack, comparator);
 		
 		{
-			CmpReport2 cmp = new CmpReport2();
+			CmpReport2 cmp = new CmpReport2(comparator);
 			cmp.add(base_pack);
 			cmp.add(test_pack);
 			StringWriter text_sw = new StringWriter();
@@ -616,9 +673,24 @@ public class CmpReport {
 		}
 	}
 	static void report(String phpt_prefix, ConsoleManager cm, IRecvr recvr, PhpResultPack base_pack, PhpResultPack test_pack) {
+		report(phpt_prefix, cm, recvr, base_pack, test_pack, new ResultComparator());
+	}
+	/**
+	 * 
+	 * @param phpt_prefix
+	 * @param cm
+	 * @param recvr
+	 * @param base_pack
+	 * @param test_pack
+	 * @param comparator - share between reports of the same result-packs so each status list is only compared once
+	 */
+	static void report(String phpt_prefix, ConsoleManager cm, IRecvr recvr, PhpResultPack base_pack, PhpResultPack test_pack, ResultComparator comparator) {
 		try {
 		recvr.start(test_pack);
 		
+		final boolean abbreviated = !(recvr instanceof Upload);
+		LinkedList<ReportSection> sections = new LinkedList<ReportSection>();
+		
 		// TODO turn off phpt or phpunit reports or turn off all but a specific test-pack
 		for ( AbstractPhpUnitRW base : base_pack.getPhpUnit() ) {
 			for ( AbstractPhpUnitRW test : test_pack.getPhpUnit() ) {
@@ -646,11 +718,15 @@ public class CmpReport {
 						))*/
 					continue;
 				
-				PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen php_unit_report = new PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen(base, test);
+				final AbstractPhpUnitRW f_base = base, f_test = test;
+				final PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen php_unit_report = new PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen(comparator, base, test);
 				
-				String html_str = php_unit_report.getHTMLString(cm, !(recvr instanceof Upload));
-				
-				recvr.recv(base, test, php_unit_report, html_str);
+				sections.add(new ReportSection("PhpUnit "+test.getTestPackNameAndVersionString()+" "+test.getScenarioSetNameWithVersionInfo(), php_unit_report, cm, abbreviated) {
+						@Override
+						void recv(IRecvr recvr, String html_str) throws Exception {
+							recvr.recv(f_base, f_test, php_unit_report, html_str);
+						}
+					});
 				
 			}
 		}
@@ -661,17 +737,132 @@ public class CmpReport {
 				if (!eq(base.getScenarioSetNameWithVersionInfo(), test.getScenarioSetNameWithVersionInfo()))
 					continue;
 				
-				PHPTMultiHostTwoBuildSingleScenarioSetReportGen phpt_report = new PHPTMultiHostTwoBuildSingleScenarioSetReportGen(phpt_prefix, base, test);
-				String html_str = phpt_report.getHTMLString(cm, !(recvr instanceof Upload));
-
-				recvr.recv(base, test, phpt_report, html_str);
+				final AbstractPhptRW f_base = base, f_test = test;
+				final PHPTMultiHostTwoBuildSingleScenarioSetReportGen phpt_report = new PHPTMultiHostTwoBuildSingleScenarioSetReportGen(comparator, phpt_prefix, base, test);
+				
+				sections.add(new ReportSection("PHPT "+test.getScenarioSetNameWithVersionInfo(), phpt_report, cm, abbreviated) {
+						@Override
+						void recv(IRecvr recvr, String html_str) throws Exception {
+							recvr.recv(f_base, f_test, phpt_report, html_str);
+						}
+					});
 			}
 		}
+		
+		if (!base_pack.getPerformance().isEmpty() && !test_pack.getPerformance().isEmpty()) {
+			final PhpResultPack f_base = base_pack, f_test = test_pack;
+			final PerformanceReportGen perf_report = new PerformanceReportGen(base_pack, test_pack);
+			
+			sections.add(new ReportSection("Performance", perf_report, cm, abbreviated) {
+					@Override
+					void recv(IRecvr recvr, String html_str) throws Exception {
+						recvr.recv(f_base, f_test, perf_report, html_str);
+					}
+				});
+		}
+		
+		generate(cm, recvr, sections);
+		
 		recvr.stop(test_pack);
 		} catch ( Exception ex ) {
 			ConsoleManagerUtil.printStackTrace(CmpReport.class, cm, ex);
 		}
 	}
+	
+	/** generates 1 section of a report (1 host and scenario set) on a worker thread
+	 * 
+	 * @see #generate
+	 */
+	static abstract class ReportSection implements Callable<String> {
+		final String name;
+		final AbstractReportGen gen;
+		final ConsoleManager cm;
+		final boolean abbreviated;
+		Future<String> future;
+		/** time spent generating section (written by worker thread before future is done) */
+		long gen_nanos;
+		
+		ReportSection(String name, AbstractReportGen gen, ConsoleManager cm, boolean abbreviated) {
+			this.name = name;
+			this.gen = gen;
+			this.cm = cm;
+			this.abbreviated = abbreviated;
+		}
+		
+		@Override
+		public String call() throws Exception {
+			final long start = System.nanoTime();
+			try {
+				return gen.getHTMLString(cm, abbreviated);
+			} finally {
+				gen_nanos = System.nanoTime() - start;
+			}
+		}
+		
+		/** gives generated section to recvr */
+		abstract void recv(IRecvr recvr, String html_str) throws Exception;
+		
+	} // end static abstract class ReportSection
+	
+	/** number of threads generating report sections */
+	static int getReportThreadCount() {
+		return Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	}
+	
+	/** generates sections of report in parallel, giving them to recvr in the same order as sections
+	 * 
+	 * result-packs are only read by the report generators, so they're shared by all the worker threads. Only a few
+	 * sections are generated ahead of the one recvr is waiting for, so finished sections don't pile up in memory.
+	 * 
+	 * @param cm
+	 * @param recvr
+	 * @param sections
+	 * @throws Exception
+	 */
+	static void generate(ConsoleManager cm, IRecvr recvr, List<ReportSection> sections) throws Exception {
+		final int thread_count = getReportThreadCount();
+		final AtomicInteger thread_num = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(thread_count, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "CmpReport"+thread_num.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		final long start = System.nanoTime();
+		long gen_nanos = 0, recv_nanos = 0;
+		try {
+			LinkedList<ReportSection> in_flight = new LinkedList<ReportSection>();
+			Iterator<ReportSection> it = sections.iterator();
+			while (it.hasNext() || !in_flight.isEmpty()) {
+				// keep workers busy, but bound how many sections are held in memory
+				while (it.hasNext() && in_flight.size() < thread_count * 2) {
+					ReportSection s = it.next();
+					s.future = pool.submit(s);
+					in_flight.add(s);
+				}
+				ReportSection s = in_flight.removeFirst();
+				String html_str;
+				try {
+					html_str = s.future.get();
+				} catch ( ExecutionException ex ) {
+					ConsoleManagerUtil.printStackTrace(CmpReport.class, cm, ex.getCause());
+					continue;
+				}
+				final long recv_start = System.nanoTime();
+				s.recv(recvr, html_str);
+				final long recv_time = System.nanoTime() - recv_start;
+				gen_nanos += s.gen_nanos;
+				recv_nanos += recv_time;
+				cm.println(EPrintType.CLUE, CmpReport.class, "Report Section: "+s.name+" generate_millis="+(s.gen_nanos/1000000L)+" recv_millis="+(recv_time/1000000L)+" length="+html_str.length());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		cm.println(EPrintType.CLUE, CmpReport.class, "Report: sections="+sections.size()+" threads="+thread_count+" millis="+((System.nanoTime()-start)/1000000L)+" generate_millis="+(gen_nanos/1000000L)+" recv_millis="+(recv_nanos/1000000L));
+	} // end static void generate
+	
 	static boolean eq(String base, String test) {
 		if (base==null||test==null)
 			return false;
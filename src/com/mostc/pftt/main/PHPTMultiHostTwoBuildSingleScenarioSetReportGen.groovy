@@ -8,14 +8,27 @@ import com.mostc.pftt.results.AbstractPhptRW;
 import com.mostc.pftt.results.AbstractReportGen;
 import com.mostc.pftt.results.ConsoleManager;
 import com.mostc.pftt.results.PhpResultPack;
-import com.mostc.pftt.results.PhptTestResult;
+import com.mostc.pftt.results.ResultComparator;
 
 class PHPTMultiHostTwoBuildSingleScenarioSetReportGen extends AbstractReportGen {
 	protected AbstractPhptRW base_telem, test_telem;
 	protected int row;
 	protected final String phpt_prefix;
+	protected final ResultComparator cmp;
 	
 	public PHPTMultiHostTwoBuildSingleScenarioSetReportGen(String phpt_prefix, AbstractPhptRW base_telem, AbstractPhptRW test_telem) {
+		this(new ResultComparator(), phpt_prefix, base_telem, test_telem);
+	}
+	
+	/**
+	 * 
+	 * @param cmp - share between reports of the same result-packs
+	 * @param phpt_prefix
+	 * @param base_telem
+	 * @param test_telem
+	 */
+	public PHPTMultiHostTwoBuildSingleScenarioSetReportGen(ResultComparator cmp, String phpt_prefix, AbstractPhptRW base_telem, AbstractPhptRW test_telem) {
+		this.cmp = cmp;
 		this.phpt_prefix = phpt_prefix;
 		this.base_telem = base_telem;
 		this.test_telem = test_telem;
@@ -42,6 +55,7 @@ class PHPTMultiHostTwoBuildSingleScenarioSetReportGen extends AbstractReportGen
 		String base_test_pack_branch_and_version = bav(base_telem.getTestPackBranch(), base_telem.getTestPackVersion())
 		String test_build_branch_and_version = test_telem.getBuildInfo().toString();
 		String test_test_pack_branch_and_version = bav(test_telem.getTestPackBranch(), test_telem.getTestPackVersion())
+		def diff = cmp.compare(base_telem, test_telem)
 		
 		// TODO temp
 		def os_names = base_telem.getBuildInfo().isX64()?['Win 2008r2 x64', 'Win 2012 x64', 'Win 2012r2 x64']:['Win 2008r2 x64', 'Win 2012 x64', 'Win 2012r2 x64']
@@ -309,7 +323,7 @@ html.html {
 				td(os_name)
 				td() {
 					if (!abbreviated || sw.getBuffer().length()<ABBREVIATED_MAX_LENGTH) {
-						for ( String test_name : PhptTestResult.listANotInB(test_telem.getTestNames(EPhptTestStatus.FAIL), base_telem.getTestNames(EPhptTestStatus.FAIL)) ) {
+						for ( String test_name : diff.getNew(EPhptTestStatus.FAIL) ) {
 							br(test_name)
 						}
 					}
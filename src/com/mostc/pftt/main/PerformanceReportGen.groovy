@@ -0,0 +1,93 @@
+package com.mostc.pftt.main
+
+import com.mostc.pftt.results.AbstractReportGen;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.PerformanceTestResult;
+import com.mostc.pftt.results.PhpResultPack;
+
+/** compares requests/sec and response times of the load tests of 2 builds (run by the `perf` command)
+ * 
+ * results are matched by scenario set and test name (@see PerformanceTestResult#getKey).
+ * 
+ */
+class PerformanceReportGen extends AbstractReportGen {
+	PhpResultPack base_pack, test_pack;
+	
+	public PerformanceReportGen(PhpResultPack base_pack, PhpResultPack test_pack) {
+		this.base_pack = base_pack;
+		this.test_pack = test_pack;
+	}
+	
+	/** percent change from base to test */
+	static String change(double base, double test) {
+		if (base==0)
+			return '';
+		return String.format('%+.1f%%', ((test - base) * 100.0d) / base)
+	}
+	
+	static String millis(long micros) {
+		return String.format('%.2f', micros / 1000.0d)
+	}
+	
+	@Override
+	void run(ConsoleManager cm, boolean abbreviated, BuilderSupport html) {
+		def base_results = [:]
+		for ( PerformanceTestResult r : base_pack.getPerformance() )
+			base_results[r.getKey()] = r
+
+html.html {
+	body {
+		h1('PFTT Performance Report')
+		p("${base_pack.getBuildInfo()} (Base) with ${test_pack.getBuildInfo()} (Test)")
+		table('border':"1", 'cellspacing':"0", 'cellpadding':"8") {
+			tr {
+				th('Test')
+				th('Scenario Set')
+				th('Build')
+				th('Clients')
+				th('Requests/sec')
+				th('p50 (ms)')
+				th('p99 (ms)')
+				th('p999 (ms)')
+				th('Error%')
+			}
+			for ( PerformanceTestResult test : test_pack.getPerformance() ) {
+				PerformanceTestResult base = base_results[test.getKey()]
+				if (base==null)
+					continue;
+				tr {
+					td('rowspan': 3, test.test_name)
+					td('rowspan': 3, test.scenario_set_name)
+					td(base.crashed ? 'Base (crashed)' : 'Base')
+					td(base.virtual_clients)
+					td(PhpResultPack.round1(base.getThroughput()))
+					td(millis(base.latency.getP50Micros()))
+					td(millis(base.latency.getP99Micros()))
+					td(millis(base.latency.getP999Micros()))
+					td(PhpResultPack.round1(base.getErrorRate()))
+				}
+				tr {
+					td(test.crashed ? 'Test (crashed)' : 'Test')
+					td(test.virtual_clients)
+					td(PhpResultPack.round1(test.getThroughput()))
+					td(millis(test.latency.getP50Micros()))
+					td(millis(test.latency.getP99Micros()))
+					td(millis(test.latency.getP999Micros()))
+					td(PhpResultPack.round1(test.getErrorRate()))
+				}
+				tr {
+					td('Change')
+					td()
+					td(change(base.getThroughput(), test.getThroughput()))
+					td(change(base.latency.getP50Micros(), test.latency.getP50Micros()))
+					td(change(base.latency.getP99Micros(), test.latency.getP99Micros()))
+					td(change(base.latency.getP999Micros(), test.latency.getP999Micros()))
+					td(change(base.getErrorRate(), test.getErrorRate()))
+				}
+			}
+		}
+	}
+}
+	} // end void run
+
+} // end class PerformanceReportGen
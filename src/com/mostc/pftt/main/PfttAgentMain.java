@@ -1,10 +1,12 @@
 package com.mostc.pftt.main;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import com.mostc.pftt.host.PSCAgentServer;
 import com.mostc.pftt.model.core.PhpBuild;
 import com.mostc.pftt.model.core.PhptActiveTestPack;
+import com.mostc.pftt.model.core.PhptSourceTestPack;
 import com.mostc.pftt.model.core.PhptTestCase;
 import com.mostc.pftt.results.EPrintType;
 import com.mostc.pftt.runner.AbstractTestPackRunner.ETestPackRunnerState;
@@ -19,9 +21,12 @@ public class PfttAgentMain extends PSCAgentServer {
 	protected PhptActiveTestPack test_pack;
 	protected ArrayList<String> test_names;
 	protected LocalPhptTestPackRunner test_pack_runner;
+	/** test-pack that was installed here (test_pack), to load test cases from by name */
+	protected PhptSourceTestPack src_test_pack;
 	
 	public PfttAgentMain() {
 		test_names = new ArrayList<String>(8);
+		scenario_set = new ScenarioSet();
 	}
 	
 	@Override
@@ -51,6 +56,43 @@ public class PfttAgentMain extends PSCAgentServer {
 		
 	}
 	
+	@Override
+	protected boolean startWork() throws Exception {
+		test_pack_runner = new LocalPhptTestPackRunner(this, this, scenario_set, build, host, host, new Config());
+		
+		// important: don't want to get WER popups on Windows (user isn't there to close them)
+		HostEnvUtil.prepareHostEnv(fs, host, this, build, false);
+		
+		// coordinator already installed the test-pack here: run it from there, and load test cases from it by name
+		src_test_pack = new PhptSourceTestPack(test_pack.getStorageDirectory());
+		if (!src_test_pack.open(this, new Config(), fs, host))
+			throw new IllegalStateException("test-pack not found: "+test_pack.getStorageDirectory());
+		
+		return test_pack_runner.openTestPack(src_test_pack, test_pack);
+	} // end protected boolean startWork
+	
+	@Override
+	protected void runWorkGroup(List<String> names) throws Exception {
+		ArrayList<PhptTestCase> test_cases = new ArrayList<PhptTestCase>(names.size());
+		for ( String name : names ) {
+			try {
+				test_cases.add(PhptTestCase.load(host, src_test_pack, name, this));
+			} catch ( Exception ex ) {
+				// no result is sent for it: coordinator will queue it again or report it wasn't run
+				addGlobalException(EPrintType.OPERATION_FAILED_CONTINUING, getClass(), "runWorkGroup", ex, "loading test case", name);
+			}
+		}
+		
+		test_pack_runner.runGroup(test_cases);
+	}
+	
+	@Override
+	protected void finishWork() {
+		// test-pack is left installed: coordinator installed it and may share it with other agents
+		if (test_pack_runner!=null)
+			test_pack_runner.close();
+	}
+	
 	@Override
 	protected void addTestName(String name) {
 		test_names.add(name);
@@ -58,7 +100,8 @@ public class PfttAgentMain extends PSCAgentServer {
 
 	@Override
 	protected void addScenario(Scenario scenario) {
-		scenario_set.add(scenario);
+		if (scenario!=null)
+			scenario_set.add(scenario);
 	}
 
 	@Override
@@ -73,7 +116,8 @@ public class PfttAgentMain extends PSCAgentServer {
 
 	@Override
 	protected void stop() {
-		test_pack_runner.setState(ETestPackRunnerState.NOT_RUNNING);
+		if (test_pack_runner!=null)
+			test_pack_runner.setState(ETestPackRunnerState.NOT_RUNNING);
 		
 		// make sure it exits / kills all threads
 		System.exit(0);
@@ -42,6 +42,7 @@ import com.mostc.pftt.model.core.PhpDebugPack;
 import com.mostc.pftt.model.core.PhpIni;
 import com.mostc.pftt.model.core.PhptSourceTestPack;
 import com.mostc.pftt.model.core.PhptTestCase;
+import com.mostc.pftt.model.performance.HttpLoadTest;
 import com.mostc.pftt.model.sapi.ApacheManager;
 import com.mostc.pftt.model.sapi.WebServerInstance;
 import com.mostc.pftt.model.smoke.ESmokeTestStatus;
@@ -57,10 +58,13 @@ import com.mostc.pftt.results.EPrintType;
 import com.mostc.pftt.results.LocalConsoleManager;
 import com.mostc.pftt.results.PhpResultPackReader;
 import com.mostc.pftt.results.PhpResultPackWriter;
+import com.mostc.pftt.results.PhptResultSegment;
 import com.mostc.pftt.runner.AbstractLocalTestPackRunner;
 import com.mostc.pftt.runner.AbstractTestPackRunner.ETestPackRunnerState;
+import com.mostc.pftt.runner.LocalHttpLoadTestRunner;
 import com.mostc.pftt.runner.LocalPhpUnitTestPackRunner;
 import com.mostc.pftt.runner.LocalPhptTestPackRunner;
+import com.mostc.pftt.runner.PhptSkipIfCache;
 import com.mostc.pftt.scenario.FileSystemScenario;
 //import com.mostc.pftt.runner.LocalSimpleTestPackRunner;
 import com.mostc.pftt.scenario.INIScenario;
@@ -364,16 +368,18 @@ public class PfttMain {
 			.addRow("run-test <build> <test-pack> <full test name,...>", "runs named tests using run-tests.php from test-pack")
 			.addRow("help", "")
 			.addRow("smoke <build>", "smoke test a build")
-			.addRow("info <build>", "returns phpinfo() for build (using build/php.ini if present, otherwise uses default INI)");
+			.addRow("info <build>", "returns phpinfo() for build (using build/php.ini if present, otherwise uses default INI)")
+			.addRow("perf <build[,build2]>", "load test build's web server(s), stores requests/sec and response times in result-pack (compare with 'report')");
 		if (LocalHost.isLocalhostWindows()) {
-			table.addRow("perf <build>", "performance test of build")
-				.addRow("release_get <branch> <build-type> <revision>", "download a build and test-pack snapshot release")
+			table.addRow("release_get <branch> <build-type> <revision>", "download a build and test-pack snapshot release")
 				.addRow("release_get <build|test-pack URL>", "download a build or test-pack from any URL")
 				.addRow("release_list <optional branch> <optional build-type>", "list snapshot build and test-pack releases");
 		}
 		table.addRow("parse", "parses PHP code for analysis by configuration tasks")
 			.addRow("open", "open result-pack(s) for analysis")
 			.addRow("report", "generate reports and optionally publish via email or qa.php.net")
+			.addRow("skipif_cache_clear", "deletes SKIPIF output cached from previous test runs (@see -no_skipif_cache)")
+			.addRow("result_pack_convert <result-pack> <xml|binary>", "converts PHPT results in result-pack between 1 XML file per test and binary segments (@see -binary_result_pack)")
 			.addRow("stop <build>", "cleans up after setup, stops web server and other services")
 			.addRow("setup <build>", "sets up scenarios from -config -- installs IIS or Apache to run PHP, etc...");
 		System.out.println(table);
@@ -402,6 +408,7 @@ public class PfttMain {
 		System.out.println("   === Unattended Options ===");
 		table = new AlignedTable(2, 85)
 			.addRow("-no_result_file_for_pass_xskip_skip(-q)", "doesn't store all result data for PASS, SKIP or XSKIP tests")
+			.addRow("-binary_result_pack", "stores PHPT results in 1 compressed binary file per scenario set instead of 1 XML file per test (@see result_pack_convert)")
 			.addRow("-disable_debug_prompt", "disables asking you if you want to debug PHP crashes (for automation. default=enabled) (alias: -debug_none)")
 			.addRow("-auto", "changes default options for automated testing (-uac -disable_debug_prompt -phpt_not_in_place)");
 		if (LocalHost.isLocalhostWindows()) {
@@ -431,6 +438,8 @@ public class PfttMain {
 		System.out.println("   === Test Enumeration ===");
 		System.out.println(new AlignedTable(2, 85)
 			.addRow("-randomize_order", "randomizes test case run order")
+			.addRow("-order_by_run_time <result-packs>", "runs slowest groups of tests first, using run times from previous result-pack(s) (separated by ;)")
+			.addRow("-no_skipif_cache", "always executes SKIPIF sections instead of using their output from previous test runs")
 			.addRow("-skip_list <list files>", "skip tests in list (exact name)")
 			.addRow("-max_test_read_count <N>", "maximum number of tests to read (without other options, this will be the number of tests run also... tests are normally only run once)")
 			.addRow("-skip_name <test name,name 2, name 3>", "skip tests in COMMA separated list"));
@@ -447,7 +456,10 @@ public class PfttMain {
 		System.out.println("   === SAPI Restarting ===");
 		System.out.println(new AlignedTable(2, 85)
 			.addRow("-restart_each_test_all", "restart web server between each test (slow, default=no)")
-			.addRow("-no_restart_all", "will not restart any web server unless it crashes (be careful, this will INVALIDATE FUNCTIONAL TESTING results because configuration won't be changed for tests)"));
+			.addRow("-no_restart_all", "will not restart any web server unless it crashes (be careful, this will INVALIDATE FUNCTIONAL TESTING results because configuration won't be changed for tests)")
+			.addRow("-web_standby <N>", "keeps N extra web servers started for each configuration so a crashed web server can be replaced immediately (default=0)")
+			.addRow("-phpunit_worker <N>", "runs PhpUnit tests (CLI) in 1 PHP process per thread that loads the bootstrap once, restarting it after N tests or a crash (default=new PHP process for each test)")
+			.addRow("-phpunit_worker_keep_dirty", "keeps using PhpUnit worker even if a test changes global variables, directory, INI or constants (default=restart it)"));
 		System.out.println();
 		System.out.println("   === Debugging ===");
 		System.out.println(new AlignedTable(2, 85)
@@ -674,6 +686,41 @@ public class PfttMain {
 		}
 	} // end public void appAll
 	
+	/** runs load tests against build and stores throughput and response times in result-pack
+	 * 
+	 * runs load tests from application test-packs in config file(s). if there aren't any, runs a Hello World test.
+	 * 
+	 * @param build
+	 * @param config
+	 * @param tmgr
+	 * @throws Exception
+	 */
+	public void perf(PhpBuild build, Config config, PhpResultPackWriter tmgr) throws Exception {
+		ensureLocalhostPrepared(build);
+		
+		checkDebugger(cm, host, build);
+		build.open(cm, host);
+		
+		LinkedList<HttpLoadTest> tests = new LinkedList<HttpLoadTest>();
+		if (config!=null) {
+			for ( PhpUnitSourceTestPack test_pack : config.getPhpUnitSourceTestPacks(cm) ) {
+				HttpLoadTest test = test_pack.createHttpLoadTest(cm, host);
+				if (test!=null && test.hasRequests())
+					tests.add(test);
+			}
+		}
+		if (tests.isEmpty()) {
+			cm.println(EPrintType.CLUE, PfttMain.class, "No load test provided by configuration file(s), using Hello World");
+			tests.add(HttpLoadTest.createHelloWorld(fs));
+		}
+		cm.println(EPrintType.CLUE, PfttMain.class, "Writing Result-Pack: "+tmgr.getResultPackPath());
+		
+		for ( ScenarioSet scenario_set : getScenarioSets(config, EScenarioSetPermutationLayer.PRODUCTION_OR_ALL_UP_TEST) ) {
+			LocalHttpLoadTestRunner r = new LocalHttpLoadTestRunner(cm, tmgr, fs, host, build, scenario_set);
+			r.run(tests);
+		}
+	} // end public void perf
+	
 	public void coreAll(PhpBuild build, PhptSourceTestPack test_pack, Config config, PhpResultPackWriter tmgr) throws FileNotFoundException, IOException, Exception {
 		ensureLocalhostPrepared(build);
 		
@@ -1354,13 +1401,14 @@ public class PfttMain {
 		
 		Config config = null;
 		String debugger_name = null;
-		boolean is_uac = false, debug = false, randomize_order = false, no_result_file_for_pass_xskip_skip = false, pftt_debug = false, show_gui = false, overwrite = false, disable_debug_prompt = false, results_only = false, dont_cleanup_test_pack = false, phpt_not_in_place = false, thread_safety = true, skip_smoke_tests = false, pause = false, restart_each_test_all = false, no_restart_all = false, ignore_unknown_option = false, ini_actual_all = false, non_interactive = false, ignore_output = false;
+		boolean is_uac = false, debug = false, randomize_order = false, no_result_file_for_pass_xskip_skip = false, pftt_debug = false, show_gui = false, overwrite = false, disable_debug_prompt = false, results_only = false, dont_cleanup_test_pack = false, phpt_not_in_place = false, thread_safety = true, skip_smoke_tests = false, pause = false, restart_each_test_all = false, no_restart_all = false, ignore_unknown_option = false, ini_actual_all = false, non_interactive = false, ignore_output = false, no_skipif_cache = false, binary_result_pack = false, phpunit_worker_keep_dirty = false;
 		long max_run_time_millis = 0;
-		int run_test_times_all = 1, run_test_pack = 1, delay_between_ms = 0, run_test_times_list_times = 1, run_group_times_all = 1, run_group_times_list_times = 1, max_test_read_count = 0, thread_count = 0, run_count = 0, suspend_seconds = 0;
+		int run_test_times_all = 1, run_test_pack = 1, delay_between_ms = 0, run_test_times_list_times = 1, run_group_times_all = 1, run_group_times_list_times = 1, max_test_read_count = 0, thread_count = 0, run_count = 0, suspend_seconds = 0, web_standby_count = 0, phpunit_worker_test_count = 0;
 		LinkedList<String> debug_list = new LinkedList<String>();
 		LinkedList<String> run_test_times_list = new LinkedList<String>();
 		LinkedList<String> run_group_times_list = new LinkedList<String>();
 		LinkedList<String> skip_list = new LinkedList<String>();
+		LinkedList<String> run_time_history_list = new LinkedList<String>();
 		String source_pack = null;
 		PhpDebugPack debug_pack = null;
 		LinkedList<String> config_files = new LinkedList<String>();
@@ -1457,8 +1505,18 @@ public class PfttMain {
 				no_result_file_for_pass_xskip_skip = true;
 			} else if (args[args_i].equals("-ignore_output")) {
 				ignore_output = true;
+			} else if (args[args_i].equals("-no_skipif_cache")) {
+				no_skipif_cache = true;
+			} else if (args[args_i].equals("-binary_result_pack")) {
+				binary_result_pack = true;
 			} else if (args[args_i].equals("-randomize_order")) {
 				randomize_order = true;
+			} else if (args[args_i].equals("-order_by_run_time")) {
+				args_i++;
+				for ( String part : args[args_i].split(";") ) {
+					if (!StringUtil.isEmpty(part))
+						run_time_history_list.add(part);
+				}
 			} else if (args[args_i].equals("-run_test_pack")) {
 				args_i++;
 				run_test_pack = Integer.parseInt(args[args_i]);
@@ -1494,6 +1552,14 @@ public class PfttMain {
 			} else if (args[args_i].equals("-suspend_seconds")) {
 				args_i++;
 				suspend_seconds = Integer.parseInt(args[args_i]);
+			} else if (args[args_i].equals("-web_standby")) {
+				args_i++;
+				web_standby_count = Integer.parseInt(args[args_i]);
+			} else if (args[args_i].equals("-phpunit_worker")) {
+				args_i++;
+				phpunit_worker_test_count = Integer.parseInt(args[args_i]);
+			} else if (args[args_i].equals("-phpunit_worker_keep_dirty")) {
+				phpunit_worker_keep_dirty = true;
 			} else if (args[args_i].equals("-run_count")||args[args_i].equals("-rc")) {
 				args_i++;
 				run_count = Integer.parseInt(args[args_i]);
@@ -1577,7 +1643,7 @@ public class PfttMain {
 					help_all();
 					System.exit(-255);
 					return;
-				} else if (StringUtil.containsAnyCS(args[args_i], new String[]{"run_test", "core_all", "core_named", "core_list", "app_all", "app_named", "app_list", "ui_all", "ui_list", "ui_named", "report", "release_get", "release_list", "list_config", "smoke", "info"})) {
+				} else if (StringUtil.containsAnyCS(args[args_i], new String[]{"run_test", "core_all", "core_named", "core_list", "app_all", "app_named", "app_list", "ui_all", "ui_list", "ui_named", "report", "release_get", "release_list", "list_config", "smoke", "info", "perf"})) {
 					if (args[args_i].endsWith("_"))
 						// for setup, lc
 						args[args_i] = args[args_i].substring(0, args[args_i].length()-1);
@@ -1615,7 +1681,7 @@ public class PfttMain {
 		cm = new LocalConsoleManager(source_pack, debug_pack, overwrite, debug, results_only, show_gui, disable_debug_prompt, dont_cleanup_test_pack, phpt_not_in_place, pftt_debug, no_result_file_for_pass_xskip_skip, randomize_order, run_test_times_all, run_test_pack, 
 				thread_safety, run_test_times_list_times, run_group_times_all, run_group_times_list_times, debug_list, run_test_times_list, run_group_times_list, skip_list,
 				skip_smoke_tests, max_test_read_count, thread_count, restart_each_test_all, no_restart_all, delay_between_ms,
-				run_count, suspend_seconds, ini_actual_all, max_run_time_millis, non_interactive, ignore_output, debugger_name);
+				run_count, suspend_seconds, ini_actual_all, max_run_time_millis, non_interactive, ignore_output, debugger_name, run_time_history_list, no_skipif_cache, binary_result_pack, web_standby_count, phpunit_worker_test_count, phpunit_worker_keep_dirty);
 		p.cm = cm;
 		int exit_code = 0;
 		
@@ -1685,7 +1751,7 @@ public class PfttMain {
 						}
 						
 						for (IRecvr recvr : recvrs ) {
-							CmpReport.report("core", cm, recvr, result_packs.get(0), result_packs.get(1));
+							CmpReport.report("core", cm, recvr, result_packs.get(0), result_packs.get(1), cmp.getComparator());
 						}
 					}
 					/*if (result_packs.size() > 0) {
@@ -1946,6 +2012,34 @@ public class PfttMain {
 					
 					walkConfDir(new File(p.host.getPfttDir(), "conf"), true);
 					
+				} else if (command.equals("skipif_cache_clear")||command.equals("scc")) {
+					cm.println(EPrintType.CLUE, PfttMain.class, "SKIPIF Cache: removed "+PhptSkipIfCache.clear(cm)+" entries");
+					
+				} else if (command.equals("result_pack_convert")||command.equals("rpc")) {
+					if (!(args.length > args_i+2)) {
+						System.err.println("User Error: must include result-pack and format");
+						System.out.println("usage: pftt result_pack_convert <result-pack> <xml|binary>");
+						System.exit(-255);
+						return;
+					}
+					File result_pack_dir = new File(args[args_i+1]);
+					if (!result_pack_dir.isDirectory()) {
+						System.err.println("User Error: result-pack not found: "+result_pack_dir);
+						System.exit(-255);
+						return;
+					}
+					final boolean to_binary;
+					if (args[args_i+2].equalsIgnoreCase("binary")) {
+						to_binary = true;
+					} else if (args[args_i+2].equalsIgnoreCase("xml")) {
+						to_binary = false;
+					} else {
+						System.err.println("User Error: format must be xml or binary: "+args[args_i+2]);
+						System.exit(-255);
+						return;
+					}
+					cm.println(EPrintType.CLUE, PfttMain.class, "Result-Pack: converted "+PhptResultSegment.convertResultPack(cm, result_pack_dir, to_binary)+" scenario sets to "+(to_binary?"binary":"xml"));
+					
 				} else if (command.equals("stop")) {
 					if (!(args.length > args_i+1)) {
 						System.err.println("User Error: must include build");
@@ -2152,6 +2246,19 @@ public class PfttMain {
 							exit_code = -200;
 						}
 					}
+				} else if (command.equals("perf")) {
+					no_show_gui(show_gui, command);
+					
+					if (args.length<=args_i+1) {
+						System.out.println("Usage: perf <path to PHP build(s);:>");
+						System.out.println("Usage: perf -config <config name> <path to PHP build(s);:>");
+						System.exit(-254);
+						return;
+					}
+					
+					PhpBuild[] builds = newBuilds(cm, p.host, args[args_i+1]);
+					for ( PhpBuild build : builds )
+						p.perf(build, config, p.getWriter(build));
 				} else if (command.equals("info")) {
 					no_show_gui(show_gui, command);
 					
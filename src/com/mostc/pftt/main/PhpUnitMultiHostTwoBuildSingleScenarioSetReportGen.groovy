@@ -9,13 +9,25 @@ import com.mostc.pftt.results.AbstractPhpUnitRW;
 import com.mostc.pftt.results.AbstractReportGen;
 import com.mostc.pftt.results.ConsoleManager;
 import com.mostc.pftt.results.PhpResultPack;
-import com.mostc.pftt.results.PhptTestResult;
+import com.mostc.pftt.results.ResultComparator;
 
 class PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen extends AbstractReportGen {
 	AbstractPhpUnitRW base_telem, test_telem;
 	int row;
+	final ResultComparator cmp;
 
 	public PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen(AbstractPhpUnitRW base_telem, AbstractPhpUnitRW test_telem) {
+		this(new ResultComparator(), base_telem, test_telem);
+	}
+	
+	/**
+	 * 
+	 * @param cmp - share between reports of the same result-packs
+	 * @param base_telem
+	 * @param test_telem
+	 */
+	public PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen(ResultComparator cmp, AbstractPhpUnitRW base_telem, AbstractPhpUnitRW test_telem) {
+		this.cmp = cmp;
 		this.base_telem = base_telem;
 		this.test_telem = test_telem;
 	}
@@ -30,6 +42,7 @@ class PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen extends AbstractReportG
 		}
 		String base_build_branch_and_version = base_telem.getBuildInfo().toString();
 		String test_build_branch_and_version = test_telem.getBuildInfo().toString();
+		def diff = cmp.compare(base_telem, test_telem)
 
 		def os_names = //['Nanoserver-14351']//['Win 2012']//PHP-CSS-01']
 		base_telem.getBuildInfo().isX64()?['Win 2008r2 x64', 'Win 2012 x64', 'Win 2012r2 x64']:['Win 2008r2 x64', 'Win 2012 x64', 'Win 2012r2 x64'];
@@ -229,7 +242,7 @@ class PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen extends AbstractReportG
 									)
 							td(valign: 'top', style: 'border:solid windowtext 1.0pt; background:#ECEEE1;padding:0in 5.4pt 0in 5.4pt') {
 								if (!abbreviated || sw.getBuffer().length()<ABBREVIATED_MAX_LENGTH) {
-									PhptTestResult.listANotInB(test_telem.getTestNames(EPhpUnitTestStatus.CRASH), base_telem.getTestNames(EPhpUnitTestStatus.CRASH)).each { test_name ->
+									diff.getNew(EPhpUnitTestStatus.CRASH).each { test_name ->
 										p(test_name)
 										String a = test_telem.getTestOutput(test_name);
 										if (a!=null) {
@@ -240,7 +253,7 @@ class PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen extends AbstractReportG
 									}
 								}
 								if (!abbreviated || sw.getBuffer().length()<ABBREVIATED_MAX_LENGTH) {
-									PhptTestResult.listANotInB(test_telem.getTestNames(EPhpUnitTestStatus.ERROR), base_telem.getTestNames(EPhpUnitTestStatus.ERROR)).each { test_name ->
+									diff.getNew(EPhpUnitTestStatus.ERROR).each { test_name ->
 										p(test_name)
 										String a = test_telem.getTestOutput(test_name);
 										if (a!=null) {
@@ -251,7 +264,7 @@ class PhpUnitMultiHostTwoBuildSingleScenarioSetReportGen extends AbstractReportG
 									}
 								}
 								if (!abbreviated || sw.getBuffer().length()<ABBREVIATED_MAX_LENGTH) {
-									PhptTestResult.listANotInB(test_telem.getTestNames(EPhpUnitTestStatus.FAILURE), base_telem.getTestNames(EPhpUnitTestStatus.FAILURE)).each { test_name ->
+									diff.getNew(EPhpUnitTestStatus.FAILURE).each { test_name ->
 										p(test_name)
 										String a = test_telem.getTestOutput(test_name);
 										if (a!=null) {
@@ -10,6 +10,7 @@ import com.github.mattficken.io.StringUtil;
 import com.mostc.pftt.host.AHost;
 import com.mostc.pftt.host.LocalHost;
 import com.mostc.pftt.model.core.EBuildBranch;
+import com.mostc.pftt.model.performance.HttpLoadTest;
 import com.mostc.pftt.results.ConsoleManager;
 //TODO import com.mostc.pftt.scenario.AzureWebsitesScenario;
 import com.mostc.pftt.scenario.FileSystemScenario;
@@ -136,6 +137,21 @@ public abstract class ApplicationSourceTestPack<A extends ActiveTestPack, T exte
 		return false;
 	}
 	
+	/** returns a load test of this application, or NULL if it doesn't have one.
+	 * 
+	 * run by the `perf` command to compare the throughput and response times of builds.
+	 * 
+	 * @see HttpLoadTest
+	 * @param cm
+	 * @param host
+	 * @return
+	 */
+	@Overridable
+	@Nullable
+	public HttpLoadTest createHttpLoadTest(ConsoleManager cm, AHost host) {
+		return null;
+	}
+	
 	@Override
 	public EBuildBranch getTestPackBranch() {
 		return null;
@@ -72,6 +72,36 @@ public class PhpUnitTemplate {
 	}
 	
 	public static String renderTemplate(AHost host, ScenarioSet scenario_set, PhpUnitTestCase test_case, String prebootstrap_code, String bootstrap_file, String postbootstrap_code, String cwd, String include_path, String[] included_files, Map<String, String> globals, Map<String, String> constants, HashMap<String, String> env, String my_temp_dir, boolean reflection_only, boolean use_cgi, boolean strict) {
+		return renderTemplate(host, scenario_set, test_case, prebootstrap_code, bootstrap_file, postbootstrap_code, cwd, include_path, included_files, globals, constants, env, my_temp_dir, reflection_only, use_cgi, strict, false);
+	}
+	
+	/** printed by worker when it has started (after loading the bootstrap) */
+	public static final String WORKER_READY_MARKER = "PFTT_WORKER_READY";
+	/** printed by worker after each test */
+	public static final String WORKER_END_MARKER = "PFTT_WORKER_END";
+	
+	/** generates the PHP code for a worker process that runs many PhpUnitTestCases
+	 * 
+	 * the worker loads the bootstrap file once, then reads 1 test per line from STDIN (same parameters as `use_cgi`, URL encoded)
+	 * and runs it. after each test, it prints WORKER_END_MARKER followed by `dirty=1` if the test changed the state of the
+	 * process (otherwise `dirty=0`). if it has a fatal error or crashes, it exits without printing WORKER_END_MARKER.
+	 * 
+	 * the test to run is only known when the worker reads it, so tests are always run through PHPUnit_Framework_TestCase::run
+	 * (reflection_only). the test method can't be called directly as #renderTemplate does when reflection_only is FALSE.
+	 * 
+	 * dirty means the test added or changed a global variable, changed the current directory, changed an INI setting
+	 * (ini_set) or defined a constant. NOT caught: changes to static properties, to objects held in global variables
+	 * or to other state of extensions (ex: open database connections, locale).
+	 * 
+	 * @see PhpUnitWorker
+	 * @see #renderTemplate
+	 * @return
+	 */
+	public static String renderWorkerTemplate(AHost host, ScenarioSet scenario_set, String prebootstrap_code, String bootstrap_file, String postbootstrap_code, String cwd, String include_path, String[] included_files, Map<String, String> globals, Map<String, String> constants, HashMap<String, String> env, String my_temp_dir) {
+		return renderTemplate(host, scenario_set, null, prebootstrap_code, bootstrap_file, postbootstrap_code, cwd, include_path, included_files, globals, constants, env, my_temp_dir, true, true, false, true);
+	}
+	
+	public static String renderTemplate(AHost host, ScenarioSet scenario_set, PhpUnitTestCase test_case, String prebootstrap_code, String bootstrap_file, String postbootstrap_code, String cwd, String include_path, String[] included_files, Map<String, String> globals, Map<String, String> constants, HashMap<String, String> env, String my_temp_dir, boolean reflection_only, boolean use_cgi, boolean strict, boolean worker) {
 		StringWriter sw = new StringWriter(16384);
 		PrintWriter pw = new PrintWriter(sw);
 		
@@ -122,7 +152,7 @@ function define_checked(\$name, \$value) {
 
 
 """)
-		if (use_cgi) {
+		if (use_cgi && !worker) {
 			// PFTT mod: these are the only parameters that differ from test-case to test-case
 			//           other than needing to use reflection, can just set these parameters
 			//           using CGI args from HTTP request
@@ -217,7 +247,7 @@ function dump_coverage() {
 		if (StringUtil.isNotEmpty(prebootstrap_code)) {
 			pw.print(prebootstrap_code);
 		}
-		if (use_cgi) {
+		if (use_cgi && !worker) {
 			if (StringUtil.isNotEmpty(bootstrap_file)) {
 				pw.print("""
 if (strlen(\$bootstrap_file)>0) {
@@ -305,9 +335,14 @@ function __phpunit_run_isolated_test()
 	/*if ({collectCodeCoverageInformation}) {
 		\$result->setCodeCoverage(new PHP_CodeCoverage);
 	}*/
-		pw.print("""
+		if (!worker) {
+			// worker registers this once for all its tests (otherwise 1 fatal error would be reported once for each test it ran)
+			pw.print("""
 
 	register_shutdown_function('tryReportFatal');
+""")
+		}
+		pw.print("""
 
 	\$test = NULL;
 	\$status = PHPUnit_Runner_BaseTestRunner::STATUS_SKIPPED;
@@ -639,10 +674,93 @@ if (isset(\$GLOBALS['__PHPUNIT_BOOTSTRAP'])) {
 	require_once \$GLOBALS['__PHPUNIT_BOOTSTRAP'];
 	unset(\$GLOBALS['__PHPUNIT_BOOTSTRAP']);
 }
-
+""");
+		if (worker) {
+			// PFTT mod: run tests until STDIN is closed. bootstrap, autoloader, etc... were only loaded once (above)
+			pw.print("""
+while (ob_get_level() > 0) {
+	ob_end_flush();
+}
+echo '$WORKER_READY_MARKER'; echo PHP_EOL;
+flush();
+// once for all tests. ignore_exit is only FALSE while a test is running
+register_shutdown_function('tryReportFatal');
+\$ignore_exit = TRUE;
+function __pftt_fingerprint(\$v) {
+	if (is_object(\$v)) {
+		return 'o:' . spl_object_hash(\$v);
+	} else if (is_array(\$v)) {
+		try {
+			return 'a:' . md5(@serialize(\$v));
+		} catch ( Exception \$e ) {
+			// contains a Closure, etc...
+			return 'a:' . count(\$v);
+		}
+	} else if (is_resource(\$v)) {
+		return 'r:' . intval(\$v);
+	}
+	return 's:' . var_export(\$v, TRUE);
+}
+// what a test may change that would affect the next test (@see PhpUnitTemplate#renderWorkerTemplate)
+function __pftt_worker_state() {
+	\$state = array();
+	foreach ( \$GLOBALS as \$k => \$v ) {
+		// the worker's own variables change for every test
+		if (\$k==='GLOBALS' || \$k==='_GET' || \$k==='ignore_exit' || strncmp(\$k, '__pftt_', 7)===0 || in_array(\$k, array('className', 'methodName', 'abs_filename', 'filename', 'dependsMethodName', 'dataProviderMethodName'), TRUE)) {
+			continue;
+		}
+		\$state["g:\$k"] = __pftt_fingerprint(\$v);
+	}
+	\$state['cwd'] = getcwd();
+	\$state['ini'] = md5(serialize(ini_get_all(NULL, FALSE)));
+	\$c = get_defined_constants(TRUE);
+	\$state['constants'] = isset(\$c['user']) ? count(\$c['user']) : 0;
+	return \$state;
+}
+\$__pftt_line = \$className = \$methodName = \$abs_filename = \$filename = \$dependsMethodName = \$dataProviderMethodName = NULL;
+\$__pftt_dirty = \$__pftt_level = 0;
+\$__pftt_state = __pftt_worker_state();
+while ((\$__pftt_line = fgets(STDIN)) !== FALSE) {
+	\$__pftt_line = trim(\$__pftt_line);
+	if (strlen(\$__pftt_line)==0) {
+		continue;
+	}
+	\$_GET = array();
+	parse_str(\$__pftt_line, \$_GET);
+	\$className = \$_GET['className'];
+	\$methodName = \$_GET['methodName'];
+	\$abs_filename = \$_GET['abs_filename'];
+	\$filename = \$abs_filename;
+	\$dependsMethodName = \$_GET['dependsMethodName'];
+	\$dataProviderMethodName = \$_GET['dataProviderMethodName'];
+	\$ignore_exit = FALSE;
+	
+	\$__pftt_level = ob_get_level();
+	ob_start();
+	__phpunit_run_isolated_test();
+	// discard buffer test started at its end (unless it returned early because of an exception)
+	if (ob_get_level() > \$__pftt_level) {
+		ob_end_clean();
+	}
+	while (ob_get_level() > \$__pftt_level) {
+		ob_end_flush();
+	}
+	
+	\$ignore_exit = TRUE;
+	\$__pftt_line = __pftt_worker_state();
+	\$__pftt_dirty = \$__pftt_line !== \$__pftt_state ? 1 : 0;
+	// if worker is kept after a dirty test (-phpunit_worker_keep_dirty), only report what the next test changes
+	\$__pftt_state = \$__pftt_line;
+	echo PHP_EOL; echo '$WORKER_END_MARKER dirty='; echo \$__pftt_dirty; echo PHP_EOL;
+	flush();
+}
+""");
+		} else {
+			pw.print("""
 __phpunit_run_isolated_test();
 ob_end_clean();
 """);
+		}
 
 		pw.flush();
 		return sw.toString();
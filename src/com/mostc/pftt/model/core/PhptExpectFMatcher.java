@@ -0,0 +1,461 @@
+package com.mostc.pftt.model.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Matches test output against an EXPECTF section.
+ *
+ * The EXPECTF section is compiled directly into a list of segments (literal strings and character runs like %s or %d)
+ * instead of into a regular expression for the backtracking RE engine. Each literal is found with String#indexOf
+ * (only positions where the next literal starts are tried) and each (segment, position) pair is only tried once,
+ * so matching never takes exponential time no matter how many %s or %a the section has.
+ *
+ * Same meaning as #prepareExpectF: the output may have other text before or after the expected output and at the end
+ * of each line. The %X codes match the same as PHP's run-tests.php:
+ *  %e - a directory separator (\ / or |)
+ *  %s - 1 or more characters on the same line       %S - 0 or more characters on the same line
+ *  %a - 1 or more characters (any line)             %A - 0 or more characters (any line)
+ *  %w - 0 or more whitespace characters             %i - integer with optional sign (+/-)
+ *  %d - unsigned integer                            %x - hexadecimal number
+ *  %f - floating point number                       %c - any 1 character
+ *
+ * EXPECTF sections using %r (a regular expression inside the section) can't be compiled and must be matched
+ * with the RE engine (@see PhptTestCase#getExpectedCompiled).
+ *
+ * This decides if EXPECTF matches. It is stricter than the RE engine, which assumes a match after 5 levels of
+ * recursion (@see RE#matchNodes).
+ *
+ * @see PhptTestCase#matchesExpected
+ * @author Matt Ficken
+ *
+ */
+
+public class PhptExpectFMatcher {
+	protected static final int LITERAL = 0;
+	protected static final int ANY = 1;
+	/** any character except \n (`.` in RE) */
+	protected static final int NOT_LF = 2;
+	/** any character except \r or \n */
+	protected static final int NOT_EOL = 3;
+	protected static final int DIGIT = 4;
+	protected static final int HEX = 5;
+	protected static final int SPACE = 6;
+	protected static final int SIGN = 7;
+	protected static final int DOT = 8;
+	protected static final int DIR_SEP = 9;
+	protected static final int EXP = 10;
+	/** optional group: either continues with the next segment or skips to #skip */
+	protected static final int OPTIONAL = 11;
+	protected static final int UNLIMITED = Integer.MAX_VALUE;
+	protected final int[] kinds, mins, maxs;
+	protected final String[] literals;
+	
+	protected PhptExpectFMatcher(ArrayList<Segment> segments) {
+		final int count = segments.size();
+		kinds = new int[count];
+		mins = new int[count];
+		maxs = new int[count];
+		literals = new String[count];
+		Segment s;
+		for ( int i=0 ; i < count ; i++ ) {
+			s = segments.get(i);
+			kinds[i] = s.kind;
+			mins[i] = s.min;
+			maxs[i] = s.max;
+			literals[i] = s.literal;
+		}
+	}
+	
+	protected PhptExpectFMatcher(int[] kinds, int[] mins, int[] maxs, String[] literals) {
+		this.kinds = kinds;
+		this.mins = mins;
+		this.maxs = maxs;
+		this.literals = literals;
+	}
+	
+	/** writes compiled segments (@see PhptExpectedCache) */
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(kinds.length);
+		for ( int i=0 ; i < kinds.length ; i++ ) {
+			out.writeByte(kinds[i]);
+			out.writeInt(mins[i]);
+			out.writeInt(maxs[i]);
+			if (kinds[i]==LITERAL)
+				PhptParseCache.writeString(out, literals[i]);
+		}
+	}
+	
+	static PhptExpectFMatcher read(DataInputStream in) throws IOException {
+		final int count = in.readInt();
+		if (count < 0)
+			throw new IOException("invalid segment count: "+count);
+		int[] kinds = new int[count], mins = new int[count], maxs = new int[count];
+		String[] literals = new String[count];
+		for ( int i=0 ; i < count ; i++ ) {
+			kinds[i] = in.readByte();
+			if (kinds[i] < LITERAL || kinds[i] > OPTIONAL)
+				throw new IOException("invalid segment kind: "+kinds[i]);
+			mins[i] = in.readInt();
+			maxs[i] = in.readInt();
+			if (kinds[i]==LITERAL) {
+				literals[i] = PhptParseCache.readString(in);
+				if (literals[i]==null)
+					throw new IOException("missing literal");
+			}
+		}
+		return new PhptExpectFMatcher(kinds, mins, maxs, literals);
+	}
+	
+	protected static class Segment {
+		protected final int kind, min;
+		protected int max;
+		protected final String literal;
+		
+		protected Segment(int kind, int min, int max) {
+			this.kind = kind;
+			this.min = min;
+			this.max = max;
+			this.literal = null;
+		}
+		
+		protected Segment(String literal) {
+			this.kind = LITERAL;
+			this.min = this.max = literal.length();
+			this.literal = literal;
+		}
+	
+	} // end protected static class Segment
+	
+	/** compiles EXPECTF section
+	 *
+	 * @param expectf - trimmed EXPECTF section
+	 * @return NULL if section can only be matched as a regular expression (uses %r)
+	 */
+	public static PhptExpectFMatcher compile(String expectf) {
+		if (expectf.contains("%r"))
+			return null;
+		
+		ArrayList<Segment> segments = new ArrayList<Segment>();
+		// expected output may be anywhere in the output
+		segments.add(new Segment(ANY, 0, UNLIMITED));
+		StringBuilder literal = new StringBuilder(expectf.length());
+		final int length = expectf.length();
+		char c;
+		int i = 0;
+		while (i < length) {
+			c = expectf.charAt(i);
+			if (c=='\r'||c=='\n') {
+				// lines may end with other text (same as #prepareExpectF)
+				addLiteral(segments, literal);
+				segments.add(new Segment(NOT_LF, 0, UNLIMITED));
+				literal.append(c);
+				i++;
+				continue;
+			} else if (c!='%') {
+				literal.append(c);
+				i++;
+				continue;
+			}
+			
+			if (expectf.startsWith("%binary_string_optional%", i)) {
+				literal.append("string");
+				i += "%binary_string_optional%".length();
+			} else if (expectf.startsWith("%unicode_string_optional%", i)) {
+				literal.append("string");
+				i += "%unicode_string_optional%".length();
+			} else if (expectf.startsWith("%unicode|string%", i) || expectf.startsWith("%string|unicode%", i)) {
+				literal.append("string");
+				i += "%unicode|string%".length();
+			} else if (expectf.startsWith("%u|b%", i) || expectf.startsWith("%b|u%", i)) {
+				i += "%u|b%".length();
+			} else if (i+1 < length && addCode(segments, literal, expectf.charAt(i+1))) {
+				i += 2;
+			} else {
+				literal.append(c);
+				i++;
+			}
+		}
+		addLiteral(segments, literal);
+		return new PhptExpectFMatcher(segments);
+	} // end public static PhptExpectFMatcher compile
+	
+	protected static boolean addCode(ArrayList<Segment> segments, StringBuilder literal, char code) {
+		switch(code) {
+		case 'e':
+			addLiteral(segments, literal);
+			segments.add(new Segment(DIR_SEP, 1, 1));
+			return true;
+		case 's':
+			addLiteral(segments, literal);
+			segments.add(new Segment(NOT_EOL, 1, UNLIMITED));
+			return true;
+		case 'S':
+			addLiteral(segments, literal);
+			segments.add(new Segment(NOT_EOL, 0, UNLIMITED));
+			return true;
+		case 'a':
+			addLiteral(segments, literal);
+			segments.add(new Segment(ANY, 1, UNLIMITED));
+			return true;
+		case 'A':
+			addLiteral(segments, literal);
+			segments.add(new Segment(ANY, 0, UNLIMITED));
+			return true;
+		case 'w':
+			addLiteral(segments, literal);
+			segments.add(new Segment(SPACE, 0, UNLIMITED));
+			return true;
+		case 'i':
+			addLiteral(segments, literal);
+			segments.add(new Segment(SIGN, 0, 1));
+			segments.add(new Segment(DIGIT, 1, UNLIMITED));
+			return true;
+		case 'd':
+			addLiteral(segments, literal);
+			segments.add(new Segment(DIGIT, 1, UNLIMITED));
+			return true;
+		case 'x':
+			addLiteral(segments, literal);
+			segments.add(new Segment(HEX, 1, UNLIMITED));
+			return true;
+		case 'f':
+			// [+-]?\.?\d+\.?\d*(?:[Ee][+-]?\d+)?
+			addLiteral(segments, literal);
+			segments.add(new Segment(SIGN, 0, 1));
+			segments.add(new Segment(DOT, 0, 1));
+			segments.add(new Segment(DIGIT, 1, UNLIMITED));
+			segments.add(new Segment(DOT, 0, 1));
+			segments.add(new Segment(DIGIT, 0, UNLIMITED));
+			// max is index to skip to (after the exponent)
+			Segment opt = new Segment(OPTIONAL, 0, 0);
+			segments.add(opt);
+			segments.add(new Segment(EXP, 1, 1));
+			segments.add(new Segment(SIGN, 0, 1));
+			segments.add(new Segment(DIGIT, 1, UNLIMITED));
+			opt.max = segments.size();
+			return true;
+		case 'c':
+			addLiteral(segments, literal);
+			segments.add(new Segment(ANY, 1, 1));
+			return true;
+		default:
+			return false;
+		}
+	} // end protected static boolean addCode
+	
+	protected static void addLiteral(ArrayList<Segment> segments, StringBuilder literal) {
+		if (literal.length()==0)
+			return;
+		segments.add(new Segment(literal.toString()));
+		literal.setLength(0);
+	}
+	
+	protected static boolean isInClass(int kind, char c) {
+		switch(kind) {
+		case ANY:
+			return true;
+		case NOT_LF:
+			return c!='\n';
+		case NOT_EOL:
+			return c!='\r' && c!='\n';
+		case DIGIT:
+			return c>='0' && c<='9';
+		case HEX:
+			return (c>='0' && c<='9') || (c>='a' && c<='f') || (c>='A' && c<='F');
+		case SPACE:
+			return c==' ' || c=='\t' || c=='\n' || c=='\r' || c=='\f' || c=='\u000B';
+		case SIGN:
+			return c=='+' || c=='-';
+		case DOT:
+			return c=='.';
+		case DIR_SEP:
+			return c=='\\' || c=='/' || c=='|';
+		case EXP:
+			return c=='e' || c=='E';
+		default:
+			return false;
+		}
+	}
+	
+	/** returns TRUE if output matches
+	 *
+	 * @param output - trimmed output
+	 * @return
+	 */
+	public boolean match(String output) {
+		final int seg_count = kinds.length;
+		final int length = output.length();
+		// depth-first search of (segment, position) pairs. each pair is pushed at most once
+		final VisitedSet visited = new VisitedSet();
+		int[] st_seg = new int[64], st_pos = new int[64], st_next = new int[64], st_end = new int[64];
+		// for segments with unlimited length: candidates in [cov_lo, cov_hi] were already tried by an earlier
+		// position in the same run (only 1 position per segment is being tried at a time)
+		final int[] cov_lo = new int[seg_count], cov_hi = new int[seg_count], cov_pos = new int[seg_count], cov_end = new int[seg_count];
+		Arrays.fill(cov_lo, Integer.MAX_VALUE);
+		int top = 0;
+		st_seg[0] = 0;
+		st_pos[0] = 0;
+		st_next[0] = -1;
+		visited.add(0, 0);
+		
+		int seg, pos, next, end, kind, next_seg;
+		boolean unlimited;
+		while (top >= 0) {
+			seg = st_seg[top];
+			if (seg >= seg_count)
+				// matched all segments (output may have more text after)
+				return true;
+			pos = st_pos[top];
+			kind = kinds[seg];
+			next_seg = seg + 1;
+			
+			// find next candidate: position where next segment starts
+			if (kind==LITERAL) {
+				next = -1;
+				if (st_next[top]==-1 && output.startsWith(literals[seg], pos))
+					next = pos + literals[seg].length();
+				st_next[top] = length + 1; // only 1 candidate
+			} else if (kind==OPTIONAL) {
+				if (st_next[top]==-1) {
+					// try with the optional group
+					next = pos;
+					st_next[top] = 0;
+				} else if (st_next[top]==0) {
+					// try without
+					next = pos;
+					next_seg = maxs[seg];
+					st_next[top] = 1;
+				} else {
+					next = -1;
+				}
+			} else {
+				unlimited = maxs[seg]==UNLIMITED;
+				if (st_next[top]==-1) {
+					// first time: find end of the run of characters in this class
+					if (kind==ANY && unlimited) {
+						end = length;
+					} else if (unlimited && pos >= cov_pos[seg] && pos < cov_end[seg]) {
+						// same run as last time
+						end = cov_end[seg];
+					} else {
+						end = pos;
+						final int max_end = unlimited ? length : Math.min(length, pos + maxs[seg]);
+						while (end < max_end && isInClass(kind, output.charAt(end)))
+							end++;
+					}
+					st_end[top] = end;
+					next = pos + mins[seg];
+					if (unlimited) {
+						if (next >= cov_lo[seg] && next <= cov_hi[seg] + 1) {
+							// skip candidates that were already tried
+							next = Math.max(next, cov_hi[seg] + 1);
+						} else {
+							cov_lo[seg] = next;
+							cov_hi[seg] = next - 1;
+						}
+						cov_pos[seg] = pos;
+						cov_end[seg] = end;
+					}
+					st_next[top] = next;
+				}
+				next = st_next[top];
+				end = st_end[top];
+				if (next > end) {
+					next = -1;
+				} else if (next_seg < seg_count && kinds[next_seg]==LITERAL) {
+					// only try positions where the next literal starts
+					next = output.indexOf(literals[next_seg], next);
+					if (next > end)
+						next = -1;
+				}
+				if (next!=-1) {
+					st_next[top] = next + 1;
+					if (unlimited)
+						cov_hi[seg] = next;
+				} else if (unlimited) {
+					cov_hi[seg] = Math.max(cov_hi[seg], end);
+				}
+			}
+			
+			if (next==-1) {
+				// no more candidates, backtrack
+				top--;
+				continue;
+			}
+			if (!visited.add(next_seg, next))
+				// already tried (and failed)
+				continue;
+			
+			top++;
+			if (top==st_seg.length) {
+				st_seg = grow(st_seg);
+				st_pos = grow(st_pos);
+				st_next = grow(st_next);
+				st_end = grow(st_end);
+			}
+			st_seg[top] = next_seg;
+			st_pos[top] = next;
+			st_next[top] = -1;
+		} // end while
+		return false;
+	} // end public boolean match
+	
+	protected static int[] grow(int[] a) {
+		int[] b = new int[a.length*2];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+	
+	/** open-addressing hash set of (segment, position) pairs */
+	protected static class VisitedSet {
+		protected long[] keys;
+		protected int size;
+		
+		protected VisitedSet() {
+			keys = new long[256];
+			Arrays.fill(keys, -1L);
+		}
+		
+		/** returns FALSE if already in set */
+		protected boolean add(int seg, int pos) {
+			final long key = (((long)seg) << 32) | pos;
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i]!=-1L) {
+				if (keys[i]==key)
+					return false;
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			if (++size * 2 > keys.length)
+				rehash();
+			return true;
+		}
+		
+		protected void rehash() {
+			long[] old = keys;
+			keys = new long[old.length*2];
+			Arrays.fill(keys, -1L);
+			final int mask = keys.length - 1;
+			int i;
+			for ( long key : old ) {
+				if (key==-1L)
+					continue;
+				i = hash(key) & mask;
+				while (keys[i]!=-1L)
+					i = (i + 1) & mask;
+				keys[i] = key;
+			}
+		}
+		
+		protected static int hash(long key) {
+			key *= 0x9E3779B97F4A7C15L;
+			return (int) (key ^ (key >>> 32));
+		}
+	
+	} // end protected static class VisitedSet
+
+} // end public class PhptExpectFMatcher
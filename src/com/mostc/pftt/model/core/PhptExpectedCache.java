@@ -0,0 +1,338 @@
+package com.mostc.pftt.model.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.mattficken.io.StringUtil;
+import com.mostc.pftt.host.LocalHost;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.ConsoleManagerUtil;
+import com.mostc.pftt.results.EPrintType;
+import com.mostc.pftt.util.apache.regexp.RECompiler;
+import com.mostc.pftt.util.apache.regexp.REProgram;
+import com.mostc.pftt.util.apache.regexp.RESyntaxException;
+
+/** Remembers compiled EXPECTF and EXPECTREGEX sections, shared by all threads, scenario sets and test runs.
+ *
+ * PhptTestCase only keeps the compiled section in a SoftReference, which is lost under memory pressure and
+ * doesn't cover the remove_warning_and_error variant at all. Compiled sections are cached here by the exact text
+ * that gets compiled: the EXPECTF/EXPECTREGEX section after removing warnings (if that variant is used), after
+ * #prepareExpectF and after PhptOverrideManager#replaceWithRegexOverrides for the host. The same text always
+ * compiles to the same program, so this never changes whether a test passes or fails.
+ *
+ * Lookups don't lock or change anything (entries are in a ConcurrentHashMap), so test threads don't contend on
+ * the cache. Once there are more than #max_entries, the oldest entries are removed.
+ *
+ * The cache is stored in the PFTT cache directory. It's only written again if entries were added.
+ *
+ * @see PhptTestCase#getExpectedCompiled
+ * @see PhptTestCase#getExpectFMatcher
+ * @author Matt Ficken
+ *
+ */
+
+public class PhptExpectedCache {
+	public static final int DEFAULT_MAX_ENTRIES = 50000;
+	protected static final int FILE_MAGIC = 0x50464543;
+	/** change whenever PhptExpectFMatcher#compile or RECompiler changes what they produce */
+	protected static final int FILE_VERSION = 2;
+	protected static final byte TYPE_EXPECTF = 'F';
+	protected static final byte TYPE_REGEX = 'R';
+	protected static final PhptExpectedCache instance = new PhptExpectedCache(DEFAULT_MAX_ENTRIES);
+	/** marks EXPECTF sections that can only be matched as a regular expression, so they aren't compiled again (not saved) */
+	protected static final Object NOT_EXPECTF = new Object();
+	//
+	protected final int max_entries;
+	protected final ConcurrentHashMap<Key,Object> entries;
+	/** keys in the order they were added (oldest first), to evict the oldest entries */
+	protected final ConcurrentLinkedQueue<Key> order;
+	protected final AtomicInteger hit_count, miss_count, evict_count;
+	protected final AtomicLong compile_nanos;
+	/** set when an entry is added. if not set, #save doesn't need to write the file again */
+	protected final AtomicBoolean added;
+	protected boolean loaded;
+	
+	protected PhptExpectedCache(int max_entries) {
+		this.max_entries = max_entries;
+		entries = new ConcurrentHashMap<Key,Object>(1024, 0.75f, 16);
+		order = new ConcurrentLinkedQueue<Key>();
+		hit_count = new AtomicInteger();
+		miss_count = new AtomicInteger();
+		evict_count = new AtomicInteger();
+		compile_nanos = new AtomicLong();
+		added = new AtomicBoolean();
+	}
+	
+	/** type and text of a section. String caches its hash code, so looking up the same String again is cheap */
+	protected static class Key {
+		protected final byte type;
+		protected final String text;
+		
+		protected Key(byte type, String text) {
+			this.type = type;
+			this.text = text;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * text.hashCode() + type;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (o==this)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return k.type == type && k.text.equals(text);
+		}
+		
+	} // end protected static class Key
+	
+	/** returns the cache (which only keeps entries in memory until #open is called) */
+	public static PhptExpectedCache getInstance() {
+		return instance;
+	}
+	
+	/** returns the cache, loading it from the PFTT cache directory the first time
+	 *
+	 * @param cm
+	 * @return
+	 */
+	public static PhptExpectedCache open(ConsoleManager cm) {
+		instance.load(cm);
+		return instance;
+	}
+	
+	protected static File getFile() {
+		LocalHost host = LocalHost.getInstance();
+		if (StringUtil.isEmpty(host.getPfttDir()))
+			// PFTT_HOME not set
+			return null;
+		return new File(host.getPfttCacheDir(), "expected/expected_cache.bin");
+	}
+	
+	/** returns compiled EXPECTF section
+	 *
+	 * @param expectf - EXPECTF section as it is to be compiled
+	 * @return NULL if section can only be matched as a regular expression (@see PhptExpectFMatcher#compile)
+	 */
+	public PhptExpectFMatcher getExpectFMatcher(String expectf) {
+		final Key key = new Key(TYPE_EXPECTF, expectf);
+		Object value = entries.get(key);
+		if (value!=null) {
+			hit_count.incrementAndGet();
+			return value == NOT_EXPECTF ? null : (PhptExpectFMatcher) value;
+		}
+		miss_count.incrementAndGet();
+		final long start = System.nanoTime();
+		PhptExpectFMatcher matcher = PhptExpectFMatcher.compile(expectf);
+		compile_nanos.addAndGet(System.nanoTime() - start);
+		put(key, matcher==null ? NOT_EXPECTF : matcher);
+		return matcher;
+	}
+	
+	/** returns compiled regular expression
+	 *
+	 * @param regex - EXPECTREGEX section or prepared EXPECTF section (@see PhptTestCase#prepareExpectF)
+	 * @return
+	 * @throws RESyntaxException - if regex is invalid (not cached, so each test reports it)
+	 */
+	public REProgram getProgram(String regex) throws RESyntaxException {
+		final Key key = new Key(TYPE_REGEX, regex);
+		Object value = entries.get(key);
+		if (value instanceof REProgram) {
+			hit_count.incrementAndGet();
+			return (REProgram) value;
+		}
+		miss_count.incrementAndGet();
+		final long start = System.nanoTime();
+		REProgram program;
+		try {
+			program = new RECompiler().compile(regex);
+		} finally {
+			compile_nanos.addAndGet(System.nanoTime() - start);
+		}
+		put(key, program);
+		return program;
+	}
+	
+	/** adds entry (unless another thread just added it) and removes the oldest entries if there are too many now */
+	protected void put(Key key, Object value) {
+		if (entries.putIfAbsent(key, value)!=null)
+			return;
+		order.add(key);
+		if (value!=NOT_EXPECTF)
+			added.set(true);
+		evict();
+	}
+	
+	protected void evict() {
+		Key eldest;
+		while (entries.size() > max_entries) {
+			eldest = order.poll();
+			if (eldest==null)
+				break;
+			if (entries.remove(eldest)!=null)
+				evict_count.incrementAndGet();
+		}
+	}
+	
+	public int getHitCount() {
+		return hit_count.get();
+	}
+	
+	public int getMissCount() {
+		return miss_count.get();
+	}
+	
+	public int getEvictionCount() {
+		return evict_count.get();
+	}
+	
+	/** total time spent compiling sections that weren't cached */
+	public long getCompileNanos() {
+		return compile_nanos.get();
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	@Override
+	public String toString() {
+		return "PhptExpectedCache[hits="+getHitCount()+" misses="+getMissCount()+" entries="+size()+" evictions="+getEvictionCount()+" compile_millis="+(getCompileNanos()/1000000L)+"]";
+	}
+	
+	protected synchronized void load(ConsoleManager cm) {
+		if (loaded)
+			return;
+		loaded = true;
+		File file = getFile();
+		if (file==null || !file.exists())
+			return;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+			if (in.readInt()!=FILE_MAGIC || in.readInt()!=FILE_VERSION) {
+				cm.println(EPrintType.CLUE, PhptExpectedCache.class, "Ignoring expected output cache from different PFTT version: "+file);
+				return;
+			}
+			final int count = in.readInt();
+			String text;
+			byte type;
+			Object value;
+			for ( int i=0 ; i < count ; i++ ) {
+				type = in.readByte();
+				text = PhptParseCache.readString(in);
+				if (text==null)
+					throw new IOException("missing section text");
+				if (type==TYPE_EXPECTF) {
+					value = PhptExpectFMatcher.read(in);
+				} else if (type==TYPE_REGEX) {
+					final int parens = in.readInt();
+					char[] instructions = new char[in.readInt()];
+					for ( int j=0 ; j < instructions.length ; j++ )
+						instructions[j] = in.readChar();
+					value = new REProgram(parens, instructions);
+				} else {
+					throw new IOException("invalid entry type: "+type);
+				}
+				// entries compiled by this run are kept instead of the ones from the file.
+				// loaded entries don't need to be saved again
+				Key key = new Key(type, text);
+				if (entries.putIfAbsent(key, value)==null)
+					order.add(key);
+			}
+			evict();
+		} catch ( IOException ex ) {
+			// start over with an empty cache
+			entries.clear();
+			order.clear();
+			cm.addGlobalException(EPrintType.OPERATION_FAILED_CONTINUING, PhptExpectedCache.class, "load", ex, "expected output cache is unreadable, ignoring it", file);
+		} finally {
+			if (in!=null) {
+				try {
+					in.close();
+				} catch ( IOException ex ) {}
+			}
+		}
+	} // end protected synchronized void load
+	
+	/** writes cache to disk (if it was opened and entries were added) */
+	public synchronized void save(ConsoleManager cm) {
+		if (!loaded || !added.get())
+			return;
+		File file = getFile();
+		if (file==null)
+			return;
+		file.getParentFile().mkdirs();
+		// write to temp file then replace so cache file is never left half-written
+		File tmp_file = new File(file.getPath()+".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp_file))));
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			// oldest first, so #load restores the same order
+			ArrayList<Key> keys = new ArrayList<Key>(entries.size());
+			ArrayList<Object> values = new ArrayList<Object>(entries.size());
+			Object value;
+			for ( Key key : order ) {
+				value = entries.get(key);
+				if (value==null || value==NOT_EXPECTF)
+					continue;
+				keys.add(key);
+				values.add(value);
+			}
+			out.writeInt(keys.size());
+			for ( int i=0 ; i < keys.size() ; i++ ) {
+				value = values.get(i);
+				out.writeByte(keys.get(i).type);
+				PhptParseCache.writeString(out, keys.get(i).text);
+				if (value instanceof PhptExpectFMatcher) {
+					((PhptExpectFMatcher)value).write(out);
+				} else {
+					REProgram program = (REProgram) value;
+					char[] instructions = program.getInstructions();
+					if (instructions==null)
+						instructions = new char[0];
+					out.writeInt(program.getMaxParens());
+					out.writeInt(instructions.length);
+					for ( char c : instructions )
+						out.writeChar(c);
+				}
+			}
+			out.close();
+			out = null;
+			file.delete();
+			if (!tmp_file.renameTo(file))
+				throw new IOException("could not rename "+tmp_file+" to "+file);
+			added.set(false);
+		} catch ( IOException ex ) {
+			ConsoleManagerUtil.printStackTrace(PhptExpectedCache.class, cm, ex);
+		} finally {
+			if (out!=null) {
+				try {
+					out.close();
+				} catch ( IOException ex ) {}
+			}
+		}
+	} // end public synchronized void save
+
+} // end public class PhptExpectedCache
@@ -27,6 +27,14 @@ public final class PhptOverrideManager {
 		}
 	}
 	
+	public static boolean hasRegexOverrides(Host host) {
+		if (host.isVistaExact()) {
+			return true;
+		} else {
+			return false;
+		}
+	}
+	
 	public static String replaceWithRegexOverrides(Host host, String str) {
 		if (host.isVistaExact()) {
 			if (vista==null)
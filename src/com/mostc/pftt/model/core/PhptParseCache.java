@@ -0,0 +1,269 @@
+package com.mostc.pftt.model.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.mattficken.io.StringUtil;
+import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.host.LocalHost;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.ConsoleManagerUtil;
+import com.mostc.pftt.results.EPrintType;
+
+/** Remembers the sections parsed from each PHPT file of a test-pack so PHPT files that haven't changed
+ * since the last time the test-pack was loaded don't need to be read, charset-detected and parsed again.
+ *
+ * Entries are keyed by test name and are only used if the file's size and last modified time are unchanged.
+ *
+ * Tests that read other files (EXPECT_EXTERNAL, etc...) and tests loaded with keep_all are not cached.
+ *
+ * @see PhptSourceTestPack#read
+ * @see PhptTestCase#writeParsed
+ * @author Matt Ficken
+ *
+ */
+
+public class PhptParseCache {
+	protected static final int FILE_MAGIC = 0x50465043;
+	/** change whenever PhptTestCase#load or EPhptSection#prepareSection changes what they produce */
+	protected static final int FILE_VERSION = 1;
+	protected final File file;
+	protected final String test_pack_dir;
+	protected final ConcurrentHashMap<String,Entry> entries;
+	protected final AtomicInteger hit_count, miss_count;
+	protected volatile boolean dirty;
+	
+	protected PhptParseCache(File file, String test_pack_dir) {
+		this.file = file;
+		this.test_pack_dir = test_pack_dir;
+		entries = new ConcurrentHashMap<String,Entry>(4096);
+		hit_count = new AtomicInteger();
+		miss_count = new AtomicInteger();
+	}
+	
+	protected static class Entry {
+		protected final long last_modified, length;
+		protected final byte[] data;
+		protected volatile boolean used;
+		
+		protected Entry(long last_modified, long length, byte[] data) {
+			this.last_modified = last_modified;
+			this.length = length;
+			this.data = data;
+		}
+	}
+	
+	/** opens cache for test-pack
+	 *
+	 * @param cm
+	 * @param host - host the test-pack is read from
+	 * @param test_pack
+	 * @return NULL if cache can't be used
+	 */
+	public static PhptParseCache open(ConsoleManager cm, AHost host, PhptSourceTestPack test_pack) {
+		LocalHost local_host = LocalHost.getInstance();
+		if (host==null || host.isRemote() || StringUtil.isEmpty(local_host.getPfttDir()))
+			// file mtime/size are only checked on local file system
+			return null;
+		final String test_pack_dir = test_pack.getSourceDirectory();
+		PhptParseCache cache = new PhptParseCache(new File(local_host.getPfttCacheDir(), "phpt/"+md5(test_pack_dir)+".bin"), test_pack_dir);
+		cache.load(cm);
+		return cache;
+	}
+	
+	/** loads test from cache if its PHPT file is unchanged, otherwise loads it with PhptTestCase#load and caches it
+	 *
+	 * @param host
+	 * @param test_pack
+	 * @param test_name
+	 * @param parent
+	 * @return
+	 * @throws IOException
+	 */
+	public PhptTestCase load(AHost host, PhptSourceTestPack test_pack, String test_name, PhptTestCase parent) throws IOException {
+		final File phpt_file = new File(test_pack_dir, test_name);
+		final long last_modified = phpt_file.lastModified();
+		final long length = phpt_file.length();
+		final String key = PhptTestCase.normalizeTestCaseName(test_name);
+		
+		Entry e = entries.get(key);
+		if (e!=null && e.last_modified==last_modified && e.length==length) {
+			try {
+				PhptTestCase test_case = PhptTestCase.readParsed(new DataInputStream(new ByteArrayInputStream(e.data)), test_pack, test_name, parent);
+				e.used = true;
+				hit_count.incrementAndGet();
+				return test_case;
+			} catch ( IOException ex ) {
+				// fall through and parse the PHPT file
+			}
+		}
+		miss_count.incrementAndGet();
+		
+		PhptTestCase test_case = PhptTestCase.load(host, test_pack, false, test_name, null, parent);
+		if (last_modified!=0L && test_case.isParseCacheable()) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+			DataOutputStream out = new DataOutputStream(bytes);
+			test_case.writeParsed(out);
+			out.close();
+			e = new Entry(last_modified, length, bytes.toByteArray());
+			e.used = true;
+			entries.put(key, e);
+			dirty = true;
+		}
+		return test_case;
+	}
+	
+	public int getHitCount() {
+		return hit_count.get();
+	}
+	
+	public int getMissCount() {
+		return miss_count.get();
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	@Override
+	public String toString() {
+		return "PhptParseCache[hits="+getHitCount()+" misses="+getMissCount()+" entries="+size()+"]";
+	}
+	
+	protected void load(ConsoleManager cm) {
+		if (!file.exists())
+			return;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+			if (in.readInt()!=FILE_MAGIC || in.readInt()!=FILE_VERSION || !test_pack_dir.equals(in.readUTF())) {
+				cm.println(EPrintType.CLUE, PhptParseCache.class, "Ignoring PHPT parse cache from different PFTT version: "+file);
+				return;
+			}
+			final int count = in.readInt();
+			String key;
+			long last_modified, length;
+			byte[] data;
+			for ( int i=0 ; i < count ; i++ ) {
+				key = in.readUTF();
+				last_modified = in.readLong();
+				length = in.readLong();
+				data = new byte[in.readInt()];
+				in.readFully(data);
+				entries.put(key, new Entry(last_modified, length, data));
+			}
+		} catch ( IOException ex ) {
+			// start over with an empty cache
+			entries.clear();
+			cm.addGlobalException(EPrintType.OPERATION_FAILED_CONTINUING, PhptParseCache.class, "load", ex, "PHPT parse cache is unreadable, ignoring it", file);
+		} finally {
+			if (in!=null) {
+				try {
+					in.close();
+				} catch ( IOException ex ) {}
+			}
+		}
+	} // end protected void load
+	
+	/** writes cache to disk (if it changed). removes entries for PHPT files that no longer exist */
+	public synchronized void save(ConsoleManager cm) {
+		Iterator<Map.Entry<String,Entry>> it = entries.entrySet().iterator();
+		Map.Entry<String,Entry> e;
+		while (it.hasNext()) {
+			e = it.next();
+			if (!e.getValue().used && !new File(test_pack_dir, e.getKey()).exists()) {
+				it.remove();
+				dirty = true;
+			}
+		}
+		if (!dirty)
+			return;
+		file.getParentFile().mkdirs();
+		// write to temp file then replace so cache file is never left half-written
+		File tmp_file = new File(file.getPath()+".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp_file))));
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			out.writeUTF(test_pack_dir);
+			// snapshot: entries may still be added while saving
+			ArrayList<Map.Entry<String,Entry>> snapshot = new ArrayList<Map.Entry<String,Entry>>(entries.entrySet());
+			out.writeInt(snapshot.size());
+			for ( Map.Entry<String,Entry> s : snapshot ) {
+				out.writeUTF(s.getKey());
+				out.writeLong(s.getValue().last_modified);
+				out.writeLong(s.getValue().length);
+				out.writeInt(s.getValue().data.length);
+				out.write(s.getValue().data);
+			}
+			out.close();
+			out = null;
+			file.delete();
+			if (!tmp_file.renameTo(file))
+				throw new IOException("could not rename "+tmp_file+" to "+file);
+			dirty = false;
+		} catch ( IOException ex ) {
+			ConsoleManagerUtil.printStackTrace(PhptParseCache.class, cm, ex);
+		} finally {
+			if (out!=null) {
+				try {
+					out.close();
+				} catch ( IOException ex ) {}
+			}
+		}
+	} // end public synchronized void save
+	
+	/** writes a string of any length (DataOutputStream#writeUTF is limited to 64KB) or NULL */
+	static void writeString(DataOutputStream out, String str) throws IOException {
+		if (str==null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = str.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	static String readString(DataInputStream in) throws IOException {
+		final int len = in.readInt();
+		if (len==-1)
+			return null;
+		byte[] bytes = new byte[len];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+	
+	protected static String md5(String str) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			byte[] digest = md.digest(str.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder(digest.length*2);
+			for ( byte b : digest ) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch ( Exception ex ) {
+			// MD5 and UTF-8 are always supported
+			throw new IllegalStateException(ex);
+		}
+	}
+
+} // end public class PhptParseCache
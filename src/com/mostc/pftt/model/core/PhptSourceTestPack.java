@@ -9,8 +9,13 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.github.mattficken.io.StringUtil;
 import com.mostc.pftt.host.AHost;
@@ -40,16 +45,17 @@ public class PhptSourceTestPack extends SourceTestPack<PhptActiveTestPack, PhptT
 	protected File test_pack_file;
 	protected AHost host;
 	protected FileSystemScenario fs;
-	protected final LinkedList<File> non_phpt_files;
+	protected final LinkedHashSet<File> non_phpt_files;
 	protected final HashMap<String,PhptTestCase> test_cases_by_name;
 	protected SoftReference<ArrayList<PhptTestCase>> _ref_test_cases;
+	protected PhptParseCache parse_cache;
 	
 	public PhptSourceTestPack(String test_pack) {
 		this.test_pack_file = new File(test_pack);
 		this.test_pack = this.test_pack_file.getAbsolutePath();
 		
 		test_cases_by_name = new HashMap<String,PhptTestCase>();
-		non_phpt_files = new LinkedList<File>();
+		non_phpt_files = new LinkedHashSet<File>();
 	}
 	
 	@Override
@@ -266,6 +272,7 @@ public class PhptSourceTestPack extends SourceTestPack<PhptActiveTestPack, PhptT
 		}
 		//
 		config.processPHPTTestPack(this, twriter, build);
+		openParseCache(cm);
 		// normalize name fragments
 		if (names.size()>0){
 			ArrayList<String> normal_names = new ArrayList<String>(names.size());
@@ -291,7 +298,7 @@ public class PhptSourceTestPack extends SourceTestPack<PhptActiveTestPack, PhptT
 				if (file.exists()) {
 					// String is exact name of test
 					
-					test_case = PhptTestCase.load(host, this, name, twriter);
+					test_case = load_test_case(name, twriter, null);
 					
 					add_test_case(config, test_case, test_cases, names, cm, twriter, build, null, redirect_targets);
 					
@@ -326,6 +333,7 @@ public class PhptSourceTestPack extends SourceTestPack<PhptActiveTestPack, PhptT
 		_test_cases.addAll(test_cases);
 		_ref_test_cases = new SoftReference<ArrayList<PhptTestCase>>(_test_cases);
 		//
+		saveParseCache(cm);
 	} // end public void read
 
 	@Override
@@ -345,6 +353,7 @@ public class PhptSourceTestPack extends SourceTestPack<PhptActiveTestPack, PhptT
 		
 		test_pack_file = new File(test_pack);
 		test_pack = test_pack_file.getAbsolutePath(); // normalize path
+		openParseCache(cm);
 		add_test_files(config, test_pack_file.listFiles(), test_cases, null, cm, twriter, build, null, new LinkedList<PhptTestCase>());
 		
 		//
@@ -352,9 +361,68 @@ public class PhptSourceTestPack extends SourceTestPack<PhptActiveTestPack, PhptT
 		_test_cases = new ArrayList<PhptTestCase>(test_cases.size());
 		_test_cases.addAll(test_cases);
 		_ref_test_cases = new SoftReference<ArrayList<PhptTestCase>>(_test_cases);
+		//
+		saveParseCache(cm);
+	}
+	
+	protected void openParseCache(ConsoleManager cm) {
+		if (parse_cache==null)
+			parse_cache = PhptParseCache.open(cm, host, this);
+	}
+	
+	protected void saveParseCache(ConsoleManager cm) {
+		if (parse_cache==null)
+			return;
+		cm.println(EPrintType.CLUE, getClass(), "Parse Cache: "+parse_cache);
+		parse_cache.save(cm);
+	}
+	
+	/** loads PHPT test, from PhptParseCache if the PHPT file hasn't changed
+	 * 
+	 * @param test_name
+	 * @param twriter
+	 * @param redirect_parent
+	 * @return
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 */
+	protected PhptTestCase load_test_case(String test_name, ITestResultReceiver twriter, PhptTestCase redirect_parent) throws FileNotFoundException, IOException {
+		final PhptParseCache parse_cache = this.parse_cache;
+		if (parse_cache==null)
+			return PhptTestCase.load(host, this, false, test_name, twriter, redirect_parent);
+		else
+			return parse_cache.load(host, this, test_name, redirect_parent);
 	}
 	
 	private void add_test_files(Config config, File[] files, List<PhptTestCase> test_files, List<String> names, ConsoleManager cm, ITestResultReceiver twriter, PhpBuild build, PhptTestCase redirect_parent, List<PhptTestCase> redirect_targets) throws FileNotFoundException, IOException, Exception {
+		// finding the PHPT files is fast. reading and parsing them is what takes time, so do that in parallel
+		ArrayList<String> test_names = new ArrayList<String>();
+		find_test_files(files, names, test_names);
+		if (test_names.isEmpty())
+			return;
+		
+		PhptLoader loader = new PhptLoader(test_names, twriter, redirect_parent);
+		try {
+			// add tests in the same order as they were found, each one as soon as its loaded
+			for ( int i=0 ; i < test_names.size() ; i++ ) {
+				PhptTestCase test_case;
+				try {
+					test_case = loader.get(i);
+				} catch ( Exception ex ) {
+					ConsoleManagerUtil.printStackTrace(PhptSourceTestPack.class, cm, ex);
+					continue;
+				}
+				add_test_case(config, test_case, test_files, names, cm, twriter, build, redirect_parent, redirect_targets);
+				
+				if (cm.getMaxTestReadCount() > 0 && test_cases_by_name.size() >= cm.getMaxTestReadCount())
+					break;
+			}
+		} finally {
+			loader.cancel();
+		}
+	}
+	
+	private void find_test_files(File[] files, List<String> names, List<String> test_names) {
 		if (files==null)
 			return;
 		main_loop:
@@ -377,13 +445,7 @@ public class PhptSourceTestPack extends SourceTestPack<PhptActiveTestPack, PhptT
 				if (test_name.startsWith("/") || test_name.startsWith("\\"))
 					test_name = test_name.substring(1);
 				
-				try {
-					PhptTestCase test_case = PhptTestCase.load(host, this, false, test_name, twriter, redirect_parent);
-				
-					add_test_case(config, test_case, test_files, names, cm, twriter, build, redirect_parent, redirect_targets);
-				} catch ( Exception ex ) {
-					ConsoleManagerUtil.printStackTrace(PhptSourceTestPack.class, cm, ex);
-				}
+				test_names.add(test_name);
 			} else if (f.isFile()) {
 				String n = f.getName().toLowerCase();
 				if (!(n.endsWith(".sh") || n.endsWith(".php") || n.endsWith(".diff") || n.endsWith(".out") || n.endsWith(".exp") || n.endsWith(".cmd") || n.endsWith(".stdin"))) {
@@ -391,14 +453,78 @@ public class PhptSourceTestPack extends SourceTestPack<PhptActiveTestPack, PhptT
 					// 
 					// test files we need are usually .inc but may also be .db... may be others (especially in future)
 					// have to copy them all just in case they are needed
-					if (!non_phpt_files.contains(f))
-						non_phpt_files.add(f);
+					non_phpt_files.add(f);
 				}
 			}
-			add_test_files(config, f.listFiles(), test_files, names, cm, twriter, build, redirect_parent, redirect_targets);
+			find_test_files(f.listFiles(), names, test_names);
 		}
 	}
 	
+	/** loads PHPT tests on several threads. tests can be used as soon as they're loaded (in order) while
+	 * the rest are still being loaded.
+	 *
+	 */
+	protected class PhptLoader {
+		protected final ArrayList<FutureTask<PhptTestCase>> tasks;
+		protected final AtomicInteger next;
+		
+		protected PhptLoader(List<String> test_names, final ITestResultReceiver twriter, final PhptTestCase redirect_parent) {
+			tasks = new ArrayList<FutureTask<PhptTestCase>>(test_names.size());
+			for ( final String test_name : test_names ) {
+				tasks.add(new FutureTask<PhptTestCase>(new Callable<PhptTestCase>() {
+						@Override
+						public PhptTestCase call() throws Exception {
+							return load_test_case(test_name, twriter, redirect_parent);
+						}
+					}));
+			}
+			next = new AtomicInteger();
+			
+			// calling thread loads tests too (@see #get)
+			final int thread_count = Math.min(Runtime.getRuntime().availableProcessors(), tasks.size()) - 1;
+			for ( int i=0 ; i < thread_count ; i++ ) {
+				Thread t = new Thread("PhptLoader"+i) {
+						@Override
+						public void run() {
+							int i;
+							while ((i = next.getAndIncrement()) < tasks.size())
+								tasks.get(i).run();
+						}
+					};
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+		
+		/** returns the i-th test, waiting for it to be loaded if needed
+		 * 
+		 * @param i
+		 * @return
+		 * @throws Exception
+		 */
+		protected PhptTestCase get(int i) throws Exception {
+			FutureTask<PhptTestCase> task = tasks.get(i);
+			if (!task.isDone())
+				// load it here if no loader thread has started it (if one has, #run does nothing)
+				task.run();
+			try {
+				return task.get();
+			} catch ( ExecutionException ex ) {
+				if (ex.getCause() instanceof Exception)
+					throw (Exception) ex.getCause();
+				throw ex;
+			}
+		}
+		
+		/** stops loading tests that haven't been loaded yet */
+		protected void cancel() {
+			next.set(tasks.size());
+			for ( FutureTask<PhptTestCase> task : tasks )
+				task.cancel(false);
+		}
+		
+	} // end protected class PhptLoader
+	
 	private void add_test_case(Config config, PhptTestCase test_case, List<PhptTestCase> test_cases, List<String> names, ConsoleManager cm, ITestResultReceiver twriter, PhpBuild build, PhptTestCase redirect_parent, List<PhptTestCase> redirect_targets) throws FileNotFoundException, IOException, Exception {
 		if (cm.getMaxTestReadCount() > 0 && test_cases_by_name.size() >= cm.getMaxTestReadCount())
 			return;
@@ -421,7 +547,7 @@ public class PhptSourceTestPack extends SourceTestPack<PhptActiveTestPack, PhptT
 					} else {
 						// test refers to a specific test, load it
 						try {
-							test_case = PhptTestCase.load(host, this, false, target_test_name, twriter, redirect_parent);
+							test_case = load_test_case(target_test_name, twriter, redirect_parent);
 						} catch ( Exception ex ) {
 							ConsoleManagerUtil.printStackTrace(PhptSourceTestPack.class, cm, ex);
 							continue; // TODO
@@ -499,8 +625,12 @@ public class PhptSourceTestPack extends SourceTestPack<PhptActiveTestPack, PhptT
 			// TODO temp
 			// ((AzureKuduVFSScenario)fs).putZip(remote_test_pack_dir, new File("c:\\php-sdk\\php-test-pack-5.4.38.zip")); 
 			
-		} else if (!this.host.isRemote() || this.host.equals(host)) {
-			// installing from local host to remote host OR from remote|local host to itself
+		} else if (!this.host.isRemote()) {
+			// installing from local host to remote|local host
+			// only sends files that changed since last install to remote_test_pack_dir (if any)
+			host.uploadSync(cm, getClass(), test_pack, this.host, remote_test_pack_dir);
+		} else if (this.host.equals(host)) {
+			// installing from remote host to itself
 			host.uploadCompressWith7Zip(cm, getClass(), test_pack, this.host, remote_test_pack_dir);
 		} else if (!host.isRemote()) {
 			// installing from remote host to local host
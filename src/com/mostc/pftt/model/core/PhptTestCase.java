@@ -1,5 +1,7 @@
 package com.mostc.pftt.model.core;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -34,7 +36,6 @@ import com.mostc.pftt.runner.PhptTestPreparer.PreparedPhptTestCase;
 import com.mostc.pftt.scenario.FileSystemScenario;
 import com.mostc.pftt.scenario.ScenarioSetSetup;
 import com.mostc.pftt.util.apache.regexp.RE;
-import com.mostc.pftt.util.apache.regexp.RECompiler;
 import com.mostc.pftt.util.apache.regexp.REDebugCompiler;
 import com.mostc.pftt.util.apache.regexp.REProgram;
 
@@ -128,6 +129,7 @@ public class PhptTestCase extends TestCase {
 	private WeakReference<PhpIni> ini;
 	private WeakReference<String> ini_pwd, ini_tmp, contents;
 	private SoftReference<RE> expected_re;
+	private SoftReference<PhptExpectFMatcher> expectf_matcher;
 	private PhptSourceTestPack test_pack;
 	private CharsetICU common_charset;
 	private CharsetEncoder ce;
@@ -348,6 +350,66 @@ public class PhptTestCase extends TestCase {
 	} // end public static PhptTestCase load
 	static final Pattern RE_EOF = Pattern.compile("[\r\n]+\\\\$");
 	
+	/** returns FALSE if #load read anything other than the PHPT file itself (so the PHPT file
+	 * alone can't tell if the test changed)
+	 * 
+	 * @see PhptParseCache
+	 * @return
+	 */
+	boolean isParseCacheable() {
+		return !containsAnySection(EPhptSection.EXPECTREGEX_EXTERNAL, EPhptSection.EXPECT_EXTERNAL, EPhptSection.EXPECTF_EXTERNAL, EPhptSection.FILE_EXTERNAL);
+	}
+	
+	/** writes what #load parsed from the PHPT file
+	 * 
+	 * @see PhptParseCache
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeParsed(DataOutputStream out) throws IOException {
+		PhptParseCache.writeString(out, bork_info);
+		PhptParseCache.writeString(out, unsupported_info);
+		PhptParseCache.writeString(out, common_charset==null?null:common_charset.name());
+		out.writeInt(section_text.size());
+		for ( EPhptSection section : section_text.keySet() ) {
+			out.writeUTF(section.name());
+			PhptParseCache.writeString(out, section_text.get(section));
+		}
+	}
+	
+	/** creates test case from what #writeParsed wrote, instead of loading and parsing the PHPT file again
+	 * 
+	 * @see PhptParseCache
+	 * @param in
+	 * @param test_pack
+	 * @param test_name
+	 * @param parent
+	 * @return
+	 * @throws IOException
+	 */
+	static PhptTestCase readParsed(DataInputStream in, PhptSourceTestPack test_pack, String test_name, PhptTestCase parent) throws IOException {
+		PhptTestCase test_case = new PhptTestCase(test_pack, test_name);
+		test_case.parent = parent;
+		test_case.bork_info = PhptParseCache.readString(in);
+		test_case.unsupported_info = PhptParseCache.readString(in);
+		String charset_name = PhptParseCache.readString(in);
+		if (charset_name!=null) {
+			test_case.common_charset = (CharsetICU) CharsetICU.forNameICU(charset_name);
+			test_case.ce = test_case.common_charset.newEncoder();
+		}
+		final int count = in.readInt();
+		for ( int i=0 ; i < count ; i++ ) {
+			EPhptSection section;
+			try {
+				section = EPhptSection.valueOf(in.readUTF());
+			} catch ( IllegalArgumentException ex ) {
+				throw new IOException(ex);
+			}
+			test_case.section_text.put(section, PhptParseCache.readString(in));
+		}
+		return test_case;
+	}
+	
 	public PhptTestCase(PhptSourceTestPack test_pack, String name) {
 		this.test_pack = test_pack;
 		this.name = normalizeTestCaseName(name);
@@ -532,10 +594,12 @@ public class PhptTestCase extends TestCase {
 		}
 		
 		try {
-			REProgram wanted_re_prog = new RECompiler().compile(expected_str);
+			// @see PhptExpectedCache - shared with other threads and test runs and covers both variants
+			REProgram wanted_re_prog = PhptExpectedCache.getInstance().getProgram(expected_str);
 			
 			expected_re = new RE(wanted_re_prog);
-			this.expected_re = new SoftReference<RE>(expected_re);
+			if (!remove_warning_and_error)
+				this.expected_re = new SoftReference<RE>(expected_re);
 			return expected_re;
 		} catch ( Throwable ex ) {
 			// log exception
@@ -544,11 +608,57 @@ public class PhptTestCase extends TestCase {
 			
 			twriter.addTestException(host, scenario_set, this, ex, expected_str, oexpected_str);
 			expected_re = new RE(); // marker to avoid trying again
-			this.expected_re = new SoftReference<RE>(expected_re);
+			if (!remove_warning_and_error)
+				this.expected_re = new SoftReference<RE>(expected_re);
 			return expected_re;
 		}
 	} // end public RE getExpectedCompiled
 
+	/** returns TRUE if output matches the EXPECTF or EXPECTREGEX section.
+	 * 
+	 * EXPECTF is matched only with PhptExpectFMatcher. EXPECTREGEX (and EXPECTF that uses %r or has regex overrides
+	 * for the host) is matched with #getExpectedCompiled
+	 * 
+	 * @param host
+	 * @param scenario_set
+	 * @param twriter
+	 * @param remove_warning_and_error
+	 * @param output - trimmed output of test
+	 * @return
+	 */
+	public boolean matchesExpected(AHost host, ScenarioSetSetup scenario_set, ITestResultReceiver twriter, boolean remove_warning_and_error, String output) {
+		if (!containsSection(EPhptSection.EXPECTREGEX) && containsSection(EPhptSection.EXPECTF)) {
+			PhptExpectFMatcher matcher = getExpectFMatcher(host, remove_warning_and_error);
+			if (matcher!=null)
+				return matcher.match(output);
+		}
+		return getExpectedCompiled(host, scenario_set, twriter, remove_warning_and_error).match(output);
+	}
+	
+	/** returns the compiled EXPECTF section or null if it must be matched as a regular expression
+	 * 
+	 * @param host
+	 * @param remove_warning_and_error
+	 * @return
+	 */
+	protected PhptExpectFMatcher getExpectFMatcher(AHost host, boolean remove_warning_and_error) {
+		PhptExpectFMatcher matcher;
+		if (!remove_warning_and_error && this.expectf_matcher!=null) {
+			matcher = this.expectf_matcher.get();
+			if (matcher!=null)
+				return matcher;
+		}
+		if (PhptOverrideManager.hasRegexOverrides(host))
+			// host has regex overrides, which only apply to the regular expression
+			return null;
+		String expected_str = remove_warning_and_error ? removeWarningAndFatalError(get(EPhptSection.EXPECTF)) : getTrim(EPhptSection.EXPECTF);
+		// @see PhptExpectedCache - shared with other threads and test runs and covers both variants
+		matcher = PhptExpectedCache.getInstance().getExpectFMatcher(expected_str);
+		if (matcher!=null && !remove_warning_and_error)
+			this.expectf_matcher = new SoftReference<PhptExpectFMatcher>(matcher);
+		return matcher;
+	}
+	
 	/** tries matching actual output String against EXPECTF or EXPECTREGEX section and
 	 * writes debugging information and output to the given PrintWriters.
 	 * 
@@ -981,6 +1091,15 @@ public class PhptTestCase extends TestCase {
 		return env;
 	}
 	
+	/** returns TRUE if this test has its own ENV vars (from its ENV section or from a test that redirected to this one)
+	 * 
+	 * @see #getENV
+	 * @return
+	 */
+	public boolean hasENV() {
+		return parent!=null || containsSection(EPhptSection.ENV);
+	}
+	
 	/** if a test is a redirect, it may provide some environment variables to configure the test(s) its targetting/redirect to.
 	 * 
 	 * this method reads those environment variables. they must override any default, test or scenario provided environment variables from the target tests.
@@ -0,0 +1,187 @@
+package com.mostc.pftt.model.performance;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import com.mostc.pftt.scenario.FileSystemScenario;
+
+/** Describes a load test of a PHP application: the mix of HTTP requests to send, how many clients send them
+ * at the same time and for how long.
+ *
+ * Application test-packs can provide one (@see ApplicationSourceTestPack#createHttpLoadTest). If none are provided,
+ * a Hello World test is run (@see #createHelloWorld).
+ *
+ * @see com.mostc.pftt.runner.HttpLoadGenerator
+ * @author Matt Ficken
+ *
+ */
+
+public class HttpLoadTest extends PerformanceTest {
+	public static final int DEFAULT_VIRTUAL_CLIENTS = 8;
+	public static final int DEFAULT_WARMUP_SECONDS = 10;
+	public static final int DEFAULT_RUN_SECONDS = 60;
+	protected final String name, docroot;
+	protected final ArrayList<Request> requests;
+	/** requests[i] is picked if a random number is less than cumulative_weights[i] */
+	protected int[] cumulative_weights;
+	protected int total_weight;
+	protected int virtual_clients = DEFAULT_VIRTUAL_CLIENTS, warmup_seconds = DEFAULT_WARMUP_SECONDS, run_seconds = DEFAULT_RUN_SECONDS;
+
+	/** 1 request of the mix. requests with a higher weight are sent more often. */
+	public static class Request {
+		/** path relative to docroot, may include a query string */
+		public final String path;
+		/** if not NULL, sent as form data with a POST request */
+		@Nullable
+		public final String post_body;
+		public final int weight;
+
+		public Request(String path, @Nullable String post_body, int weight) {
+			this.path = path.startsWith("/") ? path : "/" + path;
+			this.post_body = post_body;
+			this.weight = weight;
+		}
+
+		@Override
+		public String toString() {
+			return post_body == null ? "GET "+path : "POST "+path;
+		}
+
+	} // end public static class Request
+
+	/**
+	 *
+	 * @param name - name of test, used to compare results of different builds
+	 * @param docroot - directory web server serves the requests from
+	 */
+	public HttpLoadTest(String name, String docroot) {
+		this.name = name;
+		this.docroot = docroot;
+		requests = new ArrayList<Request>(8);
+	}
+
+	public HttpLoadTest addRequest(String path, int weight) {
+		return addRequest(new Request(path, null, weight));
+	}
+
+	public HttpLoadTest addPostRequest(String path, String post_body, int weight) {
+		return addRequest(new Request(path, post_body, weight));
+	}
+
+	public synchronized HttpLoadTest addRequest(Request request) {
+		if (request.weight < 1)
+			throw new IllegalArgumentException("weight must be at least 1: "+request);
+		requests.add(request);
+		cumulative_weights = null;
+		return this;
+	}
+
+	/** picks the next request to send, each request is picked in proportion to its weight
+	 *
+	 * @param random - each load-generating thread should have its own
+	 * @return
+	 */
+	public Request nextRequest(Random random) {
+		int[] cw = cumulative_weights;
+		if (cw==null)
+			cw = computeWeights();
+		final int r = random.nextInt(total_weight);
+		int i = Arrays.binarySearch(cw, r);
+		// exact match => r is the first value of the next request
+		i = i < 0 ? -i - 1 : i + 1;
+		return requests.get(i);
+	}
+
+	protected synchronized int[] computeWeights() {
+		if (cumulative_weights!=null)
+			return cumulative_weights;
+		if (requests.isEmpty())
+			throw new IllegalStateException("no requests added to load test: "+name);
+		int[] cw = new int[requests.size()];
+		int total = 0;
+		for ( int i=0 ; i < cw.length ; i++ ) {
+			total += requests.get(i).weight;
+			cw[i] = total;
+		}
+		total_weight = total;
+		return cumulative_weights = cw;
+	}
+
+	public List<Request> getRequests() {
+		return Collections.unmodifiableList(requests);
+	}
+
+	public boolean hasRequests() {
+		return !requests.isEmpty();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	public String getDocroot() {
+		return docroot;
+	}
+
+	public int getVirtualClients() {
+		return virtual_clients;
+	}
+
+	/** number of threads sending requests at the same time (each waits for its response before sending the next request) */
+	public HttpLoadTest setVirtualClients(int virtual_clients) {
+		this.virtual_clients = Math.max(1, virtual_clients);
+		return this;
+	}
+
+	public int getWarmupSeconds() {
+		return warmup_seconds;
+	}
+
+	/** requests sent during warmup aren't counted (lets opcode caches, etc... fill up first) */
+	public HttpLoadTest setWarmupSeconds(int warmup_seconds) {
+		this.warmup_seconds = Math.max(0, warmup_seconds);
+		return this;
+	}
+
+	public int getRunSeconds() {
+		return run_seconds;
+	}
+
+	public HttpLoadTest setRunSeconds(int run_seconds) {
+		this.run_seconds = Math.max(1, run_seconds);
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+	/** creates a load test of a Hello World PHP script in a new temporary docroot
+	 *
+	 * this needs nothing but the build, so it can always be run locally (ex: with BuiltinWebServerManager)
+	 *
+	 * @param fs
+	 * @return
+	 * @throws IllegalStateException
+	 * @throws IOException
+	 */
+	public static HttpLoadTest createHelloWorld(FileSystemScenario fs) throws IllegalStateException, IOException {
+		final String docroot = fs.fixPath(fs.mktempname(HttpLoadTest.class));
+		fs.createDirs(docroot);
+		fs.saveTextFile(fs.joinIntoOnePath(docroot, "hello.php"), "<?php echo \"Hello World\"; ?>");
+		fs.saveTextFile(fs.joinIntoOnePath(docroot, "phpinfo.php"), "<?php phpinfo(); ?>");
+
+		return new HttpLoadTest("HelloWorld", docroot)
+				.addRequest("/hello.php", 9)
+				.addRequest("/phpinfo.php", 1);
+	}
+
+} // end public class HttpLoadTest
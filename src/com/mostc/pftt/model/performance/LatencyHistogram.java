@@ -0,0 +1,193 @@
+package com.mostc.pftt.model.performance;
+
+import java.util.Arrays;
+
+import com.github.mattficken.io.StringUtil;
+
+/** Counts response times (in microseconds) so percentiles (p50, p99, p999) can be found without storing every time.
+ *
+ * Times under 128 microseconds each have their own bucket. Above that, each power of 2 is split into 64 buckets, so
+ * a percentile is never off by more than about 1.6% no matter how long the time is. All times fit in a fixed
+ * number of buckets, so recording is just an array increment.
+ *
+ * Not thread-safe: each load-generating thread records to its own histogram, then they're combined with #add.
+ *
+ * @see HttpLoadTest
+ * @author Matt Ficken
+ *
+ */
+
+public class LatencyHistogram {
+	protected static final int SUB_BUCKET_BITS = 6;
+	protected static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	/** times below this have their own bucket */
+	protected static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+	/** longest time that can be recorded (~12 days), longer times are counted as this */
+	public static final long MAX_MICROS = (1L << 40) - 1;
+	protected static final int BUCKET_COUNT = indexOf(MAX_MICROS) + 1;
+	protected final long[] counts;
+	protected long count, total_micros, min_micros = Long.MAX_VALUE, max_micros;
+
+	public LatencyHistogram() {
+		counts = new long[BUCKET_COUNT];
+	}
+
+	protected static int indexOf(long micros) {
+		if (micros < LINEAR_LIMIT)
+			return (int) micros;
+		// position of highest 1 bit, >= SUB_BUCKET_BITS+1
+		final int msb = 63 - Long.numberOfLeadingZeros(micros);
+		final int shift = msb - SUB_BUCKET_BITS;
+		final int sub = (int) (micros >>> shift) - SUB_BUCKET_COUNT;
+		return LINEAR_LIMIT + ((shift - 1) << SUB_BUCKET_BITS) + sub;
+	}
+
+	/** returns the highest time counted in bucket i */
+	protected static long highestOf(int i) {
+		if (i < LINEAR_LIMIT)
+			return i;
+		final int k = i - LINEAR_LIMIT;
+		final int shift = (k >>> SUB_BUCKET_BITS) + 1;
+		final long sub = SUB_BUCKET_COUNT + (k & (SUB_BUCKET_COUNT - 1));
+		return ((sub + 1) << shift) - 1;
+	}
+
+	public void record(long micros) {
+		if (micros < 0)
+			micros = 0;
+		else if (micros > MAX_MICROS)
+			micros = MAX_MICROS;
+		counts[indexOf(micros)]++;
+		count++;
+		total_micros += micros;
+		if (micros < min_micros)
+			min_micros = micros;
+		if (micros > max_micros)
+			max_micros = micros;
+	}
+
+	/** adds all times counted by other to this histogram
+	 *
+	 * @param other
+	 */
+	public void add(LatencyHistogram other) {
+		for ( int i=0 ; i < BUCKET_COUNT ; i++ )
+			counts[i] += other.counts[i];
+		count += other.count;
+		total_micros += other.total_micros;
+		if (other.min_micros < min_micros)
+			min_micros = other.min_micros;
+		if (other.max_micros > max_micros)
+			max_micros = other.max_micros;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMinMicros() {
+		return count == 0 ? 0 : min_micros;
+	}
+
+	public long getMaxMicros() {
+		return max_micros;
+	}
+
+	public double getMeanMicros() {
+		return count == 0 ? 0.0d : ((double)total_micros) / count;
+	}
+
+	/** returns the time that percent of the recorded times are less than or equal to
+	 *
+	 * @param percent - ex: 99.9 for p999
+	 * @return microseconds
+	 */
+	public long getPercentileMicros(double percent) {
+		if (count==0)
+			return 0;
+		long rank = (long) Math.ceil((percent / 100.0d) * count);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for ( int i=0 ; i < BUCKET_COUNT ; i++ ) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.max(getMinMicros(), Math.min(max_micros, highestOf(i)));
+		}
+		return max_micros;
+	}
+
+	public long getP50Micros() {
+		return getPercentileMicros(50.0d);
+	}
+
+	public long getP99Micros() {
+		return getPercentileMicros(99.0d);
+	}
+
+	public long getP999Micros() {
+		return getPercentileMicros(99.9d);
+	}
+
+	/** returns the non-empty buckets as bucket:count pairs separated by commas
+	 *
+	 * @see #parse
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("count=").append(count);
+		sb.append(",total=").append(total_micros);
+		sb.append(",min=").append(getMinMicros());
+		sb.append(",max=").append(max_micros);
+		for ( int i=0 ; i < BUCKET_COUNT ; i++ ) {
+			if (counts[i]==0)
+				continue;
+			sb.append(',').append(i).append(':').append(counts[i]);
+		}
+		return sb.toString();
+	}
+
+	/** reads a histogram written by #toString
+	 *
+	 * @param str
+	 * @return
+	 */
+	public static LatencyHistogram parse(String str) {
+		LatencyHistogram h = new LatencyHistogram();
+		if (StringUtil.isEmpty(str))
+			return h;
+		for ( String part : str.trim().split(",") ) {
+			int i = part.indexOf('=');
+			if (i!=-1) {
+				final String name = part.substring(0, i);
+				final long value = Long.parseLong(part.substring(i+1));
+				if (name.equals("count"))
+					h.count = value;
+				else if (name.equals("total"))
+					h.total_micros = value;
+				else if (name.equals("min"))
+					h.min_micros = value;
+				else if (name.equals("max"))
+					h.max_micros = value;
+				continue;
+			}
+			i = part.indexOf(':');
+			if (i==-1)
+				continue;
+			final int bucket = Integer.parseInt(part.substring(0, i));
+			if (bucket >= 0 && bucket < BUCKET_COUNT)
+				h.counts[bucket] = Long.parseLong(part.substring(i+1));
+		}
+		if (h.count==0)
+			h.min_micros = Long.MAX_VALUE;
+		return h;
+	}
+
+	public void clear() {
+		Arrays.fill(counts, 0L);
+		count = total_micros = max_micros = 0;
+		min_micros = Long.MAX_VALUE;
+	}
+
+} // end public class LatencyHistogram
@@ -6,6 +6,8 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -17,8 +19,10 @@ import com.mostc.pftt.host.LocalHost;
 import com.mostc.pftt.host.AHost.ExecHandle;
 import com.mostc.pftt.model.core.PhpBuild;
 import com.mostc.pftt.model.core.PhpIni;
+import com.mostc.pftt.model.core.PhptTestCase;
 import com.mostc.pftt.results.ConsoleManager;
 import com.mostc.pftt.results.ConsoleManagerUtil;
+import com.mostc.pftt.results.EPrintType;
 import com.mostc.pftt.runner.AbstractPhptTestCaseRunner;
 import com.mostc.pftt.scenario.FileSystemScenario;
 import com.mostc.pftt.scenario.ScenarioSet;
@@ -128,9 +132,168 @@ public abstract class AbstractManagedProcessesWebServerManager extends WebServer
 		return could;
 	} // end public static CouldConnect canConnect
 	
-	static final int MAX_TOTAL_ATTEMPTS = 3;
+	/** web servers started ahead of time for 1 PhpIni and ENV (and build, docroot, etc...)
+	 * 
+	 * @see ConsoleManager#getWebServerStandbyCount
+	 */
+	protected static class StandbyGroup {
+		protected final FileSystemScenario fs;
+		protected final AHost host;
+		protected final ScenarioSet scenario_set;
+		protected final PhpBuild build;
+		protected final PhpIni ini;
+		protected final Map<String,String> env;
+		protected final String docroot;
+		protected final LinkedList<WebServerInstance> ready;
+		/** number of web servers being started for this group */
+		protected int starting;
+		
+		protected StandbyGroup(FileSystemScenario fs, AHost host, ScenarioSet scenario_set, PhpBuild build, PhpIni ini, Map<String,String> env, String docroot) {
+			this.fs = fs;
+			this.host = host;
+			this.scenario_set = scenario_set;
+			this.build = build;
+			this.ini = ini;
+			this.env = env;
+			this.docroot = docroot;
+			ready = new LinkedList<WebServerInstance>();
+		}
+		
+		protected boolean matches(FileSystemScenario fs, AHost host, ScenarioSet scenario_set, PhpBuild build, PhpIni ini, Map<String,String> env, String docroot) {
+			return this.fs == fs && this.host == host && this.scenario_set == scenario_set && this.build == build 
+					&& (this.docroot == null ? docroot == null : this.docroot.equals(docroot))
+					&& PhptTestCase.isEquivalentForTestCase(this.ini, ini)
+					&& equalsOrCommonValues(this.env, env);
+		}
+		
+	} // end protected static class StandbyGroup
+	
+	protected final ArrayList<StandbyGroup> standby_groups = new ArrayList<StandbyGroup>(4);
+	/** incremented when standbys are closed so web servers still being started then get closed too */
+	protected int standby_epoch;
+	
 	@Override
 	protected WebServerInstance createWebServerInstance(ConsoleManager cm, FileSystemScenario fs, AHost host, ScenarioSet scenario_set, PhpBuild build, PhpIni ini, Map<String,String> env, final String docroot, final boolean debugger_attached, final Object server_name, boolean is_replacement) {
+		if (debugger_attached || cm==null || cm.getWebServerStandbyCount() < 1 || !allowConcurrentWebServerSAPIInstances())
+			return startWebServerInstance(cm, fs, host, scenario_set, build, ini, env, docroot, debugger_attached, server_name, is_replacement);
+		
+		final long start = System.currentTimeMillis();
+		StandbyGroup group = getStandbyGroup(fs, host, scenario_set, build, ini, env, docroot);
+		WebServerInstance web = takeStandby(cm, group);
+		// replace the standby that was taken (or start standbys for the first time) in the background
+		refillStandbys(cm, group);
+		if (web!=null) {
+			if (is_replacement)
+				cm.println(EPrintType.CLUE, getClass(), "Replaced web server with standby "+web+" in "+(System.currentTimeMillis()-start)+" millis");
+			return web;
+		}
+		return startWebServerInstance(cm, fs, host, scenario_set, build, ini, env, docroot, debugger_attached, server_name, is_replacement);
+	}
+	
+	protected StandbyGroup getStandbyGroup(FileSystemScenario fs, AHost host, ScenarioSet scenario_set, PhpBuild build, PhpIni ini, Map<String,String> env, String docroot) {
+		synchronized(standby_groups) {
+			for ( StandbyGroup group : standby_groups ) {
+				if (group.matches(fs, host, scenario_set, build, ini, env, docroot))
+					return group;
+			}
+			StandbyGroup group = new StandbyGroup(fs, host, scenario_set, build, ini, env, docroot);
+			standby_groups.add(group);
+			return group;
+		}
+	}
+	
+	/** takes a standby web server that is still running and accepting connections
+	 * 
+	 * @param cm
+	 * @param group
+	 * @return NULL if no standby is ready
+	 */
+	protected WebServerInstance takeStandby(ConsoleManager cm, StandbyGroup group) {
+		for (;;) {
+			WebServerInstance web;
+			synchronized(group) {
+				web = group.ready.poll();
+			}
+			if (web==null)
+				return null;
+			// check again (may have crashed while waiting)
+			if (web.isRunning() && isTCPPortUsed(web.getHostname(), web.getPort()))
+				return web;
+			web.close(cm);
+		}
+	}
+	
+	/** starts web servers in the background until the group has ConsoleManager#getWebServerStandbyCount ready
+	 * 
+	 * @param cm
+	 * @param group
+	 */
+	protected void refillStandbys(final ConsoleManager cm, final StandbyGroup group) {
+		final int epoch;
+		int need;
+		synchronized(standby_groups) {
+			epoch = standby_epoch;
+		}
+		synchronized(group) {
+			need = cm.getWebServerStandbyCount() - group.ready.size() - group.starting;
+			if (need < 1)
+				return;
+			group.starting += need;
+		}
+		for ( ; need > 0 ; need-- ) {
+			TimerUtil.runThread("WebServerStandby", new Runnable() {
+					public void run() {
+						final long start = System.currentTimeMillis();
+						WebServerInstance web = null;
+						try {
+							// is_replacement=TRUE => check that server responds to HTTP (not just TCP) before using it
+							web = startWebServerInstance(cm, group.fs, group.host, group.scenario_set, group.build, group.ini, group.env, group.docroot, false, null, true);
+						} finally {
+							boolean keep;
+							synchronized(standby_groups) {
+								keep = epoch == standby_epoch;
+							}
+							synchronized(group) {
+								group.starting--;
+								keep = keep && web != null && web.isRunning();
+								if (keep)
+									group.ready.add(web);
+							}
+							if (keep)
+								cm.println(EPrintType.CLUE, AbstractManagedProcessesWebServerManager.this.getClass(), "Started standby web server "+web+" in "+(System.currentTimeMillis()-start)+" millis");
+							else if (web!=null)
+								web.close(cm);
+						}
+					}
+				});
+		}
+	} // end protected void refillStandbys
+	
+	/** closes all standby web servers (including any still being started) */
+	public void closeStandbys(ConsoleManager cm) {
+		ArrayList<WebServerInstance> closing = new ArrayList<WebServerInstance>();
+		synchronized(standby_groups) {
+			standby_epoch++;
+			for ( StandbyGroup group : standby_groups ) {
+				synchronized(group) {
+					closing.addAll(group.ready);
+					group.ready.clear();
+				}
+			}
+			standby_groups.clear();
+		}
+		for ( WebServerInstance web : closing )
+			web.close(cm);
+	}
+	
+	@Override
+	public void close(ConsoleManager cm, boolean debug) {
+		closeStandbys(cm);
+		super.close(cm, debug);
+	}
+	
+	static final int MAX_TOTAL_ATTEMPTS = 3;
+	protected WebServerInstance startWebServerInstance(ConsoleManager cm, FileSystemScenario fs, AHost host, ScenarioSet scenario_set, PhpBuild build, PhpIni ini, Map<String,String> env, final String docroot, final boolean debugger_attached, final Object server_name, boolean is_replacement) {
 		String sapi_output = "";
 		int port_attempts;
 		boolean found_port;
@@ -251,7 +414,7 @@ public abstract class AbstractManagedProcessesWebServerManager extends WebServer
 		
 		// return this failure message to client code
 		return new CrashedWebServerInstance(fs, host, this, ini, env, sapi_output);
-	} // end protected WebServerInstance createWebServerInstance
+	} // end protected WebServerInstance startWebServerInstance
 	
 	@Overridable
 	protected CouldConnect _canConnect(String listen_address, int port, boolean is_replacement) {
@@ -73,6 +73,17 @@ public class CliSAPIInstance extends SAPIInstance {
 		return sb.toString();
 	}
 
+	/** creates command to run php-cgi as a FastCGI server with the same INI as #createPhpCommand
+	 * 
+	 * @see FastCGIWorkerPool
+	 * @param bind_address - address:port to listen on
+	 * @return
+	 */
+	public String createFastCGICommand(String bind_address) {
+		// -C => important: don't chdir
+		return build.getPhpCgiExe()+" -C -b "+bind_address+" -c "+ini_dir;
+	}
+	
 	public ExecOutput execute(EExecutableType exe_type, String name, String php_filename, String extra_args, int timeout_sec, Map<String,String> env, String chdir, boolean debugger_attached) throws Exception {
 		return dbg == null ?
 				host.execOut(createPhpCommand(exe_type, php_filename, extra_args, debugger_attached), timeout_sec, env, chdir, true) :
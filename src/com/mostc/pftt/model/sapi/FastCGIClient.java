@@ -0,0 +1,197 @@
+package com.mostc.pftt.model.sapi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+
+import com.mostc.pftt.results.ConsoleManagerUtil;
+
+/** Minimal FastCGI client (Responder role only), enough to send requests to `php-cgi -b`.
+ *
+ * Keeps its connection open between requests (FCGI_KEEP_CONN) so a php-cgi process can be sent
+ * many requests over 1 connection.
+ *
+ * @see http://www.fastcgi.com/devkit/doc/fcgi-spec.html
+ * @see FastCGIWorkerPool
+ * @author Matt Ficken
+ *
+ */
+
+public class FastCGIClient {
+	public static final int FCGI_VERSION_1 = 1;
+	public static final int FCGI_BEGIN_REQUEST = 1;
+	public static final int FCGI_ABORT_REQUEST = 2;
+	public static final int FCGI_END_REQUEST = 3;
+	public static final int FCGI_PARAMS = 4;
+	public static final int FCGI_STDIN = 5;
+	public static final int FCGI_STDOUT = 6;
+	public static final int FCGI_STDERR = 7;
+	public static final int FCGI_RESPONDER = 1;
+	public static final int FCGI_KEEP_CONN = 1;
+	public static final int FCGI_REQUEST_COMPLETE = 0;
+	protected static final int MAX_RECORD_LEN = 65535;
+	protected static final byte[] PADDING = new byte[8];
+	//
+	protected final Socket sock;
+	protected final DataInputStream in;
+	protected final OutputStream out;
+	protected final byte[] header = new byte[8];
+	protected int request_id;
+
+	public FastCGIClient(String address, int port, int connect_timeout_millis) throws IOException {
+		sock = new Socket();
+		sock.setTcpNoDelay(true);
+		sock.connect(new InetSocketAddress(address, port), connect_timeout_millis);
+		in = new DataInputStream(new BufferedInputStream(sock.getInputStream(), 16384));
+		out = new BufferedOutputStream(sock.getOutputStream(), 16384);
+	}
+
+	public static class FastCGIResponse {
+		/** what the script printed (including CGI headers) */
+		public final ByteArrayOutputStream stdout;
+		public final ByteArrayOutputStream stderr;
+		public int app_status, protocol_status;
+		/** TRUE if stdout was longer than max_output_len and the rest was discarded */
+		public boolean truncated;
+
+		protected FastCGIResponse() {
+			stdout = new ByteArrayOutputStream(1024);
+			stderr = new ByteArrayOutputStream(0);
+		}
+
+	} // end public static class FastCGIResponse
+
+	/** sends 1 request and blocks until the whole response is read
+	 *
+	 * @param params - CGI environment variables (SCRIPT_FILENAME, REQUEST_METHOD, etc...)
+	 * @param stdin - request body (or null)
+	 * @param timeout_millis - max time to wait for response data. throws SocketTimeoutException if reached
+	 * @param max_output_len - max bytes of stdout to keep (rest is read and discarded)
+	 * @return
+	 * @throws IOException - if connection broken (ex: php-cgi crashed) or timed out
+	 */
+	public FastCGIResponse request(Map<String,String> params, byte[] stdin, int timeout_millis, int max_output_len) throws IOException {
+		sock.setSoTimeout(timeout_millis);
+		// 1 request at a time per connection, can always reuse the same id (just not 0, which is for management records)
+		request_id = request_id == 65535 ? 1 : request_id + 1;
+
+		writeRecord(FCGI_BEGIN_REQUEST, new byte[]{0, FCGI_RESPONDER, FCGI_KEEP_CONN, 0, 0, 0, 0, 0}, 0, 8);
+
+		ByteArrayOutputStream pbuf = new ByteArrayOutputStream(2048);
+		for ( Map.Entry<String,String> e : params.entrySet() ) {
+			if (e.getKey()==null)
+				continue;
+			writeNameValuePair(pbuf, e.getKey().getBytes(), e.getValue()==null?new byte[0]:e.getValue().getBytes());
+		}
+		writeStream(FCGI_PARAMS, pbuf.toByteArray(), pbuf.size());
+		writeStream(FCGI_STDIN, stdin, stdin==null?0:stdin.length);
+		out.flush();
+
+		FastCGIResponse response = new FastCGIResponse();
+		byte[] content = new byte[8192];
+		for (;;) {
+			in.readFully(header);
+			final int type = header[1] & 0xFF;
+			final int rid = ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+			final int content_len = ((header[4] & 0xFF) << 8) | (header[5] & 0xFF);
+			final int padding_len = header[6] & 0xFF;
+			if (content.length < content_len)
+				content = new byte[content_len];
+			in.readFully(content, 0, content_len);
+			if (padding_len > 0)
+				in.skipBytes(padding_len);
+			if (rid != request_id)
+				// ignore management records or anything left over from an aborted request
+				continue;
+
+			switch(type) {
+			case FCGI_STDOUT:
+				if (max_output_len > 0 && response.stdout.size() + content_len > max_output_len) {
+					response.stdout.write(content, 0, Math.max(0, max_output_len - response.stdout.size()));
+					response.truncated = true;
+				} else {
+					response.stdout.write(content, 0, content_len);
+				}
+				break;
+			case FCGI_STDERR:
+				if (response.stderr.size() < MAX_RECORD_LEN)
+					response.stderr.write(content, 0, content_len);
+				break;
+			case FCGI_END_REQUEST:
+				if (content_len < 5)
+					throw new EOFException("Invalid FCGI_END_REQUEST record");
+				response.app_status = ((content[0] & 0xFF) << 24) | ((content[1] & 0xFF) << 16) | ((content[2] & 0xFF) << 8) | (content[3] & 0xFF);
+				response.protocol_status = content[4] & 0xFF;
+				return response;
+			default:
+				// ignore
+			}
+		}
+	} // end public FastCGIResponse request
+
+	protected void writeStream(int type, byte[] data, int len) throws IOException {
+		int off = 0;
+		while (off < len) {
+			int rlen = Math.min(MAX_RECORD_LEN, len - off);
+			writeRecord(type, data, off, rlen);
+			off += rlen;
+		}
+		// empty record marks end of stream
+		writeRecord(type, null, 0, 0);
+	}
+
+	protected void writeRecord(int type, byte[] data, int off, int len) throws IOException {
+		final int padding_len = (8 - (len % 8)) % 8;
+		header[0] = FCGI_VERSION_1;
+		header[1] = (byte) type;
+		header[2] = (byte) (request_id >> 8);
+		header[3] = (byte) request_id;
+		header[4] = (byte) (len >> 8);
+		header[5] = (byte) len;
+		header[6] = (byte) padding_len;
+		header[7] = 0;
+		out.write(header, 0, 8);
+		if (len > 0)
+			out.write(data, off, len);
+		if (padding_len > 0)
+			out.write(PADDING, 0, padding_len);
+	}
+
+	protected static void writeNameValuePair(ByteArrayOutputStream pbuf, byte[] name, byte[] value) {
+		writeLength(pbuf, name.length);
+		writeLength(pbuf, value.length);
+		pbuf.write(name, 0, name.length);
+		pbuf.write(value, 0, value.length);
+	}
+
+	protected static void writeLength(ByteArrayOutputStream pbuf, int len) {
+		if (len < 128) {
+			pbuf.write(len);
+		} else {
+			pbuf.write((len >> 24) | 0x80);
+			pbuf.write(len >> 16);
+			pbuf.write(len >> 8);
+			pbuf.write(len);
+		}
+	}
+
+	public boolean isConnected() {
+		return sock.isConnected() && !sock.isClosed();
+	}
+
+	public void close() {
+		try {
+			sock.close();
+		} catch ( IOException ex ) {
+			ConsoleManagerUtil.printStackTrace(FastCGIClient.class, ex);
+		}
+	}
+
+} // end public class FastCGIClient
@@ -0,0 +1,313 @@
+package com.mostc.pftt.model.sapi;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.mattficken.io.IOUtil;
+import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.host.AHost.ExecHandle;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.ConsoleManagerUtil;
+import com.mostc.pftt.util.TimerUtil;
+
+/** Pool of long-running `php-cgi -b` FastCGI processes that all use the same INI (and ENV).
+ *
+ * Instead of starting a new php.exe process for each PHPT section (SKIPIF, TEST, CLEAN), each
+ * section is sent as a FastCGI request to a php-cgi process that is already running.
+ *
+ * A worker is used by only 1 thread at a time. Workers are replaced after they crash, time out, or
+ * have handled #max_requests requests (to limit the effect one test can have on the tests after it).
+ *
+ * @see CliFastCGIScenario
+ * @see FastCGIClient
+ * @author Matt Ficken
+ *
+ */
+
+public class FastCGIWorkerPool {
+	protected static final int PORT_RANGE_START = 44001;
+	protected static final int PORT_RANGE_STOP = 46000;
+	protected static final AtomicInteger last_port = new AtomicInteger(PORT_RANGE_START-1);
+	/** php-cgi only listens on the loopback interface */
+	protected static final String LISTEN_ADDRESS = "127.0.0.1";
+	protected static final int MAX_START_MILLIS = 20000;
+	//
+	protected final AHost host;
+	protected final CliSAPIInstance sapi;
+	protected final Map<String,String> env;
+	protected final String chdir;
+	protected final int max_requests;
+	protected final LinkedList<FastCGIWorker> idle;
+	protected final AtomicInteger started_count, recycled_count, crashed_count, timeout_count;
+	protected final AtomicLong request_count, request_nanos;
+	protected boolean closed;
+
+	/**
+	 *
+	 * @param host
+	 * @param sapi - provides INI file and php-cgi executable
+	 * @param env - ENV vars for php-cgi processes (ENV vars for each test are sent with each request)
+	 * @param chdir
+	 * @param max_requests - replace a php-cgi process after this many requests
+	 */
+	public FastCGIWorkerPool(AHost host, CliSAPIInstance sapi, Map<String,String> env, String chdir, int max_requests) {
+		this.host = host;
+		this.sapi = sapi;
+		this.chdir = chdir;
+		this.max_requests = max_requests;
+		this.env = env == null ? new HashMap<String,String>() : new HashMap<String,String>(env);
+		// pool handles recycling. php-cgi shouldn't exit on its own after 500 requests (its default)
+		this.env.put("PHP_FCGI_MAX_REQUESTS", "0");
+		// don't fork children, each worker is 1 process
+		this.env.put("PHP_FCGI_CHILDREN", "0");
+		idle = new LinkedList<FastCGIWorker>();
+		started_count = new AtomicInteger();
+		recycled_count = new AtomicInteger();
+		crashed_count = new AtomicInteger();
+		timeout_count = new AtomicInteger();
+		request_count = new AtomicLong();
+		request_nanos = new AtomicLong();
+	}
+
+	/** gets an idle worker or starts a new one. call #release when done with it.
+	 *
+	 * @param cm
+	 * @return
+	 * @throws Exception - if php-cgi could not be started
+	 */
+	public FastCGIWorker acquire(ConsoleManager cm) throws Exception {
+		synchronized(idle) {
+			if (closed)
+				throw new IllegalStateException("FastCGIWorkerPool closed");
+			while (!idle.isEmpty()) {
+				FastCGIWorker w = idle.removeFirst();
+				if (w.isRunning())
+					return w;
+				w.close(cm);
+			}
+		}
+		return startWorker(cm);
+	}
+
+	/** returns worker to pool (or closes it if it crashed, timed out or reached #max_requests)
+	 *
+	 * @param cm
+	 * @param w
+	 */
+	public void release(ConsoleManager cm, FastCGIWorker w) {
+		if (w.broken || !w.isRunning()) {
+			w.close(cm);
+			return;
+		} else if (max_requests > 0 && w.requests >= max_requests) {
+			recycled_count.incrementAndGet();
+			w.close(cm);
+			return;
+		}
+		synchronized(idle) {
+			if (!closed) {
+				idle.addFirst(w); // LIFO: reuse most recently used (warmest) worker first
+				return;
+			}
+		}
+		w.close(cm);
+	}
+
+	protected FastCGIWorker startWorker(ConsoleManager cm) throws Exception {
+		Exception last_ex = null;
+		for ( int attempt=0 ; attempt < 3 ; attempt++ ) {
+			int port = nextPort();
+			if (port==-1)
+				throw new IOException("Couldn't find unused local port for php-cgi");
+			final String cmd = sapi.createFastCGICommand(LISTEN_ADDRESS+":"+port);
+			ExecHandle handle = host.execThread(cmd, env, chdir, false);
+			final FastCGIWorker w = new FastCGIWorker(handle, cmd, port);
+			w.monitor();
+			try {
+				w.connect();
+				started_count.incrementAndGet();
+				return w;
+			} catch ( Exception ex ) {
+				last_ex = ex;
+				w.close(cm);
+			}
+		}
+		throw last_ex;
+	}
+
+	protected static int nextPort() {
+		for ( int port_attempts = 0 ; port_attempts < 3 ; ) {
+			int port = last_port.incrementAndGet();
+			if (port > PORT_RANGE_STOP) {
+				// start over and hope ports at start of range are free
+				last_port.set(PORT_RANGE_START);
+				port_attempts++;
+			} else if (!WebServerManager.isLocalhostTCPPortUsed(port)) {
+				return port;
+			}
+		}
+		return -1;
+	}
+
+	public void close(ConsoleManager cm) {
+		LinkedList<FastCGIWorker> workers;
+		synchronized(idle) {
+			closed = true;
+			workers = new LinkedList<FastCGIWorker>(idle);
+			idle.clear();
+		}
+		for ( FastCGIWorker w : workers )
+			w.close(cm);
+	}
+
+	public int getStartedCount() {
+		return started_count.get();
+	}
+
+	public int getRecycledCount() {
+		return recycled_count.get();
+	}
+
+	public int getCrashedCount() {
+		return crashed_count.get();
+	}
+
+	public int getTimeoutCount() {
+		return timeout_count.get();
+	}
+
+	public long getRequestCount() {
+		return request_count.get();
+	}
+
+	/** total time spent in requests (all threads) */
+	public long getRequestMillis() {
+		return request_nanos.get() / 1000000L;
+	}
+
+	@Override
+	public String toString() {
+		return "FastCGIWorkerPool[started="+getStartedCount()+" requests="+getRequestCount()+" recycled="+getRecycledCount()+" crashed="+getCrashedCount()+" timeouts="+getTimeoutCount()+"]";
+	}
+
+	/** result of 1 request to a worker */
+	public static class FastCGIResult {
+		/** raw output including CGI headers. NULL if crashed or timed out */
+		public FastCGIClient.FastCGIResponse response;
+		public boolean crashed, timed_out;
+		public int exit_code;
+		/** output from php-cgi process (not the request) if it crashed */
+		public String process_output;
+	}
+
+	public class FastCGIWorker {
+		protected final ExecHandle handle;
+		protected final String cmd;
+		protected final int port;
+		protected final StringBuilder process_output;
+		protected FastCGIClient client;
+		protected volatile boolean exited;
+		protected boolean broken;
+		protected int requests;
+
+		protected FastCGIWorker(ExecHandle handle, String cmd, int port) {
+			this.handle = handle;
+			this.cmd = cmd;
+			this.port = port;
+			process_output = new StringBuilder(256);
+		}
+
+		/** reads php-cgi's own output (startup warnings, etc...) and records exit code when it exits */
+		protected void monitor() {
+			TimerUtil.runThread("FastCGIWorker", new Runnable() {
+					@Override
+					public void run() {
+						try {
+							handle.run(null, process_output, null, 0, null, 0, 0, IOUtil.QUARTER_MEGABYTE);
+						} catch ( Exception ex ) {
+							ConsoleManagerUtil.printStackTrace(FastCGIWorkerPool.class, ex);
+						} finally {
+							exited = true;
+						}
+					}
+				});
+		}
+
+		protected void connect() throws Exception {
+			final long start = System.currentTimeMillis();
+			IOException last_ex = null;
+			// php-cgi needs a moment to start listening
+			while (!exited && System.currentTimeMillis() - start < MAX_START_MILLIS) {
+				try {
+					client = new FastCGIClient(LISTEN_ADDRESS, port, 1000);
+					return;
+				} catch ( IOException ex ) {
+					last_ex = ex;
+					Thread.sleep(20);
+				}
+			}
+			throw new IOException("Could not connect to php-cgi: "+cmd+" exited="+exited+" output="+process_output, last_ex);
+		}
+
+		public boolean isRunning() {
+			return !exited && client != null && client.isConnected();
+		}
+
+		/** executes a PHP script
+		 *
+		 * @param params - CGI ENV vars, including SCRIPT_FILENAME
+		 * @param stdin
+		 * @param timeout_sec
+		 * @return
+		 */
+		public FastCGIResult execute(Map<String,String> params, byte[] stdin, int timeout_sec) {
+			FastCGIResult result = new FastCGIResult();
+			requests++;
+			request_count.incrementAndGet();
+			final long start = System.nanoTime();
+			try {
+				result.response = client.request(params, stdin, timeout_sec * 1000, IOUtil.HALF_MEGABYTE);
+			} catch ( SocketTimeoutException ex ) {
+				result.timed_out = true;
+				timeout_count.incrementAndGet();
+				broken = true;
+			} catch ( IOException ex ) {
+				// connection closed: php-cgi exited
+				broken = true;
+				waitForExit();
+				result.exit_code = handle.getExitCode();
+				// reuse AHost's crash detection (same as for php.exe)
+				// (if its still running, it dropped the connection in the middle of a request, which is a crash too)
+				result.crashed = !exited || AHost.isCrashExitCode(host, result.exit_code, false);
+				if (result.crashed)
+					crashed_count.incrementAndGet();
+				result.process_output = "PFTT: php-cgi FastCGI worker exited during request. cmd="+cmd+"\n"+process_output;
+			} finally {
+				request_nanos.addAndGet(System.nanoTime() - start);
+			}
+			return result;
+		}
+
+		protected void waitForExit() {
+			// give monitor thread a moment to get the exit code
+			for ( int i=0 ; i < 100 && !exited ; i++ ) {
+				TimerUtil.trySleepMillis(20);
+			}
+		}
+
+		/** kills this worker (ex: #stop called on the test runner using it) */
+		public void close(ConsoleManager cm) {
+			broken = true;
+			if (client!=null)
+				client.close();
+			if (!exited)
+				handle.close(cm, true);
+		}
+
+	} // end public class FastCGIWorker
+
+} // end public class FastCGIWorkerPool
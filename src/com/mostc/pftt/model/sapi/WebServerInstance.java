@@ -15,6 +15,7 @@ import com.mostc.pftt.host.AHost;
 import com.mostc.pftt.model.TestCase;
 import com.mostc.pftt.model.core.PhpIni;
 import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.runner.HttpClientConnectionPool;
 import com.mostc.pftt.scenario.FileSystemScenario;
 
 /** an instance of a web server
@@ -35,6 +36,7 @@ public abstract class WebServerInstance extends SAPIInstance implements IWebServ
 	protected final String[] cmd_array;
 	protected final WebServerManager ws_mgr;
 	WebServerInstance replacement; // @see WebServerManager#getWebServerInstance
+	private HttpClientConnectionPool conn_pool;
 	
 	public WebServerInstance(FileSystemScenario fs, AHost host, WebServerManager ws_mgr, String[] cmd_array, PhpIni ini, Map<String,String> env) {
 		super(fs, host, ini);
@@ -99,6 +101,10 @@ public abstract class WebServerInstance extends SAPIInstance implements IWebServ
 			
 			// if crash, record output with all tests that were running during crash
 			crashed = true;
+			
+			// don't reuse connections to crashed server (replacement will have its own)
+			if (conn_pool!=null)
+				conn_pool.evictAll();
 						
 			StringBuilder sb = new StringBuilder(1024);
 			
@@ -218,8 +224,24 @@ public abstract class WebServerInstance extends SAPIInstance implements IWebServ
 		return cmd_array;
 	}
 	
+	/** kept-alive connections to this web server, shared by all threads testing it
+	 * 
+	 * @return
+	 */
+	public HttpClientConnectionPool getConnectionPool() {
+		synchronized(sync_lock) {
+			if (conn_pool==null)
+				conn_pool = new HttpClientConnectionPool(getHostname(), getPort());
+			return conn_pool;
+		}
+	}
+	
 	@Override
 	public void close(ConsoleManager cm) {
+		synchronized(sync_lock) {
+			if (conn_pool!=null)
+				conn_pool.close();
+		}
 		try {
 			do_close(cm);
 		} finally {
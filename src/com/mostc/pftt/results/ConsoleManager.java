@@ -106,5 +106,31 @@ public interface ConsoleManager {
 	public boolean isIgnoreOutput();
 	public String getDebuggerName();
 	public DebuggerManager getDebuggerManager();
+	/** result-packs to read test run times from, to run the slowest groups of tests first
+	 * 
+	 * @see -order_by_run_time console option
+	 * @return null or empty if not ordering by run time
+	 */
+	public List<String> getRunTimeHistoryList();
+	/** @see -no_skipif_cache console option
+	 * @return TRUE to always execute SKIPIF sections instead of using cached output (@see PhptSkipIfCache)
+	 */
+	public boolean isNoSkipIfCache();
+	/** @see -binary_result_pack console option
+	 * @return TRUE to store PHPT results in a binary segment instead of 1 XML file per test (@see PhptResultSegment)
+	 */
+	public boolean isBinaryResultPack();
+	/** @see -web_standby console option
+	 * @return number of web servers to keep started for each PhpIni/ENV so a crashed web server can be replaced immediately (0 to not keep any)
+	 */
+	public int getWebServerStandbyCount();
+	/** @see -phpunit_worker console option
+	 * @return number of PhpUnit tests to run in a PHP worker process before restarting it (0 to run each test in a new PHP process)
+	 */
+	public int getPhpUnitWorkerTestCount();
+	/** @see -phpunit_worker_keep_dirty console option
+	 * @return TRUE to keep using a PHP worker process after a test changes its global state
+	 */
+	public boolean isPhpUnitWorkerKeepDirty();
 	
 } // end public class ConsoleManager
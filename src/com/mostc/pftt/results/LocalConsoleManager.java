@@ -30,8 +30,8 @@ import com.mostc.pftt.util.ValgrindMemoryCheckManager;
 import com.mostc.pftt.util.WinDebugManager;
 
 public class LocalConsoleManager implements ConsoleManager {
-	protected final boolean overwrite, debug_all, results_only, show_gui, disable_debug_prompt, dont_cleanup_test_pack, phpt_not_in_place, pftt_debug, no_result_file_for_pass_xskip_skip, randomize_order, thread_safety, skip_smoke_tests, restart_each_test_all, no_restart_all, ini_actual_all, non_interactive, ignore_output;
-	protected final int run_test_times_all, run_test_pack, run_test_times_list_times, run_group_times, run_group_times_list_times, max_test_read_count, thread_count, delay_between_ms, suspend_seconds, run_count;
+	protected final boolean overwrite, debug_all, results_only, show_gui, disable_debug_prompt, dont_cleanup_test_pack, phpt_not_in_place, pftt_debug, no_result_file_for_pass_xskip_skip, randomize_order, thread_safety, skip_smoke_tests, restart_each_test_all, no_restart_all, ini_actual_all, non_interactive, ignore_output, no_skipif_cache, binary_result_pack, phpunit_worker_keep_dirty;
+	protected final int run_test_times_all, run_test_pack, run_test_times_list_times, run_group_times, run_group_times_list_times, max_test_read_count, thread_count, delay_between_ms, suspend_seconds, run_count, web_standby_count, phpunit_worker_test_count;
 	protected final long max_run_time_millis;
 	protected final String debugger_name;
 	protected final DebuggerManager db_mgr;
@@ -40,13 +40,13 @@ public class LocalConsoleManager implements ConsoleManager {
 	protected PhptDebuggerFrame phpt_gui;
 	protected PhpUnitDebuggerFrame phpunit_gui;
 	protected PhpResultPackWriter w; // TODO
-	protected List<String> debug_list, run_test_times_list, run_group_times_list, skip_list;
+	protected List<String> debug_list, run_test_times_list, run_group_times_list, skip_list, run_time_history_list;
 		
 	public LocalConsoleManager() {
-		this(null, null, false, false, false, false, true, false, true, false, true, false, 1, 1, true, 1, 1, 1, null, null, null, null, false, 0, 0, false, false, 0, 0, 0, false, 0, false, false, null);
+		this(null, null, false, false, false, false, true, false, true, false, true, false, 1, 1, true, 1, 1, 1, null, null, null, null, false, 0, 0, false, false, 0, 0, 0, false, 0, false, false, null, null, false, false, 0, 0, false);
 	}
 	
-	public LocalConsoleManager(String source_pack, PhpDebugPack debug_pack, boolean overwrite, boolean debug_all, boolean results_only, boolean show_gui, boolean disable_debug_prompt, boolean dont_cleanup_test_pack, boolean phpt_not_in_place, boolean pftt_debug, boolean no_result_file_for_pass_xskip_skip, boolean randomize_order, int run_test_times_all, int run_test_pack, boolean thread_safety, int run_test_times_list_times, int run_group_times, int run_group_times_list_times, List<String> debug_list, List<String> run_test_times_list, List<String> run_group_times_list, List<String> skip_list, boolean skip_smoke_tests, int max_test_read_count, int thread_count, boolean restart_each_test_all, boolean no_restart_all, int delay_between_ms, int run_count, int suspend_seconds, boolean ini_actual_all, long max_run_time_millis, boolean non_interactive, boolean ignore_output, String debugger_name) {
+	public LocalConsoleManager(String source_pack, PhpDebugPack debug_pack, boolean overwrite, boolean debug_all, boolean results_only, boolean show_gui, boolean disable_debug_prompt, boolean dont_cleanup_test_pack, boolean phpt_not_in_place, boolean pftt_debug, boolean no_result_file_for_pass_xskip_skip, boolean randomize_order, int run_test_times_all, int run_test_pack, boolean thread_safety, int run_test_times_list_times, int run_group_times, int run_group_times_list_times, List<String> debug_list, List<String> run_test_times_list, List<String> run_group_times_list, List<String> skip_list, boolean skip_smoke_tests, int max_test_read_count, int thread_count, boolean restart_each_test_all, boolean no_restart_all, int delay_between_ms, int run_count, int suspend_seconds, boolean ini_actual_all, long max_run_time_millis, boolean non_interactive, boolean ignore_output, String debugger_name, List<String> run_time_history_list, boolean no_skipif_cache, boolean binary_result_pack, int web_standby_count, int phpunit_worker_test_count, boolean phpunit_worker_keep_dirty) {
 		this.source_pack = source_pack;
 		this.debug_pack = debug_pack;
 		this.overwrite = overwrite;
@@ -82,6 +82,12 @@ public class LocalConsoleManager implements ConsoleManager {
 		this.non_interactive = non_interactive;
 		this.ignore_output = ignore_output;
 		this.debugger_name = debugger_name;
+		this.run_time_history_list = run_time_history_list;
+		this.no_skipif_cache = no_skipif_cache;
+		this.binary_result_pack = binary_result_pack;
+		this.web_standby_count = web_standby_count;
+		this.phpunit_worker_test_count = phpunit_worker_test_count;
+		this.phpunit_worker_keep_dirty = phpunit_worker_keep_dirty;
 		
 		if (LocalHost.getInstance().isWindows()) {
 			if (debugger_name==null) {
@@ -183,6 +189,36 @@ public class LocalConsoleManager implements ConsoleManager {
 		return db_mgr;
 	}
 	
+	@Override
+	public List<String> getRunTimeHistoryList() {
+		return run_time_history_list;
+	}
+	
+	@Override
+	public boolean isNoSkipIfCache() {
+		return no_skipif_cache;
+	}
+	
+	@Override
+	public boolean isBinaryResultPack() {
+		return binary_result_pack;
+	}
+	
+	@Override
+	public int getWebServerStandbyCount() {
+		return web_standby_count;
+	}
+	
+	@Override
+	public int getPhpUnitWorkerTestCount() {
+		return phpunit_worker_test_count;
+	}
+	
+	@Override
+	public boolean isPhpUnitWorkerKeepDirty() {
+		return phpunit_worker_keep_dirty;
+	}
+	
 	@Override
 	public boolean isIgnoreOutput() {
 		return ignore_output;
@@ -0,0 +1,171 @@
+package com.mostc.pftt.results;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.KXmlSerializer;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import com.mostc.pftt.model.performance.LatencyHistogram;
+
+/** result of running a HttpLoadTest against 1 build in 1 scenario set
+ *
+ * stored in the result-pack as 1 XML file per test (@see PhpResultPackWriter#addResult) so the results of
+ * 2 builds can be compared by CmpReport.
+ *
+ * @see com.mostc.pftt.runner.HttpLoadGenerator
+ * @author Matt Ficken
+ *
+ */
+
+public class PerformanceTestResult implements ISerializer {
+	public String test_name, scenario_set_name, web_server;
+	public int virtual_clients;
+	/** time spent measuring (not including warmup) */
+	public long run_millis;
+	/** requests that got a response with a 2xx or 3xx status (only these are in latency) */
+	public long request_count;
+	/** requests that failed (connection error, timeout, 4xx or 5xx status) */
+	public long error_count;
+	public long bytes_received;
+	/** TRUE if web server crashed during test (results are incomplete) */
+	public boolean crashed;
+	public LatencyHistogram latency;
+
+	public PerformanceTestResult() {
+		latency = new LatencyHistogram();
+	}
+
+	public PerformanceTestResult(String test_name, String scenario_set_name, String web_server, int virtual_clients) {
+		this();
+		this.test_name = test_name;
+		this.scenario_set_name = scenario_set_name;
+		this.web_server = web_server;
+		this.virtual_clients = virtual_clients;
+	}
+
+	/** requests per second */
+	public double getThroughput() {
+		return run_millis == 0 ? 0.0d : (request_count * 1000.0d) / run_millis;
+	}
+
+	/** percent of requests that failed */
+	public double getErrorRate() {
+		final long total = request_count + error_count;
+		return total == 0 ? 0.0d : (error_count * 100.0d) / total;
+	}
+
+	/** name to match results of the same test from different result-packs */
+	public String getKey() {
+		return scenario_set_name+"/"+test_name;
+	}
+
+	@Override
+	public String toString() {
+		return test_name+" "+scenario_set_name+" clients="+virtual_clients+" requests/sec="+PhpResultPack.round1(getThroughput())
+				+" p50="+latency.getP50Micros()+"us p99="+latency.getP99Micros()+"us p999="+latency.getP999Micros()+"us errors="+error_count
+				+(crashed?" CRASHED":"");
+	}
+
+	@Override
+	public void serial(XmlSerializer serial) throws IllegalArgumentException, IllegalStateException, IOException {
+		serial.startTag(null, "performanceResult");
+		serial.attribute(null, "testName", test_name);
+		serial.attribute(null, "scenarioSet", scenario_set_name);
+		if (web_server!=null)
+			serial.attribute(null, "webServer", web_server);
+		serial.attribute(null, "virtualClients", Integer.toString(virtual_clients));
+		serial.attribute(null, "runMillis", Long.toString(run_millis));
+		serial.attribute(null, "requestCount", Long.toString(request_count));
+		serial.attribute(null, "errorCount", Long.toString(error_count));
+		serial.attribute(null, "bytesReceived", Long.toString(bytes_received));
+		serial.attribute(null, "crashed", Boolean.toString(crashed));
+		// for people reading the file (these are computed from the histogram when read)
+		serial.attribute(null, "requestsPerSecond", Double.toString(PhpResultPack.round1(getThroughput())));
+		serial.attribute(null, "p50Micros", Long.toString(latency.getP50Micros()));
+		serial.attribute(null, "p99Micros", Long.toString(latency.getP99Micros()));
+		serial.attribute(null, "p999Micros", Long.toString(latency.getP999Micros()));
+
+		serial.startTag(null, "latencyHistogram");
+		serial.text(latency.toString());
+		serial.endTag(null, "latencyHistogram");
+
+		serial.endTag(null, "performanceResult");
+	}
+
+	public static PerformanceTestResult parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+		PerformanceTestResult result = new PerformanceTestResult();
+		String tag_name = "";
+		main_loop:
+		while(true) {
+			parser.next();
+			switch(parser.getEventType()) {
+			case XmlPullParser.START_TAG:
+				tag_name = parser.getName();
+
+				if (tag_name.equals("performanceResult")) {
+					result.test_name = parser.getAttributeValue(null, "testName");
+					result.scenario_set_name = parser.getAttributeValue(null, "scenarioSet");
+					result.web_server = parser.getAttributeValue(null, "webServer");
+					result.virtual_clients = Integer.parseInt(parser.getAttributeValue(null, "virtualClients"));
+					result.run_millis = Long.parseLong(parser.getAttributeValue(null, "runMillis"));
+					result.request_count = Long.parseLong(parser.getAttributeValue(null, "requestCount"));
+					result.error_count = Long.parseLong(parser.getAttributeValue(null, "errorCount"));
+					result.bytes_received = Long.parseLong(parser.getAttributeValue(null, "bytesReceived"));
+					result.crashed = Boolean.parseBoolean(parser.getAttributeValue(null, "crashed"));
+				}
+
+				break;
+			case XmlPullParser.END_TAG:
+				if (parser.getName().equals("performanceResult"))
+					break main_loop;
+				tag_name = "";
+				break;
+			case XmlPullParser.END_DOCUMENT:
+				break main_loop;
+			case XmlPullParser.TEXT:
+				if (tag_name.equals("latencyHistogram"))
+					result.latency = LatencyHistogram.parse(parser.getText());
+				break;
+			default:
+			}
+		}
+		return result;
+	} // end public static PerformanceTestResult parse
+
+	public static PerformanceTestResult open(File file) throws XmlPullParserException, IOException {
+		KXmlParser parser = new KXmlParser();
+		FileReader fr = new FileReader(file);
+		try {
+			parser.setInput(fr);
+			return parse(parser);
+		} finally {
+			fr.close();
+		}
+	}
+
+	public void write(File file) throws IOException {
+		file.getParentFile().mkdirs();
+
+		KXmlSerializer serial = new KXmlSerializer();
+		serial.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			serial.setOutput(out, null);
+			serial.startDocument(null, null);
+			serial(serial);
+			serial.endDocument();
+			serial.flush();
+		} finally {
+			out.close();
+		}
+	}
+
+} // end public class PerformanceTestResult
@@ -83,6 +83,9 @@ public abstract class PhpResultPack {
 	public abstract Collection<AbstractUITestRW> getUITest(AHost host, String test_pack_name_and_version);
 	public abstract Collection<AbstractUITestRW> getUITest(String test_pack_name_and_version);
 	public abstract PhpBuildInfo getBuildInfo();
+	/** results of HttpLoadTests run on host */
+	public abstract Collection<PerformanceTestResult> getPerformance(AHost host);
+	public abstract Collection<PerformanceTestResult> getPerformance();
 	
 	public AbstractPhpUnitRW getPhpUnit(AHost host, PhpUnitSourceTestPack test_pack, ScenarioSetSetup scenario_set) {
 		return getPhpUnit(host, test_pack.getNameAndVersionString(), scenario_set);
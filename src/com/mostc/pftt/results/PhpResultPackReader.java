@@ -5,6 +5,7 @@ import java.io.FileNotFoundException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 
 import com.github.mattficken.io.ArrayUtil;
 import com.mostc.pftt.host.AHost;
@@ -46,6 +47,10 @@ public class PhpResultPackReader extends PhpResultPack {
 		reader.test_pack_branch = reader.build_info.getBuildBranch(); // TODO
 		reader.test_pack_version = reader.build_info.getVersionRevision(); // TODO
 		
+		// status and run time of every PHPT, so tally and status lists don't need to be read (@see PhptResultIndex)
+		// NULL for result-packs written without one: then they're read from each scenario set instead
+		reader.phpt_index = PhptResultIndex.open(cm, result_pack_dir);
+		
 		File[] files = result_pack_dir.listFiles();
 		if (files!=null) {
 			String host_name;
@@ -64,6 +69,9 @@ public class PhpResultPackReader extends PhpResultPack {
 				//
 				readUITest(cm, reader, host_name, host_dir, reader.build_info, reader.test_pack_branch);
 				
+				//
+				readPerformance(cm, reader, host_name, host_dir);
+				
 			} // end for
 		} // end if
 		
@@ -98,7 +106,7 @@ public class PhpResultPackReader extends PhpResultPack {
 					
 					PhptResultReader phpt_reader = new PhptResultReader();
 					try {
-						phpt_reader.open(cm, scenario_dir, scenario_set_name, reader.build_info, reader.test_pack_branch, reader.test_pack_version);
+						phpt_reader.open(cm, scenario_dir, scenario_set_name, reader.build_info, reader.test_pack_branch, reader.test_pack_version, reader.phpt_index==null?null:reader.phpt_index.getScenarioSet(host_dir.getName(), test_pack_dir.getName(), scenario_set_name));
 					} catch ( Exception ex ) {
 						ConsoleManagerUtil.printStackTrace(PhpResultPackReader.class, cm, ex);
 						continue;
@@ -163,6 +171,29 @@ public class PhpResultPackReader extends PhpResultPack {
 		} 
 	} // end protected static void readUITest
 	
+	protected static void readPerformance(ConsoleManager cm, PhpResultPackReader reader, String host_name, File host_dir) {
+		File[] dirs = new File(host_dir+"/Performance").listFiles();
+		if (dirs==null)
+			return;
+		LinkedList<PerformanceTestResult> results = new LinkedList<PerformanceTestResult>();
+		for ( File scenario_dir : dirs ) {
+			File[] files = scenario_dir.listFiles();
+			if (files==null)
+				continue;
+			for ( File file : files ) {
+				if (!file.getName().endsWith(".xml"))
+					continue;
+				try {
+					results.add(PerformanceTestResult.open(file));
+				} catch ( Exception ex ) {
+					cm.addGlobalException(EPrintType.OPERATION_FAILED_CONTINUING, PhpResultPackReader.class, "readPerformance", ex, "unable to read performance result", file);
+				}
+			}
+		}
+		if (!results.isEmpty())
+			reader.perf_result_map.put(host_name, results);
+	} // end protected static void readPerformance
+	
 	protected static void readPhpUnit(ConsoleManager cm, PhpResultPackReader reader, String host_name, File host_dir, PhpBuildInfo build_info, EBuildBranch test_pack_branch) {
 		File phpunit_dir = new File(host_dir+"/PhpUnit");
 		File[] dirs = phpunit_dir.listFiles();
@@ -203,10 +234,12 @@ public class PhpResultPackReader extends PhpResultPack {
 	protected final HashMap<String,HashMap<String,HashMap<String,AbstractPhptRW>>> phpt_reader_map;
 	protected final HashMap<String,HashMap<String,HashMap<String,AbstractPhpUnitRW>>> php_unit_reader_map;
 	protected final HashMap<String,HashMap<String,HashMap<String,HashMap<String,UITestReader>>>> ui_test_reader_map;
+	protected final HashMap<String,LinkedList<PerformanceTestResult>> perf_result_map;
 	PhpBuildInfo build_info;
 	EBuildBranch test_pack_branch;
 	String test_pack_version; // TODO rename to phpt_test_pack_version
 	protected final File file;
+	protected PhptResultIndex phpt_index;
 	
 	public PhpResultPackReader(AHost host, File file) {
 		super(host);
@@ -214,11 +247,35 @@ public class PhpResultPackReader extends PhpResultPack {
 		ui_test_reader_map = new HashMap<String,HashMap<String,HashMap<String,HashMap<String,UITestReader>>>>(3);
 		phpt_reader_map = new HashMap<String,HashMap<String,HashMap<String,AbstractPhptRW>>>(3);
 		php_unit_reader_map = new HashMap<String,HashMap<String,HashMap<String,AbstractPhpUnitRW>>>(3);
+		perf_result_map = new HashMap<String,LinkedList<PerformanceTestResult>>(3);
 	}
 
 	@Override
 	public void close() {
-		// do nothing
+		if (phpt_index!=null)
+			phpt_index.close();
+	}
+	
+	/** returns index of PHPT results in result-pack or NULL if it has none (@see PhpResultPackWriter#writePhptIndex)
+	 * 
+	 * @see PhptResultIndex#query
+	 * @return
+	 */
+	public PhptResultIndex getPhptIndex() {
+		return phpt_index;
+	}
+	
+	/** finds PHPT results in all hosts, test-packs and scenario sets of result-pack, only reading the index
+	 * 
+	 * ex: queryPhpt(new PhptResultIndex.Query().status(EPhptTestStatus.FAIL).extension("standard").runTime(1000000, -1))
+	 * 
+	 * @param query
+	 * @return
+	 */
+	public List<PhptResultIndex.Hit> queryPhpt(PhptResultIndex.Query query) {
+		if (phpt_index==null)
+			return new LinkedList<PhptResultIndex.Hit>();
+		return phpt_index.query(query);
 	}
 
 	@Override
@@ -343,6 +400,20 @@ public class PhpResultPackReader extends PhpResultPack {
 	public PhpBuildInfo getBuildInfo() {
 		return build_info;
 	}
+	
+	@Override
+	public Collection<PerformanceTestResult> getPerformance(AHost host) {
+		LinkedList<PerformanceTestResult> results = perf_result_map.get(host.getName().toLowerCase());
+		return results == null ? new LinkedList<PerformanceTestResult>() : results;
+	}
+	
+	@Override
+	public Collection<PerformanceTestResult> getPerformance() {
+		LinkedList<PerformanceTestResult> out = new LinkedList<PerformanceTestResult>();
+		for ( LinkedList<PerformanceTestResult> results : perf_result_map.values() )
+			out.addAll(results);
+		return out;
+	}
 
 	@Override
 	public AbstractPhpUnitRW getPhpUnit(AHost host, String test_pack_name_and_version, ScenarioSetSetup scenario_set) {
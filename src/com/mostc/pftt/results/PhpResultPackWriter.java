@@ -8,7 +8,13 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.github.mattficken.io.StringUtil;
 import com.mostc.pftt.host.AHost;
@@ -28,7 +34,6 @@ import com.mostc.pftt.model.ui.EUITestStatus;
 import com.mostc.pftt.model.ui.UITestPack;
 import com.mostc.pftt.scenario.ScenarioSet;
 import com.mostc.pftt.scenario.ScenarioSetSetup;
-import com.mostc.pftt.util.TimerUtil;
 
 /** Writes the result-pack from a test run.
  * 
@@ -43,17 +48,34 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 	protected final HashMap<AHost,HashMap<String,UITestScenarioSetGroup>> ui_test_writer_map;
 	protected final HashMap<AHost,HashMap<ScenarioSetSetup,HashMap<String,PhptResultWriter>>> phpt_writer_map;
 	protected final HashMap<AHost,HashMap<String,PhpUnitScenarioSetGroup>> phpunit_writer_map;
+	protected final HashMap<AHost,LinkedList<PerformanceTestResult>> perf_result_map;
 	protected PrintWriter global_exception_writer;
 	protected LocalConsoleManager cm;
 	protected PhpBuild build;
-	//protected LinkedBlockingQueue<ResultQueueEntry> results;
-	protected LinkedList<ResultQueueEntry> results;
-	protected boolean run_writer_thread = true;
+	/** max results waiting to be written. when full, test threads wait for the writer thread to catch up */
+	public static final int QUEUE_CAPACITY = 8192;
+	/** max entries handled between console output and PhptResultWriter flushes */
+	public static final int MAX_BATCH_SIZE = 256;
+	protected final LinkedBlockingQueue<ResultQueueEntry> results;
+	protected volatile boolean run_writer_thread = true;
+	/** set once writer thread has stopped taking entries. anything queued after that is written by #enqueue */
+	protected volatile boolean writer_finished;
+	/** held while writing entries so entries written by #enqueue don't interleave with writer thread's batch */
+	protected final Object write_lock = new Object();
+	/** entries queued but not handled yet (@see #wait) */
+	protected final AtomicInteger pending_count = new AtomicInteger();
+	protected final AtomicInteger max_queue_depth = new AtomicInteger(), blocked_count = new AtomicInteger(), batch_count = new AtomicInteger();
+	protected final AtomicLong handled_count = new AtomicLong(), total_latency_nanos = new AtomicLong(), max_latency_nanos = new AtomicLong();
+	/** only used by writer thread: console output and PhptResultWriters written to by the current batch */
+	protected final StringBuilder batch_console = new StringBuilder(4096);
+	protected final LinkedHashSet<PhptResultWriter> batch_phpt_writers = new LinkedHashSet<PhptResultWriter>();
 	protected final PhpBuildInfo build_info;
 	protected final EBuildBranch test_pack_branch;
 	protected final String test_pack_version;
 	protected final Thread writer_thread;
 	protected final Config config;
+	/** when each running test was started (@see #notifyStart) so its run time can be recorded with its result */
+	protected final ConcurrentHashMap<PhptTestCase,Long> phpt_start_nanos = new ConcurrentHashMap<PhptTestCase,Long>();
 	
 	protected class UITestScenarioSetGroup {
 		protected final HashMap<String,HashMap<ScenarioSetSetup,UITestWriter>> map;
@@ -114,6 +136,7 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 		ui_test_writer_map = new HashMap<AHost,HashMap<String,UITestScenarioSetGroup>>(16);
 		phpt_writer_map = new HashMap<AHost,HashMap<ScenarioSetSetup,HashMap<String,PhptResultWriter>>>(3);
 		phpunit_writer_map = new HashMap<AHost,HashMap<String,PhpUnitScenarioSetGroup>>(16);
+		perf_result_map = new HashMap<AHost,LinkedList<PerformanceTestResult>>(3);
 		
 		cm.w = this;
 		
@@ -144,35 +167,50 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 			ConsoleManagerUtil.printStackTrace(PhpResultPackWriter.class, cm, ex);
 		}
 		
-		results = new LinkedList<ResultQueueEntry>();//new LinkedBlockingQueue<ResultQueueEntry>();
+		results = new LinkedBlockingQueue<ResultQueueEntry>(QUEUE_CAPACITY);
 		
 		global_exception_writer = new PrintWriter(new FileWriter(this.telem_dir+"/GLOBAL_EXCEPTIONS.txt"));
 		
-		writer_thread = new Thread() {
+		writer_thread = new Thread("PhpResultPackWriter") {
 				@Override
 				public void run() {
-					ResultQueueEntry q = null;
-					
-					while (run_writer_thread || !results.isEmpty()) {
-						try {
-							synchronized(results) {
-								q = results.isEmpty() ? null : results.removeFirst();
-							}
-						} catch ( Exception ex ) {
-						}
-						if (q==null) {
+					ArrayList<ResultQueueEntry> batch = new ArrayList<ResultQueueEntry>(MAX_BATCH_SIZE);
+					boolean closed = false;
+					try {
+						while (!closed) {
 							try {
-								Thread.sleep(500);
-							} catch (InterruptedException e) {
+								// wait for next entry, then take any others that are ready so they're written together
+								batch.add(results.take());
+							} catch ( InterruptedException ex ) {
+								continue;
 							}
-							continue;
-						}
-						try {
-							q.handle();
-						} catch ( Exception ex ) {
-							ConsoleManagerUtil.printStackTrace(PhpResultPackWriter.class, ex);
+							results.drainTo(batch, MAX_BATCH_SIZE-1);
+							synchronized(write_lock) {
+								ResultQueueEntry close_entry = null;
+								int i = 0;
+								for (;;) {
+									for ( ; i < batch.size() ; i++ ) {
+										ResultQueueEntry q = batch.get(i);
+										if (q instanceof CloseQueueEntry)
+											close_entry = q; // close after everything else is written
+										else
+											handle(q);
+									}
+									// results queued while closing may be behind the CloseQueueEntry: write them too
+									if (close_entry==null || results.drainTo(batch)==0)
+										break;
+								}
+								if (close_entry!=null) {
+									handle(close_entry);
+									writer_finished = true;
+									closed = true;
+								}
+								endBatch(batch.size());
+							}
+							batch.clear(); // for gc
 						}
-						q = null; // for gc
+					} finally {
+						writer_finished = true;
 					}
 				}
 			};
@@ -180,9 +218,141 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 	}
 
 	protected abstract class ResultQueueEntry {
+		/** when entry was queued (@see #getAverageLatencyMillis) */
+		protected long queued_nanos;
+		
 		public abstract void handle() throws IllegalArgumentException, IllegalStateException, IOException;
 	}
 	
+	/** queues entry for the writer thread. blocks if the queue is full so results can't pile up in memory
+	 * faster than they can be written.
+	 * 
+	 * @param e
+	 */
+	protected void enqueue(ResultQueueEntry e) {
+		e.queued_nanos = System.nanoTime();
+		pending_count.incrementAndGet();
+		if (!run_writer_thread || !offer(e)) {
+			// writer thread is closing or died: write it here rather than lose it
+			write(e);
+			return;
+		}
+		if (!run_writer_thread || writer_finished) {
+			// writer thread may have taken its last entries before this one was queued
+			synchronized(write_lock) {
+				if ((writer_finished || !writer_thread.isAlive()) && results.remove(e))
+					write(e);
+			}
+		}
+		final int depth = results.size();
+		int max;
+		while (depth > (max = max_queue_depth.get())) {
+			if (max_queue_depth.compareAndSet(max, depth))
+				break;
+		}
+	} // end protected void enqueue
+	
+	/** queues entry, waiting while the queue is full.
+	 * 
+	 * @param e
+	 * @return FALSE if writer thread stopped before there was room for the entry
+	 */
+	protected boolean offer(ResultQueueEntry e) {
+		if (results.offer(e))
+			return true;
+		blocked_count.incrementAndGet();
+		boolean interrupted = false;
+		try {
+			// check periodically that writer thread is still there to make room
+			while (!writer_finished && writer_thread.isAlive()) {
+				try {
+					if (results.offer(e, 1, TimeUnit.SECONDS))
+						return true;
+				} catch ( InterruptedException ex ) {
+					// don't lose the result
+					interrupted = true;
+				}
+			}
+			return false;
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+	
+	/** writes entry in the calling thread (@see #enqueue) */
+	protected void write(ResultQueueEntry e) {
+		synchronized(write_lock) {
+			handle(e);
+			endBatch(1);
+		}
+	}
+	
+	protected void handle(ResultQueueEntry e) {
+		try {
+			e.handle();
+		} catch ( Exception ex ) {
+			ConsoleManagerUtil.printStackTrace(PhpResultPackWriter.class, ex);
+		}
+		recordLatency(e);
+	}
+	
+	protected void recordLatency(ResultQueueEntry e) {
+		final long latency = System.nanoTime() - e.queued_nanos;
+		handled_count.incrementAndGet();
+		total_latency_nanos.addAndGet(latency);
+		long max;
+		while (latency > (max = max_latency_nanos.get())) {
+			if (max_latency_nanos.compareAndSet(max, latency))
+				break;
+		}
+	}
+	
+	/** writes console output for the whole batch at once and flushes each PhptResultWriter the batch wrote to once */
+	protected void endBatch(int size) {
+		batch_count.incrementAndGet();
+		if (batch_console.length() > 0) {
+			System.out.print(batch_console);
+			batch_console.setLength(0);
+		}
+		for ( PhptResultWriter w : batch_phpt_writers )
+			w.flush();
+		batch_phpt_writers.clear();
+		if (pending_count.addAndGet(-size) <= 0) {
+			synchronized(pending_count) {
+				pending_count.notifyAll();
+			}
+		}
+	}
+	
+	/** number of entries waiting for the writer thread */
+	public int getQueueDepth() {
+		return results.size();
+	}
+	
+	public int getMaxQueueDepth() {
+		return max_queue_depth.get();
+	}
+	
+	/** number of times a test thread had to wait because the queue was full */
+	public int getBlockedCount() {
+		return blocked_count.get();
+	}
+	
+	public int getBatchCount() {
+		return batch_count.get();
+	}
+	
+	/** average time from queuing an entry until it was written */
+	public double getAverageLatencyMillis() {
+		final long count = handled_count.get();
+		return count == 0 ? 0.0d : ((double)total_latency_nanos.get()) / count / 1000000.0d;
+	}
+	
+	public double getMaxLatencyMillis() {
+		return max_latency_nanos.get() / 1000000.0d;
+	}
+	
 	protected abstract class HSResultQueueEntry extends ResultQueueEntry {
 		protected final AHost this_host;
 		protected final ScenarioSetSetup this_scenario_set_setup;
@@ -240,7 +410,7 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 			
 			w.addResult(test_name, comment, status, verified_html, screenshot_png, sapi_output, sapi_config);
 			
-			System.out.println(_toString(status)+" "+test_name); // TODO
+			batch_console.append(_toString(status)).append(' ').append(test_name).append('\n');
 		}
 		
 	} // end protected class UIResultQueueEntry
@@ -352,9 +522,9 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 			this_result.code_coverage = null;
 			
 			// show on console
-			// TODO
 			w.count++;
-			System.out.println(w.count+" "+_toString(this_result.status)+" "+this_result.test_case);
+			batch_console.append(w.count).append(' ').append(_toString(this_result.status)).append(' ').append(this_result.test_case).append('\n');
+			batch_phpt_writers.add(w);
 			
 			if (cm!=null) {
 				// show in tui/gui (if open)
@@ -378,7 +548,7 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 			b = new HashMap<String,PhptResultWriter>();
 			phpt_writer_map.put(this_host, a);
 			a.put(this_scenario_set_setup, b);
-			w = new PhptResultWriter(phpt_telem_dir(this_host, this_scenario_set_setup, test_pack_name), this_host, this_scenario_set_setup, build_info, test_pack_branch, test_pack_version);
+			w = new PhptResultWriter(phpt_telem_dir(this_host, this_scenario_set_setup, test_pack_name), this_host, this_scenario_set_setup, build_info, test_pack_branch, test_pack_version, cm.isBinaryResultPack());
 			b.put(test_pack_name, w);
 		} else {
 			b = a.get(this_scenario_set_setup);
@@ -387,7 +557,7 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 			else
 				w = b.get(test_pack_name);
 			if (w==null) {
-				w = new PhptResultWriter(phpt_telem_dir(this_host, this_scenario_set_setup, test_pack_name), this_host, this_scenario_set_setup, build_info, test_pack_branch, test_pack_version);
+				w = new PhptResultWriter(phpt_telem_dir(this_host, this_scenario_set_setup, test_pack_name), this_host, this_scenario_set_setup, build_info, test_pack_branch, test_pack_version, cm.isBinaryResultPack());
 				b.put(test_pack_name, w);
 			}
 		}
@@ -418,9 +588,8 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 			w.writeResult(cm.phpunit_gui!=null, this_result);
 			
 			// show on console
-			// TODO
 			w.count++;
-			System.out.println(w.count+" "+_toString(this_result.status)+" "+this_result.test_case);
+			batch_console.append(w.count).append(' ').append(_toString(this_result.status)).append(' ').append(this_result.test_case).append('\n');
 			
 			if (cm!=null) {
 				cm.showResult(this_host, 0, w.count, this_result);
@@ -482,6 +651,31 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 		return b;
 	} // end protected PhpUnitScenarioSetGroup getCreatePhpUnitResultWriter
 	
+	protected class PerformanceResultQueueEntry extends HSResultQueueEntry {
+		protected final PerformanceTestResult this_result;
+		
+		protected PerformanceResultQueueEntry(AHost this_host, ScenarioSetSetup this_scenario_set_setup, PerformanceTestResult this_result) {
+			super(this_host, this_scenario_set_setup);
+			this.this_result = this_result;
+		}
+		
+		@Override
+		public void handle() throws IllegalArgumentException, IllegalStateException, IOException {
+			this_result.write(new File(perf_telem_dir(this_host, this_scenario_set_setup), StringUtil.max(this_result.test_name, 70)+".xml"));
+			
+			synchronized(perf_result_map) {
+				LinkedList<PerformanceTestResult> results = perf_result_map.get(this_host);
+				if (results==null)
+					perf_result_map.put(this_host, results = new LinkedList<PerformanceTestResult>());
+				results.add(this_result);
+			}
+			
+			// show on console
+			batch_console.append("PERF ").append(this_result).append('\n');
+		}
+		
+	} // end protected class PerformanceResultQueueEntry
+	
 	protected class PhptTestStartQueueEntry extends PhptQueueEntry {
 		protected final String test_name;
 		
@@ -492,7 +686,9 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 		
 		@Override
 		public void handle() throws IllegalArgumentException, IllegalStateException, IOException {
-			getCreatePhptResultWriter(this_host, this_scenario_set_setup, src_test_pack).notifyStart(test_name);
+			PhptResultWriter w = getCreatePhptResultWriter(this_host, this_scenario_set_setup, src_test_pack);
+			w.notifyStart(test_name);
+			batch_phpt_writers.add(w);
 		}
 		
 	} // end protected class PhptTestStartQueueEntry
@@ -543,26 +739,21 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 	
 	@Override
 	public void notifyStart(AHost host, ScenarioSetSetup scenario_set_setup, PhptSourceTestPack src_test_pack, PhptTestCase test_case) {
+		phpt_start_nanos.put(test_case, System.nanoTime());
 		PhptTestStartQueueEntry e = new PhptTestStartQueueEntry(host, scenario_set_setup, src_test_pack, test_case.getName());
-		synchronized(results) {
-			results.add(e);
-		}
+		enqueue(e);
 	}
 	
 	@Override
 	public void notifyStart(AHost host, ScenarioSetSetup scenario_set_setup, PhpUnitSourceTestPack src_test_pack, PhpUnitTestCase test_case) {
 		PhpUnitTestStartQueueEntry e = new PhpUnitTestStartQueueEntry(host, scenario_set_setup, src_test_pack, test_case.getName());
-		synchronized(results) {
-			results.add(e);
-		}
+		enqueue(e);
 	}
 	
 	@Override
 	public void notifyStart(AHost host, ScenarioSetSetup scenario_set_setup, UITestPack test_pack, String web_browser_name_and_version, String test_name) {
 		UITestStartQueueEntry e = new UITestStartQueueEntry(host, scenario_set_setup, test_pack, web_browser_name_and_version, test_name);
-		synchronized(e) {
-			results.add(e);
-		}
+		enqueue(e);
 	}
 	
 	public File getResultPackPath() {
@@ -575,9 +766,7 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 	
 	public void addResult(AHost this_host, ScenarioSetSetup this_scenario_set_setup, String test_name, String comment, EUITestStatus status, String verified_html, byte[] screenshot_png, UITestPack test_pack, String web_browser_name_and_version, String sapi_output, String sapi_config) {
 		UIResultQueueEntry e = new UIResultQueueEntry(this_host, this_scenario_set_setup, test_name, comment, status, verified_html, screenshot_png, test_pack, web_browser_name_and_version, sapi_output, sapi_config);
-		synchronized(e) {
-			results.add(e);
-		}
+		enqueue(e);
 	}
 	
 	public void addTestException(AHost this_host, ScenarioSetSetup this_scenario_set_setup, PhptTestCase test_file, Throwable ex, Object a) {
@@ -607,11 +796,13 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 	
 	@Override
 	public void addResult(AHost this_host, ScenarioSetSetup this_scenario_set_setup, PhptSourceTestPack src_test_pack, PhptTestResult result) {
+		// record run time (used by -order_by_run_time console option in later test runs)
+		Long start_nanos = phpt_start_nanos.remove(result.test_case);
+		if (start_nanos!=null && result.run_time_micros==0f)
+			result.run_time_micros = (System.nanoTime() - start_nanos.longValue()) / 1000f;
 		// enqueue result to be handled by another thread to avoid delaying every phpt thread
 		PhptResultQueueEntry e = new PhptResultQueueEntry(this_host, this_scenario_set_setup, src_test_pack, result);
-		synchronized(results) {
-			results.add(e);
-		}
+		enqueue(e);
 	}
 	
 	// TODO rename these
@@ -629,6 +820,15 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 			return new File(this_host.joinIntoOnePath(telem_dir.getAbsolutePath(), this_host.getName(), "PhpUnit", test_pack.getNameAndVersionString().intern(), StringUtil.max(this_scenario_set_setup.getNameWithVersionInfo(), 70)));
 	}
 	
+	protected File perf_telem_dir(AHost this_host, ScenarioSetSetup this_scenario_set_setup) {
+		return new File(this_host.joinIntoOnePath(
+				telem_dir.getAbsolutePath(), 
+				this_host.getName(), 
+				"Performance", 
+				StringUtil.max(this_scenario_set_setup.getNameWithVersionInfo(), 70)
+			));
+	}
+	
 	protected File phpt_telem_dir(AHost this_host, ScenarioSetSetup this_scenario_set_setup, String test_pack_name) {
 		return new File(this_host.joinIntoOnePath(
 				telem_dir.getAbsolutePath(), 
@@ -651,9 +851,12 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 	@Override
 	public void addResult(AHost host, ScenarioSetSetup scenario_set_setup, PhpUnitTestResult result) {
 		PhpUnitResultQueueEntry e = new PhpUnitResultQueueEntry(host, scenario_set_setup, result);
-		synchronized(results) {
-			results.add(e);
-		}
+		enqueue(e);
+	}
+	
+	public void addResult(AHost host, ScenarioSetSetup scenario_set_setup, PerformanceTestResult result) {
+		PerformanceResultQueueEntry e = new PerformanceResultQueueEntry(host, scenario_set_setup, result);
+		enqueue(e);
 	}
 	
 	protected class NotifyPhptFinishedEntry extends PhptQueueEntry {
@@ -664,16 +867,16 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 
 		@Override
 		public void handle() throws IllegalArgumentException, IllegalStateException, IOException {
-			getCreatePhptResultWriter(this_host, this_scenario_set_setup, src_test_pack).close();
+			PhptResultWriter w = getCreatePhptResultWriter(this_host, this_scenario_set_setup, src_test_pack);
+			w.close();
+			batch_phpt_writers.remove(w);
 		}
 		
 	}
 	
 	public void notifyPhptFinished(AHost host, ScenarioSetSetup scenario_set, PhptSourceTestPack src_test_pack) {
 		NotifyPhptFinishedEntry e = new NotifyPhptFinishedEntry(host, scenario_set, src_test_pack);
-		synchronized(e) {
-			results.add(e);
-		}
+		enqueue(e);
 	}
 	
 	protected class NotifyPhpUnitFinishedEntry extends PhpUnitQueueEntry {
@@ -693,9 +896,7 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 	
 	public void notifyPhpUnitFinished(AHost host, ScenarioSetSetup scenario_set_setup, PhpUnitSourceTestPack src_test_pack) {
 		NotifyPhpUnitFinishedEntry e = new NotifyPhpUnitFinishedEntry(host, scenario_set_setup, src_test_pack);
-		synchronized(results) {
-			results.add(e);
-		}
+		enqueue(e);
 	}
 	
 	protected class NotifyUITestFinishedEntry extends UIQueueEntry {
@@ -714,9 +915,7 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 	
 	public void notifyUITestFinished(AHost host, ScenarioSetSetup scenario_set_setup, UITestPack test_pack, String web_browser_name_and_version) {
 		NotifyUITestFinishedEntry e = new NotifyUITestFinishedEntry(host, scenario_set_setup, test_pack, web_browser_name_and_version);
-		synchronized(results) {
-			results.add(e);
-		}
+		enqueue(e);
 	}
 	
 	protected class CloseQueueEntry extends ResultQueueEntry {
@@ -735,15 +934,19 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 	
 	public void close(boolean block) {
 		if (run_writer_thread) {
+			// clear flag first so #enqueue writes anything that comes after the CloseQueueEntry itself
 			run_writer_thread = false;
 			CloseQueueEntry e = new CloseQueueEntry();
-			synchronized(results) {
-				results.add(e);
-			}
-			if (block) {
-				while (!results.isEmpty()) {
-					if (!TimerUtil.trySleepMillis(100))
-						break;
+			e.queued_nanos = System.nanoTime();
+			pending_count.incrementAndGet();
+			if (!offer(e)) {
+				// writer thread died: close here
+				write(e);
+			} else if (block) {
+				try {
+					writer_thread.join();
+				} catch ( InterruptedException ex ) {
+					Thread.currentThread().interrupt();
 				}
 			}
 		} else {
@@ -751,17 +954,30 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 		}
 	}
 	
+	/** waits until all queued results have been written
+	 * 
+	 * @param host
+	 * @param scenario_set
+	 */
 	public void wait(AHost host, ScenarioSet scenario_set) {
-		// TODO
-		while (!results.isEmpty()) {
-			if (!TimerUtil.trySleepMillis(100))
-				break;
+		// TODO only wait for results for host and scenario_set
+		synchronized(pending_count) {
+			while (pending_count.get() > 0 && writer_thread.isAlive()) {
+				try {
+					pending_count.wait(1000);
+				} catch ( InterruptedException ex ) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
 		}
 	}
 	
 	protected void doClose() {
 		run_writer_thread = false;
 		
+		cm.println(EPrintType.CLUE, getClass(), "Result Queue: batches="+getBatchCount()+" max_depth="+getMaxQueueDepth()+" blocked="+getBlockedCount()+" avg_latency_millis="+getAverageLatencyMillis()+" max_latency_millis="+getMaxLatencyMillis());
+		
 		try {
 			global_exception_writer.close();
 		} catch ( Exception ex ) {
@@ -773,8 +989,37 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 		} catch ( Exception ex ) {
 			ConsoleManagerUtil.printStackTrace(PhpResultPackWriter.class, cm, ex);
 		}
+		
+		writePhptIndex();
 	} // end protected void doClose
 	
+	/** writes index of PHPT results, so PhpResultPackReader doesn't have to read every scenario set to open
+	 * the result-pack. skipped if any scenario set wasn't finished (its tally and status lists aren't written).
+	 * 
+	 * @see PhptResultIndex
+	 */
+	protected void writePhptIndex() {
+		boolean any = false;
+		for ( HashMap<ScenarioSetSetup,HashMap<String,PhptResultWriter>> map_a : phpt_writer_map.values() ) {
+			for ( HashMap<String,PhptResultWriter> map_b : map_a.values() ) {
+				for ( PhptResultWriter w : map_b.values() ) {
+					if (!w.isClosed()) {
+						cm.println(EPrintType.CLUE, getClass(), "Not writing index of PHPT results, scenario set not finished: "+w.getPath());
+						return;
+					}
+					any = true;
+				}
+			}
+		}
+		if (!any)
+			return;
+		try {
+			PhptResultIndex.write(cm, telem_dir);
+		} catch ( Exception ex ) {
+			cm.addGlobalException(EPrintType.SKIP_OPTIONAL, getClass(), "writePhptIndex", ex, "unable to write index of PHPT results", telem_dir);
+		}
+	}
+	
 	@Override
 	public Collection<AbstractPhptRW> getPHPT(AHost host, String test_pack_name) {
 		HashMap<ScenarioSetSetup,HashMap<String,PhptResultWriter>> map_a = phpt_writer_map.get(host);
@@ -1014,6 +1259,24 @@ public class PhpResultPackWriter extends PhpResultPack implements ITestResultRec
 		}
 	}
 
+	@Override
+	public Collection<PerformanceTestResult> getPerformance(AHost host) {
+		synchronized(perf_result_map) {
+			LinkedList<PerformanceTestResult> results = perf_result_map.get(host);
+			return results == null ? new LinkedList<PerformanceTestResult>() : new ArrayList<PerformanceTestResult>(results);
+		}
+	}
+	
+	@Override
+	public Collection<PerformanceTestResult> getPerformance() {
+		LinkedList<PerformanceTestResult> out = new LinkedList<PerformanceTestResult>();
+		synchronized(perf_result_map) {
+			for ( LinkedList<PerformanceTestResult> results : perf_result_map.values() )
+				out.addAll(results);
+		}
+		return out;
+	}
+	
 	@Override
 	public Collection<AHost> getHosts() {
 		// TODO combine phpunit_writer_map and uitest_writer_map
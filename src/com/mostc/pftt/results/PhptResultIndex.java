@@ -0,0 +1,662 @@
+package com.mostc.pftt.results;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mostc.pftt.model.core.EPhptTestStatus;
+import com.mostc.pftt.model.core.PhptSourceTestPack;
+
+/** On-disk index of the PHPT results in a result-pack, written when the result-pack is closed and then memory-mapped.
+ *
+ * Stores the tally, and the status and run time of every test, for each scenario set in the result-pack so it
+ * can be opened without reading tally.xml and every status list of every scenario set. The results themselves
+ * are read only when asked for (@see Hit#readResult).
+ *
+ * File format (big-endian):
+ *
+ *   header:    int FILE_MAGIC, int FILE_VERSION, long entries_offset, int entry_count, long pool_offset, int pool_size
+ *   extension: int count, count * UTF extension_name
+ *   directory: int count, count * (UTF host, UTF test_pack, UTF scenario_set, UTF os_name, long stamp, int[STATUS_COUNT] tally, int first_entry, int entry_count)
+ *   entries:   entry_count * (int name_offset, float run_time_micros, short extension, byte status, byte 0) sorted by test name within each scenario set
+ *   pool:      (short length, UTF-8 bytes) for each distinct test name
+ *
+ * The index is ignored if a scenario set was added, removed or changed after it was written (@see #getStamp).
+ * Opening a result-pack never writes to it, so read-only result-packs can be opened too.
+ *
+ * @see PhpResultPackWriter#doClose
+ * @see PhpResultPackReader#getPhptIndex
+ * @author Matt Ficken
+ *
+ */
+
+public class PhptResultIndex {
+	public static final String FILE_NAME = "phpt_index.bin";
+	protected static final int FILE_MAGIC = 0x50465249;
+	protected static final int FILE_VERSION = 1;
+	protected static final int ENTRY_SIZE = 12;
+	protected static final EPhptTestStatus[] STATUSES = EPhptTestStatus.values();
+	//
+	protected final File file;
+	protected final String[] extensions;
+	protected final LinkedHashMap<String,ScenarioSetIndex> scenario_sets;
+	protected ByteBuffer entries, pool;
+	
+	protected PhptResultIndex(File file, String[] extensions) {
+		this.file = file;
+		this.extensions = extensions;
+		scenario_sets = new LinkedHashMap<String,ScenarioSetIndex>();
+	}
+	
+	/** index of the results of 1 scenario set */
+	public static class ScenarioSetIndex {
+		protected final PhptResultIndex index;
+		protected final File dir;
+		public final String host_name, test_pack_name, scenario_set_name, os_name;
+		protected final long stamp;
+		protected final int[] tally;
+		protected final int first_entry, entry_count;
+		/** @see #getSegment */
+		protected PhptResultSegmentReader segment;
+		protected boolean segment_opened;
+		
+		protected ScenarioSetIndex(PhptResultIndex index, File dir, String host_name, String test_pack_name, String scenario_set_name, String os_name, long stamp, int[] tally, int first_entry, int entry_count) {
+			this.index = index;
+			this.dir = dir;
+			this.host_name = host_name;
+			this.test_pack_name = test_pack_name;
+			this.scenario_set_name = scenario_set_name;
+			this.os_name = os_name;
+			this.stamp = stamp;
+			this.tally = tally;
+			this.first_entry = first_entry;
+			this.entry_count = entry_count;
+		}
+		
+		/** same as PhptResultReader#count */
+		public int count(EPhptTestStatus status) {
+			return tally[status.ordinal()];
+		}
+		
+		/** same as PhptResultReader#getTestNames
+		 *
+		 * @param status
+		 * @return sorted list of tests
+		 */
+		public List<String> getTestNames(EPhptTestStatus status) {
+			ArrayList<String> names = new ArrayList<String>(count(status));
+			final int end = first_entry + entry_count;
+			for ( int i=first_entry ; i < end ; i++ ) {
+				if (index.getStatus(i)==status)
+					names.add(index.getTestName(i));
+			}
+			return names;
+		}
+		
+		/** returns the run time of every test (test name => microseconds) */
+		public void readRunTimes(Map<String,Float> run_times) {
+			final int end = first_entry + entry_count;
+			for ( int i=first_entry ; i < end ; i++ )
+				run_times.put(index.getTestName(i), index.getRunTime(i));
+		}
+		
+		/** returns segment storing the results of scenario set or NULL if results are stored in XML files
+		 * 
+		 * segment is opened the first time and kept open for the other results read from it (@see PhptResultIndex#close)
+		 * 
+		 * @return
+		 * @throws IOException
+		 */
+		public synchronized PhptResultSegmentReader getSegment() throws IOException {
+			if (!segment_opened) {
+				segment_opened = true;
+				if (PhptResultSegment.exists(dir))
+					segment = PhptResultSegmentReader.open(new File(dir, PhptResultSegment.FILE_NAME));
+			}
+			return segment;
+		}
+		
+		/** reads the result of 1 test (from the result segment or its XML file)
+		 * 
+		 * @param test_name
+		 * @param test_pack - optional, to find the PhptTestCase of the result
+		 * @return NULL if result wasn't stored (@see -no_result_file_for_pass_xskip_skip)
+		 * @throws Exception
+		 */
+		public PhptTestResult readResult(String test_name, PhptSourceTestPack test_pack) throws Exception {
+			PhptResultSegmentReader segment = getSegment();
+			if (segment!=null)
+				return segment.readResult(test_name, test_pack);
+			return PhptResultReader.readResultFile(dir, test_name, test_pack);
+		}
+		
+		protected synchronized void close() {
+			if (segment!=null) {
+				segment.close();
+				segment = null;
+			}
+			segment_opened = false;
+		}
+		
+		public File getDir() {
+			return dir;
+		}
+		
+		protected String getKey() {
+			return createKey(host_name, test_pack_name, scenario_set_name);
+		}
+	
+	} // end public static class ScenarioSetIndex
+	
+	/** criteria for #query. a test must match all that are set. */
+	public static class Query {
+		protected EPhptTestStatus[] statuses;
+		protected String prefix, extension, host_name, test_pack_name, scenario_set_name;
+		protected float min_run_time_micros = -1, max_run_time_micros = -1;
+		
+		public Query status(EPhptTestStatus... statuses) {
+			this.statuses = statuses;
+			return this;
+		}
+		
+		/** test name starts with prefix (ex: ext/standard/tests/file/) */
+		public Query prefix(String prefix) {
+			this.prefix = prefix;
+			return this;
+		}
+		
+		/** name of extension (ex: standard) or top-level directory of test-pack for other tests (ex: Zend) */
+		public Query extension(String extension) {
+			this.extension = extension;
+			return this;
+		}
+		
+		/** run time in microseconds. -1 for no limit */
+		public Query runTime(float min_run_time_micros, float max_run_time_micros) {
+			this.min_run_time_micros = min_run_time_micros;
+			this.max_run_time_micros = max_run_time_micros;
+			return this;
+		}
+		
+		public Query host(String host_name) {
+			this.host_name = host_name;
+			return this;
+		}
+		
+		public Query testPack(String test_pack_name) {
+			this.test_pack_name = test_pack_name;
+			return this;
+		}
+		
+		public Query scenarioSet(String scenario_set_name) {
+			this.scenario_set_name = scenario_set_name;
+			return this;
+		}
+		
+		protected boolean matches(ScenarioSetIndex s) {
+			return (host_name==null||host_name.equalsIgnoreCase(s.host_name))
+					&& (test_pack_name==null||test_pack_name.equals(s.test_pack_name))
+					&& (scenario_set_name==null||scenario_set_name.equalsIgnoreCase(s.scenario_set_name));
+		}
+	
+	} // end public static class Query
+	
+	/** test matched by #query */
+	public static class Hit {
+		public final ScenarioSetIndex scenario_set;
+		public final String test_name;
+		public final EPhptTestStatus status;
+		public final float run_time_micros;
+		
+		protected Hit(ScenarioSetIndex scenario_set, String test_name, EPhptTestStatus status, float run_time_micros) {
+			this.scenario_set = scenario_set;
+			this.test_name = test_name;
+			this.status = status;
+			this.run_time_micros = run_time_micros;
+		}
+		
+		/** reads the result from the result-pack
+		 *
+		 * @param test_pack - optional, to find the PhptTestCase of the result
+		 * @return NULL if result wasn't stored (@see -no_result_file_for_pass_xskip_skip)
+		 * @throws Exception
+		 */
+		public PhptTestResult readResult(PhptSourceTestPack test_pack) throws Exception {
+			return scenario_set.readResult(test_name, test_pack);
+		}
+		
+		@Override
+		public String toString() {
+			return test_name;
+		}
+	
+	} // end public static class Hit
+	
+	/** returns the tests matching the query from all scenario sets
+	 *
+	 * only the index is read, not the results
+	 *
+	 * @param query
+	 * @return
+	 */
+	public List<Hit> query(Query query) {
+		ArrayList<Hit> hits = new ArrayList<Hit>();
+		int ext_id = -1;
+		if (query.extension!=null) {
+			ext_id = Arrays.asList(extensions).indexOf(query.extension);
+			if (ext_id==-1)
+				// no tests of extension
+				return hits;
+		}
+		for ( ScenarioSetIndex s : scenario_sets.values() ) {
+			if (!query.matches(s))
+				continue;
+			int i = s.first_entry;
+			final int end = s.first_entry + s.entry_count;
+			if (query.prefix!=null)
+				// entries are sorted by name: skip to the first that could match
+				i = findFirst(query.prefix, s.first_entry, end);
+			for ( ; i < end ; i++ ) {
+				String test_name = null;
+				if (query.prefix!=null) {
+					test_name = getTestName(i);
+					if (!test_name.startsWith(query.prefix))
+						break;
+				}
+				EPhptTestStatus status = getStatus(i);
+				if (query.statuses!=null&&!contains(query.statuses, status))
+					continue;
+				if (ext_id!=-1&&getExtensionId(i)!=ext_id)
+					continue;
+				float run_time = getRunTime(i);
+				if (query.min_run_time_micros!=-1&&run_time<query.min_run_time_micros)
+					continue;
+				if (query.max_run_time_micros!=-1&&run_time>query.max_run_time_micros)
+					continue;
+				hits.add(new Hit(s, test_name==null?getTestName(i):test_name, status, run_time));
+			}
+		}
+		return hits;
+	} // end public List<Hit> query
+	
+	protected static boolean contains(EPhptTestStatus[] statuses, EPhptTestStatus status) {
+		for ( EPhptTestStatus s : statuses ) {
+			if (s==status)
+				return true;
+		}
+		return false;
+	}
+	
+	/** binary search for first entry whose test name is >= prefix */
+	protected int findFirst(String prefix, int low, int high) {
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getTestName(mid).compareTo(prefix) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+	public ScenarioSetIndex getScenarioSet(String host_name, String test_pack_name, String scenario_set_name) {
+		return scenario_sets.get(createKey(host_name, test_pack_name, scenario_set_name));
+	}
+	
+	public Collection<ScenarioSetIndex> getScenarioSets() {
+		return Collections.unmodifiableCollection(scenario_sets.values());
+	}
+	
+	/** names of the extensions that have tests in the result-pack */
+	public List<String> getExtensions() {
+		return Collections.unmodifiableList(Arrays.asList(extensions));
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	/** closes the result segments opened to read results (@see ScenarioSetIndex#getSegment) */
+	public void close() {
+		for ( ScenarioSetIndex s : scenario_sets.values() )
+			s.close();
+	}
+	
+	protected String getTestName(int i) {
+		final int offset = entries.getInt(i*ENTRY_SIZE);
+		byte[] bytes = new byte[pool.getShort(offset) & 0xFFFF];
+		// absolute bulk get: use a duplicate so this is thread-safe
+		ByteBuffer b = pool.duplicate();
+		b.position(offset+2);
+		b.get(bytes);
+		try {
+			return new String(bytes, "UTF-8");
+		} catch ( UnsupportedEncodingException ex ) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	protected float getRunTime(int i) {
+		return entries.getFloat(i*ENTRY_SIZE + 4);
+	}
+	
+	protected int getExtensionId(int i) {
+		return entries.getShort(i*ENTRY_SIZE + 8);
+	}
+	
+	protected EPhptTestStatus getStatus(int i) {
+		return STATUSES[entries.get(i*ENTRY_SIZE + 10)];
+	}
+	
+	/** name of extension for ext/ tests or the top-level directory of the test-pack (ex: Zend, tests, sapi) */
+	public static String getExtensionName(String test_name) {
+		int i = test_name.indexOf('/');
+		if (i==-1)
+			return "";
+		if (test_name.startsWith("ext/")) {
+			int j = test_name.indexOf('/', i+1);
+			return j==-1 ? test_name.substring(i+1) : test_name.substring(i+1, j);
+		}
+		return test_name.substring(0, i);
+	}
+	
+	protected static String createKey(String host_name, String test_pack_name, String scenario_set_name) {
+		return host_name.toLowerCase()+"/"+test_pack_name+"/"+scenario_set_name.toLowerCase();
+	}
+	
+	/** changes whenever the results of a scenario set change */
+	protected static long getStamp(File scenario_dir) {
+		long stamp = scenario_dir.lastModified();
+		stamp = Math.max(stamp, new File(scenario_dir, "tally.xml").lastModified());
+		stamp = Math.max(stamp, new File(scenario_dir, "ALL.csv").lastModified());
+		stamp = Math.max(stamp, new File(scenario_dir, PhptResultSegment.FILE_NAME).lastModified());
+		return stamp;
+	}
+	
+	/** finds the PHPT scenario sets in the result-pack: host/PHPT/test-pack/scenario-set
+	 *
+	 * @param result_pack_dir
+	 * @return key => scenario set dir
+	 */
+	protected static LinkedHashMap<String,File> findScenarioSets(File result_pack_dir) {
+		LinkedHashMap<String,File> out = new LinkedHashMap<String,File>();
+		File[] host_dirs = result_pack_dir.listFiles();
+		if (host_dirs==null)
+			return out;
+		for ( File host_dir : host_dirs ) {
+			File[] type_dirs = host_dir.listFiles();
+			if (type_dirs==null)
+				continue;
+			for ( File phpt_dir : type_dirs ) {
+				if (!phpt_dir.isDirectory() || !phpt_dir.getName().equalsIgnoreCase("phpt"))
+					continue;
+				File[] test_pack_dirs = phpt_dir.listFiles();
+				if (test_pack_dirs==null)
+					continue;
+				for ( File test_pack_dir : test_pack_dirs ) {
+					File[] scenario_dirs = test_pack_dir.listFiles();
+					if (scenario_dirs==null)
+						continue;
+					for ( File scenario_dir : scenario_dirs ) {
+						if (scenario_dir.isDirectory())
+							out.put(createKey(host_dir.getName(), test_pack_dir.getName(), scenario_dir.getName()), scenario_dir);
+					}
+				}
+			}
+		}
+		return out;
+	} // end protected static LinkedHashMap<String,File> findScenarioSets
+	
+	/** opens index of result-pack. doesn't write anything to the result-pack.
+	 *
+	 * @param cm
+	 * @param result_pack_dir
+	 * @return NULL if result-pack has no index or it is out of date (then results are read from the scenario sets instead)
+	 */
+	public static PhptResultIndex open(ConsoleManager cm, File result_pack_dir) {
+		File file = new File(result_pack_dir, FILE_NAME);
+		if (!file.isFile())
+			return null;
+		try {
+			return read(file, findScenarioSets(result_pack_dir));
+		} catch ( Exception ex ) {
+			cm.addGlobalException(EPrintType.SKIP_OPTIONAL, PhptResultIndex.class, "open", ex, "unable to read index of result-pack", file);
+		}
+		return null;
+	} // end public static PhptResultIndex open
+	
+	/** writes index of all PHPT scenario sets in result-pack. called once all results are written.
+	 * 
+	 * @see PhpResultPackWriter#doClose
+	 * @param cm
+	 * @param result_pack_dir
+	 * @throws IOException
+	 */
+	public static void write(ConsoleManager cm, File result_pack_dir) throws IOException {
+		build(cm, new File(result_pack_dir, FILE_NAME), findScenarioSets(result_pack_dir));
+	}
+	
+	/** reads index and maps its entries into memory
+	 *
+	 * @param file
+	 * @param dirs - scenario sets in result-pack now
+	 * @return NULL if index is out of date
+	 * @throws IOException
+	 */
+	protected static PhptResultIndex read(File file, LinkedHashMap<String,File> dirs) throws IOException {
+		final long entries_offset, pool_offset;
+		final int entry_count, pool_size;
+		PhptResultIndex index;
+		// read header and directory before mapping anything, so an out of date index isn't left mapped
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt()!=FILE_MAGIC || in.readInt()!=FILE_VERSION)
+				return null;
+			entries_offset = in.readLong();
+			entry_count = in.readInt();
+			pool_offset = in.readLong();
+			pool_size = in.readInt();
+			
+			String[] extensions = new String[in.readInt()];
+			for ( int i=0 ; i < extensions.length ; i++ )
+				extensions[i] = in.readUTF();
+			index = new PhptResultIndex(file, extensions);
+			
+			final int count = in.readInt();
+			if (count!=dirs.size())
+				return null;
+			for ( int i=0 ; i < count ; i++ ) {
+				String host_name = in.readUTF();
+				String test_pack_name = in.readUTF();
+				String scenario_set_name = in.readUTF();
+				String os_name = in.readUTF();
+				long stamp = in.readLong();
+				int[] tally = new int[STATUSES.length];
+				for ( int j=0 ; j < tally.length ; j++ )
+					tally[j] = in.readInt();
+				int first_entry = in.readInt();
+				int scenario_entry_count = in.readInt();
+				
+				File dir = dirs.get(createKey(host_name, test_pack_name, scenario_set_name));
+				if (dir==null || getStamp(dir)!=stamp)
+					// scenario set was removed or changed
+					return null;
+				ScenarioSetIndex s = new ScenarioSetIndex(index, dir, host_name, test_pack_name, scenario_set_name, os_name, stamp, tally, first_entry, scenario_entry_count);
+				index.scenario_sets.put(s.getKey(), s);
+			}
+		} finally {
+			in.close();
+		}
+		if (index.scenario_sets.size()!=dirs.size())
+			return null;
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			// mapping stays valid after the channel is closed
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, entries_offset, (pool_offset + pool_size) - entries_offset);
+			mapped.position(0);
+			mapped.limit(entry_count * ENTRY_SIZE);
+			index.entries = mapped.slice();
+			mapped.position((int)(pool_offset - entries_offset));
+			mapped.limit((int)(pool_offset - entries_offset) + pool_size);
+			index.pool = mapped.slice();
+		} finally {
+			raf.close();
+		}
+		return index;
+	} // end protected static PhptResultIndex read
+	
+	protected static class BuildEntry implements Comparable<BuildEntry> {
+		protected final String test_name;
+		protected final EPhptTestStatus status;
+		protected final float run_time_micros;
+		
+		protected BuildEntry(String test_name, EPhptTestStatus status, float run_time_micros) {
+			this.test_name = test_name;
+			this.status = status;
+			this.run_time_micros = run_time_micros;
+		}
+		
+		@Override
+		public int compareTo(BuildEntry o) {
+			int c = test_name.compareTo(o.test_name);
+			return c == 0 ? status.compareTo(o.status) : c;
+		}
+	
+	} // end protected static class BuildEntry
+	
+	/** reads every scenario set (the same as PhptResultReader) and writes the index */
+	protected static void build(ConsoleManager cm, File file, LinkedHashMap<String,File> dirs) throws IOException {
+		cm.println(EPrintType.CLUE, PhptResultIndex.class, "Writing index of result-pack: "+file);
+		
+		ArrayList<String> extensions = new ArrayList<String>();
+		HashMap<String,Integer> extension_ids = new HashMap<String,Integer>();
+		// test names are stored once for all scenario sets
+		HashMap<String,Integer> name_offsets = new HashMap<String,Integer>();
+		Section pool = new Section();
+		Section entries = new Section();
+		Section directory = new Section();
+		
+		int entry_count = 0;
+		directory.out.writeInt(dirs.size());
+		for ( File dir : dirs.values() ) {
+			File test_pack_dir = dir.getParentFile();
+			File host_dir = test_pack_dir.getParentFile().getParentFile();
+			
+			PhptResultReader reader = new PhptResultReader();
+			reader.open(cm, dir, dir.getName(), null, null, null);
+			HashMap<String,Float> run_times = new HashMap<String,Float>();
+			reader.readRunTimes(cm, run_times);
+			
+			int[] tally = new int[STATUSES.length];
+			ArrayList<BuildEntry> scenario_entries = new ArrayList<BuildEntry>();
+			for ( EPhptTestStatus status : STATUSES ) {
+				tally[status.ordinal()] = reader.count(status);
+				for ( String test_name : reader.getTestNames(status) ) {
+					Float run_time = run_times.get(test_name);
+					scenario_entries.add(new BuildEntry(test_name, status, run_time==null?0f:run_time.floatValue()));
+				}
+			}
+			reader.close();
+			Collections.sort(scenario_entries);
+			
+			directory.out.writeUTF(host_dir.getName());
+			directory.out.writeUTF(test_pack_dir.getName());
+			directory.out.writeUTF(dir.getName());
+			directory.out.writeUTF(reader.getOSName()==null?"":reader.getOSName());
+			directory.out.writeLong(getStamp(dir));
+			for ( int c : tally )
+				directory.out.writeInt(c);
+			directory.out.writeInt(entry_count);
+			directory.out.writeInt(scenario_entries.size());
+			
+			for ( BuildEntry e : scenario_entries ) {
+				Integer name_offset = name_offsets.get(e.test_name);
+				if (name_offset==null) {
+					name_offset = pool.size();
+					byte[] bytes = e.test_name.getBytes("UTF-8");
+					pool.out.writeShort(bytes.length);
+					pool.out.write(bytes);
+					name_offsets.put(e.test_name, name_offset);
+				}
+				String ext_name = getExtensionName(e.test_name);
+				Integer ext_id = extension_ids.get(ext_name);
+				if (ext_id==null) {
+					ext_id = extensions.size();
+					extensions.add(ext_name);
+					extension_ids.put(ext_name, ext_id);
+				}
+				entries.out.writeInt(name_offset);
+				entries.out.writeFloat(e.run_time_micros);
+				entries.out.writeShort(ext_id);
+				entries.out.writeByte(e.status.ordinal());
+				entries.out.writeByte(0);
+			}
+			entry_count += scenario_entries.size();
+		}
+		
+		Section ext_table = new Section();
+		ext_table.out.writeInt(extensions.size());
+		for ( String ext_name : extensions )
+			ext_table.out.writeUTF(ext_name);
+		
+		final int header_size = 4 + 4 + 8 + 4 + 8 + 4;
+		final long entries_offset = header_size + ext_table.size() + directory.size();
+		final long pool_offset = entries_offset + entries.size();
+		
+		// write to temp file then replace so index is never left half-written
+		File tmp_file = new File(file.getPath()+".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp_file), 64*1024));
+		try {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			out.writeLong(entries_offset);
+			out.writeInt(entry_count);
+			out.writeLong(pool_offset);
+			out.writeInt(pool.size());
+			ext_table.bytes.writeTo(out);
+			directory.bytes.writeTo(out);
+			entries.bytes.writeTo(out);
+			pool.bytes.writeTo(out);
+		} finally {
+			out.close();
+		}
+		file.delete();
+		if (!tmp_file.renameTo(file)) {
+			tmp_file.delete();
+			throw new IOException("could not rename "+tmp_file+" to "+file);
+		}
+	} // end protected static void build
+	
+	/** section of index being built in memory (sizes are needed before writing the header) */
+	protected static class Section {
+		protected final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64*1024);
+		protected final DataOutputStream out = new DataOutputStream(bytes);
+		
+		protected int size() {
+			return out.size();
+		}
+	}
+
+} // end public class PhptResultIndex
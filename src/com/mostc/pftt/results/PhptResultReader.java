@@ -1,15 +1,25 @@
 package com.mostc.pftt.results;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import org.kxml2.io.KXmlParser;
 
 import com.mostc.pftt.main.PfttMain;
 import com.mostc.pftt.model.core.EBuildBranch;
 import com.mostc.pftt.model.core.EPhptTestStatus;
 import com.mostc.pftt.model.core.PhpBuildInfo;
+import com.mostc.pftt.model.core.PhptSourceTestPack;
+import com.mostc.pftt.results.PhptResultIndex.ScenarioSetIndex;
+import com.mostc.pftt.results.PhptResultSegment.IndexEntry;
 
 public class PhptResultReader extends AbstractPhptRW {
 	protected final HashMap<EPhptTestStatus,StatusListEntry> status_list_map;
@@ -17,21 +27,104 @@ public class PhptResultReader extends AbstractPhptRW {
 	protected EBuildBranch test_pack_branch;
 	protected String test_pack_version, os_name, scenario_set_name;
 	protected File dir;
+	/** @see -binary_result_pack console option */
+	protected PhptResultSegmentReader segment;
+	/** @see PhptResultIndex */
+	protected ScenarioSetIndex index;
+	protected ConsoleManager cm;
+	protected boolean loaded;
 	
 	public PhptResultReader() {
 		status_list_map = new HashMap<EPhptTestStatus,StatusListEntry>();
 	}
 	
-	// TODO rewrite for when comparing same exact test run (ex: report included in result-pack)
+	/** opens results of scenario set. tally and status lists aren't read until they're needed.
+	 * 
+	 * @param cm
+	 * @param dir
+	 * @param scenario_set_name
+	 * @param build_info
+	 * @param test_pack_branch
+	 * @param test_pack_version
+	 */
 	public void open(ConsoleManager cm, File dir, String scenario_set_name, PhpBuildInfo build_info, EBuildBranch test_pack_branch, String test_pack_version) {
+		open(cm, dir, scenario_set_name, build_info, test_pack_branch, test_pack_version, null);
+	}
+	
+	/** opens results of scenario set
+	 * 
+	 * @param cm
+	 * @param dir
+	 * @param scenario_set_name
+	 * @param build_info
+	 * @param test_pack_branch
+	 * @param test_pack_version
+	 * @param index - optional. if given, tally and status lists are read from the index instead of the scenario set
+	 */
+	public void open(ConsoleManager cm, File dir, String scenario_set_name, PhpBuildInfo build_info, EBuildBranch test_pack_branch, String test_pack_version, ScenarioSetIndex index) {
+		this.cm = cm;
 		this.dir = dir;
 		this.scenario_set_name = scenario_set_name;
 		this.build_info = build_info;
 		this.test_pack_branch = test_pack_branch;
 		this.test_pack_version = test_pack_version;
+		this.index = index;
+		if (index!=null) {
+			this.os_name = index.os_name;
+			for ( EPhptTestStatus status : EPhptTestStatus.values() )
+				status_list_map.put(status, new StatusListEntry(index.count(status)));
+		}
+	}
+	
+	/** reads tally and status lists the first time they're needed */
+	protected synchronized void ensureLoaded() {
+		if (loaded)
+			return;
+		loaded = true;
+		if (index!=null) {
+			// names are only read from index once they're needed too
+			return;
+		}
+		try {
+			load();
+		} catch ( Exception ex ) {
+			cm.addGlobalException(EPrintType.SKIP_OPERATION, getClass(), "ensureLoaded", ex, "unable to read results", dir);
+		}
+	}
+	
+	// TODO rewrite for when comparing same exact test run (ex: report included in result-pack)
+	protected void load() {
+		// results may be stored in a segment instead of XML files (@see PhptResultWriter)
+		if (PhptResultSegment.exists(dir)) {
+			try {
+				segment = PhptResultSegmentReader.open(new File(dir, PhptResultSegment.FILE_NAME));
+			} catch ( Exception ex ) {
+				cm.addGlobalException(EPrintType.SKIP_OPTIONAL, getClass(), "open", ex, "unable to read result segment, using status lists instead", dir);
+			}
+		}
 		
 		// read tally file 
-		PhptTallyFile tally = PhptTallyFile.open(new File(dir+"/tally.xml"));
+		File tally_file = new File(dir+"/tally.xml");
+		PhptTallyFile tally;
+		if (segment!=null && !tally_file.exists()) {
+			// previous test run interrupted: count tests in segment
+			cm.println(EPrintType.CLUE, getClass(), "Previous test run interrupted? Found only result segment: "+segment.getFile().getName());
+			tally = new PhptTallyFile();
+			tally.os_name = "";
+			tally.pass = segment.count(EPhptTestStatus.PASS);
+			tally.timeout = segment.count(EPhptTestStatus.TIMEOUT);
+			tally.fail = segment.count(EPhptTestStatus.FAIL);
+			tally.crash = segment.count(EPhptTestStatus.CRASH);
+			tally.skip = segment.count(EPhptTestStatus.SKIP);
+			tally.xskip = segment.count(EPhptTestStatus.XSKIP);
+			tally.xfail = segment.count(EPhptTestStatus.XFAIL);
+			tally.xfail_works = segment.count(EPhptTestStatus.XFAIL_WORKS);
+			tally.unsupported = segment.count(EPhptTestStatus.UNSUPPORTED);
+			tally.bork = segment.count(EPhptTestStatus.BORK);
+			tally.exception = segment.count(EPhptTestStatus.TEST_EXCEPTION);
+		} else {
+			tally = PhptTallyFile.open(tally_file);
+		}
 		this.os_name = tally.os_name; 
 		status_list_map.put(EPhptTestStatus.PASS, new StatusListEntry(tally.pass));
 		status_list_map.put(EPhptTestStatus.TIMEOUT, new StatusListEntry(tally.timeout));
@@ -50,6 +143,14 @@ public class PhptResultReader extends AbstractPhptRW {
 				//continue; // TODO temp
 			StatusListEntry e = status_list_map.get(status);
 			
+			if (segment!=null) {
+				// index of segment has status of every test (doesn't read any results)
+				e.test_names.addAll(segment.getTestNames(status));
+				Collections.sort(e.test_names);
+				e.doWarning(cm);
+				continue;
+			}
+			
 			try {
 				e.readTestNames(cm, new File(dir+"/"+status+".txt"), new File(dir+"/"+status+".journal.txt"));
 			} catch ( Exception ex ) {
@@ -58,13 +159,60 @@ public class PhptResultReader extends AbstractPhptRW {
 			
 			e.doWarning(cm);
 		}
-	} // end public void open
+	} // end protected void load
+	
+	/** reads the run time of each test from ALL.csv
+	 * 
+	 * @see PhptResultWriter#writeResult - writes ALL.csv
+	 * @param cm
+	 * @param run_times - test name => run time (microseconds)
+	 */
+	public void readRunTimes(ConsoleManager cm, Map<String,Float> run_times) {
+		if (index!=null) {
+			index.readRunTimes(run_times);
+			return;
+		}
+		ensureLoaded();
+		if (segment!=null) {
+			for ( IndexEntry e : segment.getEntries() )
+				run_times.put(e.test_name, e.run_time_micros);
+			return;
+		}
+		File csv_file = new File(dir+"/ALL.csv");
+		if (!csv_file.exists())
+			return;
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(csv_file));
+			try {
+				String line;
+				int i, j;
+				while ( ( line = br.readLine() ) != null ) {
+					// 'test name','STATUS',run_time_micros
+					i = line.lastIndexOf(',');
+					j = line.lastIndexOf("','", i);
+					if (i==-1||j<2||line.charAt(0)!='\'')
+						continue;
+					try {
+						run_times.put(line.substring(1, j), Float.parseFloat(line.substring(i+1).trim()));
+					} catch ( NumberFormatException ex ) {
+						// ignore line
+					}
+				}
+			} finally {
+				br.close();
+			}
+		} catch ( IOException ex ) {
+			cm.addGlobalException(EPrintType.SKIP_OPTIONAL, getClass(), "readRunTimes", ex, "error reading run times from: "+csv_file);
+		}
+	} // end public void readRunTimes
 	
 	protected class StatusListEntry {
 		/** count reported in tally file. should match test_names#size */
 		protected final int count;
 		/** list of tests... test_names#size should == count */
 		protected final ArrayList<String> test_names;
+		/** @see PhptResultIndex */
+		protected boolean names_read;
 		
 		public StatusListEntry(int count) {
 			this.count = count;
@@ -95,6 +243,7 @@ public class PhptResultReader extends AbstractPhptRW {
 	
 	@Override
 	public String getOSName() {
+		ensureLoaded();
 		return os_name;
 	}
 
@@ -120,6 +269,10 @@ public class PhptResultReader extends AbstractPhptRW {
 
 	@Override
 	public int count(EPhptTestStatus status) {
+		if (index!=null)
+			// index stores same count as below
+			return index.count(status);
+		ensureLoaded();
 		StatusListEntry e = status_list_map.get(status);
 		if (e==null)
 			return 0;
@@ -131,15 +284,84 @@ public class PhptResultReader extends AbstractPhptRW {
 
 	@Override
 	public List<String> getTestNames(EPhptTestStatus status) {
+		ensureLoaded();
 		StatusListEntry e = status_list_map.get(status); 
 		if (e==null)
 			return new java.util.ArrayList<String>(0);
+		if (index!=null) {
+			synchronized(e) {
+				if (!e.names_read) {
+					e.test_names.addAll(index.getTestNames(status));
+					e.names_read = true;
+				}
+			}
+		}
 		check(status, e.test_names);
 		return e.test_names;
 	}
+	
+	/** reads the result of 1 test (from the result segment or its XML file)
+	 * 
+	 * @param test_name
+	 * @param test_pack - optional, to find the PhptTestCase of the result
+	 * @return NULL if result wasn't stored (@see -no_result_file_for_pass_xskip_skip)
+	 * @throws Exception
+	 */
+	public PhptTestResult readResult(String test_name, PhptSourceTestPack test_pack) throws Exception {
+		PhptResultSegmentReader segment = getSegment();
+		if (segment!=null)
+			return segment.readResult(test_name, test_pack);
+		return readResultFile(dir, test_name, test_pack);
+	}
+	
+	/** reads the result of 1 test from its XML file in scenario set dir of a result-pack
+	 * 
+	 * @see #getSegment - if results are stored in a segment instead
+	 * @param dir
+	 * @param test_name
+	 * @param test_pack - optional, to find the PhptTestCase of the result
+	 * @return NULL if result wasn't stored (@see -no_result_file_for_pass_xskip_skip)
+	 * @throws Exception
+	 */
+	public static PhptTestResult readResultFile(File dir, String test_name, PhptSourceTestPack test_pack) throws Exception {
+		File xml_file = new File(dir, PhptResultSegment.getBaseName(test_name)+".xml");
+		if (!xml_file.isFile())
+			return null;
+		FileInputStream in = new FileInputStream(xml_file);
+		try {
+			KXmlParser parser = new KXmlParser();
+			parser.setInput(in, null);
+			return PhptTestResult.parse(parser, test_pack);
+		} finally {
+			in.close();
+		}
+	}
 
+	/** returns segment storing the results or NULL if results are stored in XML files
+	 * 
+	 * @see -binary_result_pack console option
+	 * @return
+	 */
+	public PhptResultSegmentReader getSegment() {
+		if (index!=null) {
+			// share the segment opened for the index, so it's only opened once
+			try {
+				return index.getSegment();
+			} catch ( Exception ex ) {
+				cm.addGlobalException(EPrintType.SKIP_OPTIONAL, getClass(), "getSegment", ex, "unable to read result segment", dir);
+				return null;
+			}
+		} else {
+			ensureLoaded();
+		}
+		return segment;
+	}
+	
 	@Override
-	public void close() {
+	public synchronized void close() {
+		// segment of index is closed with the index (@see PhpResultPackReader#close)
+		if (segment!=null)
+			segment.close();
 	}
 
 	@Override
@@ -0,0 +1,246 @@
+package com.mostc.pftt.results;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import com.mostc.pftt.model.core.EPhptTestStatus;
+
+/** Binary storage of the results of 1 scenario set (@see PhptResultSegmentWriter and PhptResultSegmentReader)
+ *
+ * File format (big-endian, java.io.DataOutput):
+ *
+ *   header:  int FILE_MAGIC, int FILE_VERSION
+ *   record:  int length, short header_length, UTF test_name, UTF status, float run_time_micros, int payload_length(-1 if none), byte[] payload
+ *   index:   int INDEX_MARKER, int count, count * (UTF test_name, UTF status, float run_time_micros, long record_offset, boolean has_payload)
+ *   footer:  long index_offset, int FOOTER_MAGIC
+ *
+ * The payload is the GZIP compressed XML document for the result (same as the XML file of the result in the XML layout).
+ *
+ * Also converts scenario sets in a result-pack between this format and the XML layout (1 XML file per test).
+ *
+ * @see result_pack_convert command
+ * @author Matt Ficken
+ *
+ */
+
+public abstract class PhptResultSegment {
+	public static final String FILE_NAME = "RESULTS.seg";
+	protected static final int FILE_MAGIC = 0x50465253;
+	protected static final int FILE_VERSION = 1;
+	protected static final int INDEX_MARKER = -1;
+	protected static final int FOOTER_MAGIC = 0x50464958;
+	
+	/** header of 1 result */
+	public static class IndexEntry {
+		public final String test_name;
+		public final EPhptTestStatus status;
+		public final float run_time_micros;
+		protected final long offset;
+		protected final boolean has_payload;
+		
+		protected IndexEntry(String test_name, EPhptTestStatus status, float run_time_micros, long offset, boolean has_payload) {
+			this.test_name = test_name;
+			this.status = status;
+			this.run_time_micros = run_time_micros;
+			this.offset = offset;
+			this.has_payload = has_payload;
+		}
+		
+		public boolean hasPayload() {
+			return has_payload;
+		}
+	
+	} // end public static class IndexEntry
+	
+	/** returns TRUE if scenario set's results are stored in a segment
+	 *
+	 * @param scenario_dir
+	 * @return
+	 */
+	public static boolean exists(File scenario_dir) {
+		return new File(scenario_dir, FILE_NAME).isFile();
+	}
+	
+	/** same as PhptTestCase#getBaseName */
+	protected static String getBaseName(String test_name) {
+		return test_name.endsWith(".phpt") ? test_name.substring(0, test_name.length()-".phpt".length()) : test_name;
+	}
+	
+	/** converts every PHPT scenario set in the result-pack
+	 *
+	 * @param cm
+	 * @param result_pack_dir
+	 * @param to_binary - TRUE to convert from XML layout to segments, FALSE to convert from segments to XML layout
+	 * @return number of scenario sets converted
+	 */
+	public static int convertResultPack(ConsoleManager cm, File result_pack_dir, boolean to_binary) {
+		int count = 0;
+		File[] host_dirs = result_pack_dir.listFiles();
+		if (host_dirs==null)
+			return 0;
+		for ( File host_dir : host_dirs ) {
+			File[] type_dirs = host_dir.listFiles();
+			if (type_dirs==null)
+				continue;
+			for ( File phpt_dir : type_dirs ) {
+				if (!phpt_dir.isDirectory() || !phpt_dir.getName().equalsIgnoreCase("phpt"))
+					continue;
+				File[] test_pack_dirs = phpt_dir.listFiles();
+				if (test_pack_dirs==null)
+					continue;
+				for ( File test_pack_dir : test_pack_dirs ) {
+					File[] scenario_dirs = test_pack_dir.listFiles();
+					if (scenario_dirs==null)
+						continue;
+					for ( File scenario_dir : scenario_dirs ) {
+						if (!scenario_dir.isDirectory())
+							continue;
+						try {
+							if (to_binary ? convertToBinary(cm, scenario_dir) : convertToXml(cm, scenario_dir))
+								count++;
+						} catch ( Exception ex ) {
+							cm.addGlobalException(EPrintType.CANT_CONTINUE, PhptResultSegment.class, "convertResultPack", ex, "unable to convert results", scenario_dir);
+						}
+					}
+				}
+			}
+		}
+		if (count > 0) {
+			// converted scenario sets changed, so index is out of date (@see PhptResultIndex#getStamp)
+			try {
+				PhptResultIndex.write(cm, result_pack_dir);
+			} catch ( Exception ex ) {
+				cm.addGlobalException(EPrintType.SKIP_OPTIONAL, PhptResultSegment.class, "convertResultPack", ex, "unable to write index of result-pack", result_pack_dir);
+			}
+		}
+		return count;
+	} // end public static int convertResultPack
+	
+	/** moves results from XML files into a segment
+	 *
+	 * @param cm
+	 * @param scenario_dir
+	 * @return FALSE if already stored in a segment
+	 * @throws IOException
+	 */
+	public static boolean convertToBinary(ConsoleManager cm, File scenario_dir) throws IOException {
+		File file = new File(scenario_dir, FILE_NAME);
+		if (file.exists())
+			return false;
+		PhptResultReader reader = new PhptResultReader();
+		reader.open(cm, scenario_dir, scenario_dir.getName(), null, null, null);
+		HashMap<String,Float> run_times = new HashMap<String,Float>();
+		reader.readRunTimes(cm, run_times);
+		
+		ArrayList<File> xml_files = new ArrayList<File>();
+		// write to temp file then rename so a failed conversion doesn't leave a half-written segment
+		File tmp_file = new File(scenario_dir, FILE_NAME+".tmp");
+		PhptResultSegmentWriter writer = new PhptResultSegmentWriter(tmp_file);
+		try {
+			for ( EPhptTestStatus status : EPhptTestStatus.values() ) {
+				for ( String test_name : reader.getTestNames(status) ) {
+					File xml_file = new File(scenario_dir, getBaseName(test_name)+".xml");
+					byte[] xml = null;
+					if (xml_file.isFile()) {
+						xml = readFile(xml_file);
+						xml_files.add(xml_file);
+					}
+					Float run_time = run_times.get(test_name);
+					writer.write(test_name, status, run_time==null?0f:run_time.floatValue(), xml);
+				}
+			}
+		} finally {
+			writer.close();
+		}
+		if (!tmp_file.renameTo(file))
+			throw new IOException("could not rename "+tmp_file+" to "+file);
+		
+		for ( File xml_file : xml_files )
+			deleteWithEmptyParents(xml_file, scenario_dir);
+		return true;
+	} // end public static boolean convertToBinary
+	
+	/** moves results from segment into XML files
+	 *
+	 * @param cm
+	 * @param scenario_dir
+	 * @return FALSE if not stored in a segment
+	 * @throws IOException
+	 */
+	public static boolean convertToXml(ConsoleManager cm, File scenario_dir) throws IOException {
+		File file = new File(scenario_dir, FILE_NAME);
+		if (!file.exists())
+			return false;
+		PhptResultSegmentReader reader = PhptResultSegmentReader.open(file);
+		try {
+			if (!reader.isComplete())
+				cm.println(EPrintType.CLUE, PhptResultSegment.class, "Previous test run interrupted? Segment has no index: "+file);
+			for ( IndexEntry e : reader.getEntries() ) {
+				byte[] xml = reader.readXml(e.test_name);
+				if (xml==null)
+					continue;
+				File xml_file = new File(scenario_dir, getBaseName(e.test_name)+".xml");
+				xml_file.getParentFile().mkdirs();
+				FileOutputStream out = new FileOutputStream(xml_file);
+				try {
+					out.write(xml);
+				} finally {
+					out.close();
+				}
+			}
+			// status lists are normally written with segments too, but not if PFTT didn't finish
+			for ( EPhptTestStatus status : EPhptTestStatus.values() ) {
+				File list_file = new File(scenario_dir, status+".txt");
+				if (list_file.exists())
+					continue;
+				List<String> test_names = new ArrayList<String>(reader.getTestNames(status));
+				if (test_names.isEmpty())
+					continue;
+				Collections.sort(test_names);
+				PrintWriter pw = new PrintWriter(new FileWriter(list_file));
+				for ( String test_name : test_names )
+					pw.println(test_name);
+				pw.close();
+			}
+		} finally {
+			reader.close();
+		}
+		file.delete();
+		return true;
+	} // end public static boolean convertToXml
+	
+	protected static byte[] readFile(File file) throws IOException {
+		byte[] data = new byte[(int)file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int off = 0, r;
+			while (off < data.length && (r = in.read(data, off, data.length - off)) != -1)
+				off += r;
+			if (off < data.length)
+				throw new IOException("unexpected end of file: "+file);
+		} finally {
+			in.close();
+		}
+		return data;
+	}
+	
+	protected static void deleteWithEmptyParents(File file, File stop_dir) {
+		file.delete();
+		File dir = file.getParentFile();
+		while (dir!=null && !dir.equals(stop_dir)) {
+			String[] names = dir.list();
+			if (names==null || names.length > 0 || !dir.delete())
+				break;
+			dir = dir.getParentFile();
+		}
+	}
+
+} // end public abstract class PhptResultSegment
@@ -0,0 +1,242 @@
+package com.mostc.pftt.results;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.kxml2.io.KXmlParser;
+
+import com.mostc.pftt.model.core.EPhptTestStatus;
+import com.mostc.pftt.model.core.PhptSourceTestPack;
+
+/** Reads a segment written by PhptResultSegmentWriter.
+ *
+ * Opening a segment only reads its index (or if PFTT didn't finish writing it, the header of each record), so
+ * the status and run time of every test are available without reading any payloads. The XML of a result is
+ * only read and decompressed when #readXml or #readResult is called.
+ *
+ * @see PhptResultSegmentWriter
+ * @author Matt Ficken
+ *
+ */
+
+public class PhptResultSegmentReader extends PhptResultSegment {
+	protected final File file;
+	protected final LinkedHashMap<String,IndexEntry> index;
+	protected final HashMap<EPhptTestStatus,List<String>> status_map;
+	protected RandomAccessFile raf;
+	protected boolean complete;
+	
+	protected PhptResultSegmentReader(File file) {
+		this.file = file;
+		index = new LinkedHashMap<String,IndexEntry>(4096);
+		status_map = new HashMap<EPhptTestStatus,List<String>>();
+	}
+	
+	/** opens segment and reads its index
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static PhptResultSegmentReader open(File file) throws IOException {
+		PhptResultSegmentReader reader = new PhptResultSegmentReader(file);
+		reader.raf = new RandomAccessFile(file, "r");
+		try {
+			if (!reader.readIndex())
+				reader.scanRecords();
+		} catch ( IOException ex ) {
+			reader.close();
+			throw ex;
+		}
+		for ( IndexEntry e : reader.index.values() ) {
+			List<String> names = reader.status_map.get(e.status);
+			if (names==null)
+				reader.status_map.put(e.status, names = new ArrayList<String>());
+			names.add(e.test_name);
+		}
+		return reader;
+	}
+	
+	/** reads index from end of segment
+	 *
+	 * @return FALSE if segment has no index (PFTT didn't finish writing it)
+	 * @throws IOException
+	 */
+	protected boolean readIndex() throws IOException {
+		final long length = raf.length();
+		if (length < 8 + 4 + 4 + 12)
+			return false;
+		raf.seek(length - 12);
+		final long index_offset = raf.readLong();
+		if (raf.readInt()!=FOOTER_MAGIC || index_offset < 8 || index_offset > length - 12)
+			return false;
+		// read whole index at once (RandomAccessFile isn't buffered)
+		byte[] index_bytes = new byte[(int)(length - 12 - index_offset)];
+		raf.seek(index_offset);
+		raf.readFully(index_bytes);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(index_bytes));
+		if (in.readInt()!=INDEX_MARKER)
+			return false;
+		final int count = in.readInt();
+		String test_name;
+		EPhptTestStatus status;
+		float run_time_micros;
+		long offset;
+		for ( int i=0 ; i < count ; i++ ) {
+			test_name = in.readUTF();
+			status = EPhptTestStatus.valueOf(in.readUTF());
+			run_time_micros = in.readFloat();
+			offset = in.readLong();
+			index.put(test_name, new IndexEntry(test_name, status, run_time_micros, offset, in.readBoolean()));
+		}
+		complete = true;
+		return true;
+	} // end protected boolean readIndex
+	
+	/** reads header of each record, skipping payloads. stops at the first incomplete record */
+	protected void scanRecords() throws IOException {
+		final long length = raf.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64*1024));
+		try {
+			if (in.readInt()!=FILE_MAGIC || in.readInt()!=FILE_VERSION)
+				throw new IOException("not a result segment or different PFTT version: "+file);
+			long offset = 8;
+			int record_length, header_length;
+			byte[] header_bytes;
+			DataInputStream header;
+			String test_name;
+			EPhptTestStatus status;
+			float run_time_micros;
+			while (offset + 4 <= length) {
+				record_length = in.readInt();
+				if (record_length < 2 || offset + 4 + record_length > length)
+					// index marker or record that wasn't finished
+					break;
+				header_length = in.readUnsignedShort();
+				header_bytes = new byte[header_length];
+				in.readFully(header_bytes);
+				header = new DataInputStream(new ByteArrayInputStream(header_bytes));
+				test_name = header.readUTF();
+				status = EPhptTestStatus.valueOf(header.readUTF());
+				run_time_micros = header.readFloat();
+				// later record for same test replaces earlier one
+				index.remove(test_name);
+				index.put(test_name, new IndexEntry(test_name, status, run_time_micros, offset, header.readInt()!=-1));
+				skipFully(in, record_length - 2 - header_length);
+				offset += 4 + record_length;
+			}
+		} catch ( EOFException ex ) {
+			// incomplete record at end
+		} finally {
+			in.close();
+		}
+	} // end protected void scanRecords
+	
+	protected static void skipFully(DataInputStream in, int n) throws IOException {
+		while (n > 0) {
+			int s = in.skipBytes(n);
+			if (s <= 0)
+				throw new EOFException();
+			n -= s;
+		}
+	}
+	
+	/** returns FALSE if segment has no index because PFTT didn't finish writing it */
+	public boolean isComplete() {
+		return complete;
+	}
+	
+	public int size() {
+		return index.size();
+	}
+	
+	public Collection<IndexEntry> getEntries() {
+		return Collections.unmodifiableCollection(index.values());
+	}
+	
+	public IndexEntry getEntry(String test_name) {
+		return index.get(test_name);
+	}
+	
+	public List<String> getTestNames(EPhptTestStatus status) {
+		List<String> names = status_map.get(status);
+		return names == null ? Collections.<String>emptyList() : names;
+	}
+	
+	public int count(EPhptTestStatus status) {
+		return getTestNames(status).size();
+	}
+	
+	/** returns the XML document of the result or NULL if it was only stored with its status and run time
+	 *
+	 * @param test_name
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized byte[] readXml(String test_name) throws IOException {
+		IndexEntry e = index.get(test_name);
+		if (e==null || !e.has_payload)
+			return null;
+		raf.seek(e.offset);
+		final int record_length = raf.readInt();
+		final int header_length = raf.readUnsignedShort();
+		byte[] payload = new byte[record_length - 2 - header_length];
+		raf.seek(e.offset + 4 + 2 + header_length);
+		raf.readFully(payload);
+		
+		GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(payload));
+		ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length * 4);
+		byte[] buf = new byte[8192];
+		int r;
+		while ( ( r = in.read(buf) ) != -1 )
+			out.write(buf, 0, r);
+		in.close();
+		return out.toByteArray();
+	}
+	
+	/** reads the result of test
+	 *
+	 * @param test_name
+	 * @param test_pack - optional, to find the PhptTestCase of the result
+	 * @return NULL if only status and run time of result were stored
+	 * @throws Exception
+	 */
+	public PhptTestResult readResult(String test_name, PhptSourceTestPack test_pack) throws Exception {
+		byte[] xml = readXml(test_name);
+		if (xml==null)
+			return null;
+		KXmlParser parser = new KXmlParser();
+		// same encoding detection as for the XML file of the result
+		parser.setInput(new ByteArrayInputStream(xml), null);
+		return PhptTestResult.parse(parser, test_pack);
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	public synchronized void close() {
+		if (raf==null)
+			return;
+		try {
+			raf.close();
+		} catch ( IOException ex ) {
+		}
+		raf = null;
+	}
+
+} // end public class PhptResultSegmentReader
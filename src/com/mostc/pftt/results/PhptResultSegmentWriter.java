@@ -0,0 +1,121 @@
+package com.mostc.pftt.results;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import com.mostc.pftt.model.core.EPhptTestStatus;
+
+/** Writes the results of 1 scenario set to 1 append-only segment file instead of 1 XML file per test.
+ *
+ * Each result is appended as a length-prefixed record: a small header (test name, status, run time) followed by
+ * the result's XML document (the same as the XML file PhptResultWriter would otherwise write) compressed with GZIP.
+ * When closed, an index of all the headers is appended so PhptResultSegmentReader can read the status and run time
+ * of every test without reading any payloads. If PFTT doesn't finish, the index is missing but the records
+ * written before then can still be read.
+ *
+ * @see PhptResultSegmentReader
+ * @see -binary_result_pack console option
+ * @author Matt Ficken
+ *
+ */
+
+public class PhptResultSegmentWriter extends PhptResultSegment {
+	protected final File file;
+	protected final DataOutputStream out;
+	protected final LinkedHashMap<String,IndexEntry> index;
+	protected long offset;
+	protected boolean closed;
+	
+	public PhptResultSegmentWriter(File file) throws IOException {
+		this.file = file;
+		file.getParentFile().mkdirs();
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64*1024));
+		index = new LinkedHashMap<String,IndexEntry>(4096);
+		out.writeInt(FILE_MAGIC);
+		out.writeInt(FILE_VERSION);
+		offset = 8;
+	}
+	
+	/** appends result to segment
+	 *
+	 * if the same test is written again, the later record replaces the earlier one
+	 *
+	 * @param test_name
+	 * @param status
+	 * @param run_time_micros
+	 * @param xml - XML document of result or NULL to only store the status and run time
+	 * @throws IOException
+	 */
+	public synchronized void write(String test_name, EPhptTestStatus status, float run_time_micros, byte[] xml) throws IOException {
+		if (closed)
+			throw new IllegalStateException("can not write to closed segment: "+file);
+		byte[] payload = xml == null ? null : compress(xml);
+		
+		ByteArrayOutputStream header_bytes = new ByteArrayOutputStream(128);
+		DataOutputStream header = new DataOutputStream(header_bytes);
+		header.writeUTF(test_name);
+		header.writeUTF(status.toString());
+		header.writeFloat(run_time_micros);
+		header.writeInt(payload == null ? -1 : payload.length);
+		header.close();
+		
+		final long record_offset = offset;
+		final int record_length = 2 + header_bytes.size() + (payload == null ? 0 : payload.length);
+		out.writeInt(record_length);
+		out.writeShort(header_bytes.size());
+		header_bytes.writeTo(out);
+		if (payload!=null)
+			out.write(payload);
+		offset += 4 + record_length;
+		
+		index.remove(test_name); // keep index in order tests were written
+		index.put(test_name, new IndexEntry(test_name, status, run_time_micros, record_offset, payload!=null));
+	}
+	
+	/** writes buffered records to disk so they aren't lost if PFTT doesn't finish */
+	public synchronized void flush() throws IOException {
+		if (!closed)
+			out.flush();
+	}
+	
+	/** appends the index and closes the segment */
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		final long index_offset = offset;
+		out.writeInt(INDEX_MARKER);
+		out.writeInt(index.size());
+		for ( Map.Entry<String,IndexEntry> e : index.entrySet() ) {
+			IndexEntry ie = e.getValue();
+			out.writeUTF(ie.test_name);
+			out.writeUTF(ie.status.toString());
+			out.writeFloat(ie.run_time_micros);
+			out.writeLong(ie.offset);
+			out.writeBoolean(ie.has_payload);
+		}
+		out.writeLong(index_offset);
+		out.writeInt(FOOTER_MAGIC);
+		out.close();
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	protected static byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+		GZIPOutputStream gz = new GZIPOutputStream(bytes);
+		gz.write(data);
+		gz.close();
+		return bytes.toByteArray();
+	}
+
+} // end public class PhptResultSegmentWriter
@@ -1,6 +1,7 @@
 package com.mostc.pftt.results;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
@@ -41,8 +42,25 @@ public class PhptResultWriter extends AbstractPhptRW {
 	protected final PhpBuildInfo build_info;
 	protected final EBuildBranch test_pack_branch;
 	protected final String test_pack_version;
+	/** @see -binary_result_pack console option */
+	protected final PhptResultSegmentWriter segment;
 	
 	public PhptResultWriter(File dir, AHost host, ScenarioSetSetup scenario_set_setup, PhpBuildInfo build_info, EBuildBranch test_pack_branch, String test_pack_version) throws IOException {
+		this(dir, host, scenario_set_setup, build_info, test_pack_branch, test_pack_version, false);
+	}
+	
+	/**
+	 * 
+	 * @param dir
+	 * @param host
+	 * @param scenario_set_setup
+	 * @param build_info
+	 * @param test_pack_branch
+	 * @param test_pack_version
+	 * @param binary - TRUE to store results in a PhptResultSegmentWriter instead of 1 XML file per test
+	 * @throws IOException
+	 */
+	public PhptResultWriter(File dir, AHost host, ScenarioSetSetup scenario_set_setup, PhpBuildInfo build_info, EBuildBranch test_pack_branch, String test_pack_version, boolean binary) throws IOException {
 		this.dir = dir;
 		this.host = host;
 		this.scenario_set_setup = scenario_set_setup;
@@ -63,6 +81,8 @@ public class PhptResultWriter extends AbstractPhptRW {
 		
 		for(EPhptTestStatus status:EPhptTestStatus.values())
 			status_list_map.put(status, new StatusListEntry(status));
+		
+		segment = binary ? new PhptResultSegmentWriter(new File(dir, PhptResultSegment.FILE_NAME)) : null;
 	}
 	protected class StatusListEntry {
 		protected final EPhptTestStatus status;
@@ -129,6 +149,8 @@ public class PhptResultWriter extends AbstractPhptRW {
 		
 		started_pw.close();
 		all_csv_pw.close();
+		if (segment!=null)
+			segment.close();
 		
 		// write tally file
 		try {
@@ -162,6 +184,33 @@ public class PhptResultWriter extends AbstractPhptRW {
 		}
 	} // end public void close
 	
+	/** TRUE once tally and status lists have been written (@see PhpResultPackWriter#notifyPhptFinished) */
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/** writes buffered CSV, STARTED.txt and journal lines to disk so they aren't lost if PFTT doesn't finish
+	 * 
+	 * called by PhpResultPackWriter once for each batch of results instead of for each result
+	 */
+	public void flush() {
+		if (closed)
+			return;
+		started_pw.flush();
+		all_csv_pw.flush();
+		for ( StatusListEntry e : status_list_map.values() ) {
+			if (e.journal_writer!=null)
+				e.journal_writer.flush();
+		}
+		if (segment!=null) {
+			try {
+				segment.flush();
+			} catch ( IOException ex ) {
+				ConsoleManagerUtil.printStackTrace(PhptResultWriter.class, ex);
+			}
+		}
+	}
+	
 	public void notifyStart(String test_name) {
 		started_pw.println(test_name);
 	}
@@ -214,7 +263,21 @@ public class PhptResultWriter extends AbstractPhptRW {
 		
 		
 		//
-		if (store_all || !cm.isNoResultFileForPassSkipXSkip()) {
+		final boolean store_file = store_all || !cm.isNoResultFileForPassSkipXSkip();
+		if (segment!=null) {
+			// @see -binary_result_pack console option
+			try {
+				byte[] xml = null;
+				if (store_file) {
+					ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+					serialResult(out, result, store_all, test_case_base_name);
+					xml = out.toByteArray();
+				}
+				segment.write(result.test_case.getName(), result.status, result.run_time_micros, xml);
+			} catch ( Exception ex ) {
+				ConsoleManagerUtil.printStackTrace(EPrintType.OPERATION_FAILED_CONTINUING, getClass(), cm, "handleResult", ex, "", dir, test_case_base_name);
+			}
+		} else if (store_file) {
 			// may want to skip storing result files for PASS, SKIP or XSKIP tests
 			try {
 				File result_file = new File(dir, test_case_base_name+".xml");
@@ -223,16 +286,7 @@ public class PhptResultWriter extends AbstractPhptRW {
 				
 				OutputStream out = new BufferedOutputStream(new FileOutputStream(result_file));
 				
-				serial.setOutput(out, null);
-				
-				// write result info in XML format
-				serial.startDocument(null, null);
-				// write result and reference to the XSL stylesheet
-				result.serial(serial, store_all, StringUtil.repeat("../", 1+AHost.countUp(test_case_base_name, dir.getAbsolutePath()))+"/phptresult.xsl");
-				result.extra = null;
-				serial.endDocument();
-				
-				serial.flush();
+				serialResult(out, result, store_all, test_case_base_name);
 				out.close();
 				
 			} catch ( Exception ex ) {
@@ -278,6 +332,19 @@ public class PhptResultWriter extends AbstractPhptRW {
 		all_csv_pw.println();
 	} // end public void writeResult
 
+	/** writes result info in XML format (same for XML file or segment) */
+	protected void serialResult(OutputStream out, PhptTestResult result, boolean store_all, String test_case_base_name) throws IOException {
+		serial.setOutput(out, null);
+		
+		serial.startDocument(null, null);
+		// write result and reference to the XSL stylesheet
+		result.serial(serial, store_all, StringUtil.repeat("../", 1+AHost.countUp(test_case_base_name, dir.getAbsolutePath()))+"/phptresult.xsl");
+		result.extra = null;
+		serial.endDocument();
+		
+		serial.flush();
+	}
+	
 	@Override
 	public String getOSName() {
 		return host.getOSName();
@@ -331,6 +398,43 @@ public class PhptResultWriter extends AbstractPhptRW {
 		}
 	}
 	
+	/** records how well the SKIPIF cache worked for this test run (@see PhptSkipIfCache)
+	 * 
+	 * @param hits
+	 * @param misses
+	 * @param entries
+	 * @param evictions
+	 */
+	public void reportSkipIfCache(int hits, int misses, int entries, int evictions) {
+		try {
+			// don't share #serial, it may be writing results on another thread
+			FileWriter fw = new FileWriter(new File(dir+"/SKIPIF_CACHE.xml"));
+			try {
+				fw.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+				fw.write("<skipifCache hits=\""+hits+"\" misses=\""+misses+"\" entries=\""+entries+"\" evictions=\""+evictions+"\"/>\n");
+			} finally {
+				fw.close();
+			}
+		} catch ( Exception ex ) {
+			ConsoleManagerUtil.printStackTrace(PhptResultWriter.class, ex);
+		}
+	}
+	
+	public void reportExpectedCache(int hits, int misses, long compile_millis, int entries, int evictions) {
+		try {
+			// don't share #serial, it may be writing results on another thread
+			FileWriter fw = new FileWriter(new File(dir+"/EXPECTED_CACHE.xml"));
+			try {
+				fw.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+				fw.write("<expectedCache hits=\""+hits+"\" misses=\""+misses+"\" compileMillis=\""+compile_millis+"\" entries=\""+entries+"\" evictions=\""+evictions+"\"/>\n");
+			} finally {
+				fw.close();
+			}
+		} catch ( Exception ex ) {
+			ConsoleManagerUtil.printStackTrace(PhptResultWriter.class, ex);
+		}
+	}
+	
 	protected void reportGroupsEx(LinkedBlockingQueue<TestCaseGroup<PhptTestCase>> thread_safe_groups, LinkedBlockingQueue<NonThreadSafeExt<PhptTestCase>> non_thread_safe_exts) throws IOException {
 		File groups_file = new File(dir+"/GROUPS.xml");
 		FileWriter fw = new FileWriter(groups_file);
@@ -0,0 +1,124 @@
+package com.mostc.pftt.results;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.model.core.PhptTestCase;
+
+/** Model of how long each PHPT takes to run, built from the run times recorded in previous result-pack(s).
+ *
+ * Used to order groups of tests (and NTS extensions) longest-first so the slowest work starts first and
+ * the end of the test run isn't one thread running one big group while the other threads are idle.
+ *
+ * Tests that aren't in any previous result-pack fall back to PhptTestCase#isSlowTest
+ *
+ * @see -order_by_run_time console option
+ * @see PhptResultWriter - records run_time_micros in ALL.csv
+ * @author Matt Ficken
+ *
+ */
+
+public class PhptRunTimeHistory {
+	/** run time to use if there are no run times at all (100 milliseconds) */
+	public static final long DEFAULT_RUN_TIME_MICROS = 100000L;
+	/** slow tests with no history are assumed to be at least this many times slower than the median test */
+	public static final int SLOW_TEST_FACTOR = 8;
+	protected final HashMap<String,long[]> run_times;
+	protected long median_micros, slow_micros;
+
+	public PhptRunTimeHistory() {
+		run_times = new HashMap<String,long[]>(16384);
+		median_micros = slow_micros = DEFAULT_RUN_TIME_MICROS;
+	}
+
+	/** reads run times from all PHPT results in the given result-pack(s)
+	 *
+	 * @param cm
+	 * @param host
+	 * @param result_pack_paths
+	 * @return
+	 */
+	public static PhptRunTimeHistory open(ConsoleManager cm, AHost host, List<String> result_pack_paths) {
+		PhptRunTimeHistory h = new PhptRunTimeHistory();
+		HashMap<String,Float> pack_run_times = new HashMap<String,Float>(16384);
+		for ( String path : result_pack_paths ) {
+			File dir = new File(path);
+			if (!dir.isDirectory()) {
+				cm.println(EPrintType.SKIP_OPTIONAL, PhptRunTimeHistory.class, "Result-Pack not found: "+path);
+				continue;
+			}
+			PhpResultPackReader reader;
+			try {
+				reader = PhpResultPackReader.open(cm, host, dir);
+			} catch ( Exception ex ) {
+				cm.addGlobalException(EPrintType.SKIP_OPTIONAL, PhptRunTimeHistory.class, "open", ex, "unable to open Result-Pack: "+path);
+				continue;
+			}
+			for ( AbstractPhptRW phpt : reader.getPHPT() ) {
+				if (!(phpt instanceof PhptResultReader))
+					continue;
+				pack_run_times.clear();
+				((PhptResultReader)phpt).readRunTimes(cm, pack_run_times);
+				for ( Map.Entry<String,Float> e : pack_run_times.entrySet() )
+					h.add(e.getKey(), e.getValue());
+			}
+		}
+		h.update();
+		cm.println(EPrintType.CLUE, PhptRunTimeHistory.class, "Loaded run times of "+h.size()+" tests from "+result_pack_paths.size()+" result-pack(s). median="+h.median_micros+"us slow="+h.slow_micros+"us");
+		return h;
+	}
+
+	public void add(String test_name, float run_time_micros) {
+		if (run_time_micros <= 0f)
+			// not recorded (ex: test SKIP'd before it was run)
+			return;
+		long[] e = run_times.get(test_name);
+		if (e==null) {
+			e = new long[2];
+			run_times.put(test_name, e);
+		}
+		e[0] += (long) run_time_micros;
+		e[1]++;
+	}
+
+	/** recalculates fallback run times. call after #add
+	 *
+	 */
+	public void update() {
+		if (run_times.isEmpty())
+			return;
+		long[] all = new long[run_times.size()];
+		int i = 0;
+		for ( long[] e : run_times.values() )
+			all[i++] = e[0] / e[1];
+		Arrays.sort(all);
+		median_micros = Math.max(1L, all[all.length/2]);
+		// slow tests with no history: at least as slow as the 90th percentile
+		slow_micros = Math.max(median_micros * SLOW_TEST_FACTOR, all[(all.length*9)/10]);
+	}
+
+	public int size() {
+		return run_times.size();
+	}
+
+	public boolean hasRunTime(PhptTestCase test_case) {
+		return run_times.containsKey(test_case.getName());
+	}
+
+	/** estimated run time of test
+	 *
+	 * @param test_case
+	 * @return average run time from previous result-pack(s) or estimate from PhptTestCase#isSlowTest
+	 */
+	public long getRunTimeMicros(PhptTestCase test_case) {
+		long[] e = run_times.get(test_case.getName());
+		if (e!=null)
+			return Math.max(1L, e[0] / e[1]);
+		return test_case.isSlowTest() ? slow_micros : median_micros;
+	}
+
+} // end public class PhptRunTimeHistory
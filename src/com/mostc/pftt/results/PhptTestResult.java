@@ -5,6 +5,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -3135,18 +3136,9 @@ public class PhptTestResult implements ISerializer {
 		}
 	}
 	
+	/** @see ResultComparator - to compare many lists of the same test runs */
 	public static List<String> listANotInB(List<String> a, List<String> b) {
-		if (a==null) {
-			return b == null ? new ArrayList<String>(0) : b;
-		} else if (b==null) {
-			return a == null ? new ArrayList<String>(0) : a;
-		}
-		ArrayList<String> c = new ArrayList<String>(a.size());
-		for ( String d : a ) {
-			if (!b.contains(d))
-				c.add(d);
-		}
-		return c;
+		return ResultComparator.listANotInB(a, b);
 	}
 	
 	@Override
@@ -3154,7 +3146,24 @@ public class PhptTestResult implements ISerializer {
 		serial(serial, shouldStoreAllInfo(status), null);
 	}
 	
+	/** serializes result with name of test case, but not test case itself (even if #test_case is null)
+	 * 
+	 * @see PhptTestResult#parse(XmlPullParser, PhptSourceTestPack) - finds test case by this name
+	 * @param serial
+	 * @param test_case_name
+	 * @throws IllegalArgumentException
+	 * @throws IllegalStateException
+	 * @throws IOException
+	 */
+	public void serial(XmlSerializer serial, String test_case_name) throws IllegalArgumentException, IllegalStateException, IOException {
+		serial(serial, shouldStoreAllInfo(status), null, test_case_name);
+	}
+	
 	public void serial(XmlSerializer serial, boolean include_all, String stylesheet) throws IllegalArgumentException, IllegalStateException, IOException {
+		serial(serial, include_all, stylesheet, test_case==null?null:test_case.getName());
+	}
+	
+	protected void serial(XmlSerializer serial, boolean include_all, String stylesheet, String test_case_name) throws IllegalArgumentException, IllegalStateException, IOException {
 		if (StringUtil.isNotEmpty(stylesheet)) {
 			serial.processingInstruction("xml-stylesheet type=\"text/xsl\" href=\""+stylesheet+"\"");
 		}
@@ -3162,8 +3171,8 @@ public class PhptTestResult implements ISerializer {
 		serial.startTag(null, "phptResult");
 		if (status!=null)
 			serial.attribute(null, "status", status.toString());
-		if (test_case!=null)
-			serial.attribute(null, "testCase", test_case.getName());
+		if (test_case_name!=null)
+			serial.attribute(null, "testCase", test_case_name);
 		if (actual_cs!=null)
 			serial.attribute(null, "actualCharset", actual_cs.toString());
 		serial.attribute(null, "runTimeMicros", Float.toString(run_time_micros));
@@ -3302,7 +3311,7 @@ public class PhptTestResult implements ISerializer {
 			extra.serial(serial);
 		
 		serial.endTag(null, "phptResult");
-	} // end public void serial
+	} // end protected void serial
 	
 	public static boolean shouldStoreAllInfo(EPhptTestStatus status) {
 		return status==EPhptTestStatus.FAIL||status==EPhptTestStatus.XFAIL_WORKS||status==EPhptTestStatus.CRASH||status==EPhptTestStatus.BORK||status==EPhptTestStatus.UNSUPPORTED||status==EPhptTestStatus.TEST_EXCEPTION||status==EPhptTestStatus.SKIP;
@@ -3317,9 +3326,13 @@ public class PhptTestResult implements ISerializer {
 		
 		LinkedList<String> cmd_parts = null;
 		String tag_name = "", env_name = null;
+		// parser may already be at the phptResult tag (ex: AbstractRemoteTestPackRunner reads the tag first to find the message)
+		boolean at_tag = parser.getEventType()==XmlPullParser.START_TAG;
 		main_loop:
 		while(true) {
-			parser.next();
+			if (!at_tag)
+				parser.next();
+			at_tag = false;
 			switch(parser.getEventType()) {
 			case XmlPullParser.START_TAG:
 				tag_name = parser.getName();
@@ -3334,16 +3347,40 @@ public class PhptTestResult implements ISerializer {
 					String actual_cs = parser.getAttributeValue(null, "actualCharset");
 					if (StringUtil.isNotEmpty(actual_cs))
 						result.actual_cs = CharsetICU.forNameICU(actual_cs);
+					
+					String run_time_micros = parser.getAttributeValue(null, "runTimeMicros");
+					if (StringUtil.isNotEmpty(run_time_micros)) {
+						try {
+							result.run_time_micros = Float.parseFloat(run_time_micros);
+						} catch ( NumberFormatException ex ) {}
+					}
 				} else if (tag_name.equals("env")) {
 					env_name = parser.getAttributeValue(null, "name");
 				} else if (tag_name.equals("cmdArray")) {
-					if (cmd_parts!=null)
+					if (cmd_parts==null)
 						cmd_parts = new LinkedList<String>();
+				} else if (tag_name.equals("phptTestCase")) {
+					// skip the test case (its sections are read from the test-pack instead)
+					int depth = 1;
+					while (depth > 0) {
+						parser.next();
+						if (parser.getEventType()==XmlPullParser.START_TAG)
+							depth++;
+						else if (parser.getEventType()==XmlPullParser.END_TAG)
+							depth--;
+						else if (parser.getEventType()==XmlPullParser.END_DOCUMENT)
+							break main_loop;
+					}
+					tag_name = "";
 				}
 				
 				break;
 			case XmlPullParser.END_TAG:
-				break main_loop;
+				if (parser.getName().equals("phptResult"))
+					break main_loop;
+				// text after this tag doesn't belong to it
+				tag_name = "";
+				break;
 			case XmlPullParser.END_DOCUMENT:
 				break main_loop;
 			case XmlPullParser.TEXT:
@@ -3361,6 +3398,8 @@ public class PhptTestResult implements ISerializer {
 					result.preoverride_actual = parser.getText();
 				else if (tag_name.equals("ini"))
 					result.ini = new PhpIni(parser.getText());
+				else if (tag_name.equals("actualINI"))
+					result.actual_ini = parser.getText();
 				else if (tag_name.equals("expectFOutput"))
 					result.expectf_output = parser.getText();
 				else if (tag_name.equals("shellScript"))
@@ -3372,14 +3411,17 @@ public class PhptTestResult implements ISerializer {
 					result.http_request = parser.getText();
 				else if (tag_name.equals("httpResponse"))
 					result.http_response = parser.getText();
-				else if (tag_name.equals("regexDebugDump"))
+				else if (tag_name.equals("regexDebugDump")||tag_name.equals("regexCompilerDump"))
 					result.regex_compiler_dump = parser.getText();
 				else if (tag_name.equals("regexOutput"))
 					result.regex_output = parser.getText();
 				else if (tag_name.equals("env")) {
 					String env_value = parser.getText();
-					if (StringUtil.isNotEmpty(env_name) && StringUtil.isNotEmpty(env_value))
+					if (StringUtil.isNotEmpty(env_name) && StringUtil.isNotEmpty(env_value)) {
+						if (result.env==null)
+							result.env = new HashMap<String,String>();
 						result.env.put(env_name, env_value);
+					}
 				}
 				break;
 			default:
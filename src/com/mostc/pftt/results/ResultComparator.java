@@ -0,0 +1,234 @@
+package com.mostc.pftt.results;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import com.mostc.pftt.model.app.EPhpUnitTestStatus;
+import com.mostc.pftt.model.core.EPhptTestStatus;
+
+/** Compares the tests of result-packs using sets instead of searching lists of test names.
+ *
+ * Each test name is interned to an int once, then each status list of each test run becomes a BitSet. Comparing
+ * 2 test runs is then a few BitSet operations per status (linear in the number of tests) instead of looking up every
+ * test name of one list in the other list.
+ *
+ * 1 instance should be shared by a whole report (@see CmpReport and CmpReport2) so each test name and each status
+ * list is only converted once, no matter how many times it is compared.
+ *
+ * @author Matt Ficken
+ *
+ */
+
+public class ResultComparator {
+	protected final HashMap<String,Integer> ids;
+	protected final ArrayList<String> names;
+	/** reader => BitSet of tests for each status (indexed by ordinal) */
+	protected final IdentityHashMap<Object,BitSet[]> status_sets;
+	
+	public ResultComparator() {
+		ids = new HashMap<String,Integer>(32768);
+		names = new ArrayList<String>(32768);
+		status_sets = new IdentityHashMap<Object,BitSet[]>();
+	}
+	
+	/** returns the id of the test name, the same for every test run */
+	public synchronized int intern(String test_name) {
+		Integer id = ids.get(test_name);
+		if (id==null) {
+			id = names.size();
+			names.add(test_name);
+			ids.put(test_name, id);
+		}
+		return id;
+	}
+	
+	public synchronized String getTestName(int id) {
+		return names.get(id);
+	}
+	
+	public BitSet toBitSet(Collection<String> test_names) {
+		BitSet set = new BitSet();
+		if (test_names!=null) {
+			for ( String test_name : test_names )
+				set.set(intern(test_name));
+		}
+		return set;
+	}
+	
+	/** returns the test names in the set, sorted
+	 *
+	 * @param set
+	 * @return
+	 */
+	public List<String> toTestNames(BitSet set) {
+		ArrayList<String> out = new ArrayList<String>(set.cardinality());
+		synchronized(this) {
+			for ( int id = set.nextSetBit(0) ; id >= 0 ; id = set.nextSetBit(id+1) )
+				out.add(names.get(id));
+		}
+		Collections.sort(out);
+		return out;
+	}
+	
+	/** returns the tests of the test run with the status
+	 *
+	 * the BitSet is shared, do not modify it
+	 *
+	 * @param r
+	 * @param status
+	 * @return
+	 */
+	public BitSet getTests(AbstractPhptRW r, EPhptTestStatus status) {
+		BitSet[] sets;
+		synchronized(status_sets) {
+			sets = status_sets.get(r);
+			if (sets==null) {
+				sets = new BitSet[EPhptTestStatus.values().length];
+				status_sets.put(r, sets);
+			}
+		}
+		synchronized(sets) {
+			BitSet set = sets[status.ordinal()];
+			if (set==null)
+				sets[status.ordinal()] = set = toBitSet(r.getTestNames(status));
+			return set;
+		}
+	}
+	
+	/** @see #getTests(AbstractPhptRW, EPhptTestStatus) */
+	public BitSet getTests(AbstractPhpUnitRW r, EPhpUnitTestStatus status) {
+		BitSet[] sets;
+		synchronized(status_sets) {
+			sets = status_sets.get(r);
+			if (sets==null) {
+				sets = new BitSet[EPhpUnitTestStatus.values().length];
+				status_sets.put(r, sets);
+			}
+		}
+		synchronized(sets) {
+			BitSet set = sets[status.ordinal()];
+			if (set==null)
+				sets[status.ordinal()] = set = toBitSet(r.getTestNames(status));
+			return set;
+		}
+	}
+	
+	/** same as AbstractPhptRW#isTestStatus */
+	public boolean isTestStatus(AbstractPhptRW r, String test_name, EPhptTestStatus status) {
+		return getTests(r, status).get(intern(test_name));
+	}
+	
+	/** same as AbstractPhpUnitRW#isTestStatus */
+	public boolean isTestStatus(AbstractPhpUnitRW r, String test_name, EPhpUnitTestStatus status) {
+		return getTests(r, status).get(intern(test_name));
+	}
+	
+	/** compares the status of every PHPT of 2 test runs (usually of the same host and scenario set)
+	 *
+	 * @param base
+	 * @param test
+	 * @return
+	 */
+	public Diff<EPhptTestStatus> compare(AbstractPhptRW base, AbstractPhptRW test) {
+		EPhptTestStatus[] statuses = EPhptTestStatus.values();
+		BitSet[] base_sets = new BitSet[statuses.length];
+		BitSet[] test_sets = new BitSet[statuses.length];
+		for ( EPhptTestStatus status : statuses ) {
+			base_sets[status.ordinal()] = getTests(base, status);
+			test_sets[status.ordinal()] = getTests(test, status);
+		}
+		return new Diff<EPhptTestStatus>(this, base_sets, test_sets);
+	}
+	
+	/** compares the status of every PhpUnit test of 2 test runs
+	 *
+	 * @param base
+	 * @param test
+	 * @return
+	 */
+	public Diff<EPhpUnitTestStatus> compare(AbstractPhpUnitRW base, AbstractPhpUnitRW test) {
+		EPhpUnitTestStatus[] statuses = EPhpUnitTestStatus.values();
+		BitSet[] base_sets = new BitSet[statuses.length];
+		BitSet[] test_sets = new BitSet[statuses.length];
+		for ( EPhpUnitTestStatus status : statuses ) {
+			base_sets[status.ordinal()] = getTests(base, status);
+			test_sets[status.ordinal()] = getTests(test, status);
+		}
+		return new Diff<EPhpUnitTestStatus>(this, base_sets, test_sets);
+	}
+	
+	/** differences between the statuses of 2 test runs. computed for all statuses when created. */
+	public static class Diff<S extends Enum<S>> {
+		protected final ResultComparator cmp;
+		protected final BitSet[] base_sets, test_sets, new_sets, fixed_sets;
+		
+		protected Diff(ResultComparator cmp, BitSet[] base_sets, BitSet[] test_sets) {
+			this.cmp = cmp;
+			this.base_sets = base_sets;
+			this.test_sets = test_sets;
+			new_sets = new BitSet[base_sets.length];
+			fixed_sets = new BitSet[base_sets.length];
+			for ( int i=0 ; i < base_sets.length ; i++ ) {
+				new_sets[i] = (BitSet) test_sets[i].clone();
+				new_sets[i].andNot(base_sets[i]);
+				fixed_sets[i] = (BitSet) base_sets[i].clone();
+				fixed_sets[i].andNot(test_sets[i]);
+			}
+		}
+		
+		/** tests with status in test run, but not in base run (ex: new failures) */
+		public List<String> getNew(S status) {
+			return cmp.toTestNames(new_sets[status.ordinal()]);
+		}
+		
+		public int countNew(S status) {
+			return new_sets[status.ordinal()].cardinality();
+		}
+		
+		/** tests with status in base run, but not in test run (ex: fixed failures) */
+		public List<String> getFixed(S status) {
+			return cmp.toTestNames(fixed_sets[status.ordinal()]);
+		}
+		
+		public int countFixed(S status) {
+			return fixed_sets[status.ordinal()].cardinality();
+		}
+		
+		/** tests with 1 status in base run and another in test run (ex: PASS to CRASH) */
+		public List<String> getChanged(S base_status, S test_status) {
+			BitSet set = (BitSet) base_sets[base_status.ordinal()].clone();
+			set.and(test_sets[test_status.ordinal()]);
+			return cmp.toTestNames(set);
+		}
+	
+	} // end public static class Diff
+	
+	/** returns the names in a that aren't in b, in the order of a
+	 *
+	 * @see PhptTestResult#listANotInB
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static List<String> listANotInB(List<String> a, List<String> b) {
+		if (a==null) {
+			return b == null ? new ArrayList<String>(0) : b;
+		} else if (b==null) {
+			return a;
+		}
+		HashSet<String> b_set = new HashSet<String>(b);
+		ArrayList<String> c = new ArrayList<String>(a.size());
+		for ( String d : a ) {
+			if (!b_set.contains(d))
+				c.add(d);
+		}
+		return c;
+	}
+
+} // end public class ResultComparator
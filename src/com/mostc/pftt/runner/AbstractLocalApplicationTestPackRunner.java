@@ -41,24 +41,8 @@ public abstract class AbstractLocalApplicationTestPackRunner<A extends ActiveTes
 		}
 		
 		// generate name of directory on that storage to store the copy of the test-pack
-		String local_test_pack_dir = null, remote_test_pack_dir = null;
-		{
-			String local_path = storage_dir.getLocalPath(storage_host);
-			String remote_path = storage_dir.getRemotePath(storage_host);
-			long millis = System.currentTimeMillis();
-			for ( int i=0 ; i < 131070 ; i++ ) {
-				// try to include version, branch info etc... from name of test-pack
-				//
-				// don't want long directory paths or lots of nesting, just put in /php-sdk
-				local_test_pack_dir = local_path + "/TEMP-" + src_test_pack.getName() + (i==0?"":"-" + millis) + "/";
-				remote_test_pack_dir = remote_path + "/TEMP-" + src_test_pack.getName() + (i==0?"":"-" + millis) + "/";
-				if (!storage_host.mExists(remote_test_pack_dir) || !runner_host.mExists(local_test_pack_dir))
-					break;
-				millis++;
-				if (i%100==0)
-					millis = System.currentTimeMillis();
-			}
-		}
+		String[] test_pack_dirs = getTestPackStorageDirs(storage_dir, src_test_pack.getName());
+		String local_test_pack_dir = test_pack_dirs[0], remote_test_pack_dir = test_pack_dirs[1];
 		//
 		
 		
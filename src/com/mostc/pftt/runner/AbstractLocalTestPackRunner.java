@@ -19,6 +19,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 
 import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.host.DeltaSync;
 import com.mostc.pftt.host.RemoteHost;
 import com.mostc.pftt.main.Config;
 import com.mostc.pftt.model.ActiveTestPack;
@@ -61,6 +62,8 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 	protected final ConsoleManager cm;
 	protected final ITestResultReceiver twriter;
 	protected long start_time_millis;
+	/** how long #executeTestCases took (0 until finished) */
+	protected long run_time_millis;
 	protected int thread_safe_test_count;
 	protected A active_test_pack;
 	protected AtomicReference<ETestPackRunnerState> runner_state;
@@ -71,6 +74,7 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 	protected ScenarioSetSetup scenario_set_setup;
 	protected LinkedBlockingQueue<NonThreadSafeExt<T>> non_thread_safe_exts = new LinkedBlockingQueue<NonThreadSafeExt<T>>();
 	protected LinkedBlockingQueue<TestCaseGroup<T>> thread_safe_groups = new LinkedBlockingQueue<TestCaseGroup<T>>();
+	protected WorkStealingScheduler<T> scheduler;
 	
 	public static class NonThreadSafeExt<T extends TestCase> {
 		public String[] ext_names;
@@ -92,6 +96,10 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 	public ScenarioSetSetup getScenarioSetSetup() {
 		return scenario_set_setup;
 	}
+	@Nullable
+	public WorkStealingScheduler<T> getScheduler() {
+		return scheduler;
+	}
 	
 	
 	public static class TestCaseGroup<T extends TestCase> {
@@ -205,6 +213,40 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 		return storage_dir;
 	}
 	
+	/** decides which directory on storage to install the test-pack copy into.
+	 * 
+	 * a copy installed there by an earlier run (has a sync manifest) is reused, so only files that changed since
+	 * then are sent (@see DeltaSync). otherwise picks a directory that doesn't exist yet.
+	 * 
+	 * CRITICAL: directory paths end with / (@see {PWD} in PhpIni)
+	 * 
+	 * @param storage_dir
+	 * @param test_pack_name
+	 * @return {local directory, remote directory}
+	 */
+	protected String[] getTestPackStorageDirs(ITestPackStorageDir storage_dir, String test_pack_name) {
+		String local_path = storage_dir.getLocalPath(storage_host);
+		String remote_path = storage_dir.getRemotePath(storage_host);
+		String local_test_pack_dir = null, remote_test_pack_dir = null;
+		long millis = System.currentTimeMillis();
+		for ( int i=0 ; i < 131070 ; i++ ) {
+			// try to include version, branch info etc... from name of test-pack
+			//
+			// don't want long directory paths or lots of nesting, just put in /php-sdk (breaks some PHPTs)
+			local_test_pack_dir = local_path + "/TEMP-" + test_pack_name + (i==0?"":"-" + millis) + "/";
+			remote_test_pack_dir = remote_path + "/TEMP-" + test_pack_name + (i==0?"":"-" + millis) + "/";
+			if (!storage_host.mExists(remote_test_pack_dir) || !runner_host.mExists(local_test_pack_dir))
+				break;
+			if (storage_host.mExists(storage_host.joinIntoOnePath(remote_test_pack_dir, DeltaSync.MANIFEST_FILE_NAME)))
+				// installed by an earlier run: update it
+				break;
+			millis++;
+			if (i%100==0)
+				millis = System.currentTimeMillis();
+		}
+		return new String[]{local_test_pack_dir, remote_test_pack_dir};
+	} // end protected String[] getTestPackStorageDirs
+	
 	protected boolean checkWebServer() {
 		//
 		if (sapi_scenario instanceof WebServerScenario) { // TODO temp
@@ -303,7 +345,7 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 			
 			executeTestCases(sapi_scenario.isParallelOk());
 			
-			final long run_time = Math.abs(System.currentTimeMillis() - start_time_millis);
+			final long run_time = run_time_millis = Math.abs(System.currentTimeMillis() - start_time_millis);
 			
 			cm.println(EPrintType.CLUE, getClass(), "Finished test run in "+(run_time/1000)+" seconds");
 			
@@ -334,6 +376,64 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 		}
 	} // end public void runTestList
 	
+	/** sets up the scenario set, build and test-pack once, so several groups of tests can be run with #runGroup
+	 * without setting them up (and tearing them down) for each group (ex: groups sent by a coordinator @see PfttAgentMain).
+	 *
+	 * call #close after the last group.
+	 *
+	 * @param test_pack
+	 * @param active_test_pack - test-pack already installed onto storage (ex: by the coordinator) or null to install it
+	 * @return FALSE if tests can't be run
+	 * @throws Exception
+	 */
+	public boolean openTestPack(S test_pack, @Nullable A active_test_pack) throws Exception {
+		this.src_test_pack = test_pack;
+		this.active_test_pack = active_test_pack;
+		if (!checkWebServer())
+			return false;
+
+		runner_state.set(ETestPackRunnerState.RUNNING);
+		checkHost(storage_host);
+		checkHost(runner_host);
+		scenario_set_setup = ScenarioSetSetup.setupScenarioSet(cm, runner_fs, runner_host, build, scenario_set, getScenarioSetPermutationLayer());
+		if (scenario_set_setup==null)
+			return false;
+
+		sapi_scenario.installBuild(cm, scenario_set_setup, runner_host, build.getBuildPath());
+
+		ITestPackStorageDir storage_dir = doSetupStorageAndTestPack(true, new ArrayList<T>(0));
+		if (storage_dir==null || this.active_test_pack==null || runner_state.get()!=ETestPackRunnerState.RUNNING)
+			return false;
+		storage_dir.notifyTestPackInstalled(cm, runner_host);
+
+		start_time_millis = System.currentTimeMillis();
+		return true;
+	} // end public boolean openTestPack
+
+	/** runs a group of tests on the thread pool, using the scenario set, build and test-pack from #openTestPack.
+	 *
+	 * doesn't close anything, so it can be called again for the next group.
+	 *
+	 * @param test_cases
+	 * @throws Exception
+	 */
+	public void runGroup(List<T> test_cases) throws Exception {
+		if (runner_state.get()!=ETestPackRunnerState.RUNNING)
+			throw new IllegalStateException("test-pack not open (@see #openTestPack)");
+		if (test_cases.isEmpty())
+			return;
+
+		// forget groups of the last group of tests
+		thread_safe_tests.clear();
+		non_thread_safe_tests.clear();
+		non_thread_safe_exts.clear();
+		thread_safe_groups.clear();
+
+		groupTestCases(test_cases);
+
+		executeTestCases(sapi_scenario.isParallelOk());
+	} // end public void runGroup
+
 	protected abstract void showTally();
 	
 	public abstract EScenarioSetPermutationLayer getScenarioSetPermutationLayer();
@@ -577,12 +677,24 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 			max_thread_count = MAX_USER_SPECIFIED_THREAD_COUNT;
 	}
 	
+	/** used by the WorkStealingScheduler to split thread-safe groups into chunks of equal cost
+	 * 
+	 * @return
+	 */
+	protected WorkStealingScheduler.ITestCaseCostModel<T> createCostModel() {
+		return new WorkStealingScheduler.UnitCostModel<T>();
+	}
+	
 	protected void executeTestCases(boolean parallel) throws InterruptedException, IllegalStateException, IOException {
 		decideThreadCount();
 		cm.println(EPrintType.IN_PROGRESS, getClass(), "Starting up Test Threads: thread_count="+init_thread_count+" max="+max_thread_count+" runner_host="+runner_host+" sapi_scenario="+sapi_scenario);
 			
 		test_count.set(0);
 		
+		scheduler = new WorkStealingScheduler<T>(createCostModel());
+		scheduler.seed(init_thread_count, thread_safe_groups, non_thread_safe_exts);
+		cm.println(EPrintType.CLUE, getClass(), "Scheduler: "+scheduler);
+		
 		for ( int i=0 ; i < init_thread_count ; i++ ) { 
 			start_thread(parallel);
 		}
@@ -641,6 +753,7 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 			if (twriter instanceof PhpResultPackWriter)
 				((PhpResultPackWriter)twriter).wait(runner_host, scenario_set);
 		}
+		cm.println(EPrintType.CLUE, getClass(), "Scheduler: "+scheduler);
 	} // end protected void executeTestCases
 		
 	protected TestPackThread<T> start_thread(boolean parallel) throws IllegalStateException, IOException {
@@ -706,7 +819,7 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 			// (if there aren't enough NTS extensions to fill all the threads, some threads will only execute thread-safe tests)
 			//
 			try {
-				while (shouldRun()&&(!thread_safe_groups.isEmpty()||!non_thread_safe_exts.isEmpty())) {//thread_safe_test_count==0)) {
+				while (shouldRun()&&scheduler.hasWork()) {
 					try {
 						runNonThreadSafe();
 						
@@ -721,6 +834,9 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 			} finally {
 				threads.remove(Thread.currentThread());
 				
+				// give any chunks this thread didn't get to to other threads
+				scheduler.unregister(this, group);
+				
 				if (thread_wsi!=null) {
 					if (thread_wsi.isCrashedAndDebugged()||thread_wsi.isDebuggerAttached()) {
 						// let it keep running
@@ -730,7 +846,7 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 					}
 				}
 				
-				if (threads.size()==0&&shouldRun()&&(!thread_safe_groups.isEmpty()||!non_thread_safe_exts.isEmpty())) {
+				if (threads.size()==0&&shouldRun()&&scheduler.hasWork()) {
 					//// TODO temp azure test 
 					createNewThread();
 				}
@@ -744,7 +860,9 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 			
 			// create new thread to run this thread's jobs
 			if (ext!=null)
-				non_thread_safe_exts.add(ext);
+				scheduler.requeueNonThreadSafe(ext);
+			else
+				scheduler.unregister(this, group);
 			createNewThread();
 			
 			// don't run test again, it will likely just cause another timeout
@@ -772,7 +890,8 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 		AtomicBoolean break_nts = new AtomicBoolean(false);
 		protected void runNonThreadSafe() throws InterruptedException {
 			while(shouldRun()) {
-				ext = non_thread_safe_exts.poll();
+				// NTS extensions are never split between threads or stolen
+				ext = scheduler.pollNonThreadSafe(this);
 				if (ext==null)
 					break;
 				
@@ -790,21 +909,21 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 				}
 			}
 			ext = null;
+			group = null;
 		} // end protected void runNonThreadSafe
 		
 		protected void runThreadSafe() throws InterruptedException {
 			while (shouldRun()) {
-				// thread-safe can share groups between threads
-				// (this allows larger groups to be distributed  between threads)
-				group = thread_safe_groups.peek();
+				// thread-safe groups are split into chunks, each thread runs chunks from its own deque
+				// then steals chunks from other threads (@see WorkStealingScheduler)
+				group = scheduler.pollThreadSafe(this);
 				if (group==null) {
 					break;
-				} else if (group.test_cases.isEmpty()) {
-					while (thread_safe_groups.remove(group)) {}
-				} else {
+				} else if (!group.test_cases.isEmpty()) {
 					exec_jobs(false, group.group_key, group.test_cases);
 				}
 			}
+			group = null;
 		} // end protected void runThreadSafe
 		
 		@Override
@@ -823,6 +942,14 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 		
 		protected abstract void prepareExec(TestCaseGroupKey group_key, PhpIni ini, Map<String,String> env, IScenarioSetup s);
 		
+		/** called before running a group (or chunk of a group) of tests. can do work for all the tests at once.
+		 * 
+		 * @param group_key
+		 * @param jobs
+		 */
+		protected void prepareJobs(TestCaseGroupKey group_key, LinkedBlockingQueue<T> jobs) {
+		}
+		
 		protected void exec_jobs(boolean nts, TestCaseGroupKey group_key, LinkedBlockingQueue<T> jobs) {
 			this.group_key = group_key;
 			LinkedList<T> completed_tests = new LinkedList<T>();
@@ -833,6 +960,7 @@ public abstract class AbstractLocalTestPackRunner<A extends ActiveTestPack, S ex
 			for ( IScenarioSetup s :scenario_set_setup.getSetups() ) {
 				prepareExec(group_key, group_key.getPhpIni(), group_key.getEnv(), s);
 			}
+			prepareJobs(group_key, jobs);
 			
 			while (shouldRun()&&(!nts||!break_nts.get())) {
 				//
@@ -78,8 +78,8 @@ public abstract class AbstractPhpUnitTestCaseRunner extends AbstractApplicationU
 		this.reflection_only = reflection_only;
 	}
 	
-	@Override
-	protected String generatePhpScript() {
+	/** ENV vars set in PHP code by the template (same as ENV vars set for PHP process) @see PhpUnitTemplate */
+	protected HashMap<String,String> generateTemplateEnv() {
 		HashMap<String,String> env = new HashMap<String,String>();
 		
 		// BN: some phpunit tests (symfony) seem to not cleanup files or directories they create, sometimes
@@ -96,6 +96,13 @@ public abstract class AbstractPhpUnitTestCaseRunner extends AbstractApplicationU
 		// provide this info too, just like for PHPT tests
 		env.put("PFTT_SCENARIO_SET", scenario_set.getNameWithVersionInfo());
 		
+		return env;
+	}
+	
+	@Override
+	protected String generatePhpScript() {
+		HashMap<String,String> env = generateTemplateEnv();
+		
 		
 		//////// prepared, generate PHP code
 		
@@ -120,6 +127,30 @@ public abstract class AbstractPhpUnitTestCaseRunner extends AbstractApplicationU
 			);
 	}
 	
+	/** generates PHP code for a PhpUnitWorker that loads the bootstrap, etc... once and then runs many tests
+	 *
+	 * @see PhpUnitTemplate#renderWorkerTemplate
+	 * @return
+	 */
+	protected String generateWorkerPhpScript() {
+		return PhpUnitTemplate.renderWorkerTemplate(
+				host, 
+				scenario_set.getScenarioSet(), 
+				test_case.getPhpUnitDist().getSourceTestPack().getPreBootstrapCode(cm, host, scenario_set.getScenarioSet(), build),
+				PhpUnitActiveTestPack.norm(sapi_scenario, test_case.getPhpUnitDist().getBootstrapFile() == null ? 
+						null : 
+						test_case.getPhpUnitDist().getBootstrapFile().getAbsolutePath()),
+				test_case.getPhpUnitDist().getSourceTestPack().getPostBootstrapCode(cm, host, scenario_set.getScenarioSet(), build),
+				PhpUnitActiveTestPack.norm(sapi_scenario, test_case.getPhpUnitDist().getPath().getAbsolutePath()),
+				include_path,
+				include_files,
+				globals,
+				constants,
+				generateTemplateEnv(),
+				my_temp_dir
+			);
+	}
+	
 	protected boolean use_cgi() {
 		return false;
 	}
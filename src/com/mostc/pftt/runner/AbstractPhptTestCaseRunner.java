@@ -130,7 +130,7 @@ public abstract class AbstractPhptTestCaseRunner extends AbstractTestCaseRunner<
 		
 		if (prep.skipif_file!=null) {
 			current_section = EPhptSection.SKIPIF; // @see #getSAPIOutput
-			if ( evalSkipIf(executeSkipIf()) ) {
+			if ( evalSkipIf(getSkipIfOutput(r)) ) {
 				return;
 			}
 		}
@@ -218,6 +218,46 @@ public abstract class AbstractPhptTestCaseRunner extends AbstractTestCaseRunner<
 		return true;
 	} // end boolean prepare
 	
+	/** returns output of SKIPIF section from PhptSkipIfCache, or from PhptSkipIfBatch, or by executing it
+	 * 
+	 * @param r
+	 * @return
+	 * @throws Exception
+	 */
+	protected String getSkipIfOutput(LocalPhptTestPackRunner r) throws Exception {
+		final PhptSkipIfCache skipif_cache = r.getSkipIfCache();
+		String output;
+		if (skipif_cache!=null) {
+			output = skipif_cache.get(ini, prep.test_case);
+			if (output!=null) {
+				skipif_cache.notifyHit();
+				return output;
+			}
+			skipif_cache.notifyMiss();
+		}
+		// SKIPIF may have already been executed along with other tests' SKIPIF sections (@see PhptSkipIfBatch)
+		output = prep.skipif_output;
+		if (output==null) {
+			output = executeSkipIf();
+		} else {
+			// prep is shared by every run of this test (ex: repeated runs), only the first run can use the batch's output
+			prep.skipif_output = null;
+		}
+		if (skipif_cache!=null && isSkipIfCacheable(output))
+			skipif_cache.put(ini, prep.test_case, output);
+		return output;
+	}
+	
+	/** returns TRUE if SKIPIF output is only what the SKIPIF printed (it didn't timeout, crash, etc...)
+	 * 
+	 * @param output
+	 * @return
+	 */
+	protected boolean isSkipIfCacheable(String output) {
+		// PFTT: prefixes messages PFTT adds when something went wrong
+		return output!=null && !is_timeout && not_crashed && !output.contains("PFTT:");
+	}
+	
 	/** executes SKIPIF section and returns output
 	 * 
 	 * @return
@@ -463,7 +503,7 @@ public abstract class AbstractPhptTestCaseRunner extends AbstractTestCaseRunner<
 			String output_trim = output.trim();
 			
 			try {
-				expected_re_match = prep.test_case.getExpectedCompiled(host, scenario_set, twriter, false).match(output_trim); 
+				expected_re_match = prep.test_case.matchesExpected(host, scenario_set, twriter, false, output_trim); 
 			} catch (Throwable ex) {
 				twriter.addResult(host, scenario_set, src_test_pack, new PhptTestResult(host, EPhptTestStatus.BORK, prep.test_case, ConsoleManagerUtil.toString(ex), null, null, charset, ini, env, splitCmdString(), stdin_post, getShellScript(), null, null, preoverride_actual, getSAPIOutput(), getSAPIConfig(), code_coverage));
 				throw ex;
@@ -474,7 +514,7 @@ public abstract class AbstractPhptTestCaseRunner extends AbstractTestCaseRunner<
 			} 
 			if (prep.test_case.expectsWarningOrFatalError()) {
 				try {
-					expected_re_match = prep.test_case.getExpectedCompiled(host, scenario_set, twriter, true).match(output_trim); 
+					expected_re_match = prep.test_case.matchesExpected(host, scenario_set, twriter, true, output_trim); 
 				} catch (Throwable ex) {
 					twriter.addResult(host, scenario_set, src_test_pack, new PhptTestResult(host, EPhptTestStatus.BORK, prep.test_case, ConsoleManagerUtil.toString(ex), null, null, charset, ini, env, splitCmdString(), stdin_post, getShellScript(), null, null, preoverride_actual, getSAPIOutput(), getSAPIConfig(), code_coverage));
 					throw ex;
@@ -494,7 +534,7 @@ public abstract class AbstractPhptTestCaseRunner extends AbstractTestCaseRunner<
 			} else {
 				// compare again
 				try {
-					expected_re_match = prep.test_case.getExpectedCompiled(host, scenario_set, twriter, false).match(output_trim); 
+					expected_re_match = prep.test_case.matchesExpected(host, scenario_set, twriter, false, output_trim); 
 				} catch (Throwable ex) {
 					twriter.addResult(host, scenario_set, src_test_pack, new PhptTestResult(host, EPhptTestStatus.BORK, prep.test_case, ConsoleManagerUtil.toString(ex), null, null, charset, ini, env, splitCmdString(), stdin_post, getShellScript(), null, null, preoverride_actual, getSAPIOutput(), getSAPIConfig(), code_coverage));
 					throw ex;
@@ -504,7 +544,7 @@ public abstract class AbstractPhptTestCaseRunner extends AbstractTestCaseRunner<
 				}
 				if (prep.test_case.expectsWarningOrFatalError()) {
 					try {
-						expected_re_match = prep.test_case.getExpectedCompiled(host, scenario_set, twriter, true).match(output_trim); 
+						expected_re_match = prep.test_case.matchesExpected(host, scenario_set, twriter, true, output_trim); 
 					} catch (Throwable ex) {
 						twriter.addResult(host, scenario_set, src_test_pack, new PhptTestResult(host, EPhptTestStatus.BORK, prep.test_case, ConsoleManagerUtil.toString(ex), null, null, charset, ini, env, splitCmdString(), stdin_post, getShellScript(), null, null, preoverride_actual, getSAPIOutput(), getSAPIConfig(), code_coverage));
 						throw ex;
@@ -631,7 +671,7 @@ public abstract class AbstractPhptTestCaseRunner extends AbstractTestCaseRunner<
 	 * @param b
 	 * @return
 	 */
-	protected static boolean equalsNoWS(String a, String b) {
+	public static boolean equalsNoWS(String a, String b) {
 		final int a_len = a.length();
 		final int b_len = b.length();
 		if (a_len==0) {
@@ -10,6 +10,7 @@ import com.mostc.pftt.model.app.PhpUnitTestCase;
 import com.mostc.pftt.model.core.PhpBuild;
 import com.mostc.pftt.model.core.PhpIni;
 import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.EPrintType;
 import com.mostc.pftt.results.ITestResultReceiver;
 import com.mostc.pftt.runner.LocalPhpUnitTestPackRunner.PhpUnitThread;
 import com.mostc.pftt.scenario.CliScenario;
@@ -27,11 +28,69 @@ public class CliPhpUnitTestCaseRunner extends AbstractPhpUnitTestCaseRunner {
 	
 	@Override
 	protected void stop(boolean force) {
+		if (thread.worker!=null)
+			thread.worker.close(cm);
 		if (running_test_handle==null)
 			return;
 		running_test_handle.close(cm, force);
 	}
 	
+	/** worker can only run tests through PhpUnit's reflection (@see PhpUnitTemplate#renderWorkerTemplate). if
+	 * reflection_only is FALSE, each test is run in its own process so its test method is called directly
+	 */
+	protected boolean useWorker() {
+		return cm.getPhpUnitWorkerTestCount() > 0 && reflection_only;
+	}
+	
+	@Override
+	protected void prepareTemplate(String template_file) throws IllegalStateException, IOException {
+		if (useWorker())
+			// worker uses its own template @see #executeInWorker
+			return;
+		super.prepareTemplate(template_file);
+	}
+	
+	/** runs test in thread's PhpUnitWorker, starting a new one if needed
+	 *
+	 * @param ini_dir
+	 * @return FALSE if worker couldn't be started (test not run)
+	 * @throws Exception
+	 */
+	protected boolean executeInWorker(String ini_dir) throws Exception {
+		final String worker_file = my_temp_dir+"/worker.php";
+		final String cmd = build.getPhpExe()+" -c "+ini_dir+" "+worker_file;
+		final String dist_path = test_case.getPhpUnitDist().getPath().getAbsolutePath();
+		// worker can only be reused for tests that use the same bootstrap, include path, etc...
+		final String key = cmd+"|"+dist_path+"|"+test_case.getPhpUnitDist().getBootstrapFile()+"|"+include_path;
+		
+		if (thread.worker==null || !thread.worker.getKey().equals(key) || thread.worker.shouldRestart(cm)) {
+			if (thread.worker!=null) {
+				thread.worker.close(cm);
+				thread.worker = null;
+			}
+			final String php_script = generateWorkerPhpScript();
+			fs.saveTextFile(worker_file, php_script);
+			
+			try {
+				thread.worker = PhpUnitWorker.start(cm, host, cmd, env, dist_path, key, getMaxTestRuntimeSeconds());
+			} catch ( Exception ex ) {
+				cm.addGlobalException(EPrintType.CLUE, getClass(), "executeInWorker", ex, "Unable to start PhpUnit worker, running test in its own process instead", test_case);
+				return false;
+			}
+		}
+		
+		PhpUnitWorker.WorkerResult result = thread.worker.run(cm, test_case, getMaxTestRuntimeSeconds());
+		output_str = result.output;
+		is_timeout = result.timed_out;
+		is_crashed = result.exited && !result.timed_out;
+		
+		if (thread.worker.shouldRestart(cm)) {
+			thread.worker.close(cm);
+			thread.worker = null;
+		}
+		return true;
+	} // end protected boolean executeInWorker
+	
 	private void doExecute(String template_file, String ini_dir) throws Exception {
 		running_test_handle = host.execThread(
 				build.getPhpExe()+" -c "+ini_dir+" "+template_file,
@@ -61,6 +120,13 @@ public class CliPhpUnitTestCaseRunner extends AbstractPhpUnitTestCaseRunner {
 	protected String execute(String template_file) throws IOException, Exception {
 		final String ini_dir = build.prepare(cm, fs, host); // XXX store PhpIni in my_temp_dir ?
 		
+		if (useWorker()) {
+			if (executeInWorker(ini_dir))
+				return output_str;
+			// worker failed to start, run test in its own process
+			super.prepareTemplate(template_file);
+		}
+		
 		doExecute(template_file, ini_dir);
 		if (is_crashed && running_test_handle.getExitCode() != -2
 				&& running_test_handle.getExitCode() != NTStatus.STATUS_ACCESS_VIOLATION) {
@@ -187,6 +187,21 @@ public class CliPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 	
 	@Override
 	protected String executeSkipIf() throws Exception {
+		prepareSkipIfENV();
+		
+		// execute SKIPIF (5 second timeout since its a little bit of PHP code that doesn't do much)
+		output = sapi.execute(exe_type, prep.base_file_name, prep.skipif_file, null, 5, env, active_test_pack.getStorageDirectory(), debugger_attached);
+					
+		return output.output; 
+	} // end String executeSkipIf
+	
+	@Override
+	protected boolean isSkipIfCacheable(String output_str) {
+		// output is NULL if SKIPIF was executed by PhptSkipIfBatch
+		return super.isSkipIfCacheable(output_str) && (output==null || !output.isCrashed());
+	}
+	
+	protected void prepareSkipIfENV() {
 		// Check if test should be skipped.
 		env.put(ENV_USE_ZEND_ALLOC, "1");
 				
@@ -198,14 +213,7 @@ public class CliPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 		env.put(ENV_PHP_PATH, build.getPhpExe());
 		env.put(ENV_PFTT_SCENARIO_SET, scenario_set.getNameWithVersionInfo());
 		env.put(ENV_PFTT_IS, "1");
-		
-		
-		
-		// execute SKIPIF (5 second timeout since its a little bit of PHP code that doesn't do much)
-		output = sapi.execute(exe_type, prep.base_file_name, prep.skipif_file, null, 5, env, active_test_pack.getStorageDirectory(), debugger_attached);
-					
-		return output.output; 
-	} // end String executeSkipIf
+	}
 	
 	@Override
 	protected void redoCrashedTest() throws Exception {
@@ -247,21 +255,21 @@ public class CliPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 				sapi_scenario.getSlowTestTimeSeconds(), cm.getSuspendSeconds(), 
 				IOUtil.HALF_MEGABYTE
 			);
-		String output_str;
+		return filterTestOutput(output_sb.toString());
+	}
+	
+	protected String filterTestOutput(String output_str) {
 		if (cm.isIgnoreOutput()) {
-			output_str = "";
-		} else {
-			output_str = output_sb.toString();
-			if (output_str.contains("PHP Warning:  Module")) {
-				output_sb = new StringBuilder(1024);
-				for ( String line : StringUtil.splitLines(output_str) ) {
-					if (!line.startsWith("PHP Warning:  Module")) {
-						output_sb.append(line);
-						output_sb.append('\n');
-					}
+			return "";
+		} else if (output_str.contains("PHP Warning:  Module")) {
+			StringBuilder output_sb = new StringBuilder(output_str.length());
+			for ( String line : StringUtil.splitLines(output_str) ) {
+				if (!line.startsWith("PHP Warning:  Module")) {
+					output_sb.append(line);
+					output_sb.append('\n');
 				}
-				output_str = output_sb.toString();
 			}
+			return output_sb.toString();
 		}
 		return output_str;
 	}
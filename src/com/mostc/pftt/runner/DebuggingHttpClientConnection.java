@@ -18,17 +18,43 @@ import org.apache.http.io.SessionOutputBuffer;
 import org.apache.http.params.HttpParams;
 
 public class DebuggingHttpClientConnection extends DefaultHttpClientConnection {
-	protected final ByteArrayOutputStream response, request;
+	protected ByteArrayOutputStream response, request;
+	protected DebuggingInputStream din;
+	protected DebuggingOutputStream dout;
+	/** @see HttpClientConnectionPool#evictAll */
+	int pool_generation;
 	
-	public DebuggingHttpClientConnection(@Nullable ByteArrayOutputStream request, ByteArrayOutputStream response) {
+	public DebuggingHttpClientConnection(@Nullable ByteArrayOutputStream request, @Nullable ByteArrayOutputStream response) {
 		this.request = request;
 		this.response = response;
 	}
 	
+	/** changes where requests and responses are copied to.
+	 * 
+	 * a kept-alive connection (@see HttpClientConnectionPool) is used for several tests, so each
+	 * test needs to capture its own requests and responses.
+	 * 
+	 * @param request
+	 * @param response
+	 */
+	public void setCapture(@Nullable ByteArrayOutputStream request, @Nullable ByteArrayOutputStream response) {
+		this.request = request;
+		this.response = response;
+		if (din!=null)
+			din.bin = response;
+		if (dout!=null)
+			dout.bout = request;
+	}
+	
+	@Override
+	public Socket getSocket() {
+		return super.getSocket();
+	}
+	
 	@Override
 	protected SessionInputBuffer createSessionInputBuffer(final Socket socket, int buffersize, final HttpParams params) throws IOException {
 		InputStream in = socket.getInputStream();
-		DebuggingInputStream din = new DebuggingInputStream(response, in);
+		din = new DebuggingInputStream(response, in);
 		
 		return new DebugSocketInputBuffer(socket, din, buffersize, params);
 	}
@@ -36,13 +62,13 @@ public class DebuggingHttpClientConnection extends DefaultHttpClientConnection {
 	@Override
 	protected SessionOutputBuffer createSessionOutputBuffer(final Socket socket, int buffersize, final HttpParams params) throws IOException {
 		OutputStream out = socket.getOutputStream();
-		DebuggingOutputStream dout = new DebuggingOutputStream(request, out);
+		dout = new DebuggingOutputStream(request, out);
 		
 		return new DebugSocketOutputBuffer(socket, dout, buffersize, params);
 	}
 	
 	protected static class DebuggingInputStream extends InputStream {
-		protected final ByteArrayOutputStream bin;
+		protected ByteArrayOutputStream bin;
 		protected final InputStream real;
 
 		public DebuggingInputStream(ByteArrayOutputStream bin, InputStream real) {
@@ -53,7 +79,7 @@ public class DebuggingHttpClientConnection extends DefaultHttpClientConnection {
 		@Override
 		public int read(byte[] buf, int off, int len) throws IOException {
 			len = real.read(buf, off, len);
-			if (len!=-1)
+			if (len!=-1 && bin!=null)
 				bin.write(buf, off, len);
 			return len;
 		}
@@ -61,7 +87,7 @@ public class DebuggingHttpClientConnection extends DefaultHttpClientConnection {
 		@Override
 		public int read(byte[] buf) throws IOException {
 			int len = real.read(buf);
-			if (len!=-1)
+			if (len!=-1 && bin!=null)
 				bin.write(buf, 0, len);
 			return len;
 		}
@@ -69,20 +95,22 @@ public class DebuggingHttpClientConnection extends DefaultHttpClientConnection {
 		@Override
 		public int read() throws IOException {
 			int i = real.read();
-			bin.write(i);
+			if (i!=-1 && bin!=null)
+				bin.write(i);
 			return i;
 		}
 		
 		@Override
 		public void close() throws IOException {
-			bin.close();
+			if (bin!=null)
+				bin.close();
 			real.close();
 		}
 		
 	} // end protected static class DebuggingInputStream
 	
 	protected static class DebuggingOutputStream extends OutputStream {
-		protected final ByteArrayOutputStream bout;
+		protected ByteArrayOutputStream bout;
 		protected final OutputStream real;
 
 		public DebuggingOutputStream(ByteArrayOutputStream bout, OutputStream real) {
@@ -0,0 +1,196 @@
+package com.mostc.pftt.runner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.mattficken.io.ByLineReader;
+import com.github.mattficken.io.MultiCharsetByLineReader;
+import com.github.mattficken.io.NoCharsetByLineReader;
+import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.host.ExecOutput;
+import com.mostc.pftt.model.core.EExecutableType;
+import com.mostc.pftt.model.core.EPhptSection;
+import com.mostc.pftt.model.core.EPhptTestStatus;
+import com.mostc.pftt.model.core.PhpBuild;
+import com.mostc.pftt.model.core.PhpIni;
+import com.mostc.pftt.model.core.PhptActiveTestPack;
+import com.mostc.pftt.model.core.PhptSourceTestPack;
+import com.mostc.pftt.model.core.PhptTestCase;
+import com.mostc.pftt.model.sapi.CliSAPIInstance;
+import com.mostc.pftt.model.sapi.FastCGIWorkerPool;
+import com.mostc.pftt.model.sapi.FastCGIWorkerPool.FastCGIResult;
+import com.mostc.pftt.model.sapi.FastCGIWorkerPool.FastCGIWorker;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.ITestResultReceiver;
+import com.mostc.pftt.results.PhptTestResult;
+import com.mostc.pftt.runner.LocalPhptTestPackRunner.PhptThread;
+import com.mostc.pftt.runner.PhptTestPreparer.PreparedPhptTestCase;
+import com.mostc.pftt.scenario.CliFastCGIScenario;
+import com.mostc.pftt.scenario.FileSystemScenario;
+import com.mostc.pftt.scenario.ScenarioSetSetup;
+
+/** runs a PhptTestCase by sending its SKIPIF, TEST and CLEAN sections to a pool of php-cgi FastCGI processes
+ * (instead of starting a new php.exe process for each section).
+ *
+ * Tests that need a debugger, command line arguments (--ARGS--) or STDIN (--STDIN--) are run by
+ * CliPhptTestCaseRunner as usual.
+ *
+ * @see CliFastCGIScenario
+ * @author Matt Ficken
+ *
+ */
+
+public class FastCGIPhptTestCaseRunner extends CliPhptTestCaseRunner {
+	protected static final int SKIPIF_TIMEOUT_SECONDS = 5;
+	protected final FastCGIWorkerPool pool;
+	protected volatile FastCGIWorker running_worker;
+	protected FastCGIResult result;
+
+	public FastCGIPhptTestCaseRunner(FastCGIWorkerPool pool, boolean xdebug, FileSystemScenario fs, CliFastCGIScenario sapi_scenario, CliSAPIInstance sapi, PhpIni ini, PhptThread thread, PreparedPhptTestCase prep, ConsoleManager cm, ITestResultReceiver twriter, AHost host, ScenarioSetSetup scenario_set_setup, PhpBuild build, PhptSourceTestPack src_test_pack, PhptActiveTestPack active_test_pack, boolean debugger_attached) {
+		super(xdebug, fs, sapi_scenario, sapi, ini, thread, prep, cm, twriter, host, scenario_set_setup, build, src_test_pack, active_test_pack, debugger_attached);
+		this.pool = pool;
+	}
+
+	/** @return FALSE if test must be run by starting php.exe for each section instead */
+	protected boolean isFastCGI() {
+		return !debugger_attached && !prep.test_case.containsAnySection(EPhptSection.ARGS, EPhptSection.STDIN);
+	}
+
+	@Override
+	protected String executeSkipIf() throws Exception {
+		if (!isFastCGI())
+			return super.executeSkipIf();
+		prepareSkipIfENV();
+
+		result = execute(prep.skipif_file, null, SKIPIF_TIMEOUT_SECONDS);
+
+		output = new ExecOutput();
+		output.cmd = "FastCGI "+prep.skipif_file;
+		output.exit_code = result.crashed ? result.exit_code : 0;
+		output.output = toString(result, null);
+		return output.output;
+	}
+
+	@Override
+	protected String executeTest() throws Exception {
+		if (!isFastCGI())
+			return super.executeTest();
+
+		result = execute(prep.test_file, stdin_post, PhptTestCase.MAX_TEST_TIME_SECONDS);
+
+		String output_str = filterTestOutput(toString(result, prep.test_case.isNon8BitCharset()?prep.test_case.getCommonCharset():null));
+		if (result.timed_out) {
+			is_timeout = true;
+		} else if (result.crashed) {
+			not_crashed = false; // @see #runTest
+
+			twriter.addResult(host, scenario_set, src_test_pack, notifyNotPass(new PhptTestResult(host, EPhptTestStatus.CRASH, prep.test_case, "PFTT: exit_code="+result.exit_code+" status="+AHost.guessExitCodeStatus(host, result.exit_code)+"\n"+output_str+"\n"+result.process_output, null, null, null, ini, env, null, stdin_post, null, null, null, null, output_str, null)));
+		}
+		return output_str;
+	}
+
+	@Override
+	protected void executeClean() throws Exception {
+		if (!isFastCGI()) {
+			super.executeClean();
+			return;
+		}
+		execute(prep.test_clean, null, AHost.ONE_MINUTE);
+	}
+
+	@Override
+	protected void stop(boolean force) {
+		final FastCGIWorker w = running_worker;
+		if (w==null) {
+			super.stop(force);
+			return;
+		}
+		w.close(cm);
+	}
+
+	protected FastCGIResult execute(String php_filename, byte[] stdin, int timeout_sec) throws Exception {
+		FastCGIWorker w = pool.acquire(cm);
+		running_worker = w;
+		try {
+			return w.execute(createParams(php_filename, stdin), stdin, timeout_sec);
+		} finally {
+			running_worker = null;
+			pool.release(cm, w);
+		}
+	}
+
+	/** creates the CGI ENV vars for the request (php-cgi gets the script to run from SCRIPT_FILENAME)
+	 *
+	 * @param php_filename
+	 * @param stdin
+	 * @return
+	 */
+	protected Map<String,String> createParams(String php_filename, byte[] stdin) {
+		HashMap<String,String> params = new HashMap<String,String>(env);
+		final String path = fs.fixPath(php_filename);
+		params.put(ENV_SCRIPT_FILENAME, path);
+		params.put(ENV_PATH_TRANSLATED, path);
+		params.put("SCRIPT_NAME", path);
+		params.put("GATEWAY_INTERFACE", "CGI/1.1");
+		params.put(ENV_REDIRECT_STATUS, "1");
+		if (prep.test_case.containsSection(EPhptSection.GET))
+			// CliPhptTestCaseRunner passes query string as command line args. FastCGI needs the actual query string
+			params.put(ENV_QUERY_STRING, prep.test_case.getTrim(EPhptSection.GET));
+		else if (!params.containsKey(ENV_QUERY_STRING))
+			params.put(ENV_QUERY_STRING, "");
+		if (!params.containsKey(ENV_REQUEST_METHOD))
+			params.put(ENV_REQUEST_METHOD, stdin==null?"GET":"POST");
+		if (stdin!=null && !params.containsKey(ENV_CONTENT_LENGTH))
+			params.put(ENV_CONTENT_LENGTH, Integer.toString(stdin.length));
+		return params;
+	}
+
+	/** decodes output of request. removes CGI headers unless test expects php-cgi output (with headers)
+	 *
+	 * @param result
+	 * @param charset
+	 * @return
+	 * @throws IOException
+	 */
+	protected String toString(FastCGIResult result, Charset charset) throws IOException {
+		if (result.response==null)
+			return "";
+		final byte[] bytes = result.response.stdout.toByteArray();
+		int off = 0;
+		if (exe_type!=EExecutableType.CGI)
+			off = findEndOfHeaders(bytes);
+		final int len = bytes.length - off;
+
+		ByLineReader reader = charset == null ? new NoCharsetByLineReader(new ByteArrayInputStream(bytes, off, len)) : new MultiCharsetByLineReader(new ByteArrayInputStream(bytes, off, len), PhptTestCase.newCharsetDeciderDecoder());
+		StringBuilder sb = new StringBuilder(len+16);
+		String line;
+		while (reader.hasMoreLines()) {
+			line = reader.readLine();
+			if (line==null)
+				break;
+			sb.append(line);
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/** returns offset of body after CGI headers (\r\n\r\n) or 0 if no headers */
+	protected static int findEndOfHeaders(byte[] bytes) {
+		for ( int i=0 ; i+3 < bytes.length ; i++ ) {
+			if (bytes[i]=='\r' && bytes[i+1]=='\n' && bytes[i+2]=='\r' && bytes[i+3]=='\n')
+				return i + 4;
+		}
+		return 0;
+	}
+
+	@Override
+	protected String doGetSAPIOutput() {
+		if (result!=null && result.crashed)
+			return result.process_output;
+		return super.doGetSAPIOutput();
+	}
+
+} // end public class FastCGIPhptTestCaseRunner
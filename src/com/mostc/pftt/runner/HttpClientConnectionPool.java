@@ -0,0 +1,162 @@
+package com.mostc.pftt.runner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedList;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+/** Keeps HTTP/1.1 connections to 1 web server instance open so they can be reused for later requests.
+ *
+ * Opening a new connection for every request (SKIPIF, TEST and CLEAN of every PHPT) adds TCP setup to the
+ * run time of each test and leaves a socket in TIME_WAIT for each request, which can use up all the local ports
+ * when many threads are testing.
+ *
+ * Each connection is only used by 1 request at a time (no pipelining), so if the web server crashes, only 1
+ * test could have been using that connection.
+ *
+ * When the web server crashes or is closed, all idle connections are closed (@see #evictAll) and any connection
+ * still in use is closed instead of being returned to the pool.
+ *
+ * @see WebServerInstance#getConnectionPool
+ * @author Matt Ficken
+ *
+ */
+
+@ThreadSafe
+public class HttpClientConnectionPool {
+	/** max number of idle connections kept open (more than this are closed when returned) */
+	public static final int MAX_IDLE = 64;
+	/** milliseconds to wait for web server to accept connection or to respond */
+	public static final int SOCKET_TIMEOUT = 60*1000;
+	protected static final DefaultConnectionReuseStrategy reuse_strategy = new DefaultConnectionReuseStrategy();
+	protected final String hostname;
+	protected final int port;
+	protected final LinkedList<DebuggingHttpClientConnection> idle;
+	/** incremented by #evictAll so connections opened before then aren't returned to the pool */
+	protected int generation;
+	protected boolean closed;
+	
+	public HttpClientConnectionPool(String hostname, int port) {
+		this.hostname = hostname;
+		this.port = port;
+		idle = new LinkedList<DebuggingHttpClientConnection>();
+	}
+	
+	/** gets an idle connection to the web server or opens a new one
+	 *
+	 * requests and responses sent over the connection will be copied to request and response until #release is called
+	 *
+	 * @param params
+	 * @param request - optional
+	 * @param response - optional
+	 * @return
+	 * @throws IOException
+	 */
+	public DebuggingHttpClientConnection borrow(HttpParams params, @Nullable ByteArrayOutputStream request, @Nullable ByteArrayOutputStream response) throws IOException {
+		DebuggingHttpClientConnection conn;
+		for (;;) {
+			synchronized(idle) {
+				conn = idle.pollLast();
+			}
+			if (conn==null)
+				break;
+			// web server may have closed it (keep-alive timeout, max requests per connection, etc...)
+			if (conn.isOpen() && !conn.isStale()) {
+				conn.setCapture(request, response);
+				return conn;
+			}
+			closeQuietly(conn);
+		}
+		
+		conn = new DebuggingHttpClientConnection(request, response);
+		conn.pool_generation = getGeneration();
+		Socket socket = new Socket();
+		try {
+			socket.setSoTimeout(SOCKET_TIMEOUT);
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(hostname, port), SOCKET_TIMEOUT);
+			
+			conn.bind(socket, params);
+			conn.setSocketTimeout(SOCKET_TIMEOUT);
+		} catch ( IOException ex ) {
+			try {
+				socket.close();
+			} catch ( IOException ex2 ) {}
+			throw ex;
+		}
+		return conn;
+	} // end public DebuggingHttpClientConnection borrow
+	
+	/** returns a connection to the pool after its response was read, or closes it if it can't be reused
+	 *
+	 * @param conn
+	 * @param response - response to last request, or NULL if request failed (connection will be closed)
+	 * @param context
+	 */
+	public void release(DebuggingHttpClientConnection conn, @Nullable HttpResponse response, HttpContext context) {
+		if (conn==null)
+			return;
+		// stop capturing - connection may be used for another test next
+		conn.setCapture(null, null);
+		if (response==null || !conn.isOpen() || !reuse_strategy.keepAlive(response, context)) {
+			closeQuietly(conn);
+			return;
+		}
+		synchronized(idle) {
+			if (closed || idle.size() >= MAX_IDLE || conn.pool_generation!=generation) {
+				// web server crashed or was closed while this connection was in use
+				closeQuietly(conn);
+				return;
+			}
+			idle.addLast(conn);
+		}
+	}
+	
+	/** closes all idle connections. call when web server crashes or is restarted */
+	public void evictAll() {
+		LinkedList<DebuggingHttpClientConnection> evicted;
+		synchronized(idle) {
+			generation++;
+			evicted = new LinkedList<DebuggingHttpClientConnection>(idle);
+			idle.clear();
+		}
+		for ( DebuggingHttpClientConnection conn : evicted )
+			closeQuietly(conn);
+	}
+	
+	/** closes all idle connections and stops keeping any connections open */
+	public void close() {
+		synchronized(idle) {
+			closed = true;
+		}
+		evictAll();
+	}
+	
+	public int getIdleCount() {
+		synchronized(idle) {
+			return idle.size();
+		}
+	}
+	
+	protected int getGeneration() {
+		synchronized(idle) {
+			return generation;
+		}
+	}
+	
+	protected static void closeQuietly(DebuggingHttpClientConnection conn) {
+		try {
+			conn.close();
+		} catch ( Throwable t ) {}
+	}
+
+} // end public class HttpClientConnectionPool
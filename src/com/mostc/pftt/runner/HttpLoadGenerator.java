@@ -0,0 +1,229 @@
+package com.mostc.pftt.runner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.params.SyncBasicHttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.protocol.ImmutableHttpProcessor;
+import org.apache.http.protocol.RequestConnControl;
+import org.apache.http.protocol.RequestContent;
+import org.apache.http.protocol.RequestTargetHost;
+import org.apache.http.protocol.RequestUserAgent;
+
+import com.mostc.pftt.model.performance.HttpLoadTest;
+import com.mostc.pftt.model.performance.LatencyHistogram;
+import com.mostc.pftt.model.sapi.WebServerInstance;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.EPrintType;
+import com.mostc.pftt.results.PerformanceTestResult;
+
+/** Sends HTTP requests to a web server from many threads at once to measure its throughput and response times.
+ *
+ * Each virtual client is a thread that sends a request from the HttpLoadTest's mix, waits for the whole response,
+ * then immediately sends the next one (closed loop, no think time). Requests are sent over kept-alive connections from
+ * the web server's HttpClientConnectionPool (if the web server allows keep-alive) so the test measures PHP, not TCP setup.
+ *
+ * Each thread records response times in its own LatencyHistogram, so threads don't contend with each other while
+ * measuring. Responses sent during the warmup aren't counted.
+ *
+ * @see HttpLoadTest
+ * @see PerformanceTestResult
+ * @author Matt Ficken
+ *
+ */
+
+public class HttpLoadGenerator {
+	protected final ConsoleManager cm;
+	protected final HttpParams params;
+	protected final HttpProcessor httpproc;
+	protected final HttpRequestExecutor httpexecutor;
+
+	public HttpLoadGenerator(ConsoleManager cm) {
+		this.cm = cm;
+
+		params = new SyncBasicHttpParams();
+		// HTTP/1.1 so web server can keep connections alive (unlike WebServerScenario, which tests HTTP/1.0)
+		HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+		HttpProtocolParams.setContentCharset(params, "UTF-8");
+		HttpProtocolParams.setUserAgent(params, "PFTT-HttpLoadGenerator");
+		HttpProtocolParams.setUseExpectContinue(params, false);
+
+		httpproc = new ImmutableHttpProcessor(new HttpRequestInterceptor[] {
+				new RequestContent(),
+				new RequestTargetHost(),
+				new RequestConnControl(),
+				new RequestUserAgent()
+			});
+
+		httpexecutor = new HttpRequestExecutor();
+	}
+
+	/** runs load test against web server, blocking until it finishes
+	 *
+	 * @param web - web server serving the load test's docroot
+	 * @param test
+	 * @param scenario_set_name
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public PerformanceTestResult run(final WebServerInstance web, final HttpLoadTest test, String scenario_set_name) throws InterruptedException {
+		final PerformanceTestResult result = new PerformanceTestResult(test.getName(), scenario_set_name, web.getNameWithVersionInfo(), test.getVirtualClients());
+
+		final long start_nanos = System.nanoTime();
+		final long measure_nanos = start_nanos + test.getWarmupSeconds() * 1000000000L;
+		final long end_nanos = measure_nanos + test.getRunSeconds() * 1000000000L;
+
+		cm.println(EPrintType.IN_PROGRESS, getClass(), "Load test "+test.getName()+" clients="+test.getVirtualClients()+" warmup="+test.getWarmupSeconds()+"s run="+test.getRunSeconds()+"s against "+web.getRootURL());
+
+		ArrayList<LoadClient> clients = new ArrayList<LoadClient>(test.getVirtualClients());
+		for ( int i=0 ; i < test.getVirtualClients() ; i++ ) {
+			LoadClient c = new LoadClient(i, web, test, measure_nanos, end_nanos);
+			clients.add(c);
+			c.start();
+		}
+		for ( LoadClient c : clients )
+			c.join();
+
+		for ( LoadClient c : clients ) {
+			result.latency.add(c.latency);
+			result.request_count += c.request_count;
+			result.error_count += c.error_count;
+			result.bytes_received += c.bytes_received;
+			if (c.crashed)
+				result.crashed = true;
+		}
+		// if web server crashed, clients stopped early
+		result.run_millis = Math.max(0L, (Math.min(System.nanoTime(), end_nanos) - measure_nanos) / 1000000L);
+
+		cm.println(result.crashed ? EPrintType.OPERATION_FAILED_CONTINUING : EPrintType.CLUE, getClass(), "Load test finished: "+result);
+
+		return result;
+	} // end public PerformanceTestResult run
+
+	/** 1 virtual client */
+	protected class LoadClient extends Thread {
+		protected final WebServerInstance web;
+		protected final HttpLoadTest test;
+		protected final long measure_nanos, end_nanos;
+		protected final Random random;
+		protected final LatencyHistogram latency;
+		protected final byte[] buf;
+		protected long request_count, error_count, bytes_received;
+		protected boolean crashed;
+
+		protected LoadClient(int i, WebServerInstance web, HttpLoadTest test, long measure_nanos, long end_nanos) {
+			super("HttpLoadClient"+i);
+			setDaemon(true);
+			this.web = web;
+			this.test = test;
+			this.measure_nanos = measure_nanos;
+			this.end_nanos = end_nanos;
+			random = new Random(i);
+			latency = new LatencyHistogram();
+			buf = new byte[8192];
+		}
+
+		@Override
+		public void run() {
+			final HttpClientConnectionPool conn_pool = web.getConnectionPool();
+			final HttpHost http_host = new HttpHost(web.getHostname(), web.getPort());
+			long now;
+			while ( ( now = System.nanoTime() ) < end_nanos ) {
+				final boolean measure = now >= measure_nanos;
+				final HttpLoadTest.Request r = test.nextRequest(random);
+
+				DebuggingHttpClientConnection conn = null;
+				HttpResponse response = null;
+				HttpContext context = new BasicHttpContext(null);
+				long len = -1;
+				final long start = System.nanoTime();
+				try {
+					conn = conn_pool.borrow(params, null, null);
+
+					context.setAttribute(ExecutionContext.HTTP_CONNECTION, conn);
+					context.setAttribute(ExecutionContext.HTTP_TARGET_HOST, http_host);
+
+					HttpRequest request;
+					if (r.post_body==null) {
+						request = new BasicHttpRequest("GET", r.path, HttpVersion.HTTP_1_1);
+					} else {
+						BasicHttpEntityEnclosingRequest post = new BasicHttpEntityEnclosingRequest("POST", r.path, HttpVersion.HTTP_1_1);
+						StringEntity entity = new StringEntity(r.post_body, "UTF-8");
+						entity.setContentType("application/x-www-form-urlencoded");
+						post.setEntity(entity);
+						request = post;
+					}
+					request.setParams(params);
+
+					httpexecutor.preProcess(request, httpproc, context);
+					response = httpexecutor.execute(request, conn, context);
+					response.setParams(params);
+					httpexecutor.postProcess(response, httpproc, context);
+
+					// read whole response (not stored) so connection can be reused
+					len = discard(response.getEntity());
+					if (response.getStatusLine().getStatusCode() >= 400)
+						len = -1;
+				} catch ( Exception ex ) {
+					response = null;
+					if (!web.isRunning()) {
+						crashed = true;
+						if (measure)
+							error_count++;
+						conn_pool.release(conn, null, context);
+						break;
+					}
+				}
+				final long end = System.nanoTime();
+				conn_pool.release(conn, response, context);
+
+				if (!measure)
+					continue;
+				if (len < 0) {
+					error_count++;
+				} else {
+					request_count++;
+					bytes_received += len;
+					latency.record((end - start) / 1000L);
+				}
+			} // end while
+		} // end public void run
+
+		protected long discard(HttpEntity entity) throws IOException {
+			if (entity==null)
+				return 0;
+			InputStream in = entity.getContent();
+			if (in==null)
+				return 0;
+			long len = 0;
+			try {
+				int n;
+				while ( ( n = in.read(buf) ) != -1 )
+					len += n;
+			} finally {
+				in.close();
+			}
+			return len;
+		}
+
+	} // end protected class LoadClient
+
+} // end public class HttpLoadGenerator
@@ -2,7 +2,6 @@ package com.mostc.pftt.runner;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URLEncoder;
 import java.util.HashMap;
@@ -22,6 +21,7 @@ import org.apache.http.protocol.ExecutionContext;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpProcessor;
 import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.util.EntityUtils;
 
 import com.github.mattficken.io.IOUtil;
 import com.github.mattficken.io.StringUtil;
@@ -333,13 +333,10 @@ public class HttpPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 		HttpContext context = new BasicHttpContext(null);
 		HttpHost http_host = new HttpHost(web.getHostname(), web.getPort());
 		
-		DebuggingHttpClientConnection conn = this.conn.get();
-		if (conn!=null) {
-			conn.close();
-			conn = null;
-		}
-		conn = new DebuggingHttpClientConnection(request_bytes, response_bytes);
-		this.conn.set(conn);
+		// reuse kept-alive connection to web server instead of opening a new one for every request
+		final HttpClientConnectionPool conn_pool = web.getConnectionPool();
+		DebuggingHttpClientConnection conn = null;
+		HttpResponse response = null;
 		test_socket = null;
 		final TimerThread timeout_task = TimerUtil.waitSeconds(
 				sapi_scenario.getSlowTestTimeSeconds(), 
@@ -379,16 +376,13 @@ public class HttpPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 			);
 		HttpGet request = null;
 		try {
+			conn = conn_pool.borrow(params, request_bytes, response_bytes);
+			this.conn.set(conn);
+			test_socket = conn.getSocket();
+			
 			context.setAttribute(ExecutionContext.HTTP_CONNECTION, conn);
 			context.setAttribute(ExecutionContext.HTTP_TARGET_HOST, http_host);
 			
-			test_socket = new Socket();
-			test_socket.setSoTimeout(60*1000);
-			test_socket.connect(new InetSocketAddress(http_host.getHostName(), web.getPort()));// TODO temp http_host.getPort()));
-			
-			conn.bind(test_socket, params);
-			conn.setSocketTimeout(60*1000);
-			
 			request = new HttpGet("/php-test-pack-5.4.38/"+path); // TODO temp 
 			if (cookie_str!=null)
 				request.setHeader("Cookie", cookie_str);
@@ -403,7 +397,7 @@ public class HttpPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 			
 			httpexecutor.preProcess(request, httpproc, context);
 			
-			HttpResponse response = httpexecutor.execute(request, conn, context);
+			response = httpexecutor.execute(request, conn, context);
 			
 			response.setParams(params);
 			httpexecutor.postProcess(response, httpproc, context);
@@ -473,14 +467,7 @@ public class HttpPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 		} finally {
 			if (request!=null)
 				request.releaseConnection();			
-			try {
-			if (test_socket!=null)
-				test_socket.close();
-			} catch ( Throwable t ) {}
-			try {
-			if (conn!=null)
-				conn.close();
-			} catch ( Throwable t ) {}
+			releaseConnection(conn_pool, conn, response, context);
 		}
 	} // end protected String do_http_get
 	
@@ -495,13 +482,10 @@ public class HttpPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 		HttpContext context = new BasicHttpContext(null);
 		HttpHost http_host = new HttpHost(web.getHostname(), web.getPort());
 		
-		DebuggingHttpClientConnection conn = this.conn.get();
-		if (conn!=null) {
-			conn.close();
-			conn = null;
-		}
-		conn = new DebuggingHttpClientConnection(request_bytes, response_bytes);
-		this.conn.set(conn);
+		// reuse kept-alive connection to web server instead of opening a new one for every request
+		final HttpClientConnectionPool conn_pool = web.getConnectionPool();
+		DebuggingHttpClientConnection conn = null;
+		HttpResponse response = null;
 		final TimerThread timeout_task = TimerUtil.waitSeconds(
 				sapi_scenario.getSlowTestTimeSeconds(), 
 				new Runnable() {
@@ -539,16 +523,13 @@ public class HttpPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 			);
 		HttpPost request = null;
 		try {
+			conn = conn_pool.borrow(params, request_bytes, response_bytes);
+			this.conn.set(conn);
+			test_socket = conn.getSocket();
+			
 			context.setAttribute(ExecutionContext.HTTP_CONNECTION, conn);
 			context.setAttribute(ExecutionContext.HTTP_TARGET_HOST, http_host);
 			
-			test_socket = new Socket();
-			test_socket.setSoTimeout(60*1000);
-			test_socket.connect(new InetSocketAddress(http_host.getHostName(), http_host.getPort()));
-			
-			conn.bind(test_socket, params);
-			conn.setSocketTimeout(60*1000);
-			
 			request = new HttpPost(path);
 			if (content_type!=null)
 				request.setHeader("Content-Type", content_type);
@@ -559,7 +540,7 @@ public class HttpPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 			
 			httpexecutor.preProcess(request, httpproc, context);		
 			
-			HttpResponse response = httpexecutor.execute(request, conn, context);
+			response = httpexecutor.execute(request, conn, context);
 			
 			response.setParams(params);
 			httpexecutor.postProcess(response, httpproc, context);
@@ -594,17 +575,36 @@ public class HttpPhptTestCaseRunner extends AbstractPhptTestCaseRunner {
 		} finally {
 			if (request!=null)
 				request.releaseConnection();
-			try {
-			if (test_socket!=null)
-				test_socket.close();
-			} catch ( Throwable t ) {}
-			try {
-			if (conn!=null)
-				conn.close();
-			} catch ( Throwable t ) {}
+			releaseConnection(conn_pool, conn, response, context);
 		}
 	} // end protected String do_http_post
 	
+	/** returns connection to web server's pool if the whole response can be read, otherwise closes it
+	 * 
+	 * @param conn_pool
+	 * @param conn - NULL if couldn't connect
+	 * @param response - NULL if request failed
+	 * @param context
+	 */
+	protected void releaseConnection(HttpClientConnectionPool conn_pool, DebuggingHttpClientConnection conn, HttpResponse response, HttpContext context) {
+		this.conn.compareAndSet(conn, null);
+		test_socket = null;
+		if (conn==null)
+			return;
+		if (is_timeout) {
+			// connection may have been closed by timeout or response may be incomplete
+			response = null;
+		} else if (response!=null) {
+			try {
+				// read rest of response (if output was ignored or too long) so next request on connection starts at next response
+				EntityUtils.consume(response.getEntity());
+			} catch ( Throwable t ) {
+				response = null;
+			}
+		}
+		conn_pool.release(conn, response, context);
+	}
+	
 	@Override
 	protected PhptTestResult notifyFail(PhptTestResult result) {
 		if (conn==null)
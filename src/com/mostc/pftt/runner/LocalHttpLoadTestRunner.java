@@ -0,0 +1,104 @@
+package com.mostc.pftt.runner;
+
+import java.util.List;
+
+import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.model.core.PhpBuild;
+import com.mostc.pftt.model.core.PhpIni;
+import com.mostc.pftt.model.performance.HttpLoadTest;
+import com.mostc.pftt.model.sapi.BuiltinWebServerManager;
+import com.mostc.pftt.model.sapi.WebServerInstance;
+import com.mostc.pftt.model.sapi.WebServerManager;
+import com.mostc.pftt.model.smoke.RequiredExtensionsSmokeTest;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.EPrintType;
+import com.mostc.pftt.results.PerformanceTestResult;
+import com.mostc.pftt.results.PhpResultPackWriter;
+import com.mostc.pftt.scenario.EScenarioSetPermutationLayer;
+import com.mostc.pftt.scenario.FileSystemScenario;
+import com.mostc.pftt.scenario.ScenarioSet;
+import com.mostc.pftt.scenario.ScenarioSetSetup;
+import com.mostc.pftt.scenario.WebServerScenario;
+
+/** Runs HttpLoadTests against a build on the local host, 1 test at a time, in 1 scenario set.
+ *
+ * Uses the scenario set's web server. If the scenario set doesn't have one, uses PHP's builtin web server.
+ *
+ * Only 1 test is run at a time (and only 1 web server is started for it) so tests don't compete for the CPU.
+ *
+ * @see HttpLoadGenerator
+ * @author Matt Ficken
+ *
+ */
+
+public class LocalHttpLoadTestRunner {
+	protected final ConsoleManager cm;
+	protected final PhpResultPackWriter tmgr;
+	protected final FileSystemScenario fs;
+	protected final AHost host;
+	protected final PhpBuild build;
+	protected final ScenarioSet scenario_set;
+	
+	public LocalHttpLoadTestRunner(ConsoleManager cm, PhpResultPackWriter tmgr, FileSystemScenario fs, AHost host, PhpBuild build, ScenarioSet scenario_set) {
+		this.cm = cm;
+		this.tmgr = tmgr;
+		this.fs = fs;
+		this.host = host;
+		this.build = build;
+		this.scenario_set = scenario_set;
+	}
+	
+	public void run(List<HttpLoadTest> tests) throws InterruptedException {
+		ScenarioSetSetup sss = ScenarioSetSetup.setupScenarioSet(cm, fs, host, build, scenario_set, EScenarioSetPermutationLayer.PRODUCTION_OR_ALL_UP_TEST);
+		if (sss==null)
+			return;
+		
+		WebServerManager smgr;
+		boolean own_smgr = false;
+		WebServerScenario web_scenario = WebServerScenario.getWebServerScenario(scenario_set);
+		if (web_scenario==null) {
+			cm.println(EPrintType.CLUE, getClass(), "Scenario set has no web server, using builtin web server: "+scenario_set);
+			smgr = new BuiltinWebServerManager();
+			own_smgr = true;
+			if (smgr.setup(cm, host, build)==null) {
+				cm.println(EPrintType.CANT_CONTINUE, getClass(), "Unable to setup builtin web server: "+scenario_set);
+				sss.close(cm);
+				return;
+			}
+		} else {
+			smgr = web_scenario.smgr;
+		}
+		
+		try {
+			PhpIni ini = RequiredExtensionsSmokeTest.createDefaultIniCopy(cm, fs, host, build);
+			sss.prepareINI(cm, fs, host, build, ini);
+			
+			HttpLoadGenerator gen = new HttpLoadGenerator(cm);
+			for ( HttpLoadTest test : tests ) {
+				if (cm.getThreadCount()>0)
+					// -c console option
+					test.setVirtualClients(cm.getThreadCount());
+				
+				WebServerInstance web = smgr.getWebServerInstance(cm, fs, host, scenario_set, build, ini, sss.getENV(), test.getDocroot(), null, false, test.getName());
+				if (web==null || !web.isRunning()) {
+					cm.println(EPrintType.OPERATION_FAILED_CONTINUING, getClass(), "Unable to start web server for load test: "+test.getName());
+					if (web!=null)
+						web.close(cm);
+					continue;
+				}
+				try {
+					PerformanceTestResult result = gen.run(web, test, sss.getNameWithVersionInfo());
+					
+					tmgr.addResult(host, sss, result);
+				} finally {
+					web.close(cm);
+				}
+			}
+		} finally {
+			if (own_smgr)
+				smgr.close(cm);
+			sss.close(cm);
+		}
+	} // end public void run
+
+} // end public class LocalHttpLoadTestRunner
@@ -50,6 +50,8 @@ public class LocalPhpUnitTestPackRunner extends AbstractLocalApplicationTestPack
 				!(scenario_set.contains(WebServerScenario.class) &&
 				scenario_set.contains(CodeCacheScenario.class) &&
 				!scenario_set.contains(PhpUnitReflectionOnlyScenario.class));
+		if (!reflection_only && cm.getPhpUnitWorkerTestCount() > 0)
+			cm.println(EPrintType.CLUE, getClass(), "Not using PhpUnit worker: test methods must be called directly (not by reflection), running each test in its own process");
 				
 		super.setupStorageAndTestPack(storage_dir, test_cases);
 	}
@@ -91,6 +93,8 @@ public class LocalPhpUnitTestPackRunner extends AbstractLocalApplicationTestPack
 	public class PhpUnitThread extends TestPackThread<PhpUnitTestCase> {
 		protected final String my_temp_dir;
 		protected AbstractPhpUnitTestCaseRunner r;
+		/** reused for many tests if -phpunit_worker console option @see CliPhpUnitTestCaseRunner */
+		protected PhpUnitWorker worker;
 
 		ScenarioSetSetup ss; // TODO temp azure 
 		
@@ -117,6 +121,11 @@ public class LocalPhpUnitTestPackRunner extends AbstractLocalApplicationTestPack
 		public void run() {
 			super.run();
 			
+			if (worker!=null) {
+				worker.close(cm);
+				worker = null;
+			}
+			
 			// be sure to cleanup
 			/* TODO if (!AzureWebsitesScenario.check(sapi_scenario)) {
 				runner_fs.deleteIfExists(my_temp_dir);
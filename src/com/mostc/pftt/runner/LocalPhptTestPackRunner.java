@@ -9,6 +9,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.annotation.Nullable;
 
@@ -21,6 +22,7 @@ import com.mostc.pftt.model.core.ESAPIType;
 import com.mostc.pftt.model.core.PhpBuild;
 import com.mostc.pftt.model.core.PhpIni;
 import com.mostc.pftt.model.core.PhptActiveTestPack;
+import com.mostc.pftt.model.core.PhptExpectedCache;
 import com.mostc.pftt.model.core.PhptSourceTestPack;
 import com.mostc.pftt.model.core.PhptTestCase;
 import com.mostc.pftt.model.sapi.TestCaseGroupKey;
@@ -31,7 +33,11 @@ import com.mostc.pftt.results.EPrintType;
 import com.mostc.pftt.results.ITestResultReceiver;
 import com.mostc.pftt.results.PhpResultPackWriter;
 import com.mostc.pftt.results.PhptResultWriter;
+import com.mostc.pftt.results.PhptRunTimeHistory;
 import com.mostc.pftt.results.PhptTestResult;
+import com.mostc.pftt.scenario.CliFastCGIScenario.CliFastCGITestCaseGroupKey;
+import com.mostc.pftt.scenario.CliScenario;
+import com.mostc.pftt.scenario.CliScenario.CliTestCaseGroupKey;
 import com.mostc.pftt.scenario.EScenarioSetPermutationLayer;
 import com.mostc.pftt.scenario.FileSystemScenario;
 import com.mostc.pftt.scenario.IScenarioSetup;
@@ -53,6 +59,17 @@ public class LocalPhptTestPackRunner extends AbstractLocalTestPackRunner<PhptAct
 	protected final IENVINIFilter filter;
 	protected final boolean xdebug;
 	protected final PhptTestPreparer preparer;
+	/** relative cost of a slow test vs a normal test (@see #createCostModel) */
+	protected static final long SLOW_TEST_COST = 8;
+	/** @see -order_by_run_time console option */
+	protected PhptRunTimeHistory run_time_history;
+	protected final PhptSkipIfBatch skipif_batch;
+	/** @see -no_skipif_cache console option */
+	protected PhptSkipIfCache skipif_cache;
+	protected PhptExpectedCache expected_cache;
+	/** PhptExpectedCache is shared with other runners. only report the counts from this run */
+	protected int expected_cache_hits, expected_cache_misses;
+	protected long expected_cache_compile_nanos;
 	
 	public LocalPhptTestPackRunner(ConsoleManager cm, ITestResultReceiver twriter, ScenarioSet scenario_set, PhpBuild build, AHost storage_host, AHost runner_host, IENVINIFilter filter) {
 		super(cm, twriter, scenario_set, build, storage_host, runner_host);
@@ -62,6 +79,7 @@ public class LocalPhptTestPackRunner extends AbstractLocalTestPackRunner<PhptAct
 		xdebug = scenario_set.contains(XDebugScenario.class);
 		
 		preparer = new PhptTestPreparer(xdebug);
+		skipif_batch = new PhptSkipIfBatch();
 	}
 	
 	@Override
@@ -74,25 +92,8 @@ public class LocalPhptTestPackRunner extends AbstractLocalTestPackRunner<PhptAct
 	@Override
 	protected void setupStorageAndTestPack(ITestPackStorageDir storage_dir, List<PhptTestCase> test_cases) {
 		// generate name of directory on that storage to store the copy of the test-pack
-		String local_test_pack_dir = null, remote_test_pack_dir = null;
-		{
-			String local_path = storage_dir.getLocalPath(storage_host);
-			String remote_path = storage_dir.getRemotePath(storage_host);
-			long millis = System.currentTimeMillis();
-			for ( int i=0 ; i < 131070 ; i++ ) {
-				// try to include version, branch info etc... from name of test-pack
-				//
-				// CRITICAL: that directory paths end with / (@see {PWD} in PhpIni)
-				// don't want long directory paths or lots of nesting, just put in /php-sdk (breaks some PHPTs)
-				local_test_pack_dir = local_path + "/TEMP-" + FileSystemScenario.basename(src_test_pack.getSourceDirectory()) + (i==0?"":"-" + millis) + "/";
-				remote_test_pack_dir = remote_path + "/TEMP-" + FileSystemScenario.basename(src_test_pack.getSourceDirectory()) + (i==0?"":"-" + millis) + "/";
-				if (!storage_host.mExists(remote_test_pack_dir) || !runner_host.mExists(local_test_pack_dir))
-					break;
-				millis++;
-				if (i%100==0)
-					millis = System.currentTimeMillis();
-			}
-		}
+		String[] test_pack_dirs = getTestPackStorageDirs(storage_dir, FileSystemScenario.basename(src_test_pack.getSourceDirectory()));
+		String local_test_pack_dir = test_pack_dirs[0], remote_test_pack_dir = test_pack_dirs[1];
 		//
 		
 		
@@ -134,8 +135,78 @@ public class LocalPhptTestPackRunner extends AbstractLocalTestPackRunner<PhptAct
 	@Override
 	protected void preGroup(List<PhptTestCase> test_cases) {
 		sapi_scenario.sortTestCases(test_cases);
+		
+		// @see -order_by_run_time console option
+		if (run_time_history==null && cm.getRunTimeHistoryList()!=null && !cm.getRunTimeHistoryList().isEmpty())
+			run_time_history = PhptRunTimeHistory.open(cm, runner_host, cm.getRunTimeHistoryList());
+		
+		// @see -no_skipif_cache console option
+		if (skipif_cache==null && !cm.isNoSkipIfCache())
+			skipif_cache = PhptSkipIfCache.open(cm, runner_host, build, scenario_set_setup);
+		
+		if (expected_cache==null) {
+			expected_cache = PhptExpectedCache.open(cm);
+			expected_cache_hits = expected_cache.getHitCount();
+			expected_cache_misses = expected_cache.getMissCount();
+			expected_cache_compile_nanos = expected_cache.getCompileNanos();
+		}
 	}
 	
+	/** returns cache of SKIPIF output or NULL if not using it
+	 * 
+	 * @see -no_skipif_cache console option
+	 * @return
+	 */
+	@Nullable
+	public PhptSkipIfCache getSkipIfCache() {
+		return skipif_cache;
+	}
+	
+	protected long getRunTimeMicros(TestCaseGroup<PhptTestCase> group) {
+		long micros = 0;
+		for ( PhptTestCase test_case : group.test_cases )
+			micros += run_time_history.getRunTimeMicros(test_case);
+		return micros;
+	}
+	
+	protected long getRunTimeMicros(NonThreadSafeExt<PhptTestCase> ext) {
+		long micros = 0;
+		for ( TestCaseGroup<PhptTestCase> group : ext.test_groups )
+			micros += getRunTimeMicros(group);
+		return micros;
+	}
+	
+	/** orders groups and NTS extensions by estimated run time, longest first (longest-processing-time-first)
+	 * 
+	 * @see -order_by_run_time console option
+	 * @param thread_safe_list
+	 */
+	protected void orderByRunTime(LinkedList<TestCaseGroup<PhptTestCase>> thread_safe_list) {
+		final HashMap<Object,Long> run_times = new HashMap<Object,Long>();
+		for ( TestCaseGroup<PhptTestCase> group : thread_safe_list )
+			run_times.put(group, getRunTimeMicros(group));
+		for ( NonThreadSafeExt<PhptTestCase> ext : non_thread_safe_exts )
+			run_times.put(ext, getRunTimeMicros(ext));
+		Comparator<Object> longest_first = new Comparator<Object>() {
+				@Override
+				public int compare(Object a, Object b) {
+					return run_times.get(b).compareTo(run_times.get(a));
+				}
+			};
+		Collections.sort(thread_safe_list, longest_first);
+		
+		LinkedList<NonThreadSafeExt<PhptTestCase>> b = new LinkedList<NonThreadSafeExt<PhptTestCase>>();
+		b.addAll(non_thread_safe_exts);
+		Collections.sort(b, longest_first);
+		non_thread_safe_exts.clear();
+		non_thread_safe_exts.addAll(b);
+		
+		if (!b.isEmpty())
+			cm.println(EPrintType.CLUE, getClass(), "Order By Run Time: longest NTS extension="+b.getFirst().ext_names[0]+" estimated="+(run_times.get(b.getFirst())/1000000)+" seconds");
+		if (!thread_safe_list.isEmpty())
+			cm.println(EPrintType.CLUE, getClass(), "Order By Run Time: longest group estimated="+(run_times.get(thread_safe_list.getFirst())/1000000)+" seconds");
+	} // end protected void orderByRunTime
+	
 	@Override
 	protected TestCaseGroupKey createGroupKey(ConsoleManager cm,
 				PhptTestCase test_case, AHost storage_host,
@@ -195,6 +266,18 @@ public class LocalPhptTestPackRunner extends AbstractLocalTestPackRunner<PhptAct
 	
 	@Override
 	protected void postGroup(LinkedList<TestCaseGroup<PhptTestCase>> thread_safe_list, List<PhptTestCase> test_cases) {
+		if (run_time_history!=null && !cm.isRandomizeTestOrder()) {
+			ArrayList<PhptTestCase> buf;
+			for ( TestCaseGroup<PhptTestCase> a : thread_safe_list ) {
+				buf = new ArrayList<PhptTestCase>(a.test_cases.size());
+				buf.addAll(a.test_cases);
+				sapi_scenario.sortTestCases(buf);
+				a.test_cases.clear();
+				a.test_cases.addAll(buf);
+			}
+			orderByRunTime(thread_safe_list);
+			return;
+		}
 		// evenly mix up large and small groups
 		{
 			HashMap<Integer,LinkedList<TestCaseGroup<PhptTestCase>>> map = new HashMap<Integer,LinkedList<TestCaseGroup<PhptTestCase>>>();
@@ -252,8 +335,25 @@ public class LocalPhptTestPackRunner extends AbstractLocalTestPackRunner<PhptAct
 		non_thread_safe_exts.addAll(b);
 	} // end protected void postGroup
 	
+	@Override
+	protected WorkStealingScheduler.ITestCaseCostModel<PhptTestCase> createCostModel() {
+		return new WorkStealingScheduler.ITestCaseCostModel<PhptTestCase>() {
+				@Override
+				public long getCost(PhptTestCase test_case) {
+					if (run_time_history!=null)
+						// @see -order_by_run_time console option
+						return run_time_history.getRunTimeMicros(test_case) / 1000;
+					// slow tests (@see PhptTestCase#isSlowTest) count for more so chunks of slow tests are smaller
+					return test_case.isSlowTest() ? SLOW_TEST_COST : 1;
+				}
+			};
+	}
+	
 	@Override
 	protected void reportGroups() {
+		if (!(twriter instanceof PhpResultPackWriter))
+			// ex: PSC agent sends results to coordinator instead
+			return;
 		PhptResultWriter phpt = (PhptResultWriter) ((PhpResultPackWriter)twriter).getPHPT(runner_host, scenario_set_setup, src_test_pack.getNameAndVersionString());
 		phpt.reportGroups(thread_safe_groups, non_thread_safe_exts);
 	} 
@@ -373,6 +473,34 @@ public class LocalPhptTestPackRunner extends AbstractLocalTestPackRunner<PhptAct
 			}
 		}
 
+		@Override
+		protected void prepareJobs(TestCaseGroupKey group_key, LinkedBlockingQueue<PhptTestCase> jobs) {
+			// execute SKIPIF sections of all these tests in 1 process instead of 1 process per test
+			// (only CLI starts a process for each SKIPIF. can't batch them if debugging every test)
+			// (CLI-FastCGI already sends each SKIPIF to a running php-cgi. batching would execute them with php.exe instead)
+			if (!(group_key instanceof CliTestCaseGroupKey) || group_key instanceof CliFastCGITestCaseGroupKey || cm.isDebugAll() || jobs.size() < PhptSkipIfBatch.MIN_BATCH_SIZE)
+				return;
+			final PhptSkipIfCache skipif_cache = LocalPhptTestPackRunner.this.skipif_cache;
+			// same INI the test runner will look up the SKIPIF cache with
+			final PhpIni ini = ((CliScenario)sapi_scenario).getPhptTestCaseRunnerIni(group_key);
+			ArrayList<PhptTestCase> test_cases = new ArrayList<PhptTestCase>(jobs.size());
+			for ( PhptTestCase test_case : jobs ) {
+				// don't execute SKIPIFs that are already cached
+				if (skipif_cache==null || test_case.prep==null || test_case.prep.skipif_file==null || !skipif_cache.contains(ini, test_case))
+					test_cases.add(test_case);
+			}
+			if (test_cases.size() < PhptSkipIfBatch.MIN_BATCH_SIZE)
+				return;
+			try {
+				group_key.prepare(cm);
+				
+				skipif_batch.evalSkipIfs(cm, runner_host, runner_fs, scenario_set_setup, build, ((CliTestCaseGroupKey)group_key).getCliSAPIInstance(), active_test_pack, test_cases);
+			} catch ( Exception ex ) {
+				// not fatal: each test will just execute its SKIPIF section itself
+				ConsoleManagerUtil.printStackTraceDebug(LocalPhptTestPackRunner.class, cm, ex);
+			}
+		}
+		
 		@Override
 		protected void stopRunningCurrentTest() {
 			for (AbstractPhptTestCaseRunner r:runners) {
@@ -410,8 +538,11 @@ public class LocalPhptTestPackRunner extends AbstractLocalTestPackRunner<PhptAct
 	@Override
 	protected void showTally() {
 		AbstractPhptRW phpt = ((PhpResultPackWriter)twriter).getPHPT(runner_host, scenario_set_setup, src_test_pack.getNameAndVersionString());
+		int total = 0;
 		for ( EPhptTestStatus status : EPhptTestStatus.values() ) {
-			cm.println(EPrintType.CLUE, getClass(),  status+" "+phpt.count(status)+" tests");
+			int count = phpt.count(status);
+			total += count;
+			cm.println(EPrintType.CLUE, getClass(),  status+" "+count+" tests");
 		}
 		// show (some) of the failing tests (for convenience)
 		int fail_count = phpt.count(EPhptTestStatus.FAIL);
@@ -427,8 +558,34 @@ public class LocalPhptTestPackRunner extends AbstractLocalTestPackRunner<PhptAct
 			}
 		}
 		cm.println(EPrintType.CLUE, getClass(), "Pass Rate(%): "+phpt.passRate());
+		if (skipif_batch.getProcessCount() > 0)
+			cm.println(EPrintType.CLUE, getClass(), "SKIPIF Batch: "+skipif_batch);
+		if (skipif_cache!=null) {
+			cm.println(EPrintType.CLUE, getClass(), "SKIPIF Cache: "+skipif_cache);
+			((PhptResultWriter)phpt).reportSkipIfCache(skipif_cache.getHitCount(), skipif_cache.getMissCount(), skipif_cache.size(), skipif_cache.getEvictionCount());
+		}
+		if (expected_cache!=null) {
+			final int hits = expected_cache.getHitCount() - expected_cache_hits;
+			final int misses = expected_cache.getMissCount() - expected_cache_misses;
+			final long compile_millis = (expected_cache.getCompileNanos() - expected_cache_compile_nanos) / 1000000L;
+			cm.println(EPrintType.CLUE, getClass(), "Expected Output Cache: hits="+hits+" misses="+misses+" compile_millis="+compile_millis+" entries="+expected_cache.size());
+			((PhptResultWriter)phpt).reportExpectedCache(hits, misses, compile_millis, expected_cache.size(), expected_cache.getEvictionCount());
+		}
+		if (run_time_millis > 0) {
+			// for comparing scenarios (ex: CLI vs CLI-FastCGI @see conf/fastcgi_benchmark.groovy)
+			cm.println(EPrintType.CLUE, getClass(), "Tests/Second: "+(((double)total) / (run_time_millis / 1000.0d)));
+		}
 	}
 
+	@Override
+	public void close() {
+		super.close();
+		if (skipif_cache!=null)
+			skipif_cache.save(cm);
+		if (expected_cache!=null)
+			expected_cache.save(cm);
+	}
+	
 	@Override
 	public EScenarioSetPermutationLayer getScenarioSetPermutationLayer() {
 		return EScenarioSetPermutationLayer.FUNCTIONAL_TEST_CORE;
@@ -0,0 +1,199 @@
+package com.mostc.pftt.runner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.util.Map;
+
+import com.github.mattficken.io.IOUtil;
+import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.host.AHost.ExecHandle;
+import com.mostc.pftt.model.app.PhpUnitTemplate;
+import com.mostc.pftt.model.app.PhpUnitTestCase;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.util.TimerUtil;
+import com.mostc.pftt.util.TimerUtil.TimerThread;
+
+/** A PHP process that runs many PhpUnitTestCases, 1 at a time.
+ *
+ * Normally, each PhpUnitTestCase is run in a new PHP process which has to load the application's bootstrap, autoloader,
+ * fixtures, etc... again. For big applications, that can take a lot longer than the test itself.
+ *
+ * A worker loads all that once, then reads 1 test per line from its STDIN and writes the same output a PHP process
+ * for that test would have (status, run time, output, etc...), ending with PhpUnitTemplate#WORKER_END_MARKER.
+ *
+ * The worker is restarted:
+ * -if it crashes, has a fatal error or times out
+ * -after ConsoleManager#getPhpUnitWorkerTestCount tests
+ * -if a test changed global variables, the current directory, INI settings or constants (unless
+ *  ConsoleManager#isPhpUnitWorkerKeepDirty). static properties aren't checked (@see PhpUnitTemplate#renderWorkerTemplate)
+ *
+ * @see PhpUnitTemplate#renderWorkerTemplate
+ * @see CliPhpUnitTestCaseRunner
+ * @see -phpunit_worker console option
+ * @author Matt Ficken
+ *
+ */
+
+public class PhpUnitWorker {
+	protected final ExecHandle handle;
+	protected final BufferedReader stdout;
+	protected final OutputStream stdin;
+	/** command, bootstrap, etc... used to start worker (if different for a test, need to start a new worker) */
+	protected final String key;
+	protected int test_count;
+	protected boolean dirty, exited, timed_out;
+	
+	/** output of 1 test run in the worker */
+	public static class WorkerResult {
+		public final String output;
+		/** TRUE if worker exited (crash or fatal error) or was killed (timeout) while running the test */
+		public final boolean exited;
+		public final boolean timed_out;
+		
+		protected WorkerResult(String output, boolean exited, boolean timed_out) {
+			this.output = output;
+			this.exited = exited;
+			this.timed_out = timed_out;
+		}
+	
+	} // end public static class WorkerResult
+	
+	protected PhpUnitWorker(ExecHandle handle, String key) throws IOException {
+		this.handle = handle;
+		this.key = key;
+		stdout = new BufferedReader(new InputStreamReader(handle.getSTDOUT(), "UTF-8"));
+		stdin = handle.getSTDIN();
+	}
+	
+	/** starts a worker and waits for it to finish loading the bootstrap
+	 *
+	 * @param cm
+	 * @param host
+	 * @param cmd - command to run PHP with the worker template (@see PhpUnitTemplate#renderWorkerTemplate)
+	 * @param env
+	 * @param chdir
+	 * @param key
+	 * @param timeout_sec
+	 * @return
+	 * @throws Exception - if worker exited before it was ready
+	 */
+	public static PhpUnitWorker start(ConsoleManager cm, AHost host, String cmd, Map<String,String> env, String chdir, String key, int timeout_sec) throws Exception {
+		PhpUnitWorker worker = new PhpUnitWorker(host.execThread(cmd, env, chdir), key);
+		StringBuilder output_sb = new StringBuilder(128);
+		if (!worker.readUntil(cm, PhpUnitTemplate.WORKER_READY_MARKER, output_sb, timeout_sec)) {
+			worker.close(cm);
+			throw new IOException("PhpUnit worker exited before it was ready: "+cmd+"\n"+output_sb);
+		}
+		return worker;
+	}
+	
+	/** runs test in worker
+	 *
+	 * @param cm
+	 * @param test_case
+	 * @param timeout_sec
+	 * @return
+	 * @throws IOException
+	 */
+	public WorkerResult run(ConsoleManager cm, PhpUnitTestCase test_case, int timeout_sec) throws IOException {
+		StringBuilder request = new StringBuilder(256);
+		request.append("className=").append(urlEncode(test_case.getClassName()));
+		request.append("&methodName=").append(urlEncode(test_case.getMethodName()));
+		request.append("&abs_filename=").append(urlEncode(test_case.getAbsoluteFileName()));
+		request.append("&dependsMethodName=").append(urlEncode(test_case.getDependsMethodName()));
+		request.append("&dataProviderMethodName=").append(urlEncode(test_case.getDataProviderMethodName()));
+		request.append('\n');
+		
+		test_count++;
+		try {
+			stdin.write(request.toString().getBytes("UTF-8"));
+			stdin.flush();
+		} catch ( IOException ex ) {
+			// worker exited after last test
+			exited = true;
+			return new WorkerResult("PFTT: PhpUnit worker exited before test could be run", true, false);
+		}
+		
+		StringBuilder output_sb = new StringBuilder(1024);
+		final boolean ended = readUntil(cm, PhpUnitTemplate.WORKER_END_MARKER, output_sb, timeout_sec);
+		if (!ended)
+			output_sb.append(timed_out ? "PFTT: PhpUnit worker killed because test timed out\n" : "PFTT: PhpUnit worker exited while running test (crash or fatal error)\n");
+		
+		return new WorkerResult(output_sb.toString(), !ended, !ended && timed_out);
+	} // end public WorkerResult run
+	
+	/** reads output lines until a line starts with marker
+	 *
+	 * @param cm
+	 * @param marker
+	 * @param output_sb - gets all output before marker
+	 * @param timeout_sec - kills worker if marker isn't read within this time
+	 * @return FALSE if worker exited (or was killed) before marker
+	 * @throws IOException
+	 */
+	protected boolean readUntil(final ConsoleManager cm, String marker, StringBuilder output_sb, int timeout_sec) throws IOException {
+		final TimerThread timeout_task = TimerUtil.waitSeconds(timeout_sec, new Runnable() {
+				@Override
+				public void run() {
+					timed_out = exited = true;
+					handle.close(cm, true);
+				}
+			});
+		try {
+			String line;
+			while ( ( line = stdout.readLine() ) != null ) {
+				if (line.startsWith(marker)) {
+					dirty = line.contains("dirty=1");
+					return true;
+				}
+				if (output_sb.length() < IOUtil.HALF_MEGABYTE) {
+					output_sb.append(line);
+					output_sb.append('\n');
+				}
+			}
+		} catch ( IOException ex ) {
+			// stream closed by timeout or process exited
+		} finally {
+			timeout_task.close();
+		}
+		exited = true;
+		return false;
+	} // end protected boolean readUntil
+	
+	/** returns TRUE if worker can't or shouldn't be used for another test
+	 *
+	 * @param cm
+	 * @return
+	 */
+	public boolean shouldRestart(ConsoleManager cm) {
+		return exited
+				|| test_count >= cm.getPhpUnitWorkerTestCount()
+				|| (dirty && !cm.isPhpUnitWorkerKeepDirty())
+				|| !handle.isRunning();
+	}
+	
+	public String getKey() {
+		return key;
+	}
+	
+	public int getTestCount() {
+		return test_count;
+	}
+	
+	public void close(ConsoleManager cm) {
+		exited = true;
+		try {
+			// worker exits when STDIN is closed
+			stdin.close();
+		} catch ( Throwable t ) {}
+		handle.close(cm, true);
+	}
+	
+	protected static String urlEncode(String str) throws IOException {
+		return str == null ? "" : URLEncoder.encode(str, "UTF-8");
+	}
+
+} // end public class PhpUnitWorker
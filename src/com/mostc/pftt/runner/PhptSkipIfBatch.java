@@ -0,0 +1,268 @@
+package com.mostc.pftt.runner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.host.ExecOutput;
+import com.mostc.pftt.model.core.EExecutableType;
+import com.mostc.pftt.model.core.EPhptSection;
+import com.mostc.pftt.model.core.PhpBuild;
+import com.mostc.pftt.model.core.PhptActiveTestPack;
+import com.mostc.pftt.model.core.PhptTestCase;
+import com.mostc.pftt.model.sapi.CliSAPIInstance;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.runner.PhptTestPreparer.PreparedPhptTestCase;
+import com.mostc.pftt.scenario.FileSystemScenario;
+import com.mostc.pftt.scenario.ScenarioSetSetup;
+
+/** Executes the SKIPIF sections of many PHPTs in 1 php.exe process instead of starting php.exe for each test.
+ *
+ * Most SKIPIF sections only check extension_loaded(), PHP_OS, etc... which takes far less time than starting php.exe.
+ * Tests in the same TestCaseGroupKey have the same INI and (if they don't have their own ENV section) the same ENV,
+ * so their SKIPIF sections can all be executed by the same process.
+ *
+ * A generated script includes each SKIPIF in an output buffer and prints the captured output between markers, so
+ * each test only gets its own output. Variables a SKIPIF creates are removed before the next one.
+ *
+ * Only SKIPIFs that don't include/require other files or declare functions, classes or constants are batched. Those
+ * can't be isolated from each other in 1 process: a helper loaded with require_once (ex: ext/mysqli/tests/connect.inc)
+ * only sets its globals the first time, and functions/classes/constants can't be removed. They're executed by their
+ * test runner on their own, as before.
+ *
+ * If a SKIPIF calls exit() or die() (usually to print 'skip ...') its output is recorded by a shutdown function and a
+ * new process is started for the remaining SKIPIFs.
+ *
+ * If a SKIPIF has a fatal error, leaves extra output buffers or crashes php.exe, it's left for its test runner to
+ * execute on its own, the same as if it hadn't been batched.
+ *
+ * @see PreparedPhptTestCase#skipif_output
+ * @see AbstractPhptTestCaseRunner#runTest
+ * @author Matt Ficken
+ *
+ */
+
+public class PhptSkipIfBatch {
+	/** not worth generating a script for fewer SKIPIFs than this */
+	public static final int MIN_BATCH_SIZE = 2;
+	/** same as for 1 SKIPIF section (@see CliPhptTestCaseRunner#executeSkipIf) */
+	protected static final int SKIPIF_TIMEOUT_SECONDS = 5;
+	protected static final String STATUS_ERROR = "error";
+	/** SKIPIF code that leaves state behind in the process or depends on state left by other SKIPIFs */
+	protected static final Pattern NOT_ISOLATED_PATTERN = Pattern.compile("\\b(include|include_once|require|require_once|function|class|interface|trait|define|namespace)\\b", Pattern.CASE_INSENSITIVE);
+	protected final Random random;
+	protected final AtomicInteger script_count, process_count, batched_count, fallback_count;
+
+	public PhptSkipIfBatch() {
+		random = new Random();
+		script_count = new AtomicInteger();
+		process_count = new AtomicInteger();
+		batched_count = new AtomicInteger();
+		fallback_count = new AtomicInteger();
+	}
+
+	/** returns TRUE if test's SKIPIF can be executed along with other tests' SKIPIF sections
+	 *
+	 * @param test_case
+	 * @return
+	 */
+	public static boolean canBatch(PhptTestCase test_case) {
+		final PreparedPhptTestCase prep = test_case.prep;
+		return prep!=null && prep.skipif_file!=null && prep.skipif_output==null
+				// ENV is only the same for tests that don't provide their own ENV vars
+				&& !test_case.hasENV()
+				// SKIPIF is executed with php-cgi for these (@see CliPhptTestCaseRunner#prepare)
+				&& !test_case.containsAnySection(EPhptSection.GET, EPhptSection.POST, EPhptSection.PUT, EPhptSection.POST_RAW, EPhptSection.COOKIE, EPhptSection.EXPECTHEADERS)
+				&& isIsolated(test_case.get(EPhptSection.SKIPIF));
+	}
+	
+	/** returns TRUE if SKIPIF code doesn't include other files or declare anything that would still exist when
+	 * the next SKIPIF is executed in the same process
+	 * 
+	 * @param skipif_code
+	 * @return
+	 */
+	public static boolean isIsolated(String skipif_code) {
+		return skipif_code!=null && !NOT_ISOLATED_PATTERN.matcher(skipif_code).find();
+	}
+
+	/** executes the SKIPIF sections of the given tests (all from the same TestCaseGroupKey) and stores
+	 * the output of each in PreparedPhptTestCase#skipif_output.
+	 *
+	 * Tests that can't be batched or that fail to execute in the batch are left alone.
+	 *
+	 * @param cm
+	 * @param host
+	 * @param fs
+	 * @param scenario_set_setup
+	 * @param build
+	 * @param sapi - provides the INI of the TestCaseGroupKey
+	 * @param active_test_pack
+	 * @param test_cases
+	 * @throws Exception
+	 */
+	public void evalSkipIfs(ConsoleManager cm, AHost host, FileSystemScenario fs, ScenarioSetSetup scenario_set_setup, PhpBuild build, CliSAPIInstance sapi, PhptActiveTestPack active_test_pack, Collection<PhptTestCase> test_cases) throws Exception {
+		ArrayList<PhptTestCase> batch = new ArrayList<PhptTestCase>(test_cases.size());
+		for ( PhptTestCase test_case : test_cases ) {
+			if (canBatch(test_case) && !cm.isInDebugList(test_case))
+				batch.add(test_case);
+		}
+		if (batch.size() < MIN_BATCH_SIZE)
+			return;
+
+		// marks start and end of each SKIPIF's output. random so it won't be confused with anything a SKIPIF prints
+		final String token = "PFTT-SKIPIF-"+Long.toHexString(random.nextLong());
+		final String script_file = host.joinIntoOnePath(active_test_pack.getStorageDirectory(), "PFTT_SKIPIF_BATCH_"+script_count.incrementAndGet()+".php");
+		fs.saveTextFile(script_file, createScript(fs, token, batch));
+		try {
+			final Map<String,String> env = createENV(cm, host, build, scenario_set_setup, batch.get(0));
+
+			int i = 0, next;
+			while (i < batch.size()) {
+				process_count.incrementAndGet();
+
+				ExecOutput output = sapi.execute(
+						EExecutableType.CLI, "SKIPIF_BATCH", script_file, " "+i,
+						Math.min(PhptTestCase.MAX_TEST_TIME_SECONDS, SKIPIF_TIMEOUT_SECONDS * (batch.size() - i)),
+						env, active_test_pack.getStorageDirectory(), false
+					);
+
+				next = readOutput(token, batch, i, output.output);
+				if (next==i) {
+					// php.exe crashed or timed out while executing this SKIPIF
+					// skip it here and let its test runner execute it on its own
+					fallback_count.incrementAndGet();
+					next++;
+				}
+				i = next;
+			}
+		} finally {
+			fs.deleteIfExists(script_file);
+		}
+	} // end public void evalSkipIfs
+
+	/** creates ENV for SKIPIFs (same as CliPhptTestCaseRunner#prepareSkipIfENV except for SCRIPT_FILENAME and PATH_TRANSLATED)
+	 *
+	 */
+	protected static Map<String,String> createENV(ConsoleManager cm, AHost host, PhpBuild build, ScenarioSetSetup scenario_set_setup, PhptTestCase test_case) throws Exception {
+		Map<String,String> env = AbstractPhptTestCaseRunner.generateENVForTestCase(cm, host, build, scenario_set_setup, test_case);
+		env.put(AbstractPhptTestCaseRunner.ENV_USE_ZEND_ALLOC, "1");
+		env.put(AbstractPhptTestCaseRunner.ENV_TEST_PHP_EXECUTABLE, build.getPhpExe());
+		env.put(AbstractPhptTestCaseRunner.ENV_PHP_PATH, build.getPhpExe());
+		env.put(AbstractPhptTestCaseRunner.ENV_PFTT_SCENARIO_SET, scenario_set_setup.getNameWithVersionInfo());
+		env.put(AbstractPhptTestCaseRunner.ENV_PFTT_IS, "1");
+		return env;
+	}
+
+	/** reads output of each SKIPIF from the output of the batch script
+	 *
+	 * @param token
+	 * @param batch
+	 * @param i - index of first SKIPIF this process executed
+	 * @param output
+	 * @return index of first SKIPIF that this process did not finish
+	 */
+	protected int readOutput(String token, List<PhptTestCase> batch, int i, String output) {
+		if (output==null)
+			return i;
+		int pos = 0, begin_pos, end_pos, eol;
+		String marker, status;
+		for ( ; i < batch.size() ; i++ ) {
+			marker = token + " BEGIN " + i + "\n";
+			begin_pos = output.indexOf(marker, pos);
+			if (begin_pos==-1)
+				break;
+			begin_pos += marker.length();
+
+			marker = "\n" + token + " END " + i + " ";
+			end_pos = output.indexOf(marker, begin_pos);
+			if (end_pos==-1)
+				break;
+			eol = output.indexOf('\n', end_pos + marker.length());
+			if (eol==-1)
+				eol = output.length();
+			status = output.substring(end_pos + marker.length(), eol).trim();
+			pos = eol;
+
+			if (STATUS_ERROR.equals(status)) {
+				// let test runner execute SKIPIF on its own so any error is reported the same as usual
+				fallback_count.incrementAndGet();
+			} else {
+				batch.get(i).prep.skipif_output = output.substring(begin_pos, end_pos);
+				batched_count.incrementAndGet();
+			}
+		}
+		return i;
+	} // end protected int readOutput
+
+	protected static String createScript(FileSystemScenario fs, String token, List<PhptTestCase> batch) {
+		StringBuilder sb = new StringBuilder(1024 + (batch.size() * 128));
+		sb.append("<?php\n");
+		sb.append("// generated by PFTT: executes several SKIPIF sections (@see PhptSkipIfBatch)\n");
+		sb.append("$__pftt_token = '").append(token).append("';\n");
+		sb.append("$__pftt_files = array(\n");
+		for ( PhptTestCase test_case : batch ) {
+			sb.append('\'');
+			sb.append(fs.fixPath(test_case.prep.skipif_file).replace("\\", "\\\\").replace("'", "\\'"));
+			sb.append("',\n");
+		}
+		sb.append(");\n");
+		sb.append("$__pftt_n = count($__pftt_files);\n");
+		sb.append("$__pftt_i = isset($argv[1]) ? intval($argv[1]) : 0;\n");
+		sb.append("$__pftt_ob = ob_get_level();\n");
+		sb.append("$__pftt_err = null;\n");
+		sb.append("$__pftt_globals = null;\n");
+		// prints captured output of current SKIPIF between markers
+		sb.append("function __pftt_skipif_end($status) {\n");
+		sb.append("	if (ob_get_level() != $GLOBALS['__pftt_ob'] + 1)\n");
+		sb.append("		$status = 'error';\n");
+		sb.append("	$out = '';\n");
+		sb.append("	while (ob_get_level() > $GLOBALS['__pftt_ob'])\n");
+		sb.append("		$out = ob_get_clean() . $out;\n");
+		sb.append("	echo $GLOBALS['__pftt_token'], ' BEGIN ', $GLOBALS['__pftt_i'], \"\\n\", $out, \"\\n\", $GLOBALS['__pftt_token'], ' END ', $GLOBALS['__pftt_i'], ' ', $status, \"\\n\";\n");
+		sb.append("}\n");
+		// SKIPIF called exit() or die() or had a fatal error
+		sb.append("function __pftt_skipif_shutdown() {\n");
+		sb.append("	if ($GLOBALS['__pftt_i'] >= $GLOBALS['__pftt_n'])\n");
+		sb.append("		return;\n");
+		sb.append("	$e = error_get_last();\n");
+		sb.append("	$fatal = $e !== null && $e !== $GLOBALS['__pftt_err'] && in_array($e['type'], array(E_ERROR, E_PARSE, E_CORE_ERROR, E_COMPILE_ERROR, E_USER_ERROR));\n");
+		sb.append("	__pftt_skipif_end($fatal ? '").append(STATUS_ERROR).append("' : 'exit');\n");
+		sb.append("}\n");
+		sb.append("register_shutdown_function('__pftt_skipif_shutdown');\n");
+		sb.append("for ( ; $__pftt_i < $__pftt_n ; $__pftt_i++ ) {\n");
+		sb.append("	$__pftt_globals = array_keys($GLOBALS);\n");
+		sb.append("	$__pftt_err = error_get_last();\n");
+		sb.append("	ob_start();\n");
+		sb.append("	include $__pftt_files[$__pftt_i];\n");
+		sb.append("	__pftt_skipif_end('ok');\n");
+		// isolate SKIPIFs from each other
+		sb.append("	foreach (array_diff(array_keys($GLOBALS), $__pftt_globals) as $__pftt_k)\n");
+		sb.append("		unset($GLOBALS[$__pftt_k]);\n");
+		sb.append("}\n");
+		return sb.toString();
+	} // end protected static String createScript
+
+	public int getProcessCount() {
+		return process_count.get();
+	}
+
+	public int getBatchedCount() {
+		return batched_count.get();
+	}
+
+	public int getFallbackCount() {
+		return fallback_count.get();
+	}
+
+	@Override
+	public String toString() {
+		return "PhptSkipIfBatch[processes="+getProcessCount()+" batched="+getBatchedCount()+" fallback="+getFallbackCount()+"]";
+	}
+
+} // end public class PhptSkipIfBatch
@@ -0,0 +1,350 @@
+package com.mostc.pftt.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.mattficken.io.StringUtil;
+import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.host.LocalHost;
+import com.mostc.pftt.model.core.EPhptSection;
+import com.mostc.pftt.model.core.PhpBuild;
+import com.mostc.pftt.model.core.PhpIni;
+import com.mostc.pftt.model.core.PhptTestCase;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.ConsoleManagerUtil;
+import com.mostc.pftt.results.EPrintType;
+import com.mostc.pftt.scenario.ScenarioSetSetup;
+
+/** Remembers the output of SKIPIF sections between test runs.
+ *
+ * The same SKIPIF sections are executed on every test run, for every scenario set and every -run_test_pack
+ * repetition, even when neither the SKIPIF code nor the build has changed. Output is cached by a hash of:
+ *  -the SKIPIF section
+ *  -the test's path (SKIPIFs often include a skipif.inc from the test's own directory)
+ *  -the last-modified time of files the SKIPIF includes (if they can be found on this host)
+ *  -the build (PhpBuildInfo)
+ *  -the extensions that are loaded (PhpIni#getExtensionsOnly)
+ *  -the scenario set and host
+ *
+ * The cache is stored in the PFTT cache directory and shared by all test runs. Once there are more than #max_entries,
+ * the least recently used entries are removed.
+ *
+ * NOTE: a SKIPIF that checks something other than PHP (a database server, network access, etc...) will get
+ *       its cached output until the cache is cleared.
+ *
+ * @see -no_skipif_cache console option
+ * @see skipif_cache_clear command
+ * @author Matt Ficken
+ *
+ */
+
+public class PhptSkipIfCache {
+	public static final int DEFAULT_MAX_ENTRIES = 200000;
+	/** SKIPIF output is usually just 'skip reason'. don't cache anything unusually long */
+	protected static final int MAX_OUTPUT_LENGTH = 4096;
+	protected static final int FILE_MAGIC = 0x5046534B;
+	protected static final int FILE_VERSION = 2;
+	/** include/require of a literal file name, optionally relative to dirname(__FILE__) or __DIR__ */
+	protected static final Pattern INCLUDE_PATTERN = Pattern.compile("\\b(?:include|require)(?:_once)?\\s*\\(?\\s*(?:(?:dirname\\s*\\(\\s*__FILE__\\s*\\)|__DIR__)\\s*\\.\\s*)?['\"]([^'\"]+)['\"]", Pattern.CASE_INSENSITIVE);
+	protected static final HashMap<File,Store> stores = new HashMap<File,Store>();
+	//
+	protected final Store store;
+	protected final String context;
+	protected final AtomicInteger hit_count, miss_count;
+
+	protected PhptSkipIfCache(Store store, String context) {
+		this.store = store;
+		this.context = context;
+		hit_count = new AtomicInteger();
+		miss_count = new AtomicInteger();
+	}
+
+	/** opens cache for running tests on given build and scenario set
+	 *
+	 * @param cm
+	 * @param host - host tests are run on
+	 * @param build
+	 * @param scenario_set_setup
+	 * @return NULL if cache can't be used
+	 */
+	public static PhptSkipIfCache open(ConsoleManager cm, AHost host, PhpBuild build, ScenarioSetSetup scenario_set_setup) {
+		File file = getFile();
+		if (file==null)
+			return null;
+		String context;
+		try {
+			context = build.getBuildInfo(cm, host) + "\n" + scenario_set_setup.getNameWithVersionInfo() + "\n" + host.getName();
+		} catch ( Exception ex ) {
+			cm.addGlobalException(EPrintType.OPERATION_FAILED_CONTINUING, PhptSkipIfCache.class, "open", ex, "can't use SKIPIF cache");
+			return null;
+		}
+		Store store;
+		synchronized(stores) {
+			store = stores.get(file);
+			if (store==null) {
+				store = new Store(file, DEFAULT_MAX_ENTRIES);
+				store.load(cm);
+				stores.put(file, store);
+			}
+		}
+		return new PhptSkipIfCache(store, context);
+	}
+
+	/** deletes all cached SKIPIF output
+	 *
+	 * @see skipif_cache_clear command
+	 * @param cm
+	 * @return number of entries that were removed
+	 */
+	public static int clear(ConsoleManager cm) {
+		File file = getFile();
+		if (file==null)
+			return 0;
+		Store store;
+		synchronized(stores) {
+			store = stores.remove(file);
+		}
+		if (store==null) {
+			store = new Store(file, DEFAULT_MAX_ENTRIES);
+			store.load(cm);
+		}
+		int count = store.size();
+		file.delete();
+		return count;
+	}
+
+	protected static File getFile() {
+		LocalHost host = LocalHost.getInstance();
+		if (StringUtil.isEmpty(host.getPfttDir()))
+			// PFTT_HOME not set
+			return null;
+		return new File(host.getPfttCacheDir(), "skipif/skipif_cache.bin");
+	}
+
+	/** returns cached output of test's SKIPIF section or NULL if not cached
+	 *
+	 * @param ini - INI used to execute the SKIPIF
+	 * @param test_case
+	 * @return
+	 */
+	public String get(PhpIni ini, PhptTestCase test_case) {
+		return store.get(createKey(ini, test_case));
+	}
+
+	/** returns TRUE if test's SKIPIF output is cached. unlike #get, doesn't count as a use of the entry
+	 *
+	 * @param ini - INI used to execute the SKIPIF
+	 * @param test_case
+	 * @return
+	 */
+	public boolean contains(PhpIni ini, PhptTestCase test_case) {
+		return store.contains(createKey(ini, test_case));
+	}
+
+	public void put(PhpIni ini, PhptTestCase test_case, String output) {
+		if (output==null || output.length() > MAX_OUTPUT_LENGTH)
+			return;
+		store.put(createKey(ini, test_case), output);
+	}
+
+	protected String createKey(PhpIni ini, PhptTestCase test_case) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			md.update(context.getBytes("UTF-8"));
+			md.update((byte)0);
+			if (ini!=null)
+				md.update(ini.getExtensionsOnly().toString().getBytes("UTF-8"));
+			md.update((byte)0);
+			md.update(test_case.getName().getBytes("UTF-8"));
+			md.update((byte)0);
+			final String skipif = test_case.get(EPhptSection.SKIPIF);
+			md.update(skipif.getBytes("UTF-8"));
+			if (test_case.prep!=null && test_case.prep.test_dir!=null) {
+				// if an included file is changed, the SKIPIF may print something different
+				Matcher m = INCLUDE_PATTERN.matcher(skipif);
+				File f;
+				while (m.find()) {
+					f = new File(test_case.prep.test_dir, m.group(1));
+					md.update((byte)0);
+					md.update(Long.toString(f.lastModified()).getBytes("UTF-8"));
+				}
+			}
+			byte[] digest = md.digest();
+			StringBuilder sb = new StringBuilder(digest.length*2);
+			for ( byte b : digest ) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch ( Exception ex ) {
+			// MD5 and UTF-8 are always supported
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/** SKIPIF output was provided by the cache */
+	public void notifyHit() {
+		hit_count.incrementAndGet();
+	}
+
+	/** SKIPIF had to be executed */
+	public void notifyMiss() {
+		miss_count.incrementAndGet();
+	}
+
+	public int getHitCount() {
+		return hit_count.get();
+	}
+
+	public int getMissCount() {
+		return miss_count.get();
+	}
+
+	public int getEvictionCount() {
+		return store.evict_count.get();
+	}
+
+	public int size() {
+		return store.size();
+	}
+
+	/** writes cache to disk (if it changed) */
+	public void save(ConsoleManager cm) {
+		store.save(cm);
+	}
+
+	@Override
+	public String toString() {
+		return "PhptSkipIfCache[hits="+getHitCount()+" misses="+getMissCount()+" entries="+size()+" evictions="+getEvictionCount()+"]";
+	}
+
+	/** LRU map of SKIPIF output, stored in 1 file */
+	protected static class Store {
+		protected final File file;
+		protected final int max_entries;
+		protected final LinkedHashMap<String,String> entries;
+		protected final AtomicInteger evict_count;
+		protected boolean dirty;
+
+		@SuppressWarnings("serial")
+		protected Store(File file, int max_entries) {
+			this.file = file;
+			this.max_entries = max_entries;
+			evict_count = new AtomicInteger();
+			// access-order: iterates least recently used first
+			entries = new LinkedHashMap<String,String>(1024, 0.75f, true) {
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String,String> eldest) {
+						if (size() > Store.this.max_entries) {
+							evict_count.incrementAndGet();
+							return true;
+						}
+						return false;
+					}
+				};
+		}
+
+		protected synchronized String get(String key) {
+			// moves entry to most recently used. that order is only saved along with new entries (@see #put)
+			// so the cache file isn't rewritten after every test run
+			return entries.get(key);
+		}
+
+		protected synchronized boolean contains(String key) {
+			// containsKey doesn't change access-order
+			return entries.containsKey(key);
+		}
+
+		protected synchronized void put(String key, String output) {
+			if (!output.equals(entries.put(key, output)))
+				dirty = true;
+		}
+
+		protected synchronized int size() {
+			return entries.size();
+		}
+
+		protected synchronized void load(ConsoleManager cm) {
+			if (!file.exists())
+				return;
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+				if (in.readInt()!=FILE_MAGIC || in.readInt()!=FILE_VERSION) {
+					cm.println(EPrintType.CLUE, PhptSkipIfCache.class, "Ignoring SKIPIF cache from different PFTT version: "+file);
+					return;
+				}
+				final int count = in.readInt();
+				for ( int i=0 ; i < count ; i++ ) {
+					String key = in.readUTF();
+					entries.put(key, in.readUTF());
+				}
+			} catch ( IOException ex ) {
+				// start over with an empty cache
+				entries.clear();
+				cm.addGlobalException(EPrintType.OPERATION_FAILED_CONTINUING, PhptSkipIfCache.class, "load", ex, "SKIPIF cache is unreadable, ignoring it", file);
+			} finally {
+				if (in!=null) {
+					try {
+						in.close();
+					} catch ( IOException ex ) {}
+				}
+			}
+		}
+
+		protected synchronized void save(ConsoleManager cm) {
+			if (!dirty)
+				return;
+			file.getParentFile().mkdirs();
+			// write to temp file then replace so cache file is never left half-written
+			File tmp_file = new File(file.getPath()+".tmp");
+			DataOutputStream out = null;
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp_file))));
+				out.writeInt(FILE_MAGIC);
+				out.writeInt(FILE_VERSION);
+				out.writeInt(entries.size());
+				// least recently used first, so #load restores the same order
+				Iterator<Map.Entry<String,String>> it = entries.entrySet().iterator();
+				Map.Entry<String,String> e;
+				while (it.hasNext()) {
+					e = it.next();
+					out.writeUTF(e.getKey());
+					out.writeUTF(e.getValue());
+				}
+				out.close();
+				out = null;
+				file.delete();
+				if (!tmp_file.renameTo(file))
+					throw new IOException("could not rename "+tmp_file+" to "+file);
+				dirty = false;
+			} catch ( IOException ex ) {
+				ConsoleManagerUtil.printStackTrace(PhptSkipIfCache.class, cm, ex);
+			} finally {
+				if (out!=null) {
+					try {
+						out.close();
+					} catch ( IOException ex ) {}
+				}
+			}
+		} // end protected synchronized void save
+
+	} // end protected static class Store
+
+} // end public class PhptSkipIfCache
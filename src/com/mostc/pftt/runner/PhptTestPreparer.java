@@ -75,6 +75,12 @@ public class PhptTestPreparer {
 	public class PreparedPhptTestCase extends TestCase {
 		public final PhptTestCase test_case;
 		public String base_file_name, skipif_file, test_dir, test_file, test_clean;
+		/** output of SKIPIF section if it was already executed (along with other tests' SKIPIF sections)
+		 * or NULL if it still needs to be executed
+		 * 
+		 * @see PhptSkipIfBatch
+		 */
+		public String skipif_output;
 		
 		public PreparedPhptTestCase(PhptTestCase test_case) {
 			this.test_case = test_case;
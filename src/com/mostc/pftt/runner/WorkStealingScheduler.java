@@ -0,0 +1,379 @@
+package com.mostc.pftt.runner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.mostc.pftt.model.TestCase;
+import com.mostc.pftt.runner.AbstractLocalTestPackRunner.NonThreadSafeExt;
+import com.mostc.pftt.runner.AbstractLocalTestPackRunner.TestCaseGroup;
+
+/** Distributes TestCaseGroups between TestPackThreads.
+ *
+ * Each thread owns a deque of thread-safe group chunks. A thread takes work from the head of its own deque.
+ * When its own deque is empty, it takes work from the shared queue (work left behind by threads that were stopped
+ * or replaced) and then steals from the tail of the deque of the busiest other thread.
+ *
+ * Large thread-safe groups are split into chunks of roughly equal cost so they can be spread between threads
+ * instead of all threads contending on the same group.
+ *
+ * Non-thread-safe(NTS) extensions are never split: all groups of an NTS extension are run by only one thread at a time.
+ * A thread that is busy with an NTS extension still has its thread-safe chunks stolen by idle threads.
+ *
+ * @see AbstractLocalTestPackRunner.TestPackThread#runThreadSafe
+ * @see AbstractLocalTestPackRunner.TestPackThread#runNonThreadSafe
+ * @author Matt Ficken
+ *
+ */
+
+public class WorkStealingScheduler<T extends TestCase> {
+	/** number of chunks to aim for per thread. more chunks = more balanced tail, but more group setup (#exec_jobs) */
+	protected static final int CHUNKS_PER_THREAD = 4;
+	/** don't split groups into chunks cheaper than this */
+	protected static final long MIN_CHUNK_COST = 8;
+
+	protected final ITestCaseCostModel<T> cost_model;
+	protected final CopyOnWriteArrayList<WorkerDeque<T>> deques;
+	protected final ConcurrentHashMap<Thread,WorkerDeque<T>> deques_by_thread;
+	protected final LinkedBlockingQueue<WorkerDeque<T>> unowned_deques;
+	protected final LinkedBlockingDeque<TestCaseGroup<T>> shared_groups;
+	protected final LinkedBlockingQueue<NonThreadSafeExt<T>> non_thread_safe_exts;
+	protected final AtomicInteger steal_count, shared_take_count, local_take_count, nts_take_count, max_queue_depth;
+	protected final AtomicLong stolen_cost;
+	protected int chunk_count;
+
+	/** estimates the relative cost of running a test case. used to split groups into chunks of equal cost and
+	 * to decide which thread to steal from.
+	 *
+	 */
+	public static interface ITestCaseCostModel<T extends TestCase> {
+		long getCost(T test_case);
+	}
+
+	public static class UnitCostModel<T extends TestCase> implements ITestCaseCostModel<T> {
+		@Override
+		public long getCost(T test_case) {
+			return 1;
+		}
+	}
+
+	protected static class WorkerDeque<T extends TestCase> {
+		protected final LinkedBlockingDeque<Chunk<T>> chunks = new LinkedBlockingDeque<Chunk<T>>();
+		protected final AtomicLong cost = new AtomicLong(0L);
+		protected volatile Thread owner;
+
+		protected void addLast(Chunk<T> chunk) {
+			cost.addAndGet(chunk.cost);
+			chunks.addLast(chunk);
+		}
+
+		@Nullable
+		protected Chunk<T> pollFirst() {
+			Chunk<T> chunk = chunks.pollFirst();
+			if (chunk!=null)
+				cost.addAndGet(-chunk.cost);
+			return chunk;
+		}
+
+		@Nullable
+		protected Chunk<T> pollLast() {
+			Chunk<T> chunk = chunks.pollLast();
+			if (chunk!=null)
+				cost.addAndGet(-chunk.cost);
+			return chunk;
+		}
+	}
+
+	protected static class Chunk<T extends TestCase> {
+		protected final TestCaseGroup<T> group;
+		protected final long cost;
+
+		protected Chunk(TestCaseGroup<T> group, long cost) {
+			this.group = group;
+			this.cost = cost;
+		}
+	}
+
+	public WorkStealingScheduler(ITestCaseCostModel<T> cost_model) {
+		this.cost_model = cost_model == null ? new UnitCostModel<T>() : cost_model;
+		deques = new CopyOnWriteArrayList<WorkerDeque<T>>();
+		deques_by_thread = new ConcurrentHashMap<Thread,WorkerDeque<T>>();
+		unowned_deques = new LinkedBlockingQueue<WorkerDeque<T>>();
+		shared_groups = new LinkedBlockingDeque<TestCaseGroup<T>>();
+		non_thread_safe_exts = new LinkedBlockingQueue<NonThreadSafeExt<T>>();
+		steal_count = new AtomicInteger(0);
+		shared_take_count = new AtomicInteger(0);
+		local_take_count = new AtomicInteger(0);
+		nts_take_count = new AtomicInteger(0);
+		max_queue_depth = new AtomicInteger(0);
+		stolen_cost = new AtomicLong(0L);
+	}
+
+	/** splits thread-safe groups into chunks and distributes them between deques for `thread_count` threads.
+	 *
+	 * NTS extensions are queued in the given order (callers already order them largest-first).
+	 *
+	 * @param thread_count
+	 * @param thread_safe_groups
+	 * @param non_thread_safe_exts
+	 */
+	public void seed(int thread_count, Collection<TestCaseGroup<T>> thread_safe_groups, Collection<NonThreadSafeExt<T>> non_thread_safe_exts) {
+		thread_count = Math.max(1, thread_count);
+
+		this.non_thread_safe_exts.addAll(non_thread_safe_exts);
+
+		ArrayList<WorkerDeque<T>> seeded = new ArrayList<WorkerDeque<T>>(thread_count);
+		for ( int i=0 ; i < thread_count ; i++ ) {
+			WorkerDeque<T> d = new WorkerDeque<T>();
+			seeded.add(d);
+			deques.add(d);
+			unowned_deques.add(d);
+		}
+
+		// a group may be listed more than once (ex: LocalPhptTestPackRunner#postGroup). before chunking, all
+		// entries shared 1 queue so the tests ran once; chunks copy the tests, so only chunk each group once
+		Set<TestCaseGroup<T>> unique_groups = Collections.newSetFromMap(new IdentityHashMap<TestCaseGroup<T>,Boolean>());
+		ArrayList<TestCaseGroup<T>> groups = new ArrayList<TestCaseGroup<T>>(thread_safe_groups.size());
+		for ( TestCaseGroup<T> group : thread_safe_groups ) {
+			if (unique_groups.add(group))
+				groups.add(group);
+		}
+
+		// decide chunk size
+		long total_cost = 0;
+		for ( TestCaseGroup<T> group : groups ) {
+			for ( T test_case : group.test_cases )
+				total_cost += cost(test_case);
+		}
+		final long chunk_cost = Math.max(MIN_CHUNK_COST, total_cost / (thread_count * CHUNKS_PER_THREAD));
+
+		// split groups into chunks, keeping the order of groups and of tests within each group
+		LinkedList<Chunk<T>> chunks = new LinkedList<Chunk<T>>();
+		for ( TestCaseGroup<T> group : groups ) {
+			TestCaseGroup<T> chunk = new TestCaseGroup<T>(group.group_key);
+			long cost = 0;
+			for ( T test_case : group.test_cases ) {
+				chunk.test_cases.add(test_case);
+				cost += cost(test_case);
+				if (cost >= chunk_cost) {
+					chunks.add(new Chunk<T>(chunk, cost));
+					chunk = new TestCaseGroup<T>(group.group_key);
+					cost = 0;
+				}
+			}
+			if (!chunk.test_cases.isEmpty())
+				chunks.add(new Chunk<T>(chunk, cost));
+		}
+		chunk_count = chunks.size();
+
+		// give each chunk to the least loaded deque
+		for ( Chunk<T> chunk : chunks ) {
+			WorkerDeque<T> least = seeded.get(0);
+			for ( WorkerDeque<T> d : seeded ) {
+				if (d.cost.get() < least.cost.get())
+					least = d;
+			}
+			least.addLast(chunk);
+		}
+		updateMaxQueueDepth();
+	} // end public void seed
+
+	protected long cost(T test_case) {
+		return Math.max(1L, cost_model.getCost(test_case));
+	}
+
+	/** gets (or assigns) the deque owned by the given thread
+	 *
+	 * @param thread
+	 * @return
+	 */
+	protected WorkerDeque<T> getDeque(Thread thread) {
+		WorkerDeque<T> d = deques_by_thread.get(thread);
+		if (d!=null)
+			return d;
+		// threads started after #seed (scale up, replacement threads) get an empty deque and steal
+		d = unowned_deques.poll();
+		if (d==null) {
+			d = new WorkerDeque<T>();
+			deques.add(d);
+		}
+		d.owner = thread;
+		deques_by_thread.put(thread, d);
+		return d;
+	}
+
+	/** gets the next NTS extension to run or null if all have been taken.
+	 *
+	 * An NTS extension is only ever given to one thread. It is not stolen.
+	 *
+	 * @param thread
+	 * @return
+	 */
+	@Nullable
+	public NonThreadSafeExt<T> pollNonThreadSafe(Thread thread) {
+		NonThreadSafeExt<T> ext = non_thread_safe_exts.poll();
+		if (ext!=null)
+			nts_take_count.incrementAndGet();
+		return ext;
+	}
+
+	/** returns an NTS extension to the queue (when the thread running it was replaced)
+	 *
+	 * @param ext
+	 */
+	public void requeueNonThreadSafe(NonThreadSafeExt<T> ext) {
+		non_thread_safe_exts.add(ext);
+	}
+
+	/** gets the next chunk of thread-safe tests for the given thread to run.
+	 *
+	 * Order: own deque (head), shared queue, then steal from the tail of the busiest deque
+	 *
+	 * @param thread
+	 * @return null if there is no thread-safe work left
+	 */
+	@Nullable
+	public TestCaseGroup<T> pollThreadSafe(Thread thread) {
+		WorkerDeque<T> own = getDeque(thread);
+		Chunk<T> chunk = own.pollFirst();
+		if (chunk!=null) {
+			local_take_count.incrementAndGet();
+			return chunk.group;
+		}
+		TestCaseGroup<T> group = shared_groups.pollFirst();
+		if (group!=null) {
+			shared_take_count.incrementAndGet();
+			return group;
+		}
+		for (;;) {
+			// pick the deque with the most work left
+			WorkerDeque<T> victim = null;
+			long victim_cost = 0;
+			for ( WorkerDeque<T> d : deques ) {
+				if (d==own)
+					continue;
+				long c = d.cost.get();
+				if (c > victim_cost && !d.chunks.isEmpty()) {
+					victim = d;
+					victim_cost = c;
+				}
+			}
+			if (victim==null)
+				return null;
+			chunk = victim.pollLast();
+			if (chunk!=null) {
+				steal_count.incrementAndGet();
+				stolen_cost.addAndGet(chunk.cost);
+				return chunk.group;
+			}
+			// lost race with owner or another thief, try again
+		}
+	} // end public TestCaseGroup<T> pollThreadSafe
+
+	/** called when a thread stops. any work it was holding is moved to the shared queue so other threads will run it.
+	 *
+	 * @param thread
+	 * @param current - thread-safe group thread was running (if it still has tests left) or null
+	 */
+	public void unregister(Thread thread, @Nullable TestCaseGroup<T> current) {
+		WorkerDeque<T> d = deques_by_thread.remove(thread);
+		if (d==null)
+			// never ran thread-safe tests or already unregistered (thread was replaced)
+			return;
+		if (current!=null && !current.test_cases.isEmpty())
+			shared_groups.addFirst(current);
+		Chunk<T> chunk;
+		while ((chunk = d.pollFirst())!=null)
+			shared_groups.addLast(chunk.group);
+		deques.remove(d);
+	}
+
+	public boolean hasWork() {
+		if (!non_thread_safe_exts.isEmpty()||!shared_groups.isEmpty())
+			return true;
+		for ( WorkerDeque<T> d : deques ) {
+			if (!d.chunks.isEmpty())
+				return true;
+		}
+		return false;
+	}
+
+	/** number of thread-safe chunks still queued (not including chunks currently running) */
+	public int getQueueDepth() {
+		int depth = shared_groups.size();
+		for ( WorkerDeque<T> d : deques )
+			depth += d.chunks.size();
+		return depth;
+	}
+
+	/** number of chunks queued in each thread's deque */
+	public List<Integer> getQueueDepthPerThread() {
+		ArrayList<Integer> out = new ArrayList<Integer>(deques.size());
+		Iterator<WorkerDeque<T>> it = deques.iterator();
+		while (it.hasNext())
+			out.add(it.next().chunks.size());
+		return out;
+	}
+
+	public int getMaxQueueDepth() {
+		updateMaxQueueDepth();
+		return max_queue_depth.get();
+	}
+
+	protected void updateMaxQueueDepth() {
+		int depth = getQueueDepth();
+		int max;
+		do {
+			max = max_queue_depth.get();
+			if (depth <= max)
+				return;
+		} while (!max_queue_depth.compareAndSet(max, depth));
+	}
+
+	public int getNonThreadSafeQueueDepth() {
+		return non_thread_safe_exts.size();
+	}
+
+	public int getStealCount() {
+		return steal_count.get();
+	}
+
+	public long getStolenCost() {
+		return stolen_cost.get();
+	}
+
+	public int getLocalTakeCount() {
+		return local_take_count.get();
+	}
+
+	public int getSharedTakeCount() {
+		return shared_take_count.get();
+	}
+
+	public int getNonThreadSafeTakeCount() {
+		return nts_take_count.get();
+	}
+
+	public int getChunkCount() {
+		return chunk_count;
+	}
+
+	@Override
+	public String toString() {
+		return "chunks="+chunk_count+" queue_depth="+getQueueDepth()+" max_queue_depth="+getMaxQueueDepth()+" nts_queue_depth="+getNonThreadSafeQueueDepth()+" local_takes="+getLocalTakeCount()+" shared_takes="+getSharedTakeCount()+" steals="+getStealCount()+" stolen_cost="+getStolenCost()+" nts_takes="+getNonThreadSafeTakeCount();
+	}
+
+} // end public class WorkStealingScheduler
@@ -0,0 +1,143 @@
+package com.mostc.pftt.scenario;
+
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.mostc.pftt.host.AHost;
+import com.mostc.pftt.host.Host;
+import com.mostc.pftt.main.IENVINIFilter;
+import com.mostc.pftt.model.core.ESAPIType;
+import com.mostc.pftt.model.core.PhpBuild;
+import com.mostc.pftt.model.core.PhpIni;
+import com.mostc.pftt.model.core.PhptActiveTestPack;
+import com.mostc.pftt.model.core.PhptSourceTestPack;
+import com.mostc.pftt.model.core.PhptTestCase;
+import com.mostc.pftt.model.sapi.CliSAPIInstance;
+import com.mostc.pftt.model.sapi.FastCGIWorkerPool;
+import com.mostc.pftt.model.sapi.TestCaseGroupKey;
+import com.mostc.pftt.results.ConsoleManager;
+import com.mostc.pftt.results.EPrintType;
+import com.mostc.pftt.results.ITestResultReceiver;
+import com.mostc.pftt.runner.AbstractPhptTestCaseRunner;
+import com.mostc.pftt.runner.FastCGIPhptTestCaseRunner;
+import com.mostc.pftt.runner.LocalPhptTestPackRunner.PhptThread;
+import com.mostc.pftt.runner.PhptTestPreparer.PreparedPhptTestCase;
+
+/** Runs PHPTs like CliScenario, but sends each section (SKIPIF, TEST, CLEAN) as a FastCGI request to
+ * a pool of long-running php-cgi processes instead of starting a new php.exe for each section.
+ *
+ * Starting processes is most of the run time for the many small PHPT tests. There is a pool of php-cgi
+ * processes for each TestCaseGroupKey (same INI). Tests that need things FastCGI can't provide (ex: command
+ * line arguments, STDIN) are run the same way as CliScenario.
+ *
+ * For benchmarking, run both this and CliScenario with the same test list (@see conf/fastcgi_benchmark.groovy)
+ * and compare the tests/second each one reports.
+ *
+ * @see FastCGIWorkerPool
+ * @author Matt Ficken
+ *
+ */
+
+public class CliFastCGIScenario extends CliScenario {
+	/** replace php-cgi process after this many requests */
+	public static final int DEFAULT_MAX_REQUESTS = 500;
+	protected final int max_requests;
+	protected final LinkedList<FastCGIWorkerPool> pools;
+
+	public CliFastCGIScenario() {
+		this(DEFAULT_MAX_REQUESTS);
+	}
+
+	public CliFastCGIScenario(int max_requests) {
+		this.max_requests = max_requests;
+		pools = new LinkedList<FastCGIWorkerPool>();
+	}
+
+	@Override
+	public String getName() {
+		return "CLI-FastCGI";
+	}
+
+	@Override
+	public ESAPIType getSAPIType() {
+		return ESAPIType.FAST_CGI;
+	}
+
+	@Override
+	public boolean isSupported(ConsoleManager cm, Host host, PhpBuild build, ScenarioSet scenario_set, EScenarioSetPermutationLayer layer) {
+		if (host.isRemote()) {
+			// php-cgi processes are only reachable on the loopback interface
+			if (cm!=null)
+				cm.println(EPrintType.CLUE, getClass(), "Only supported on local host");
+			return false;
+		} else if (!build.hasPhpCgiExe()) {
+			if (cm!=null)
+				cm.println(EPrintType.CLUE, getClass(), "Build must include php-cgi");
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public AbstractPhptTestCaseRunner createPhptTestCaseRunner(
+			PhptThread thread, TestCaseGroupKey group_key, PreparedPhptTestCase prep,
+			ConsoleManager cm, ITestResultReceiver twriter, FileSystemScenario fs, AHost host,
+			ScenarioSetSetup scenario_set_setup, PhpBuild build, PhptSourceTestPack src_test_pack, PhptActiveTestPack active_test_pack, boolean xdebug, boolean debugger_attached) {
+		CliFastCGITestCaseGroupKey fkey = (CliFastCGITestCaseGroupKey) group_key;
+		return new FastCGIPhptTestCaseRunner(
+				fkey.getWorkerPool(host, active_test_pack.getStorageDirectory()),
+				xdebug, fs, this, fkey.getCliSAPIInstance(), getPhptTestCaseRunnerIni(group_key), thread, prep, cm, twriter, host, scenario_set_setup, build, src_test_pack, active_test_pack, debugger_attached
+			);
+	}
+
+	@Override
+	public TestCaseGroupKey createTestGroupKey(ConsoleManager cm, FileSystemScenario fs, AHost host, PhpBuild build, ScenarioSetSetup scenario_set_setup, PhptActiveTestPack active_test_pack, PhptTestCase test_case, IENVINIFilter filter, TestCaseGroupKey group_key) {
+		TestCaseGroupKey key = super.createTestGroupKey(cm, fs, host, build, scenario_set_setup, active_test_pack, test_case, filter, group_key);
+		if (key==null || key instanceof CliFastCGITestCaseGroupKey)
+			// same as group_key (reused)
+			return key;
+		CliTestCaseGroupKey ckey = (CliTestCaseGroupKey) key;
+		return new CliFastCGITestCaseGroupKey(ckey.getCliSAPIInstance(), ckey.getPhpIni(), ckey.getEnv());
+	}
+
+	public class CliFastCGITestCaseGroupKey extends CliTestCaseGroupKey {
+		protected FastCGIWorkerPool pool;
+
+		public CliFastCGITestCaseGroupKey(CliSAPIInstance sapi, PhpIni ini, Map<String, String> env) {
+			super(sapi, ini, env);
+		}
+
+		public synchronized FastCGIWorkerPool getWorkerPool(AHost host, String chdir) {
+			if (pool==null) {
+				pool = new FastCGIWorkerPool(host, sapi, env, chdir, max_requests);
+				synchronized(pools) {
+					pools.add(pool);
+				}
+			}
+			return pool;
+		}
+
+	} // end public class CliFastCGITestCaseGroupKey
+
+	@Override
+	public void close(ConsoleManager cm, boolean debug) {
+		super.close(cm, debug);
+		long requests = 0;
+		int started = 0, recycled = 0, crashed = 0, timeouts = 0;
+		synchronized(pools) {
+			for ( FastCGIWorkerPool pool : pools ) {
+				pool.close(cm);
+				requests += pool.getRequestCount();
+				started += pool.getStartedCount();
+				recycled += pool.getRecycledCount();
+				crashed += pool.getCrashedCount();
+				timeouts += pool.getTimeoutCount();
+			}
+			if (cm!=null && !pools.isEmpty()) {
+				cm.println(EPrintType.CLUE, getClass(), "FastCGI pools="+pools.size()+" php-cgi processes="+started+" requests="+requests+" recycled="+recycled+" crashed="+crashed+" timeouts="+timeouts);
+			}
+			pools.clear();
+		}
+	}
+
+} // end public class CliFastCGIScenario
@@ -58,7 +58,18 @@ public class CliScenario extends SAPIScenario {
 			PhptThread thread, TestCaseGroupKey group_key, PreparedPhptTestCase prep,
 			ConsoleManager cm, ITestResultReceiver twriter, FileSystemScenario fs, AHost host,
 			ScenarioSetSetup scenario_set_setup, PhpBuild build, PhptSourceTestPack src_test_pack, PhptActiveTestPack active_test_pack, boolean xdebug, boolean debugger_attached) {
-		return new CliPhptTestCaseRunner(xdebug, fs, this, ((CliTestCaseGroupKey)group_key).getCliSAPIInstance(), group_key.getPhpIni(), thread, prep, cm, twriter, host, scenario_set_setup, build, src_test_pack, active_test_pack, debugger_attached);
+		return new CliPhptTestCaseRunner(xdebug, fs, this, ((CliTestCaseGroupKey)group_key).getCliSAPIInstance(), getPhptTestCaseRunnerIni(group_key), thread, prep, cm, twriter, host, scenario_set_setup, build, src_test_pack, active_test_pack, debugger_attached);
+	}
+	
+	/** returns the INI PHPT test runners are given for tests in this group
+	 * 
+	 * anything that needs to match what the runner will use (ex: PhptSkipIfCache keys) should use this too
+	 * 
+	 * @param group_key
+	 * @return
+	 */
+	public PhpIni getPhptTestCaseRunnerIni(TestCaseGroupKey group_key) {
+		return group_key.getPhpIni();
 	}
 	
 	@Override
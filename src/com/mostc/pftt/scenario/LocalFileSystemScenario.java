@@ -70,6 +70,11 @@ public class LocalFileSystemScenario extends FileSystemScenario {
 		this.host = host;
 	}
 	
+	/** used when parsed from a PSC stream (@see Scenario#parse): the file system is the one of the host reading the stream */
+	public LocalFileSystemScenario() {
+		this(LocalHost.getInstance());
+	}
+	
 	@Override
 	public boolean setupRequired(EScenarioSetPermutationLayer layer) {
 		// not a placeholder, but no setup is needed
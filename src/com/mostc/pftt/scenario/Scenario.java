@@ -245,9 +245,13 @@ public abstract class Scenario {
 	 * @throws IOException
 	 */
 	public static Scenario parse(XmlPullParser parser) throws XmlPullParserException, ClassNotFoundException, InstantiationException, IllegalAccessException, IOException {
+		// parser may already be at the scenario tag (ex: PSCAgentServer reads the tag first to find the message)
+		boolean at_tag = parser.getEventType()==XmlPullParser.START_TAG;
 		main_loop:
 		while(true) {
-			parser.next();
+			if (!at_tag)
+				parser.next();
+			at_tag = false;
 			switch(parser.getEventType()) {
 			case XmlPullParser.START_TAG:
 				if (parser.getName().equals("scenario")) {
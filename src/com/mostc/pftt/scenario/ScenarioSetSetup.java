@@ -78,6 +78,28 @@ public class ScenarioSetSetup implements IClosable {
 		return scenario_set_setup;
 	} // end public static ScenarioSetSetup setupScenarioSet
 	
+	/** describes a Scenario Set without setting it up (ex: it was setup on another host, by a PSC agent).
+	 * 
+	 * only useful for its name (for storing results). version info isn't included since scenarios weren't setup here.
+	 * 
+	 * @param scenario_set
+	 * @param layer
+	 * @return
+	 */
+	public static ScenarioSetSetup describeScenarioSet(ScenarioSet scenario_set, EScenarioSetPermutationLayer layer) {
+		scenario_set.ensureSorted(layer);
+		StringBuilder name_version_sb = new StringBuilder();
+		for ( Scenario scenario : scenario_set ) {
+			if (scenario.isPlaceholder(layer))
+				continue;
+			if (name_version_sb.length()>0)
+				// deliminate with _
+				name_version_sb.append('_');
+			name_version_sb.append(scenario.getName());
+		}
+		return new ScenarioSetSetup(false, scenario_set, new HashMap<Scenario,IScenarioSetup>(), scenario_set.processNameAndVersionInfo(name_version_sb.toString()));
+	}
+	
 	protected final HashMap<Scenario,IScenarioSetup> setups;
 	protected final String name_version;
 	protected final ScenarioSet scenario_set;
@@ -231,8 +231,20 @@ public final class TimerUtil {
 		public void run(RepeatingThread thread);
 	}
 	
+	/** all timers share this wheel (1 thread) instead of each timer having its own sleeping thread.
+	 * 
+	 * PFTT creates a timeout for each test it runs (which almost always gets closed before it expires), so
+	 * with many test threads, a thread per timer was thousands of threads that did nothing but sleep.
+	 */
+	protected static final TimingWheel WHEEL = new TimingWheel("Timer");
+	
+	/** @see TimingWheel#toString */
+	public static TimingWheel getTimingWheel() {
+		return WHEEL;
+	}
+	
 	protected static void createRThread(RepeatingOrTimingThread t) {
-		t.t = runThread("Timer", (Runnable)t);
+		t.schedule(t.seconds);
 	}
 
 	public static RepeatingThread repeatEverySeconds(int seconds, RepeatingRunnable r) {
@@ -250,14 +262,11 @@ public final class TimerUtil {
 		}
 		
 		@Override
-		public void run() {
-			while(true) {
-				doWait();
-				if (isClosed())
-					return;
-				
-				r.run(this);
-			}
+		protected void expired() {
+			r.run(this);
+			
+			// wait #seconds after #run finishes (not from when it started), same as always
+			schedule(seconds);
 		}
 		
 	} // end public static class RepeatingThread
@@ -341,36 +350,25 @@ public final class TimerUtil {
 	public static abstract class TimerThread2S extends TimerThread {
 		protected final int seconds2;
 		protected final Runnable r1;
+		protected final AtomicBoolean fired1;
 		
 		public TimerThread2S(int seconds, Runnable r1, int seconds2) {
 			super(seconds);
 			this.r1 = r1;
 			this.seconds2 = seconds2 - seconds;
+			fired1 = new AtomicBoolean(false);
 		}
 
 		@Override
-		public void run() {
-			doWait();
-			if (isClosed())
-				return;
-			
-			fire1();
-			
-			doWait2();
-			if (isClosed())
-				return;
-			
-			fire2();
-		}
-		
-		protected void doWait2() {
-			sleeping.set(true);
-			try {
-				Thread.sleep(seconds2*1000);
-			} catch ( InterruptedException ex ) {
-				// get interrupt from #cancel and then stop waiting
+		protected void expired() {
+			if (fired1.compareAndSet(false, true)) {
+				fire1();
+				
+				// wait #seconds2 after #fire1 finishes, same as always
+				schedule(seconds2);
+			} else {
+				fire2();
 			}
-			sleeping.set(false);
 		}
 		
 		protected void fire1() {
@@ -464,11 +462,7 @@ public final class TimerUtil {
 		}
 
 		@Override
-		public void run() {
-			doWait();
-			if (isClosed())
-				return;
-			
+		protected void expired() {
 			fire();
 		}
 		
@@ -484,23 +478,38 @@ public final class TimerUtil {
 		
 	}
 	
+	/** Timer that runs from the shared TimingWheel. No thread is used until the timer expires.
+	 * 
+	 * #run is called (in a thread from TimingWheel#dispatch) when the timer expires.
+	 */
 	protected static abstract class RepeatingOrTimingThread implements Runnable, IClosable {
 		protected final int seconds;
-		protected final AtomicBoolean b, sleeping;
-		protected Thread t;
+		protected final AtomicBoolean b;
+		protected volatile TimingWheel.Timeout timeout;
+		/** thread running #expired, if any */
+		protected volatile Thread t;
 		
 		public RepeatingOrTimingThread(int seconds) {
 			this.seconds = seconds;
 			
 			b = new AtomicBoolean(false);
-			sleeping = new AtomicBoolean(false);
+		}
+		
+		protected void schedule(int seconds) {
+			if (isClosed())
+				return;
+			timeout = WHEEL.schedule(seconds*1000L, this);
+			if (isClosed())
+				// #close may have been called after #isClosed check but before #timeout was set
+				timeout.cancel();
 		}
 		
 		public void close() {
 			b.set(true);
-			if (sleeping.get()) {
-				// interrupt #sleep not #fire
-				t.interrupt();
+			final TimingWheel.Timeout to = timeout;
+			if (to!=null) {
+				// stop waiting, doesn't interrupt #expired if its already running
+				to.cancel();
 			}
 		}
 		
@@ -508,16 +517,21 @@ public final class TimerUtil {
 			return b.get();
 		}
 		
-		protected void doWait() {
-			sleeping.set(true);
+		@Override
+		public void run() {
+			if (isClosed())
+				return;
+			t = Thread.currentThread();
 			try {
-				Thread.sleep(seconds*1000);
-			} catch ( InterruptedException ex ) {
-				// get interrupt from #cancel and then stop waiting
+				expired();
+			} finally {
+				t = null;
 			}
-			sleeping.set(false);
 		}
 		
+		/** called when timer expires (if its not closed) */
+		protected abstract void expired();
+		
 		@Override
 		public void close(ConsoleManager cm) {
 			close();
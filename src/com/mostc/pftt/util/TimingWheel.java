@@ -0,0 +1,320 @@
+package com.mostc.pftt.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.mostc.pftt.results.ConsoleManagerUtil;
+
+/** Hierarchical timing wheel: any number of pending timeouts share one tick thread.
+ *
+ * PFTT creates a timeout (and maybe a slow-test timer) for every test it runs, and nearly all of them
+ * are cancelled before they expire. Previously each of those was a thread that slept until it expired,
+ * so a test run with many threads could easily have thousands of sleeping timer threads (which costs
+ * handles and memory, especially on Windows).
+ *
+ * Timeouts are put into the bucket (slot) of the wheel level that matches how far away their deadline is:
+ * level 0 has 1 slot per tick, level 1 has 1 slot per 64 ticks, etc... Each time a lower level wraps
+ * around, the next slot of the higher level is cascaded down into the lower levels. Creating and
+ * cancelling a timeout are O(1) and don't take any locks (new/cancelled timeouts are queued and applied
+ * by the tick thread).
+ *
+ * Expired timeouts are run by #dispatch so one slow task (ex: killing a process) doesn't delay the others.
+ *
+ * Resolution is 1 tick (TICK_MILLIS by default), which is plenty for timeouts measured in seconds.
+ *
+ * @see TimerUtil
+ * @author Matt Ficken
+ *
+ */
+
+public class TimingWheel {
+	public static final int DEFAULT_TICK_MILLIS = 100;
+	/** bits per level => 64 slots per level */
+	protected static final int LEVEL_BITS = 6;
+	protected static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+	protected static final int LEVEL_MASK = LEVEL_SIZE - 1;
+	/** 4 levels of 64 slots at 100ms/tick covers ~19 days. anything further out waits in the top level and gets re-cascaded */
+	protected static final int LEVEL_COUNT = 4;
+	protected static final long MAX_DELTA_TICKS = (1L << (LEVEL_BITS * LEVEL_COUNT)) - 1;
+	//
+	protected final long tick_nanos;
+	protected final String name;
+	protected final Bucket[][] levels;
+	protected final ConcurrentLinkedQueue<Timeout> added, cancelled;
+	protected final AtomicInteger pending;
+	protected final AtomicLong scheduled_count, cancelled_count, expired_count;
+	protected final Object start_lock = new Object();
+	protected volatile Thread tick_thread;
+	protected volatile long start_nanos;
+	/** only read/written by tick thread */
+	protected long current_tick;
+
+	public TimingWheel(String name) {
+		this(name, DEFAULT_TICK_MILLIS);
+	}
+
+	public TimingWheel(String name, int tick_millis) {
+		this.name = name;
+		this.tick_nanos = Math.max(1, tick_millis) * 1000000L;
+		levels = new Bucket[LEVEL_COUNT][LEVEL_SIZE];
+		for ( int i=0 ; i < LEVEL_COUNT ; i++ ) {
+			for ( int j=0 ; j < LEVEL_SIZE ; j++ )
+				levels[i][j] = new Bucket();
+		}
+		added = new ConcurrentLinkedQueue<Timeout>();
+		cancelled = new ConcurrentLinkedQueue<Timeout>();
+		pending = new AtomicInteger();
+		scheduled_count = new AtomicLong();
+		cancelled_count = new AtomicLong();
+		expired_count = new AtomicLong();
+	}
+
+	/** schedules task to be run once after delay_millis
+	 *
+	 * @param delay_millis
+	 * @param task
+	 * @return Timeout - call Timeout#cancel to stop task from running
+	 */
+	public Timeout schedule(long delay_millis, Runnable task) {
+		ensureStarted();
+
+		Timeout to = new Timeout(this, task, System.nanoTime() + Math.max(0L, delay_millis) * 1000000L);
+		pending.incrementAndGet();
+		scheduled_count.incrementAndGet();
+		added.add(to);
+		return to;
+	}
+
+	protected void ensureStarted() {
+		if (tick_thread!=null)
+			return;
+		synchronized(start_lock) {
+			if (tick_thread!=null)
+				return;
+			start_nanos = System.nanoTime();
+			Thread t = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						tickLoop();
+					}
+				});
+			t.setName(name);
+			t.setDaemon(true);
+			// tick thread only does bookkeeping, tasks are run by #dispatch
+			t.setPriority(Thread.MAX_PRIORITY);
+			t.start();
+			tick_thread = t;
+		}
+	}
+
+	/** runs an expired task. by default, runs it in its own thread (from TimerUtil's thread pool if needed)
+	 *
+	 * @param task
+	 */
+	protected void dispatch(Runnable task) {
+		TimerUtil.runThread(name, task);
+	}
+
+	/** number of timeouts that are scheduled and haven't expired or been cancelled yet
+	 *
+	 * @return
+	 */
+	public int getPendingCount() {
+		return pending.get();
+	}
+
+	public long getScheduledCount() {
+		return scheduled_count.get();
+	}
+
+	public long getCancelledCount() {
+		return cancelled_count.get();
+	}
+
+	public long getExpiredCount() {
+		return expired_count.get();
+	}
+
+	@Override
+	public String toString() {
+		return name+"[pending="+getPendingCount()+" scheduled="+getScheduledCount()+" cancelled="+getCancelledCount()+" expired="+getExpiredCount()+"]";
+	}
+
+	protected void tickLoop() {
+		long next_tick_nanos = start_nanos + tick_nanos;
+		while (true) {
+			long sleep_nanos = next_tick_nanos - System.nanoTime();
+			if (sleep_nanos > 0L) {
+				LockSupport.parkNanos(this, sleep_nanos);
+				continue;
+			}
+			try {
+				processCancelled();
+				processAdded();
+				tick();
+			} catch ( Throwable t ) {
+				ConsoleManagerUtil.printStackTrace(TimingWheel.class, t);
+			}
+			next_tick_nanos += tick_nanos;
+		}
+	}
+
+	protected void processCancelled() {
+		Timeout to;
+		while ( ( to = cancelled.poll() ) != null ) {
+			if (to.bucket!=null)
+				to.bucket.remove(to);
+		}
+	}
+
+	protected void processAdded() {
+		Timeout to;
+		// bound the work per tick in case timeouts are being added faster than they can be processed
+		for ( int i=0 ; i < 100000 && ( to = added.poll() ) != null ; i++ ) {
+			if (to.state.get()!=Timeout.ST_PENDING)
+				continue; // cancelled before it was added to the wheel
+			// round up so timeouts never expire early
+			to.deadline_tick = Math.max(current_tick + 1, (to.deadline_nanos - start_nanos + tick_nanos - 1) / tick_nanos);
+			place(to);
+		}
+	}
+
+	protected void place(Timeout to) {
+		long delta = to.deadline_tick - current_tick;
+		if (delta > MAX_DELTA_TICKS)
+			delta = MAX_DELTA_TICKS;
+		else if (delta < 1)
+			delta = 1;
+		final long target = current_tick + delta;
+		int level = 0;
+		while ( level < LEVEL_COUNT - 1 && delta >= ( 1L << ( LEVEL_BITS * ( level + 1 ) ) ) )
+			level++;
+		levels[level][(int) ( ( target >>> ( LEVEL_BITS * level ) ) & LEVEL_MASK )].add(to);
+	}
+
+	protected void tick() {
+		current_tick++;
+
+		// cascade higher levels down when the level below them wraps around
+		for ( int level=1 ; level < LEVEL_COUNT ; level++ ) {
+			if ( ( current_tick & ( ( 1L << ( LEVEL_BITS * level ) ) - 1 ) ) != 0 )
+				break;
+			Bucket bucket = levels[level][(int) ( ( current_tick >>> ( LEVEL_BITS * level ) ) & LEVEL_MASK )];
+			Timeout to;
+			while ( ( to = bucket.poll() ) != null ) {
+				if (to.deadline_tick <= current_tick)
+					expire(to);
+				else
+					place(to);
+			}
+		}
+
+		Bucket bucket = levels[0][(int) ( current_tick & LEVEL_MASK )];
+		Timeout to;
+		while ( ( to = bucket.poll() ) != null ) {
+			if (to.deadline_tick <= current_tick)
+				expire(to);
+			else
+				// was capped at MAX_DELTA_TICKS
+				place(to);
+		}
+	}
+
+	protected void expire(Timeout to) {
+		if (!to.state.compareAndSet(Timeout.ST_PENDING, Timeout.ST_EXPIRED))
+			return; // cancelled
+		pending.decrementAndGet();
+		expired_count.incrementAndGet();
+		try {
+			dispatch(to.task);
+		} catch ( Throwable t ) {
+			ConsoleManagerUtil.printStackTrace(TimingWheel.class, t);
+		}
+	}
+
+	public static class Timeout {
+		protected static final int ST_PENDING = 0;
+		protected static final int ST_CANCELLED = 1;
+		protected static final int ST_EXPIRED = 2;
+		protected final TimingWheel wheel;
+		protected final Runnable task;
+		protected final long deadline_nanos;
+		protected final AtomicInteger state;
+		// these are only used by the tick thread
+		protected long deadline_tick;
+		protected Bucket bucket;
+		protected Timeout prev, next;
+
+		protected Timeout(TimingWheel wheel, Runnable task, long deadline_nanos) {
+			this.wheel = wheel;
+			this.task = task;
+			this.deadline_nanos = deadline_nanos;
+			state = new AtomicInteger(ST_PENDING);
+		}
+
+		/** stops the task from being run, if it hasn't been run already
+		 *
+		 * @return TRUE if cancelled, FALSE if already expired or cancelled
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(ST_PENDING, ST_CANCELLED))
+				return false;
+			wheel.pending.decrementAndGet();
+			wheel.cancelled_count.incrementAndGet();
+			// tick thread will remove it from its bucket
+			wheel.cancelled.add(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == ST_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == ST_EXPIRED;
+		}
+
+	} // end public static class Timeout
+
+	/** doubly-linked list of Timeouts. only used by the tick thread */
+	protected static class Bucket {
+		protected Timeout head, tail;
+
+		protected void add(Timeout to) {
+			to.bucket = this;
+			to.prev = tail;
+			to.next = null;
+			if (tail==null)
+				head = to;
+			else
+				tail.next = to;
+			tail = to;
+		}
+
+		protected void remove(Timeout to) {
+			if (to.bucket!=this)
+				return;
+			if (to.prev==null)
+				head = to.next;
+			else
+				to.prev.next = to.next;
+			if (to.next==null)
+				tail = to.prev;
+			else
+				to.next.prev = to.prev;
+			to.prev = to.next = null;
+			to.bucket = null;
+		}
+
+		protected Timeout poll() {
+			Timeout to = head;
+			if (to!=null)
+				remove(to);
+			return to;
+		}
+
+	} // end protected static class Bucket
+
+} // end public class TimingWheel
@@ -162,6 +162,16 @@ public class REProgram implements Serializable
         }
     }
 
+    /**
+     * Returns the number of parenthesized subexpressions in the program
+     * or -1 if it is not known (program wasn't created by RECompiler).
+     * @return number of parens
+     */
+    public int getMaxParens()
+    {
+        return maxParens;
+    }
+
     /**
      * Returns a copy of the prefix of current regular expression program
      * in a character array.  If there is no prefix, or there is no program